@@ -22,14 +22,15 @@ package org.wso2.charon.core.v2;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.wso2.charon.core.v2.attributes.SimpleAttribute;
 import org.wso2.charon.core.v2.exceptions.*;
 import org.wso2.charon.core.v2.extensions.UserManager;
 import org.wso2.charon.core.v2.objects.Group;
 import org.wso2.charon.core.v2.objects.User;
 import org.wso2.charon.core.v2.utils.codeutils.Node;
-import org.wso2.charon.core.v2.attributes.Attribute;
-import org.wso2.charon.core.v2.utils.codeutils.ExpressionNode;
+import org.wso2.charon.core.v2.schema.SCIMResourceSchemaManager;
+import org.wso2.charon.core.v2.utils.codeutils.FilterEvaluator;
+import org.wso2.charon.core.v2.utils.codeutils.FilterPredicate;
+import org.wso2.charon.core.v2.utils.codeutils.ResourceSorter;
 import org.wso2.charon.core.v2.utils.codeutils.SearchRequest;
 
 import java.io.*;
@@ -197,25 +198,18 @@ public class SCIMUserManager implements UserManager {
     }
 
 
-    public List<User> filterUsers(Node rootNode) {
-        ExpressionNode en = (ExpressionNode) rootNode;
-        String attributeValue = en.getAttributeValue();
-        String operation = en.getOperation();
-        String attribute = en.getValue();
-
-        System.out.println(attributeValue+"-"+operation+"-"+attribute);
-        return null;
+    public List<User> filterUsers(Node rootNode) throws CharonException, BadRequestException {
+        //an invalid filter is reported as invalidFilter by FilterEvaluator.compile
+        FilterPredicate predicate = FilterEvaluator.compile(rootNode,
+                SCIMResourceSchemaManager.getInstance().getUserResourceSchema());
+        return FilterEvaluator.filter(listUsers(), predicate);
     }
 
 
-    public List<User> sortUsers(String sortBy, String sortOrder) {
-        //let the user core to handle the sorting
-        System.out.println(sortOrder);
-        try {
-            return listUsers();
-        } catch (CharonException e) {
-            return null;
-        }
+    public List<User> sortUsers(String sortBy, String sortOrder) throws CharonException, BadRequestException {
+        ResourceSorter sorter = ResourceSorter.compile(sortBy, sortOrder,
+                SCIMResourceSchemaManager.getInstance().getUserResourceSchema());
+        return sorter.getPage(listUsers(), 1, Integer.MAX_VALUE);
     }
 
     @Override
@@ -370,24 +364,11 @@ public class SCIMUserManager implements UserManager {
 
 
     public List<Group> filterGroups(Node rootNode) {
-        ExpressionNode en = (ExpressionNode) rootNode;
-        String attributeValue = en.getAttributeValue();
-        String operation = en.getOperation();
-        String value = en.getValue();
         try {
-            List<Group> list = listGroups();
-            List<Group> newList = new ArrayList<Group>();
-            for (Group group : list) {
-                Map<String, Attribute> attributeList = group.getAttributeList();
-                Attribute checkAttribute = attributeList.get("displayName");
-                if (checkAttribute != null) {
-                    if (((SimpleAttribute) checkAttribute).getValue().equals(value)) {
-                        newList.add(group);
-                    }
-                }
-            }
-            return newList;
-        } catch (CharonException e) {
+            FilterPredicate predicate = FilterEvaluator.compile(rootNode,
+                    SCIMResourceSchemaManager.getInstance().getGroupResourceSchema());
+            return FilterEvaluator.filter(listGroups(), predicate);
+        } catch (CharonException | BadRequestException e) {
             e.printStackTrace();
         }
         return null;
@@ -395,11 +376,11 @@ public class SCIMUserManager implements UserManager {
 
 
     public List<Group> sortGroups(String sortByAttributeURI, String sortOrder) {
-        //let the user core to handle the sorting
-        System.out.println(sortOrder);
         try {
-            return listGroups();
-        } catch (CharonException e) {
+            ResourceSorter sorter = ResourceSorter.compile(sortByAttributeURI, sortOrder,
+                    SCIMResourceSchemaManager.getInstance().getGroupResourceSchema());
+            return sorter.getPage(listGroups(), 1, Integer.MAX_VALUE);
+        } catch (CharonException | BadRequestException e) {
             return null;
         }
     }
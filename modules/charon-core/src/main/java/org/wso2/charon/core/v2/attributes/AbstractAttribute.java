@@ -17,39 +17,70 @@
  */
 package org.wso2.charon.core.v2.attributes;
 
+import org.wso2.charon.core.v2.schema.AttributeSchema;
 import org.wso2.charon.core.v2.schema.SCIMDefinitions;
+import org.wso2.charon.core.v2.schema.SCIMResourceSchemaManager;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 /**
  * This class abstracts out the common characteristics of different types of attributes defined in
  * SCIM Core Schema Spec.
+ * The characteristics are not copied into each attribute. They are read from the attribute schema the
+ * attribute was created from, which is shared by every attribute of that kind. Only an attribute whose
+ * characteristics are explicitly set to something other than its schema keeps a copy of its own.
+ * The protected fields URI, multiValued, description, required, caseExact, mutability, returned and
+ * uniqueness were removed for this, which breaks subclasses outside of charon that used them. Such
+ * subclasses have to use the getters and setters instead, eg: getRequired() and setRequired(Boolean) in place
+ * of the required field.
 */
 public abstract class AbstractAttribute implements Attribute {
 
-    //unique identifier for the attribute
-    protected String URI;
     //name of the attribute
     protected String name;
     //data type of the attribute
     protected SCIMDefinitions.DataType type;
-    //Boolean value indicating the attribute's plurality.
-    protected Boolean multiValued;
-    //The attribute's human readable description
-    protected String description;
-    //A Boolean value that specifies if the attribute is required
-    protected Boolean required;
-    //A Boolean value that specifies if the String attribute is case sensitive
-    protected Boolean caseExact;
-    //A SCIM defined value that specifies if the attribute's mutability.
-    protected SCIMDefinitions.Mutability mutability;
-    //A SCIM defined value that specifies when the attribute's value need to be returned.
-    protected SCIMDefinitions.Returned returned;
-    //A SCIM defined value that specifies the uniqueness level of an attribute.
-    protected SCIMDefinitions.Uniqueness uniqueness;
+    //schema the attribute was created from, which defines the characteristics of the attribute
+    private transient AttributeSchema attributeSchema;
+    //characteristics of the attribute which were set explicitly, null while they are those of the schema
+    private transient Characteristics characteristics;
+
+    /**
+     * Returns the schema which defines the characteristics of this attribute, if any.
+     *
+     * @return AttributeSchema
+     */
+    public AttributeSchema getAttributeSchema() {
+        return attributeSchema;
+    }
+
+    /**
+     * Makes this attribute take the characteristics defined in the given schema, discarding any of them
+     * that were set explicitly.
+     *
+     * @param attributeSchema - schema the attribute is created from
+     */
+    public void setAttributeSchema(AttributeSchema attributeSchema) {
+        this.attributeSchema = attributeSchema;
+        this.characteristics = null;
+    }
 
     public String getURI() {
-        return URI; }
+        if (characteristics != null) {
+            return characteristics.URI;
+        }
+        return attributeSchema == null ? null : attributeSchema.getURI();
+    }
 
     public void setURI(String URI) {
-        this.URI = URI; }
+        if (isUnchanged(URI, getURI())) {
+            return;
+        }
+        ownCharacteristics().URI = URI;
+    }
 
     public String getName() {
         return name;
@@ -68,58 +99,182 @@ public abstract class AbstractAttribute implements Attribute {
     }
 
     public Boolean getMultiValued() {
-        return multiValued;
+        if (characteristics != null) {
+            return characteristics.multiValued;
+        }
+        return attributeSchema == null ? null : attributeSchema.getMultiValued();
     }
 
     public void setMultiValued(Boolean multiValued) {
-        this.multiValued = multiValued;
+        if (isUnchanged(multiValued, getMultiValued())) {
+            return;
+        }
+        ownCharacteristics().multiValued = multiValued;
     }
 
     public String getDescription() {
-        return description;
+        if (characteristics != null) {
+            return characteristics.description;
+        }
+        return attributeSchema == null ? null : attributeSchema.getDescription();
     }
 
     public void setDescription(String description) {
-        this.description = description;
+        if (isUnchanged(description, getDescription())) {
+            return;
+        }
+        ownCharacteristics().description = description;
     }
 
     public Boolean getRequired() {
-        return required;
+        if (characteristics != null) {
+            return characteristics.required;
+        }
+        return attributeSchema == null ? null : attributeSchema.getRequired();
     }
 
     public void setRequired(Boolean required) {
-        this.required = required;
+        if (isUnchanged(required, getRequired())) {
+            return;
+        }
+        ownCharacteristics().required = required;
     }
 
     public Boolean getCaseExact() {
-        return caseExact;
+        if (characteristics != null) {
+            return characteristics.caseExact;
+        }
+        return attributeSchema == null ? null : attributeSchema.getCaseExact();
     }
 
     public void setCaseExact(Boolean caseExact) {
-        this.caseExact = caseExact;
+        if (isUnchanged(caseExact, getCaseExact())) {
+            return;
+        }
+        ownCharacteristics().caseExact = caseExact;
     }
 
     public SCIMDefinitions.Mutability getMutability() {
-        return mutability;
+        if (characteristics != null) {
+            return characteristics.mutability;
+        }
+        return attributeSchema == null ? null : attributeSchema.getMutability();
     }
 
     public void setMutability(SCIMDefinitions.Mutability mutability) {
-        this.mutability = mutability;
+        if (isUnchanged(mutability, getMutability())) {
+            return;
+        }
+        ownCharacteristics().mutability = mutability;
     }
 
     public SCIMDefinitions.Returned getReturned() {
-        return returned; }
+        if (characteristics != null) {
+            return characteristics.returned;
+        }
+        return attributeSchema == null ? null : attributeSchema.getReturned();
+    }
 
     public void setReturned(SCIMDefinitions.Returned returned) {
-        this.returned = returned;
+        if (isUnchanged(returned, getReturned())) {
+            return;
+        }
+        ownCharacteristics().returned = returned;
     }
 
     public SCIMDefinitions.Uniqueness getUniqueness() {
-        return uniqueness;
+        if (characteristics != null) {
+            return characteristics.uniqueness;
+        }
+        return attributeSchema == null ? null : attributeSchema.getUniqueness();
     }
 
     public void setUniqueness(SCIMDefinitions.Uniqueness uniqueness) {
-        this.uniqueness = uniqueness;
+        if (isUnchanged(uniqueness, getUniqueness())) {
+            return;
+        }
+        ownCharacteristics().uniqueness = uniqueness;
+    }
+
+    /*
+     * Setting a characteristic to the value it already has must not cost the attribute a copy of its own.
+     */
+    private boolean isUnchanged(Object value, Object currentValue) {
+        return characteristics == null && (value == null ? currentValue == null : value.equals(currentValue));
+    }
+
+    private Characteristics ownCharacteristics() {
+        if (characteristics == null) {
+            characteristics = new Characteristics(this);
+        }
+        return characteristics;
+    }
+
+    /*
+     * A schema of the user and group resources is written as its URI, and resolved again to the shared schema
+     * when the attribute is read. Any other schema is written along with the attribute if it can be
+     * serialized, otherwise the characteristics read from it are written instead, so that the copy still
+     * has them.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        Characteristics writtenCharacteristics = characteristics;
+        if (attributeSchema != null && attributeSchema.getURI() != null &&
+                SCIMResourceSchemaManager.getInstance().getAttributeSchema(attributeSchema.getURI()) ==
+                        attributeSchema) {
+            out.writeObject(attributeSchema.getURI());
+        } else if (attributeSchema == null || attributeSchema instanceof Serializable) {
+            out.writeObject(attributeSchema);
+        } else {
+            out.writeObject(null);
+            if (writtenCharacteristics == null) {
+                writtenCharacteristics = new Characteristics(this);
+            }
+        }
+        out.writeObject(writtenCharacteristics);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        Object schema = in.readObject();
+        if (schema instanceof String) {
+            attributeSchema = SCIMResourceSchemaManager.getInstance().getAttributeSchema((String) schema);
+            if (attributeSchema == null) {
+                throw new InvalidObjectException("Schema of the attribute " + name + " with the URI " + schema +
+                        " is not defined.");
+            }
+        } else {
+            attributeSchema = (AttributeSchema) schema;
+        }
+        characteristics = (Characteristics) in.readObject();
+    }
+
+    /*
+     * Characteristics of an attribute which no longer follows its schema.
+     */
+    private static final class Characteristics implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private String URI;
+        private Boolean multiValued;
+        private String description;
+        private Boolean required;
+        private Boolean caseExact;
+        private SCIMDefinitions.Mutability mutability;
+        private SCIMDefinitions.Returned returned;
+        private SCIMDefinitions.Uniqueness uniqueness;
+
+        private Characteristics(AbstractAttribute attribute) {
+            this.URI = attribute.getURI();
+            this.multiValued = attribute.getMultiValued();
+            this.description = attribute.getDescription();
+            this.required = attribute.getRequired();
+            this.caseExact = attribute.getCaseExact();
+            this.mutability = attribute.getMutability();
+            this.returned = attribute.getReturned();
+            this.uniqueness = attribute.getUniqueness();
+        }
     }
 
 }
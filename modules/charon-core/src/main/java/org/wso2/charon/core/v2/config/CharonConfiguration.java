@@ -19,6 +19,7 @@ package org.wso2.charon.core.v2.config;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class contains the charon related configurations.
@@ -37,17 +38,25 @@ public class CharonConfiguration implements Configuration {
     private int maxOperations;
     private int maxPayLoadSize;
     private int maxResults;
+    //limits of list and search filters, 0 for no limit
+    private int maxFilterDepth;
+    private int maxFilterTerms;
+    private int maxFilterCost;
     private ArrayList<Object[]> authenticationSchemes = new ArrayList<Object[]>();
 
     //default count value for pagination
     private int count;
 
+    //incremented on every change, so that responses built from the configuration can be cached
+    private final AtomicLong version = new AtomicLong();
+
     /*
      * set documentationURL
      * @param documentationURL
      */
     public void setDocumentationURL(String documentationURL) {
         this.documentationURL = documentationURL;
+        version.incrementAndGet();
     }
 
     /*
@@ -56,6 +65,7 @@ public class CharonConfiguration implements Configuration {
      */
     public void setPatchSupport(boolean supported) {
         this.patchSupport = supported;
+        version.incrementAndGet();
     }
 
     /*
@@ -68,6 +78,7 @@ public class CharonConfiguration implements Configuration {
         this.bulkSupport = supported;
         this.maxOperations = maxOperations;
         this.maxPayLoadSize = maxPayLoadSize;
+        version.incrementAndGet();
     }
 
     /*
@@ -78,6 +89,35 @@ public class CharonConfiguration implements Configuration {
     public void setFilterSupport(boolean supported, int maxResults) {
         this.filterSupport = supported;
         this.maxResults = maxResults;
+        version.incrementAndGet();
+    }
+
+    /*
+     * Set the limits of list and search filters, filters over the limits are rejected before they reach the
+     * user manager. See FilterCost for how the cost is estimated. The depth and the number of expressions are
+     * checked before the filter is parsed as well, and are never more than the bounds of the parser (100 nesting
+     * levels and 1000 expressions), which also apply if no limit is set.
+     * @param maxDepth - maximum nesting depth of the filter tree, 0 for no limit
+     * @param maxTerms - maximum number of filter expressions, 0 for no limit
+     * @param maxCost  - maximum estimated cost of the filter, 0 for no limit
+     */
+    public void setFilterLimits(int maxDepth, int maxTerms, int maxCost) {
+        this.maxFilterDepth = maxDepth;
+        this.maxFilterTerms = maxTerms;
+        this.maxFilterCost = maxCost;
+        version.incrementAndGet();
+    }
+
+    public int getMaxFilterDepth() {
+        return maxFilterDepth;
+    }
+
+    public int getMaxFilterTerms() {
+        return maxFilterTerms;
+    }
+
+    public int getMaxFilterCost() {
+        return maxFilterCost;
     }
 
     /*
@@ -86,6 +126,7 @@ public class CharonConfiguration implements Configuration {
      */
     public void setChangePasswordSupport(boolean supported) {
         this.changePasswordSupport = supported;
+        version.incrementAndGet();
     }
 
     /*
@@ -94,6 +135,7 @@ public class CharonConfiguration implements Configuration {
      */
     public void setETagSupport(boolean supported) {
         this.eTagSupport = supported;
+        version.incrementAndGet();
     }
 
     /*
@@ -102,6 +144,7 @@ public class CharonConfiguration implements Configuration {
      */
     public void setSortSupport(boolean supported) {
         this.sortSupport = supported;
+        version.incrementAndGet();
     }
 
     /*
@@ -110,6 +153,7 @@ public class CharonConfiguration implements Configuration {
      */
     public void setAuthenticationSchemes(ArrayList<Object[]> authenticationSchemes) {
         this.authenticationSchemes = authenticationSchemes;
+        version.incrementAndGet();
     }
 
     /*
@@ -119,6 +163,7 @@ public class CharonConfiguration implements Configuration {
     @Override
     public void setCountValueForPagination(int count) {
         this.count = count;
+        version.incrementAndGet();
     }
 
     /*
@@ -149,6 +194,14 @@ public class CharonConfiguration implements Configuration {
         return  configMap;
     }
 
+    /*
+     * return the version of the configuration, which changes whenever a setting is changed
+     * @return
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
     /*
      * return the instance of CharonConfiguration
      * @return
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.encoder;
+
+import org.wso2.charon.core.v2.exceptions.BadRequestException;
+import org.wso2.charon.core.v2.exceptions.CharonException;
+import org.wso2.charon.core.v2.exceptions.InternalErrorException;
+import org.wso2.charon.core.v2.objects.AbstractSCIMObject;
+import org.wso2.charon.core.v2.objects.SCIMObject;
+import org.wso2.charon.core.v2.schema.ResourceTypeSchema;
+import org.wso2.charon.core.v2.schema.SCIMConstants;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Codec of the compact binary encoding described in BinaryFormat. It encodes the same attribute tree as the
+ * json codec and decodes it with the same schema driven decoder, so both encodings produce the same
+ * SCIMObject. It is not registered by default: a deployment registers it with the CodecManager for its
+ * trusted internal clients, while other clients stay on application/scim+json.
+ */
+public class BinaryCodec implements SCIMCodec {
+
+    private final StreamingJSONEncoder encoder = new StreamingJSONEncoder();
+    private final StreamingJSONDecoder decoder = new StreamingJSONDecoder();
+
+    public String getFormat() {
+        return SCIMConstants.BINARY;
+    }
+
+    public String getContentType() {
+        return SCIMConstants.APPLICATION_SCIM_BINARY;
+    }
+
+    public boolean isText() {
+        return false;
+    }
+
+    public void encodeSCIMObject(SCIMObject scimObject, OutputStream outputStream)
+            throws CharonException, IOException {
+        BinaryStreamWriter writer = new BinaryStreamWriter(outputStream);
+        try {
+            encoder.writeSCIMObject(scimObject, writer);
+            writer.finish();
+        } finally {
+            writer.release();
+        }
+    }
+
+    public SCIMObject decodeResource(InputStream inputStream, ResourceTypeSchema resourceSchema,
+                                     AbstractSCIMObject scimObject)
+            throws BadRequestException, CharonException, InternalErrorException {
+        return decoder.decodeResource(new BinaryStreamReader(inputStream), resourceSchema, scimObject);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.encoder;
+
+/**
+ * Constants of the compact binary encoding of SCIM payloads, read and written by the BinaryStreamReader and
+ * the BinaryStreamWriter.
+ * A document starts with the magic bytes 'S' 'B' and the format version, followed by a single value. Each
+ * token starts with one of the tag bytes below. Lengths and integers are written as base 128 varints, with
+ * signed integers zig-zag encoded, and doubles as their 8 byte IEEE 754 representation. Member names are
+ * interned: a name is written in full the first time it occurs and as a reference to its index afterwards,
+ * so that keys repeated in multi valued attributes (value, type, primary, ...) cost one or two bytes.
+ */
+final class BinaryFormat {
+
+    static final int MAGIC_0 = 'S';
+    static final int MAGIC_1 = 'B';
+    static final int VERSION = 1;
+
+    static final int BEGIN_OBJECT = 0x01;
+    static final int END_OBJECT = 0x02;
+    static final int BEGIN_ARRAY = 0x03;
+    static final int END_ARRAY = 0x04;
+    //name written in full, followed by the varint length and the UTF-8 bytes
+    static final int NAME = 0x05;
+    //name written as the varint index of a previously written name
+    static final int NAME_REF = 0x06;
+    static final int STRING = 0x07;
+    static final int TRUE = 0x08;
+    static final int FALSE = 0x09;
+    static final int INT = 0x0a;
+    static final int LONG = 0x0b;
+    static final int DOUBLE = 0x0c;
+    static final int NULL = 0x0d;
+
+    //upper bound of the names interned per document, later names are always written in full
+    static final int MAX_INTERNED_NAMES = 1024;
+
+    private BinaryFormat() {
+    }
+}
@@ -0,0 +1,579 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.encoder;
+
+import org.wso2.charon.core.v2.attributes.AbstractAttribute;
+import org.wso2.charon.core.v2.attributes.Attribute;
+import org.wso2.charon.core.v2.attributes.ComplexAttribute;
+import org.wso2.charon.core.v2.attributes.DefaultAttributeFactory;
+import org.wso2.charon.core.v2.attributes.MultiValuedAttribute;
+import org.wso2.charon.core.v2.attributes.SimpleAttribute;
+import org.wso2.charon.core.v2.exceptions.BadRequestException;
+import org.wso2.charon.core.v2.exceptions.CharonException;
+import org.wso2.charon.core.v2.objects.AbstractSCIMObject;
+import org.wso2.charon.core.v2.schema.AttributeSchema;
+import org.wso2.charon.core.v2.schema.ResourceTypeSchema;
+import org.wso2.charon.core.v2.schema.SCIMConstants;
+import org.wso2.charon.core.v2.schema.SCIMDefinitions;
+import org.wso2.charon.core.v2.utils.AttributeUtil;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes SCIM resources into compact records for persisting them, eg: in the LogStructuredUserManager.
+ * Unlike java serialization, which stores the URI, description and the other characteristics of every
+ * attribute along with its value, a record only holds the name, kind and data type of each present attribute
+ * and its value, and the characteristics are taken from the schema again when it is read.
+ * A record is laid out as
+ *      'S' 'R' | version | schemas | attributes
+ * where the attributes are a varint count followed by, per attribute, its name, a descriptor byte
+ * (data type << 3 | kind << 1 | null flag) and the value. Values are written by their data type: integers and
+ * dates (as epoch milliseconds) as zig-zag varints, booleans as a byte and decimals as 8 bytes. Strings,
+ * including the names, are written as a varint code: 0 for a string written in full, which is then added to
+ * the dictionary of the record, or the index plus 1 of a string already in the dictionary (eg: the name of
+ * the value sub attribute of the second email). Sub attributes of complex attributes are written as the
+ * attributes of the resource.
+ * As the records describe themselves, they can be read with a schema which was changed since they were
+ * written: attributes which are no longer in the schema are skipped and attributes which were added are
+ * left out. Only an attribute whose kind or data type was changed makes a record unreadable.
+ */
+public class BinaryRecordSerializer {
+
+    private static final int MAGIC_0 = 'S';
+    private static final int MAGIC_1 = 'R';
+    private static final int VERSION = 2;
+
+    //tags of the values of primitive multi valued attributes, which are kept as given
+    private static final int TAG_STRING = 0;
+    private static final int TAG_TRUE = 1;
+    private static final int TAG_FALSE = 2;
+    private static final int TAG_INTEGER = 3;
+    private static final int TAG_LONG = 4;
+    private static final int TAG_DOUBLE = 5;
+    private static final int TAG_DATE = 6;
+
+    //name of a complex value, either derived from its value and type sub attributes or written in full
+    private static final int DERIVED_NAME = 0;
+    private static final int WRITTEN_NAME = 1;
+
+    //stable codes of the data types, which do not depend on the order of the constants of the enum
+    private static final SCIMDefinitions.DataType[] DATA_TYPES = {
+            SCIMDefinitions.DataType.STRING, SCIMDefinitions.DataType.BOOLEAN, SCIMDefinitions.DataType.DECIMAL,
+            SCIMDefinitions.DataType.INTEGER, SCIMDefinitions.DataType.DATE_TIME, SCIMDefinitions.DataType.BINARY,
+            SCIMDefinitions.DataType.REFERENCE, SCIMDefinitions.DataType.COMPLEX};
+
+    /**
+     * Serializes the attributes and the schemas of the given resource.
+     *
+     * @param scimObject     - resource to be serialized
+     * @param resourceSchema - schema of the resource
+     * @return record
+     * @throws CharonException if an attribute is not defined in the schema, or its value does not match the
+     *                         data type of the schema
+     */
+    public byte[] serialize(AbstractSCIMObject scimObject, ResourceTypeSchema resourceSchema)
+            throws CharonException {
+        DecodingPlan plan = DecodingPlan.getPlan(resourceSchema);
+        RecordWriter writer = new RecordWriter();
+        writer.writeByte(MAGIC_0);
+        writer.writeByte(MAGIC_1);
+        writer.writeByte(VERSION);
+        List<String> schemas = scimObject.getSchemaList();
+        writer.writeVarint(schemas.size());
+        for (String schema : schemas) {
+            writer.writeString(schema);
+        }
+        writeAttributes(writer, scimObject.getAttributeList().values(), plan);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Reads a record into the given resource, setting the characteristics of the attributes from the schema.
+     *
+     * @param record         - record written by serialize
+     * @param resourceSchema - schema of the resource
+     * @param scimObject     - a container holding the attributes and schema list
+     * @return the given resource
+     * @throws CharonException if the record is not valid, or holds an attribute of another kind or data type
+     *                         than the schema
+     */
+    public <T extends AbstractSCIMObject> T deserialize(ByteBuffer record, ResourceTypeSchema resourceSchema,
+                                                        T scimObject) throws CharonException {
+        DecodingPlan plan = DecodingPlan.getPlan(resourceSchema);
+        RecordReader reader = new RecordReader(record);
+        try {
+            if (reader.readByte() != MAGIC_0 || reader.readByte() != MAGIC_1 || reader.readByte() != VERSION) {
+                throw new CharonException("Given bytes are not a record of a SCIM resource.");
+            }
+            int schemaCount = reader.readCount();
+            for (int i = 0; i < schemaCount; i++) {
+                scimObject.setSchema(reader.readString());
+            }
+            for (Attribute attribute : readAttributes(reader, plan)) {
+                scimObject.setAttribute(attribute, resourceSchema);
+            }
+            return scimObject;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new CharonException("Record of the SCIM resource is truncated or corrupt.", e);
+        } catch (BadRequestException e) {
+            throw new CharonException("Record of the SCIM resource does not match the schema: " +
+                    e.getDetail(), e);
+        }
+    }
+
+    public <T extends AbstractSCIMObject> T deserialize(byte[] record, ResourceTypeSchema resourceSchema,
+                                                        T scimObject) throws CharonException {
+        return deserialize(ByteBuffer.wrap(record), resourceSchema, scimObject);
+    }
+
+    private void writeAttributes(RecordWriter writer, Collection<Attribute> attributes, DecodingPlan plan)
+            throws CharonException {
+        writer.writeVarint(attributes.size());
+        for (Attribute attribute : attributes) {
+            DecodingPlan.AttributeHandler handler = plan == null ? null : plan.getHandlerByName(attribute.getName());
+            if (handler == null) {
+                throw new CharonException("Attribute " + attribute.getName() + " is not defined in the schema.");
+            }
+            AttributeSchema attributeSchema = handler.getAttributeSchema();
+            Object value = attribute instanceof SimpleAttribute ? ((SimpleAttribute) attribute).getValue() : null;
+            boolean isNull = attribute instanceof SimpleAttribute && value == null;
+            writer.writeString(attributeSchema.getName());
+            writer.writeByte(getTypeCode(attributeSchema.getType()) << 3 | handler.getKind() << 1 | (isNull ? 1 : 0));
+            if (isNull) {
+                continue;
+            }
+            switch (handler.getKind()) {
+                case DecodingPlan.COMPLEX_MULTI_VALUED:
+                    List<Attribute> values = cast(attribute, MultiValuedAttribute.class).getAttributeValues();
+                    writer.writeVarint(values.size());
+                    for (Attribute complexValue : values) {
+                        writeComplexValue(writer, cast(complexValue, ComplexAttribute.class), handler);
+                    }
+                    break;
+                case DecodingPlan.PRIMITIVE_MULTI_VALUED:
+                    List<Object> primitiveValues = cast(attribute, MultiValuedAttribute.class)
+                            .getAttributePrimitiveValues();
+                    writer.writeVarint(primitiveValues.size());
+                    for (Object primitiveValue : primitiveValues) {
+                        writeTaggedValue(writer, primitiveValue, attributeSchema);
+                    }
+                    break;
+                case DecodingPlan.COMPLEX:
+                    writeAttributes(writer, cast(attribute, ComplexAttribute.class)
+                            .getSubAttributesList().values(), handler.getSubAttributePlan());
+                    break;
+                default:
+                    writeValue(writer, value, attributeSchema.getType());
+            }
+        }
+    }
+
+    /*
+     * Reads the attributes written by writeAttributes. Attributes which are not in the plan are read and
+     * dropped, and all the attributes are dropped if there is no plan.
+     */
+    private List<Attribute> readAttributes(RecordReader reader, DecodingPlan plan)
+            throws CharonException, BadRequestException {
+        int count = reader.readCount();
+        List<Attribute> attributes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = reader.readString();
+            int descriptor = reader.readByte();
+            SCIMDefinitions.DataType type = getDataType(descriptor >>> 3);
+            int kind = descriptor >>> 1 & 3;
+            boolean isNull = (descriptor & 1) != 0;
+            DecodingPlan.AttributeHandler handler = plan == null ? null : plan.getHandlerByName(name);
+            if (handler == null) {
+                //the attribute was removed from the schema since the record was written
+                if (!isNull) {
+                    readValue(reader, null, kind, type);
+                }
+                continue;
+            }
+            AttributeSchema attributeSchema = handler.getAttributeSchema();
+            if (handler.getKind() != kind || attributeSchema.getType() != type) {
+                throw new CharonException("Attribute " + name + " of the record is a " + type +
+                        " which does not match the " + attributeSchema.getType() + " of the schema.");
+            }
+            Attribute attribute = isNull ? new SimpleAttribute(attributeSchema.getName(), null) :
+                    readValue(reader, handler, kind, type);
+            attributes.add(DefaultAttributeFactory.createAttribute(attributeSchema, (AbstractAttribute) attribute));
+        }
+        return attributes;
+    }
+
+    /*
+     * Reads the value of an attribute of the given kind and data type, and returns it as an attribute without
+     * its characteristics, or null if there is no handler for the attribute.
+     */
+    private Attribute readValue(RecordReader reader, DecodingPlan.AttributeHandler handler, int kind,
+                                SCIMDefinitions.DataType type) throws CharonException, BadRequestException {
+        String name = handler == null ? null : handler.getAttributeSchema().getName();
+        DecodingPlan subAttributePlan = handler == null ? null : handler.getSubAttributePlan();
+        switch (kind) {
+            case DecodingPlan.COMPLEX_MULTI_VALUED:
+                int valueCount = reader.readCount();
+                List<Attribute> values = new ArrayList<>(valueCount);
+                for (int j = 0; j < valueCount; j++) {
+                    ComplexAttribute complexValue = readComplexValue(reader, handler);
+                    if (complexValue != null) {
+                        values.add(complexValue);
+                    }
+                }
+                MultiValuedAttribute complexMultiValuedAttribute = new MultiValuedAttribute(name);
+                complexMultiValuedAttribute.setAttributeValues(values);
+                return complexMultiValuedAttribute;
+            case DecodingPlan.PRIMITIVE_MULTI_VALUED:
+                int primitiveCount = reader.readCount();
+                List<Object> primitiveValues = new ArrayList<>(primitiveCount);
+                for (int j = 0; j < primitiveCount; j++) {
+                    primitiveValues.add(readTaggedValue(reader));
+                }
+                MultiValuedAttribute multiValuedAttribute = new MultiValuedAttribute(name);
+                multiValuedAttribute.setAttributePrimitiveValues(primitiveValues);
+                return multiValuedAttribute;
+            case DecodingPlan.COMPLEX:
+                ComplexAttribute complexAttribute = new ComplexAttribute(name);
+                complexAttribute.setSubAttributesList(toMap(readAttributes(reader, subAttributePlan)));
+                return complexAttribute;
+            default:
+                return new SimpleAttribute(name, readValue(reader, type));
+        }
+    }
+
+    /*
+     * Writes a complex value of a multi valued attribute. Its name is written only if it is not the one the
+     * decoders give it, ie: the attribute name followed by its value and type.
+     */
+    private void writeComplexValue(RecordWriter writer, ComplexAttribute complexValue,
+                                   DecodingPlan.AttributeHandler handler) throws CharonException {
+        Map<String, Attribute> subAttributes = complexValue.getSubAttributesList();
+        if (complexValue.getName() != null &&
+                complexValue.getName().equals(getComplexValueName(handler, subAttributes))) {
+            writer.writeVarint(DERIVED_NAME);
+        } else {
+            writer.writeVarint(WRITTEN_NAME);
+            writer.writeString(complexValue.getName());
+        }
+        writeAttributes(writer, subAttributes.values(), handler.getSubAttributePlan());
+    }
+
+    private ComplexAttribute readComplexValue(RecordReader reader, DecodingPlan.AttributeHandler handler)
+            throws CharonException, BadRequestException {
+        String name = reader.readVarint() == WRITTEN_NAME ? reader.readString() : null;
+        Map<String, Attribute> subAttributes = toMap(readAttributes(reader,
+                handler == null ? null : handler.getSubAttributePlan()));
+        if (handler == null) {
+            return null;
+        }
+        ComplexAttribute complexValue = new ComplexAttribute(name != null ? name :
+                getComplexValueName(handler, subAttributes));
+        complexValue.setSubAttributesList(subAttributes);
+        return (ComplexAttribute) DefaultAttributeFactory.createAttribute(handler.getAttributeSchema(),
+                complexValue);
+    }
+
+    /*
+     * Returns the name the decoders give to a complex value with the given sub attributes.
+     */
+    private static String getComplexValueName(DecodingPlan.AttributeHandler handler,
+                                              Map<String, Attribute> subAttributes) {
+        String name = handler.getAttributeSchema().getName();
+        DecodingPlan subAttributePlan = handler.getSubAttributePlan();
+        if (subAttributePlan == null ||
+                subAttributePlan.getHandlerByName(SCIMConstants.CommonSchemaConstants.VALUE) == null) {
+            return name;
+        }
+        return name + "_" + getNamePart(subAttributes.get(SCIMConstants.CommonSchemaConstants.VALUE)) + "_" +
+                getNamePart(subAttributes.get(SCIMConstants.CommonSchemaConstants.TYPE));
+    }
+
+    private static String getNamePart(Attribute attribute) {
+        Object value = attribute instanceof SimpleAttribute ? ((SimpleAttribute) attribute).getValue() : null;
+        return value != null ? String.valueOf(value) : SCIMConstants.DEFAULT;
+    }
+
+    /*
+     * Writes the value of a simple attribute by the data type of its schema.
+     */
+    private void writeValue(RecordWriter writer, Object value, SCIMDefinitions.DataType type)
+            throws CharonException {
+        switch (type) {
+            case STRING:
+            case REFERENCE:
+                writer.writeString(cast(value, String.class));
+                break;
+            case BOOLEAN:
+                writer.writeByte(cast(value, Boolean.class) ? 1 : 0);
+                break;
+            case INTEGER:
+                writer.writeSignedVarint(cast(value, Integer.class).longValue());
+                break;
+            case DECIMAL:
+                writer.writeLong(Double.doubleToLongBits(cast(value, Double.class)));
+                break;
+            case DATE_TIME:
+                writer.writeSignedVarint(cast(value, Date.class).getTime());
+                break;
+            default:
+                //binary values are rare, and written as the decoders read them
+                writer.writeString(String.valueOf(value));
+        }
+    }
+
+    private Object readValue(RecordReader reader, SCIMDefinitions.DataType type)
+            throws CharonException, BadRequestException {
+        switch (type) {
+            case STRING:
+            case REFERENCE:
+                return reader.readString();
+            case BOOLEAN:
+                return reader.readByte() != 0;
+            case INTEGER:
+                return (int) reader.readSignedVarint();
+            case DECIMAL:
+                return Double.longBitsToDouble(reader.readLong());
+            case DATE_TIME:
+                return new Date(reader.readSignedVarint());
+            default:
+                return AttributeUtil.getAttributeValueFromString(reader.readString(), type);
+        }
+    }
+
+    /*
+     * Writes a value of a primitive multi valued attribute, which may not be of the data type of the schema.
+     */
+    private void writeTaggedValue(RecordWriter writer, Object value, AttributeSchema attributeSchema)
+            throws CharonException {
+        if (value instanceof Boolean) {
+            writer.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (value instanceof Integer) {
+            writer.writeByte(TAG_INTEGER);
+            writer.writeSignedVarint((Integer) value);
+        } else if (value instanceof Long) {
+            writer.writeByte(TAG_LONG);
+            writer.writeSignedVarint((Long) value);
+        } else if (value instanceof Double) {
+            writer.writeByte(TAG_DOUBLE);
+            writer.writeLong(Double.doubleToLongBits((Double) value));
+        } else if (value instanceof Date) {
+            writer.writeByte(TAG_DATE);
+            writer.writeSignedVarint(((Date) value).getTime());
+        } else if (value instanceof String) {
+            writer.writeByte(TAG_STRING);
+            writer.writeString((String) value);
+        } else {
+            throw new CharonException("Value of the attribute " + attributeSchema.getName() +
+                    " can not be serialized.");
+        }
+    }
+
+    private Object readTaggedValue(RecordReader reader) throws CharonException {
+        int tag = reader.readByte();
+        switch (tag) {
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_INTEGER:
+                return (int) reader.readSignedVarint();
+            case TAG_LONG:
+                return reader.readSignedVarint();
+            case TAG_DOUBLE:
+                return Double.longBitsToDouble(reader.readLong());
+            case TAG_DATE:
+                return new Date(reader.readSignedVarint());
+            case TAG_STRING:
+                return reader.readString();
+            default:
+                throw new CharonException("Record holds an unknown value tag " + tag);
+        }
+    }
+
+    private static int getTypeCode(SCIMDefinitions.DataType type) throws CharonException {
+        for (int i = 0; i < DATA_TYPES.length; i++) {
+            if (DATA_TYPES[i] == type) {
+                return i;
+            }
+        }
+        throw new CharonException("Data type " + type + " can not be serialized.");
+    }
+
+    private static SCIMDefinitions.DataType getDataType(int typeCode) throws CharonException {
+        if (typeCode >= DATA_TYPES.length) {
+            throw new CharonException("Record holds an unknown data type " + typeCode);
+        }
+        return DATA_TYPES[typeCode];
+    }
+
+    private static <T> T cast(Object value, Class<T> type) throws CharonException {
+        if (!type.isInstance(value)) {
+            throw new CharonException("Value " + value + " does not match the schema, expected a " +
+                    type.getSimpleName());
+        }
+        return type.cast(value);
+    }
+
+    private static Map<String, Attribute> toMap(List<Attribute> attributes) {
+        Map<String, Attribute> attributeMap = new HashMap<>();
+        for (Attribute attribute : attributes) {
+            attributeMap.put(attribute.getName(), attribute);
+        }
+        return attributeMap;
+    }
+
+    /*
+     * Growable buffer a record is written into.
+     */
+    private static final class RecordWriter {
+
+        private byte[] bytes = new byte[256];
+        private int size = 0;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+
+        private void writeByte(int b) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) b;
+        }
+
+            private void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void writeVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7fL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private void writeSignedVarint(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        /*
+         * Writes 0 followed by the string, or a string of the dictionary as its index plus 1.
+         */
+        private void writeString(String value) {
+            Integer dictionaryIndex = dictionary.get(value);
+            if (dictionaryIndex != null) {
+                writeVarint(dictionaryIndex + 1L);
+                return;
+            }
+            dictionary.put(value, dictionary.size());
+            byte[] stringBytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(0);
+            writeVarint(stringBytes.length);
+            ensureCapacity(stringBytes.length);
+            System.arraycopy(stringBytes, 0, bytes, size, stringBytes.length);
+            size += stringBytes.length;
+        }
+
+        private void ensureCapacity(int length) {
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    /*
+     * Reads a record from a buffer, keeping the dictionary of the strings read so far.
+     */
+    private static final class RecordReader {
+
+        private final ByteBuffer buffer;
+        private final List<String> dictionary = new ArrayList<>();
+
+        private RecordReader(ByteBuffer buffer) {
+            this.buffer = buffer.duplicate();
+        }
+
+        private int readByte() {
+            return buffer.get() & 0xff;
+        }
+
+        private long readLong() {
+            return buffer.getLong();
+        }
+
+        private int readVarint() throws CharonException {
+            long value = readVarLong();
+            if (value > Integer.MAX_VALUE) {
+                throw new CharonException("Record holds an invalid length or position.");
+            }
+            return (int) value;
+        }
+
+        private int readCount() throws CharonException {
+            int count = readVarint();
+            //every counted item takes at least a byte
+            if (count > buffer.remaining()) {
+                throw new CharonException("Record of the SCIM resource is truncated or corrupt.");
+            }
+            return count;
+        }
+
+        private long readVarLong() throws CharonException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new CharonException("Record holds a malformed varint.");
+        }
+
+        private long readSignedVarint() throws CharonException {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private String readString() throws CharonException {
+            int code = readVarint();
+            if (code == 0) {
+                int length = readCount();
+                byte[] stringBytes = new byte[length];
+                buffer.get(stringBytes);
+                String value = new String(stringBytes, StandardCharsets.UTF_8);
+                dictionary.add(value);
+                return value;
+            }
+            return dictionary.get(code - 1);
+        }
+    }
+}
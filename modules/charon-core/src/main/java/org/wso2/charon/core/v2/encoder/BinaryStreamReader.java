@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.encoder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A pull based reader of a SCIM payload in the compact binary encoding described in BinaryFormat.
+ * It returns the same tokens and value types as the JSONStreamReader, so that the StreamingJSONDecoder builds
+ * the same attributes from either encoding.
+ */
+public class BinaryStreamReader implements TokenStreamReader {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 4096;
+
+    //scopes of the nesting stack
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int OBJECT = 2;
+    private static final int DANGLING_NAME = 3;
+    private static final int ARRAY = 4;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int pos = 0;
+    private int limit = 0;
+    //number of bytes read before the current buffer, used in error messages
+    private long bufferStart = 0;
+
+    private int[] stack = new int[32];
+    private int stackSize = 0;
+    //member names seen in each open object, to reject duplicate keys as the json reader does
+    private final List<Set<String>> names = new ArrayList<Set<String>>();
+    private final List<String> internedNames = new ArrayList<String>();
+
+    private Token peeked;
+    private int peekedTag;
+
+    public BinaryStreamReader(InputStream in) {
+        this.in = in;
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    public Token peek() throws JSONException {
+        if (peeked != null) {
+            return peeked;
+        }
+        int scope = stack[stackSize - 1];
+        if (scope == NONEMPTY_DOCUMENT) {
+            if (read() != -1) {
+                throw syntaxError("Unexpected data after the end of the document");
+            }
+            return peeked = Token.END_DOCUMENT;
+        }
+        if (scope == EMPTY_DOCUMENT && (read() != BinaryFormat.MAGIC_0 || read() != BinaryFormat.MAGIC_1 ||
+                read() != BinaryFormat.VERSION)) {
+            throw syntaxError("Not a binary encoded SCIM document");
+        }
+        int tag = read();
+        if (tag == -1) {
+            throw syntaxError("Unexpected end of input");
+        }
+        Token token;
+        switch (tag) {
+            case BinaryFormat.BEGIN_OBJECT:
+                token = Token.BEGIN_OBJECT;
+                break;
+            case BinaryFormat.END_OBJECT:
+                token = Token.END_OBJECT;
+                break;
+            case BinaryFormat.BEGIN_ARRAY:
+                token = Token.BEGIN_ARRAY;
+                break;
+            case BinaryFormat.END_ARRAY:
+                token = Token.END_ARRAY;
+                break;
+            case BinaryFormat.NAME:
+            case BinaryFormat.NAME_REF:
+                token = Token.NAME;
+                break;
+            case BinaryFormat.STRING:
+                token = Token.STRING;
+                break;
+            case BinaryFormat.TRUE:
+            case BinaryFormat.FALSE:
+                token = Token.BOOLEAN;
+                break;
+            case BinaryFormat.INT:
+            case BinaryFormat.LONG:
+            case BinaryFormat.DOUBLE:
+                token = Token.NUMBER;
+                break;
+            case BinaryFormat.NULL:
+                token = Token.NULL;
+                break;
+            default:
+                throw syntaxError("Unknown tag " + tag);
+        }
+        //names and object ends are only allowed in an object, values everywhere else
+        if (scope == OBJECT) {
+            if (token != Token.NAME && token != Token.END_OBJECT) {
+                throw syntaxError("Expected a key but was " + token);
+            }
+        } else if (token == Token.NAME || token == Token.END_OBJECT ||
+                (token == Token.END_ARRAY && scope != ARRAY)) {
+            throw syntaxError("Unexpected " + token);
+        }
+        if (scope == EMPTY_DOCUMENT) {
+            stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+        } else if (scope == DANGLING_NAME) {
+            stack[stackSize - 1] = OBJECT;
+        }
+        peekedTag = tag;
+        return peeked = token;
+    }
+
+    public void beginObject() throws JSONException {
+        expect(Token.BEGIN_OBJECT);
+        push(OBJECT);
+        names.add(null);
+    }
+
+    public void endObject() throws JSONException {
+        expect(Token.END_OBJECT);
+        names.remove(names.size() - 1);
+        stackSize--;
+    }
+
+    public void beginArray() throws JSONException {
+        expect(Token.BEGIN_ARRAY);
+        push(ARRAY);
+    }
+
+    public void endArray() throws JSONException {
+        expect(Token.END_ARRAY);
+        stackSize--;
+    }
+
+    public boolean hasNext() throws JSONException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public String nextName() throws JSONException {
+        expect(Token.NAME);
+        String name;
+        if (peekedTag == BinaryFormat.NAME_REF) {
+            int index = readVarint();
+            if (index < 0 || index >= internedNames.size()) {
+                throw syntaxError("Unknown name reference " + index);
+            }
+            name = internedNames.get(index);
+        } else {
+            name = readUTF8();
+            if (internedNames.size() < BinaryFormat.MAX_INTERNED_NAMES) {
+                internedNames.add(name);
+            }
+        }
+        stack[stackSize - 1] = DANGLING_NAME;
+        int last = names.size() - 1;
+        Set<String> seen = names.get(last);
+        if (seen == null) {
+            seen = new HashSet<String>();
+            names.set(last, seen);
+        }
+        if (!seen.add(name)) {
+            throw new JSONException("Duplicate key \"" + name + "\"");
+        }
+        return name;
+    }
+
+    public Object nextScalar() throws JSONException {
+        Token token = peek();
+        switch (peekedTag) {
+            case BinaryFormat.STRING:
+                peeked = null;
+                return readUTF8();
+            case BinaryFormat.TRUE:
+                peeked = null;
+                return Boolean.TRUE;
+            case BinaryFormat.FALSE:
+                peeked = null;
+                return Boolean.FALSE;
+            case BinaryFormat.NULL:
+                peeked = null;
+                return JSONObject.NULL;
+            case BinaryFormat.INT:
+                peeked = null;
+                int intValue = readVarint();
+                return (intValue >>> 1) ^ -(intValue & 1);
+            case BinaryFormat.LONG:
+                peeked = null;
+                long longValue = readVarLong();
+                longValue = (longValue >>> 1) ^ -(longValue & 1);
+                //mapped the same way the json reader maps numbers: Integer if it fits.
+                if (longValue == (int) longValue) {
+                    return (int) longValue;
+                }
+                return longValue;
+            case BinaryFormat.DOUBLE:
+                peeked = null;
+                long bits = 0;
+                for (int i = 0; i < 8; i++) {
+                    bits = (bits << 8) | readByte();
+                }
+                return Double.longBitsToDouble(bits);
+            default:
+                throw syntaxError("Expected a scalar value but was " + token);
+        }
+    }
+
+    public void skipValue() throws JSONException {
+        Token token = peek();
+        if (token == Token.BEGIN_OBJECT) {
+            beginObject();
+            while (hasNext()) {
+                nextName();
+                skipValue();
+            }
+            endObject();
+        } else if (token == Token.BEGIN_ARRAY) {
+            beginArray();
+            while (hasNext()) {
+                skipValue();
+            }
+            endArray();
+        } else {
+            nextScalar();
+        }
+    }
+
+    public int getDepth() {
+        return stackSize;
+    }
+
+    public void recover(int depth) throws JSONException {
+        while (stackSize > depth) {
+            Token token = peek();
+            if (token == Token.END_OBJECT) {
+                endObject();
+            } else if (token == Token.END_ARRAY) {
+                endArray();
+            } else if (token == Token.NAME) {
+                nextName();
+            } else {
+                skipValue();
+            }
+        }
+        //the value was not started at all, or only peeked
+        if (stack[stackSize - 1] == DANGLING_NAME || (peeked != null && peeked != Token.NAME &&
+                peeked != Token.END_OBJECT && peeked != Token.END_ARRAY && peeked != Token.END_DOCUMENT)) {
+            skipValue();
+        }
+    }
+
+    private void expect(Token expected) throws JSONException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+        peeked = null;
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = scope;
+    }
+
+    private String readUTF8() throws JSONException {
+        int length = readVarint();
+        if (length < 0) {
+            throw syntaxError("Invalid string length");
+        }
+        if (length <= limit - pos) {
+            String string = new String(buffer, pos, length, UTF_8);
+            pos += length;
+            return string;
+        }
+        //the buffer is grown as the bytes arrive, instead of trusting the declared length up front
+        byte[] bytes = new byte[Math.min(length, BUFFER_SIZE)];
+        int count = 0;
+        while (count < length) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Unexpected end of input");
+            }
+            if (count == bytes.length) {
+                byte[] newBytes = new byte[(int) Math.min(length, bytes.length * 2L)];
+                System.arraycopy(bytes, 0, newBytes, 0, count);
+                bytes = newBytes;
+            }
+            int chunk = Math.min(limit - pos, Math.min(length, bytes.length) - count);
+            System.arraycopy(buffer, pos, bytes, count, chunk);
+            pos += chunk;
+            count += chunk;
+        }
+        return new String(bytes, 0, length, UTF_8);
+    }
+
+    private int readVarint() throws JSONException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw syntaxError("Malformed varint");
+    }
+
+    private long readVarLong() throws JSONException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw syntaxError("Malformed varint");
+    }
+
+    private int readByte() throws JSONException {
+        int b = read();
+        if (b == -1) {
+            throw syntaxError("Unexpected end of input");
+        }
+        return b;
+    }
+
+    private int read() throws JSONException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++] & 0xff;
+    }
+
+    private boolean fill() throws JSONException {
+        try {
+            bufferStart += limit;
+            pos = 0;
+            limit = 0;
+            int count = in.read(buffer, 0, BUFFER_SIZE);
+            if (count <= 0) {
+                return false;
+            }
+            limit = count;
+            return true;
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at byte " + (bufferStart + pos));
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.encoder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes a SCIM payload token by token to an OutputStream in the compact binary encoding described in
+ * BinaryFormat. Strings are written as length prefixed UTF-8 without any escaping, numbers and booleans in
+ * binary form and repeated member names as references.
+ */
+public class BinaryStreamWriter implements TokenStreamWriter {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 4096;
+
+    //scopes of the nesting stack
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int OBJECT = 2;
+    private static final int DANGLING_NAME = 3;
+    private static final int ARRAY = 4;
+
+    private final OutputStream outputStream;
+    private byte[] bytes = new byte[BUFFER_SIZE];
+    private int byteCount = 0;
+
+    private int[] stack = new int[32];
+    private int stackSize = 0;
+
+    private final Map<String, Integer> internedNames = new HashMap<String, Integer>();
+
+    public BinaryStreamWriter(OutputStream outputStream) {
+        this.outputStream = outputStream;
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    public BinaryStreamWriter beginObject() throws IOException, JSONException {
+        beforeValue();
+        push(OBJECT);
+        writeByte(BinaryFormat.BEGIN_OBJECT);
+        return this;
+    }
+
+    public BinaryStreamWriter endObject() throws IOException, JSONException {
+        if (stack[stackSize - 1] != OBJECT) {
+            throw new JSONException("Misplaced endObject.");
+        }
+        stackSize--;
+        writeByte(BinaryFormat.END_OBJECT);
+        return this;
+    }
+
+    public BinaryStreamWriter beginArray() throws IOException, JSONException {
+        beforeValue();
+        push(ARRAY);
+        writeByte(BinaryFormat.BEGIN_ARRAY);
+        return this;
+    }
+
+    public BinaryStreamWriter endArray() throws IOException, JSONException {
+        if (stack[stackSize - 1] != ARRAY) {
+            throw new JSONException("Misplaced endArray.");
+        }
+        stackSize--;
+        writeByte(BinaryFormat.END_ARRAY);
+        return this;
+    }
+
+    /**
+     * Writes the name of the next member of the current object, as a reference if it was written before.
+     *
+     * @param name - member name
+     * @return this writer
+     */
+    public BinaryStreamWriter name(String name) throws IOException, JSONException {
+        if (name == null) {
+            throw new JSONException("Null key.");
+        }
+        if (stack[stackSize - 1] != OBJECT) {
+            throw new JSONException("Misplaced key.");
+        }
+        stack[stackSize - 1] = DANGLING_NAME;
+        Integer index = internedNames.get(name);
+        if (index != null) {
+            writeByte(BinaryFormat.NAME_REF);
+            writeVarint(index);
+        } else {
+            if (internedNames.size() < BinaryFormat.MAX_INTERNED_NAMES) {
+                internedNames.put(name, internedNames.size());
+            }
+            writeByte(BinaryFormat.NAME);
+            writeUTF8(name);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a scalar value. Integers, longs and other numbers are written as INT, LONG and DOUBLE, booleans
+     * and null as their tags. Any other object is written as the string of its toString().
+     *
+     * @param value - value to be written
+     * @return this writer
+     */
+    public BinaryStreamWriter value(Object value) throws IOException, JSONException {
+        beforeValue();
+        if (value == null || value.equals(JSONObject.NULL)) {
+            writeByte(BinaryFormat.NULL);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            writeInt(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            writeByte(BinaryFormat.LONG);
+            long longValue = (Long) value;
+            writeVarLong((longValue << 1) ^ (longValue >> 63));
+        } else if (value instanceof Number) {
+            Double doubleValue = ((Number) value).doubleValue();
+            //org.json rejects non finite numbers, so does the json encoding.
+            if (doubleValue.isInfinite() || doubleValue.isNaN()) {
+                throw new JSONException("JSON does not allow non-finite numbers.");
+            }
+            //a whole number reads back as an integer from json, hence it is written as one here too.
+            if (doubleValue == Math.rint(doubleValue) && doubleValue >= Integer.MIN_VALUE &&
+                    doubleValue <= Integer.MAX_VALUE) {
+                writeInt(doubleValue.intValue());
+                return this;
+            }
+            writeByte(BinaryFormat.DOUBLE);
+            long bits = Double.doubleToLongBits(doubleValue);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                writeByte((int) (bits >>> shift));
+            }
+        } else if (value instanceof Boolean) {
+            writeByte((Boolean) value ? BinaryFormat.TRUE : BinaryFormat.FALSE);
+        } else {
+            writeByte(BinaryFormat.STRING);
+            writeUTF8(value.toString());
+        }
+        return this;
+    }
+
+    /**
+     * Writes the buffered bytes to the underlying stream and flushes it.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        flushBytes();
+        outputStream.flush();
+    }
+
+    /**
+     * Flushes the written content. The underlying stream is not closed, as it is owned by the caller.
+     * The writer must not be used afterwards.
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        try {
+            if (bytes != null) {
+                flush();
+            }
+        } finally {
+            release();
+        }
+    }
+
+    public void release() {
+        bytes = null;
+    }
+
+    private void beforeValue() throws IOException, JSONException {
+        switch (stack[stackSize - 1]) {
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                writeByte(BinaryFormat.MAGIC_0);
+                writeByte(BinaryFormat.MAGIC_1);
+                writeByte(BinaryFormat.VERSION);
+                return;
+            case DANGLING_NAME:
+                stack[stackSize - 1] = OBJECT;
+                return;
+            case ARRAY:
+                return;
+            default:
+                throw new JSONException("Misplaced value.");
+        }
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = scope;
+    }
+
+    private void writeInt(int value) throws IOException {
+        writeByte(BinaryFormat.INT);
+        writeVarint((value << 1) ^ (value >> 31));
+    }
+
+    private void writeUTF8(String string) throws IOException {
+        byte[] encoded = string.getBytes(UTF_8);
+        writeVarint(encoded.length);
+        if (encoded.length > bytes.length - byteCount) {
+            flushBytes();
+            if (encoded.length > bytes.length) {
+                outputStream.write(encoded);
+                return;
+            }
+        }
+        System.arraycopy(encoded, 0, bytes, byteCount, encoded.length);
+        byteCount += encoded.length;
+    }
+
+    private void writeVarint(int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (byteCount == bytes.length) {
+            flushBytes();
+        }
+        bytes[byteCount++] = (byte) b;
+    }
+
+    private void flushBytes() throws IOException {
+        outputStream.write(bytes, 0, byteCount);
+        byteCount = 0;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.encoder;
+
+import org.wso2.charon.core.v2.schema.SCIMConstants;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the codecs which the endpoints can use to read requests and write responses, keyed by format and by
+ * media type. Only the json codec is registered by default.
+ */
+public class CodecManager {
+
+    private static CodecManager codecManager = new CodecManager();
+
+    private final Map<String, SCIMCodec> codecsByFormat = new ConcurrentHashMap<String, SCIMCodec>();
+    private final Map<String, SCIMCodec> codecsByContentType = new ConcurrentHashMap<String, SCIMCodec>();
+    private final SCIMCodec defaultCodec = new JSONCodec();
+
+    private CodecManager() {
+        registerCodec(defaultCodec);
+        //plain json is accepted as scim json
+        codecsByContentType.put("application/json", defaultCodec);
+    }
+
+    public static CodecManager getInstance() {
+        return codecManager;
+    }
+
+    /**
+     * Register a codec, replacing any codec registered for the same format or media type.
+     *
+     * @param codec - codec to be registered
+     */
+    public void registerCodec(SCIMCodec codec) {
+        codecsByFormat.put(codec.getFormat(), codec);
+        codecsByContentType.put(codec.getContentType().toLowerCase(Locale.ENGLISH), codec);
+    }
+
+    /**
+     * Remove the codec registered for the given format. The json codec can not be removed.
+     *
+     * @param format - format of the codec
+     */
+    public void unregisterCodec(String format) {
+        if (SCIMConstants.JSON.equals(format)) {
+            return;
+        }
+        SCIMCodec codec = codecsByFormat.remove(format);
+        if (codec != null) {
+            codecsByContentType.remove(codec.getContentType().toLowerCase(Locale.ENGLISH));
+        }
+    }
+
+    public SCIMCodec getDefaultCodec() {
+        return defaultCodec;
+    }
+
+    /**
+     * Returns the codec of the given format, eg: the format of a JSONEncoder, or null if there is none.
+     *
+     * @param format - format name
+     * @return SCIMCodec
+     */
+    public SCIMCodec getCodecByFormat(String format) {
+        if (format == null) {
+            return null;
+        }
+        return codecsByFormat.get(format);
+    }
+
+    /**
+     * Returns the codec of the given Content-Type header value, ignoring its parameters (eg: charset).
+     * Returns the json codec if no Content-Type is given and null if there is no codec for the media type.
+     *
+     * @param contentType - Content-Type header value
+     * @return SCIMCodec
+     */
+    public SCIMCodec getCodecByContentType(String contentType) {
+        if (contentType == null) {
+            return defaultCodec;
+        }
+        int parameters = contentType.indexOf(';');
+        String mediaType = parameters < 0 ? contentType : contentType.substring(0, parameters);
+        return codecsByContentType.get(mediaType.trim().toLowerCase(Locale.ENGLISH));
+    }
+}
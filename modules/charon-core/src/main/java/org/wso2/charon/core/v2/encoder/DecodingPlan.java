@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.encoder;
+
+import org.wso2.charon.core.v2.schema.AttributeSchema;
+import org.wso2.charon.core.v2.schema.ResourceTypeSchema;
+import org.wso2.charon.core.v2.schema.SCIMAttributeSchema;
+import org.wso2.charon.core.v2.schema.SCIMDefinitions;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A decoding plan compiled once per resource type schema. It maps each json key which may appear in a
+ * payload (the attribute name and the attribute URI) to a handler holding the position of the attribute in
+ * the schema, the kind of value expected for it and the plan of its sub attributes, so that decoders only
+ * look at the keys present in the payload instead of scanning the whole schema for every request.
+ */
+public final class DecodingPlan {
+
+    //kinds of values expected for an attribute
+    public static final int SIMPLE = 0;
+    public static final int PRIMITIVE_MULTI_VALUED = 1;
+    public static final int COMPLEX = 2;
+    public static final int COMPLEX_MULTI_VALUED = 3;
+
+    //plans are cached per schema instance, and dropped with the schema.
+    private static final Map<ResourceTypeSchema, DecodingPlan> plans =
+            Collections.synchronizedMap(new WeakHashMap<ResourceTypeSchema, DecodingPlan>());
+
+    private final List<? extends AttributeSchema> attributeSchemas;
+    private final int size;
+    private final AttributeHandler[] handlers;
+    private final Map<String, AttributeHandler> handlersByName;
+    private final Map<String, AttributeHandler> handlersByURI;
+
+    private DecodingPlan(List<? extends AttributeSchema> attributeSchemas) {
+        this.attributeSchemas = attributeSchemas;
+        this.size = attributeSchemas.size();
+        this.handlers = new AttributeHandler[size];
+        this.handlersByName = new HashMap<String, AttributeHandler>();
+        this.handlersByURI = new HashMap<String, AttributeHandler>();
+        for (int i = 0; i < size; i++) {
+            AttributeHandler handler = new AttributeHandler(i, attributeSchemas.get(i));
+            handlers[i] = handler;
+            handlersByURI.put(handler.getAttributeSchema().getURI(), handler);
+        }
+        //first declared attribute wins, as the decoders used to stop at the first match.
+        for (int i = size - 1; i >= 0; i--) {
+            handlersByName.put(handlers[i].getAttributeSchema().getName(), handlers[i]);
+        }
+    }
+
+    /**
+     * Returns the decoding plan of the given resource schema, compiling it on first use.
+     *
+     * @param resourceSchema - resource type schema
+     * @return DecodingPlan
+     */
+    public static DecodingPlan getPlan(ResourceTypeSchema resourceSchema) {
+        DecodingPlan plan = plans.get(resourceSchema);
+        //the attribute list of the schema may have been replaced since the plan was compiled.
+        if (plan == null || !plan.isCompiledFrom(resourceSchema.getAttributesList())) {
+            plan = new DecodingPlan(resourceSchema.getAttributesList());
+            plans.put(resourceSchema, plan);
+        }
+        return plan;
+    }
+
+    private boolean isCompiledFrom(List<? extends AttributeSchema> schemas) {
+        return attributeSchemas == schemas && size == schemas.size();
+    }
+
+    /**
+     * Number of attributes in the plan.
+     *
+     * @return int
+     */
+    public int size() {
+        return size;
+    }
+
+    public AttributeHandler getHandler(int position) {
+        return handlers[position];
+    }
+
+    /**
+     * Returns the handler of the attribute with the given name, or null if there is no such attribute.
+     *
+     * @param name - attribute name
+     * @return AttributeHandler
+     */
+    public AttributeHandler getHandlerByName(String name) {
+        return handlersByName.get(name);
+    }
+
+    /**
+     * Returns the handler of the attribute with the given URI, or null if there is no such attribute.
+     *
+     * @param uri - fully qualified attribute URI
+     * @return AttributeHandler
+     */
+    public AttributeHandler getHandlerByURI(String uri) {
+        return handlersByURI.get(uri);
+    }
+
+    /**
+     * Pre-computed decoding information of a single attribute.
+     */
+    public static final class AttributeHandler {
+
+        private final int position;
+        private final AttributeSchema attributeSchema;
+        private final int kind;
+        private final boolean complexType;
+        private final DecodingPlan subAttributePlan;
+        private final boolean complexSubAttributes;
+
+        private AttributeHandler(int position, AttributeSchema attributeSchema) {
+            this.position = position;
+            this.attributeSchema = attributeSchema;
+            this.complexType = SCIMDefinitions.DataType.COMPLEX.equals(attributeSchema.getType());
+            boolean multiValued = Boolean.TRUE.equals(attributeSchema.getMultiValued());
+            if (complexType) {
+                kind = multiValued ? COMPLEX_MULTI_VALUED : COMPLEX;
+            } else {
+                kind = multiValued ? PRIMITIVE_MULTI_VALUED : SIMPLE;
+            }
+            List<SCIMAttributeSchema> subAttributeSchemas = null;
+            if (attributeSchema instanceof SCIMAttributeSchema) {
+                subAttributeSchemas = ((SCIMAttributeSchema) attributeSchema).getSubAttributeSchemas();
+            }
+            this.subAttributePlan = subAttributeSchemas != null ? new DecodingPlan(subAttributeSchemas) : null;
+            boolean hasComplex = false;
+            for (int i = 0; subAttributePlan != null && i < subAttributePlan.size(); i++) {
+                hasComplex |= subAttributePlan.getHandler(i).isComplexType();
+            }
+            this.complexSubAttributes = hasComplex;
+        }
+
+        /**
+         * Position of the attribute in the schema, errors are reported in this order.
+         *
+         * @return int
+         */
+        public int getPosition() {
+            return position;
+        }
+
+        public AttributeSchema getAttributeSchema() {
+            return attributeSchema;
+        }
+
+        /**
+         * One of SIMPLE, PRIMITIVE_MULTI_VALUED, COMPLEX or COMPLEX_MULTI_VALUED.
+         *
+         * @return int
+         */
+        public int getKind() {
+            return kind;
+        }
+
+        /**
+         * Whether the attribute is of the COMPLEX data type.
+         *
+         * @return boolean
+         */
+        public boolean isComplexType() {
+            return complexType;
+        }
+
+        /**
+         * Whether any of the sub attributes is of the COMPLEX data type.
+         *
+         * @return boolean
+         */
+        public boolean hasComplexSubAttributes() {
+            return complexSubAttributes;
+        }
+
+        /**
+         * Plan of the sub attributes, keyed by sub attribute name. Null if the attribute has no sub attributes.
+         *
+         * @return DecodingPlan
+         */
+        public DecodingPlan getSubAttributePlan() {
+            return subAttributePlan;
+        }
+    }
+}
@@ -36,7 +36,8 @@ import org.wso2.charon.core.v2.objects.SCIMObject;
 import org.wso2.charon.core.v2.protocol.ResponseCodeConstants;
 import org.wso2.charon.core.v2.schema.*;
 import org.wso2.charon.core.v2.utils.AttributeUtil;
-import org.wso2.charon.core.v2.utils.codeutils.FilterTreeManager;
+import org.wso2.charon.core.v2.utils.codeutils.FilterCost;
+import org.wso2.charon.core.v2.utils.codeutils.FilterTreeCache;
 import org.wso2.charon.core.v2.utils.codeutils.Node;
 import org.wso2.charon.core.v2.utils.codeutils.PatchOperation;
 import org.wso2.charon.core.v2.utils.codeutils.SearchRequest;
@@ -44,6 +45,7 @@ import org.wso2.charon.core.v2.utils.codeutils.SearchRequest;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import static org.wso2.charon.core.v2.schema.SCIMDefinitions.DataType.BINARY;
@@ -82,64 +84,64 @@ public class JSONDecoder {
         try {
             //decode the string into json representation
             JSONObject decodedJsonObj = new JSONObject(new JSONTokener(scimResourceString));
-            //get the attribute schemas list from the schema that defines the given resource
-            List<AttributeSchema> attributeSchemas = resourceSchema.getAttributesList();
+            //get the decoding plan compiled from the schema that defines the given resource
+            DecodingPlan plan = DecodingPlan.getPlan(resourceSchema);
 
             //set the schemas in scimobject
             for (int i = 0; i < resourceSchema.getSchemasList().size(); i++) {
                 scimObject.setSchema(resourceSchema.getSchemasList().get(i));
             }
-            //iterate through the schema and extract the attributes.
-            for (AttributeSchema attributeSchema : attributeSchemas) {
-                //obtain the user defined value for given key- attribute schema name
-                Object attributeValObj = decodedJsonObj.opt(attributeSchema.getName());
+            //look up the attributes present in the payload, in schema order.
+            Object[] attributeValues = new Object[plan.size()];
+            boolean[] definedByName = new boolean[plan.size()];
+            Iterator<?> keys = decodedJsonObj.keys();
+            while (keys.hasNext()) {
+                String key = (String) keys.next();
+                DecodingPlan.AttributeHandler handler = plan.getHandlerByName(key);
+                if (handler != null) {
+                    attributeValues[handler.getPosition()] = decodedJsonObj.opt(key);
+                    definedByName[handler.getPosition()] = true;
+                    continue;
+                }
+                //user may define the attribute by its fully qualified URI
+                handler = plan.getHandlerByURI(key);
+                if (handler != null && !definedByName[handler.getPosition()]) {
+                    attributeValues[handler.getPosition()] = decodedJsonObj.opt(key);
+                }
+            }
+            for (int i = 0; i < plan.size(); i++) {
+                Object attributeValObj = attributeValues[i];
+                //If an attribute is passed without a value, no need to save it.
                 if (attributeValObj == null) {
-                    //user may define the attribute by its fully qualified URI
-                    attributeValObj = decodedJsonObj.opt(attributeSchema.getURI());
+                    continue;
                 }
-                SCIMDefinitions.DataType attributeSchemaDataType = attributeSchema.getType();
-
-                if (attributeSchemaDataType.equals(STRING) || attributeSchemaDataType.equals(BINARY) ||
-                        attributeSchemaDataType.equals(BOOLEAN) || attributeSchemaDataType.equals(DATE_TIME) ||
-                        attributeSchemaDataType.equals(DECIMAL) || attributeSchemaDataType.equals(INTEGER) ||
-                        attributeSchemaDataType.equals(REFERENCE)) {
+                DecodingPlan.AttributeHandler handler = plan.getHandler(i);
+                AttributeSchema attributeSchema = handler.getAttributeSchema();
 
-                    if (!attributeSchema.getMultiValued()) {
+                switch (handler.getKind()) {
+                    case DecodingPlan.SIMPLE:
                         if (attributeValObj instanceof String || attributeValObj instanceof Boolean ||
-                                attributeValObj instanceof Integer || attributeValObj == null) {
-                            //If an attribute is passed without a value, no need to save it.
-                            if (attributeValObj == null) {
-                                continue;
-                            }
+                                attributeValObj instanceof Integer) {
                             //if the corresponding schema data type is String/Boolean/Binary/Decimal/Integer/DataTime
                             // or Reference, it is a SimpleAttribute.
                             scimObject.setAttribute(buildSimpleAttribute
                                     (attributeSchema, attributeValObj), resourceSchema);
-
                         } else {
                             logger.error("Error decoding the simple attribute");
                             throw new BadRequestException(ResponseCodeConstants.INVALID_SYNTAX);
                         }
-                    } else {
-                        if (attributeValObj instanceof JSONArray || attributeValObj == null) {
-                            //If an attribute is passed without a value, no need to save it.
-                            if (attributeValObj == null) {
-                                continue;
-                            }
-
+                        break;
+                    case DecodingPlan.PRIMITIVE_MULTI_VALUED:
+                        if (attributeValObj instanceof JSONArray) {
                             scimObject.setAttribute(buildPrimitiveMultiValuedAttribute(attributeSchema,
                                     (JSONArray) attributeValObj), resourceSchema);
                         } else {
                             logger.error("Error decoding the primitive multivalued attribute");
                             throw new BadRequestException(ResponseCodeConstants.INVALID_SYNTAX);
                         }
-                    }
-                } else if (attributeSchemaDataType.equals(COMPLEX)) {
-                    if (attributeSchema.getMultiValued() == true) {
-                        if (attributeValObj instanceof JSONArray || attributeValObj == null) {
-                            if (attributeValObj == null) {
-                                continue;
-                            }
+                        break;
+                    case DecodingPlan.COMPLEX_MULTI_VALUED:
+                        if (attributeValObj instanceof JSONArray) {
                             //if the corresponding json value object is JSONArray, it is a MultiValuedAttribute.
                             scimObject.setAttribute(buildComplexMultiValuedAttribute(attributeSchema,
                                     (JSONArray) attributeValObj), resourceSchema);
@@ -147,11 +149,9 @@ public class JSONDecoder {
                             logger.error("Error decoding the complex multivalued attribute");
                             throw new BadRequestException(ResponseCodeConstants.INVALID_SYNTAX);
                         }
-                    } else if (attributeSchema.getMultiValued() == false) {
-                        if (attributeValObj instanceof JSONObject || attributeValObj == null) {
-                            if (attributeValObj == null) {
-                                continue;
-                            }
+                        break;
+                    default:
+                        if (attributeValObj instanceof JSONObject) {
                             //if the corresponding json value object is JSONObject, it is a ComplexAttribute.
                             scimObject.setAttribute(buildComplexAttribute(attributeSchema,
                                     (JSONObject) attributeValObj), resourceSchema);
@@ -159,7 +159,6 @@ public class JSONDecoder {
                             logger.error("Error decoding the complex attribute");
                             throw new BadRequestException(ResponseCodeConstants.INVALID_SYNTAX);
                         }
-                    }
                 }
             }
             return scimObject;
@@ -526,7 +525,6 @@ public class JSONDecoder {
      */
     public SearchRequest decodeSearchRequestBody(String scimResourceString,
                                                  SCIMResourceTypeSchema schema) throws BadRequestException {
-        FilterTreeManager filterTreeManager = null;
         Node rootNode = null;
 
         //decode the string and create search object
@@ -557,16 +555,21 @@ public class JSONDecoder {
                 }
             }
 
-            if(decodedJsonObj.optString(SCIMConstants.OperationalConstants.FILTER) != null){
-                filterTreeManager = new FilterTreeManager(
+            //optString gives an empty string when there is no filter
+            if(!decodedJsonObj.optString(SCIMConstants.OperationalConstants.FILTER).equals("")){
+                rootNode = FilterTreeCache.getInstance().getOptimizedFilterTree(
                         decodedJsonObj.optString(SCIMConstants.OperationalConstants.FILTER), schema);
-                rootNode = filterTreeManager.buildTree();
+                //reject filters over the configured limits before they reach the user manager
+                FilterCost.estimate(rootNode, schema).checkLimits();
             }
             searchRequest.setAttributes(attributes);
             searchRequest.setExcludedAttributes(excludedAttributes);
             searchRequest.setSchema((String) schemas.get(0));
             searchRequest.setCount(decodedJsonObj.optInt(SCIMConstants.OperationalConstants.COUNT));
             searchRequest.setStartIndex(decodedJsonObj.optInt(SCIMConstants.OperationalConstants.START_INDEX));
+            if (decodedJsonObj.has(SCIMConstants.OperationalConstants.CURSOR)) {
+                searchRequest.setCursor(decodedJsonObj.optString(SCIMConstants.OperationalConstants.CURSOR));
+            }
             searchRequest.setFilter(rootNode);
             if(!decodedJsonObj.optString(SCIMConstants.OperationalConstants.SORT_BY).equals("")){
                 searchRequest.setSortBy(decodedJsonObj.optString(SCIMConstants.OperationalConstants.SORT_BY));
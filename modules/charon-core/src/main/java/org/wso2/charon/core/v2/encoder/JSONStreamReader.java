@@ -0,0 +1,530 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.encoder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A pull based json reader which reads a json text token by token, without building an in memory
+ * representation of the document.
+ * Scalar values are returned with the same java types that org.json uses (String, Boolean, Integer, Long,
+ * Double and JSONObject.NULL) so that the values can be handed to the same attribute builders.
+ * It accepts the same lenient syntax as org.json's JSONTokener: single quoted strings, unquoted keys and
+ * values, '=' or '=>' after a key, ';' between members, missing array elements, and trailing
+ * commas. Unquoted text is converted the way org.json converts it, eg: TRUE is a boolean and 010 is 8.
+ */
+public class JSONStreamReader implements TokenStreamReader {
+
+    //scopes of the nesting stack
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int DANGLING_NAME = 3;
+    private static final int NONEMPTY_OBJECT = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos = 0;
+    private int limit = 0;
+    //number of characters read before the current buffer, used in error messages
+    private long bufferStart = 0;
+
+    private int[] stack = new int[32];
+    private int stackSize = 0;
+    //member names seen in each open object, to reject duplicate keys as org.json does
+    private final List<Set<String>> names = new ArrayList<Set<String>>();
+
+    private Token peeked;
+    //name or scalar value of the peeked token, read together with the token
+    private Object peekedValue;
+    private final StringBuilder scratch = new StringBuilder();
+
+    public JSONStreamReader(Reader in) {
+        this.in = in;
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    public JSONStreamReader(String json) {
+        this(new StringReader(json));
+    }
+
+    /**
+     * Returns the type of the next token without consuming it.
+     *
+     * @return Token
+     * @throws JSONException
+     */
+    public Token peek() throws JSONException {
+        if (peeked != null) {
+            return peeked;
+        }
+        int scope = stack[stackSize - 1];
+        int c;
+        switch (scope) {
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                if (nextNonWhitespace() == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                pushBack();
+                return peekValue(true);
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                } else if (c != ',' && c != ';') {
+                    throw syntaxError("Expected a ',' or ']'");
+                }
+                //a trailing comma is tolerated, as org.json does
+                if (nextNonWhitespace() == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                pushBack();
+                return peekValue(true);
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                c = nextNonWhitespace();
+                if (c == '}') {
+                    return peeked = Token.END_OBJECT;
+                }
+                if (scope == NONEMPTY_OBJECT) {
+                    if (c != ',' && c != ';') {
+                        throw syntaxError("Expected a ',' or '}'");
+                    }
+                    //a trailing comma is tolerated, as org.json does
+                    if (nextNonWhitespace() == '}') {
+                        return peeked = Token.END_OBJECT;
+                    }
+                }
+                pushBack();
+                stack[stackSize - 1] = DANGLING_NAME;
+                return peekName();
+            case DANGLING_NAME:
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                c = nextNonWhitespace();
+                if (c == '=') {
+                    if (read() != '>') {
+                        pushBack();
+                    }
+                } else if (c != ':') {
+                    throw syntaxError("Expected a ':' after a key");
+                }
+                return peekValue(false);
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                return peekValue(false);
+            default:
+                if (nextNonWhitespace() == -1) {
+                    return peeked = Token.END_DOCUMENT;
+                }
+                throw syntaxError("Unexpected text after the end of the document");
+        }
+    }
+
+    /*
+     * Reads the key of an object member. A key may be quoted or unquoted, as org.json allows.
+     */
+    private Token peekName() throws JSONException {
+        int c = nextNonWhitespace();
+        if (c == '"' || c == '\'') {
+            peekedValue = readString((char) c);
+        } else if (c == '{' || c == '[' || c == -1) {
+            throw syntaxError("Expected a key");
+        } else {
+            pushBack();
+            peekedValue = String.valueOf(toValue(readUnquoted()));
+        }
+        return peeked = Token.NAME;
+    }
+
+    /*
+     * Reads the type of the next value, and the value itself if it is a scalar.
+     */
+    private Token peekValue(boolean inArray) throws JSONException {
+        int c = nextNonWhitespace();
+        switch (c) {
+            case '{':
+                return peeked = Token.BEGIN_OBJECT;
+            case '[':
+                return peeked = Token.BEGIN_ARRAY;
+            case '"':
+            case '\'':
+                peekedValue = readString((char) c);
+                return peeked = Token.STRING;
+            case -1:
+                throw syntaxError("Unexpected end of input");
+            default:
+                pushBack();
+                //a missing array element, eg: [1,,2], is a java null as in org.json's JSONArray
+                if (inArray && c == ',') {
+                    peekedValue = null;
+                    return peeked = Token.NULL;
+                }
+                Object value = toValue(readUnquoted());
+                peekedValue = value;
+                if (value instanceof String) {
+                    return peeked = Token.STRING;
+                } else if (value instanceof Boolean) {
+                    return peeked = Token.BOOLEAN;
+                } else if (value == JSONObject.NULL) {
+                    return peeked = Token.NULL;
+                }
+                return peeked = Token.NUMBER;
+        }
+    }
+
+    public void beginObject() throws JSONException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+        names.add(null);
+    }
+
+    public void endObject() throws JSONException {
+        expect(Token.END_OBJECT);
+        names.remove(names.size() - 1);
+        stackSize--;
+    }
+
+    public void beginArray() throws JSONException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws JSONException {
+        expect(Token.END_ARRAY);
+        stackSize--;
+    }
+
+    /**
+     * Whether the current object or array has more elements.
+     *
+     * @return boolean
+     * @throws JSONException
+     */
+    public boolean hasNext() throws JSONException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    /**
+     * Consumes the next member name of the current object.
+     *
+     * @return String
+     * @throws JSONException
+     */
+    public String nextName() throws JSONException {
+        expect(Token.NAME);
+        String name = (String) peekedValue;
+        int last = names.size() - 1;
+        Set<String> seen = names.get(last);
+        if (seen == null) {
+            seen = new HashSet<String>();
+            names.set(last, seen);
+        }
+        if (!seen.add(name)) {
+            throw new JSONException("Duplicate key \"" + name + "\"");
+        }
+        return name;
+    }
+
+    /**
+     * Consumes the next scalar value. Returns a String, Boolean, Integer, Long, Double or JSONObject.NULL, or
+     * null for a missing array element.
+     *
+     * @return Object
+     * @throws JSONException
+     */
+    public Object nextScalar() throws JSONException {
+        Token token = peek();
+        if (token != Token.STRING && token != Token.BOOLEAN && token != Token.NULL && token != Token.NUMBER) {
+            throw syntaxError("Expected a scalar value but was " + token);
+        }
+        peeked = null;
+        return peekedValue;
+    }
+
+    /**
+     * Consumes the next value, including all nested values of an object or an array.
+     *
+     * @throws JSONException
+     */
+    public void skipValue() throws JSONException {
+        Token token = peek();
+        if (token == Token.BEGIN_OBJECT) {
+            beginObject();
+            while (hasNext()) {
+                nextName();
+                skipValue();
+            }
+            endObject();
+        } else if (token == Token.BEGIN_ARRAY) {
+            beginArray();
+            while (hasNext()) {
+                skipValue();
+            }
+            endArray();
+        } else {
+            nextScalar();
+        }
+    }
+
+    /**
+     * Nesting depth of the reader. Used together with recover(int) to carry on reading after a value
+     * could not be decoded.
+     *
+     * @return int
+     */
+    public int getDepth() {
+        return stackSize;
+    }
+
+    /**
+     * Consumes what is left of a partially read value, so that the reader is again positioned right after
+     * the value which was started at the given depth.
+     *
+     * @param depth - depth of the reader before the value was started
+     * @throws JSONException
+     */
+    public void recover(int depth) throws JSONException {
+        while (stackSize > depth) {
+            Token token = peek();
+            if (token == Token.END_OBJECT) {
+                endObject();
+            } else if (token == Token.END_ARRAY) {
+                endArray();
+            } else if (token == Token.NAME) {
+                nextName();
+            } else {
+                skipValue();
+            }
+        }
+        //the value was not started at all, or only peeked
+        if (stack[stackSize - 1] == DANGLING_NAME || (peeked != null && peeked != Token.NAME &&
+                peeked != Token.END_OBJECT && peeked != Token.END_ARRAY && peeked != Token.END_DOCUMENT)) {
+            skipValue();
+        }
+    }
+
+    private void expect(Token expected) throws JSONException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+        peeked = null;
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = scope;
+    }
+
+    /*
+     * Reads the rest of a string whose opening quote has already been consumed.
+     */
+    private String readString(char quote) throws JSONException {
+        scratch.setLength(0);
+        while (true) {
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos++];
+                if (c == quote) {
+                    scratch.append(buffer, start, pos - start - 1);
+                    return scratch.toString();
+                } else if (c == '\\') {
+                    scratch.append(buffer, start, pos - start - 1);
+                    readEscape();
+                    start = pos;
+                } else if (c == '\n' || c == '\r' || c == 0) {
+                    throw syntaxError("Unterminated string");
+                }
+            }
+            scratch.append(buffer, start, pos - start);
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private void readEscape() throws JSONException {
+        int c = read();
+        switch (c) {
+            case 'b':
+                scratch.append('\b');
+                break;
+            case 't':
+                scratch.append('\t');
+                break;
+            case 'n':
+                scratch.append('\n');
+                break;
+            case 'f':
+                scratch.append('\f');
+                break;
+            case 'r':
+                scratch.append('\r');
+                break;
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("Illegal escape");
+                    }
+                    value = (value << 4) + digit;
+                }
+                scratch.append((char) value);
+                break;
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+                scratch.append((char) c);
+                break;
+            default:
+                throw syntaxError("Illegal escape");
+        }
+    }
+
+    /*
+     * Reads unquoted text up to the next delimiter or control character, the same way org.json does.
+     */
+    private String readUnquoted() throws JSONException {
+        scratch.setLength(0);
+        while (true) {
+            int c = read();
+            if (c < ' ' || ",:]}/\\\"[{;=#".indexOf(c) >= 0) {
+                pushBack();
+                break;
+            }
+            scratch.append((char) c);
+        }
+        String text = scratch.toString().trim();
+        if (text.length() == 0) {
+            throw syntaxError("Missing value");
+        }
+        return text;
+    }
+
+    /*
+     * Converts unquoted text the way org.json does: true, false and null ignoring the case, hexadecimal and
+     * octal (leading 0) ints, decimal numbers as Integer if they fit, then Long, otherwise Double, and any
+     * other text as a String.
+     */
+    private static Object toValue(String text) {
+        if ("true".equalsIgnoreCase(text)) {
+            return Boolean.TRUE;
+        } else if ("false".equalsIgnoreCase(text)) {
+            return Boolean.FALSE;
+        } else if ("null".equalsIgnoreCase(text)) {
+            return JSONObject.NULL;
+        }
+        char first = text.charAt(0);
+        if ((first >= '0' && first <= '9') || first == '.' || first == '-' || first == '+') {
+            if (first == '0') {
+                try {
+                    if (text.length() > 2 && (text.charAt(1) == 'x' || text.charAt(1) == 'X')) {
+                        return Integer.valueOf(Integer.parseInt(text.substring(2), 16));
+                    }
+                    return Integer.valueOf(Integer.parseInt(text, 8));
+                } catch (NumberFormatException ignore) {
+                    //not a hexadecimal or octal int, read as a decimal number
+                }
+            }
+            try {
+                if (text.indexOf('.') >= 0 || text.indexOf('e') >= 0 || text.indexOf('E') >= 0) {
+                    return Double.valueOf(text);
+                }
+                long longValue = Long.parseLong(text);
+                if (longValue == (int) longValue) {
+                    return Integer.valueOf((int) longValue);
+                }
+                return Long.valueOf(longValue);
+            } catch (NumberFormatException ignore) {
+                //not a number, read as text
+            }
+        }
+        return text;
+    }
+
+    /*
+     * Pushes back the last read character, if it was not the end of input.
+     */
+    private void pushBack() {
+        if (limit > 0) {
+            pos--;
+        }
+    }
+
+    private int nextNonWhitespace() throws JSONException {
+        while (true) {
+            //org.json skips every control character as whitespace
+            int c = read();
+            if (c <= 0 || c > ' ') {
+                return c;
+            }
+        }
+    }
+
+    private int read() throws JSONException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++];
+    }
+
+    /*
+     * Refills the buffer. Only called when the buffer is fully consumed, so that a single character
+     * can always be pushed back with pos--.
+     */
+    private boolean fill() throws JSONException {
+        try {
+            bufferStart += limit;
+            pos = 0;
+            limit = 0;
+            int read = in.read(buffer, 0, buffer.length);
+            if (read <= 0) {
+                return false;
+            }
+            limit = read;
+            return true;
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at character " + (bufferStart + pos));
+    }
+}
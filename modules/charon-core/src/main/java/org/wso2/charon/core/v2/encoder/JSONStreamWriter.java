@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.encoder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes a json text token by token to a Writer, or as UTF-8 to an OutputStream, without building an
+ * in memory representation of the document.
+ * Values are written the same way org.json writes them. The character and byte buffers are taken from
+ * a small shared pool and given back in finish().
+ */
+public class JSONStreamWriter implements TokenStreamWriter {
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final int POOL_SIZE = 32;
+
+    private static final BlockingQueue<char[]> CHAR_BUFFER_POOL = new ArrayBlockingQueue<char[]>(POOL_SIZE);
+    private static final BlockingQueue<byte[]> BYTE_BUFFER_POOL = new ArrayBlockingQueue<byte[]>(POOL_SIZE);
+
+    //scopes of the nesting stack
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int DANGLING_NAME = 3;
+    private static final int NONEMPTY_OBJECT = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+
+    private final Writer writer;
+    private final OutputStream outputStream;
+
+    private char[] chars;
+    private int charCount = 0;
+    private byte[] bytes;
+    private int byteCount = 0;
+    //high surrogate left at the end of the char buffer, encoded together with the next chunk
+    private char pendingHighSurrogate = 0;
+
+    private int[] stack = new int[32];
+    private int stackSize = 0;
+
+    public JSONStreamWriter(Writer writer) {
+        this.writer = writer;
+        this.outputStream = null;
+        this.chars = borrowChars();
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    public JSONStreamWriter(OutputStream outputStream) {
+        this.writer = null;
+        this.outputStream = outputStream;
+        this.chars = borrowChars();
+        this.bytes = borrowBytes();
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    public JSONStreamWriter beginObject() throws IOException, JSONException {
+        beforeValue();
+        push(EMPTY_OBJECT);
+        write('{');
+        return this;
+    }
+
+    public JSONStreamWriter endObject() throws IOException, JSONException {
+        int scope = stack[stackSize - 1];
+        if (scope != EMPTY_OBJECT && scope != NONEMPTY_OBJECT) {
+            throw new JSONException("Misplaced endObject.");
+        }
+        stackSize--;
+        write('}');
+        return this;
+    }
+
+    public JSONStreamWriter beginArray() throws IOException, JSONException {
+        beforeValue();
+        push(EMPTY_ARRAY);
+        write('[');
+        return this;
+    }
+
+    public JSONStreamWriter endArray() throws IOException, JSONException {
+        int scope = stack[stackSize - 1];
+        if (scope != EMPTY_ARRAY && scope != NONEMPTY_ARRAY) {
+            throw new JSONException("Misplaced endArray.");
+        }
+        stackSize--;
+        write(']');
+        return this;
+    }
+
+    /**
+     * Writes the name of the next member of the current object.
+     *
+     * @param name - member name
+     * @return this writer
+     */
+    public JSONStreamWriter name(String name) throws IOException, JSONException {
+        if (name == null) {
+            throw new JSONException("Null key.");
+        }
+        int scope = stack[stackSize - 1];
+        if (scope == NONEMPTY_OBJECT) {
+            write(',');
+        } else if (scope != EMPTY_OBJECT) {
+            throw new JSONException("Misplaced key.");
+        }
+        stack[stackSize - 1] = DANGLING_NAME;
+        writeString(name);
+        write(':');
+        return this;
+    }
+
+    /**
+     * Writes a scalar value. Strings are quoted, numbers and booleans written as they are and null
+     * written as null. Any other object is written as the quoted string of its toString().
+     *
+     * @param value - value to be written
+     * @return this writer
+     */
+    public JSONStreamWriter value(Object value) throws IOException, JSONException {
+        beforeValue();
+        if (value == null || value.equals(JSONObject.NULL)) {
+            write("null");
+        } else if (value instanceof Number) {
+            write(JSONObject.numberToString((Number) value));
+        } else if (value instanceof Boolean) {
+            write(value.toString());
+        } else {
+            writeString(value.toString());
+        }
+        return this;
+    }
+
+    /**
+     * Writes an already encoded json text as the next value, eg: a pre-encoded resource.
+     *
+     * @param json - json text of a single value
+     * @return this writer
+     */
+    public JSONStreamWriter rawValue(String json) throws IOException, JSONException {
+        beforeValue();
+        write(json);
+        return this;
+    }
+
+    /**
+     * Writes the buffered content to the underlying writer or stream and flushes it.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        flushChars(true);
+        if (writer != null) {
+            writer.flush();
+        } else {
+            outputStream.flush();
+        }
+    }
+
+    /**
+     * Flushes the written content and returns the buffers to the pool. The underlying writer or stream is
+     * not closed, as it is owned by the caller. The json writer must not be used afterwards.
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        try {
+            if (chars != null) {
+                flush();
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Returns the buffers to the pool without writing out what is buffered, eg: after an encoding error.
+     */
+    public void release() {
+        if (chars != null) {
+            CHAR_BUFFER_POOL.offer(chars);
+            chars = null;
+        }
+        if (bytes != null) {
+            BYTE_BUFFER_POOL.offer(bytes);
+            bytes = null;
+        }
+    }
+
+    private void beforeValue() throws IOException, JSONException {
+        int scope = stack[stackSize - 1];
+        switch (scope) {
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                return;
+            case DANGLING_NAME:
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                return;
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                return;
+            case NONEMPTY_ARRAY:
+                write(',');
+                return;
+            default:
+                throw new JSONException("Misplaced value.");
+        }
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = scope;
+    }
+
+    /*
+     * Writes a quoted string, escaping it as JSONObject.quote does.
+     */
+    private void writeString(String string) throws IOException {
+        write('"');
+        char previous = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '\\':
+                case '"':
+                    write('\\');
+                    write(c);
+                    break;
+                case '/':
+                    if (previous == '<') {
+                        write('\\');
+                    }
+                    write(c);
+                    break;
+                case '\b':
+                    write("\\b");
+                    break;
+                case '\t':
+                    write("\\t");
+                    break;
+                case '\n':
+                    write("\\n");
+                    break;
+                case '\f':
+                    write("\\f");
+                    break;
+                case '\r':
+                    write("\\r");
+                    break;
+                default:
+                    if (c < 0x20 || (c >= 0x80 && c < 0xa0) || (c >= 0x2000 && c < 0x2100)) {
+                        String hex = Integer.toHexString(c);
+                        write("\\u");
+                        for (int pad = hex.length(); pad < 4; pad++) {
+                            write('0');
+                        }
+                        write(hex);
+                    } else {
+                        write(c);
+                    }
+            }
+            previous = c;
+        }
+        write('"');
+    }
+
+    private void write(String string) throws IOException {
+        for (int i = 0; i < string.length(); i++) {
+            write(string.charAt(i));
+        }
+    }
+
+    private void write(char c) throws IOException {
+        if (charCount == chars.length) {
+            flushChars(false);
+        }
+        chars[charCount++] = c;
+    }
+
+    /*
+     * Hands the buffered characters over to the writer, or encodes them as UTF-8 into the byte buffer.
+     */
+    private void flushChars(boolean endOfInput) throws IOException {
+        if (writer != null) {
+            writer.write(chars, 0, charCount);
+            charCount = 0;
+            return;
+        }
+        int i = 0;
+        if (pendingHighSurrogate != 0 && charCount > 0) {
+            if (Character.isLowSurrogate(chars[0])) {
+                writeCodePoint(Character.toCodePoint(pendingHighSurrogate, chars[0]));
+                i = 1;
+            } else {
+                writeByte('?');
+            }
+            pendingHighSurrogate = 0;
+        }
+        for (; i < charCount; i++) {
+            char c = chars[i];
+            if (byteCount > bytes.length - 4) {
+                flushBytes();
+            }
+            if (c < 0x80) {
+                bytes[byteCount++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[byteCount++] = (byte) (0xc0 | (c >> 6));
+                bytes[byteCount++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c)) {
+                if (i + 1 == charCount) {
+                    pendingHighSurrogate = c;
+                } else if (Character.isLowSurrogate(chars[i + 1])) {
+                    writeCodePoint(Character.toCodePoint(c, chars[++i]));
+                } else {
+                    //unpaired surrogate, replaced as the UTF-8 charset encoder does
+                    bytes[byteCount++] = '?';
+                }
+            } else if (Character.isLowSurrogate(c)) {
+                bytes[byteCount++] = '?';
+            } else {
+                bytes[byteCount++] = (byte) (0xe0 | (c >> 12));
+                bytes[byteCount++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                bytes[byteCount++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        charCount = 0;
+        if (endOfInput) {
+            if (pendingHighSurrogate != 0) {
+                writeByte('?');
+                pendingHighSurrogate = 0;
+            }
+            flushBytes();
+        }
+    }
+
+    private void writeCodePoint(int codePoint) throws IOException {
+        if (byteCount > bytes.length - 4) {
+            flushBytes();
+        }
+        bytes[byteCount++] = (byte) (0xf0 | (codePoint >> 18));
+        bytes[byteCount++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        bytes[byteCount++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        bytes[byteCount++] = (byte) (0x80 | (codePoint & 0x3f));
+    }
+
+    private void writeByte(char c) throws IOException {
+        if (byteCount == bytes.length) {
+            flushBytes();
+        }
+        bytes[byteCount++] = (byte) c;
+    }
+
+    private void flushBytes() throws IOException {
+        outputStream.write(bytes, 0, byteCount);
+        byteCount = 0;
+    }
+
+    private static char[] borrowChars() {
+        char[] buffer = CHAR_BUFFER_POOL.poll();
+        return buffer != null ? buffer : new char[BUFFER_SIZE];
+    }
+
+    private static byte[] borrowBytes() {
+        byte[] buffer = BYTE_BUFFER_POOL.poll();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+}
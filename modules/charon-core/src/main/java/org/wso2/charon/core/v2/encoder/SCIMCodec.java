@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.encoder;
+
+import org.wso2.charon.core.v2.exceptions.BadRequestException;
+import org.wso2.charon.core.v2.exceptions.CharonException;
+import org.wso2.charon.core.v2.exceptions.InternalErrorException;
+import org.wso2.charon.core.v2.objects.AbstractSCIMObject;
+import org.wso2.charon.core.v2.objects.SCIMObject;
+import org.wso2.charon.core.v2.schema.ResourceTypeSchema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A wire encoding of SCIM resources. Codecs are registered with the CodecManager and looked up by their
+ * format (the format of the JSONEncoder being json) or by the Content-Type of a request.
+ *
+ * The codecs are only negotiated by the user get and create endpoints which take a codec. The other endpoints,
+ * eg: list, search, PUT and the group endpoints, always answer with the encoder of the AbstractResourceManager.
+ */
+public interface SCIMCodec {
+
+    /**
+     * Name of the encoding, eg: json.
+     *
+     * @return String
+     */
+    public String getFormat();
+
+    /**
+     * Media type of the encoding, used as the Content-Type of the responses.
+     *
+     * @return String
+     */
+    public String getContentType();
+
+    /**
+     * Whether the encoding is UTF-8 text. A response whose body is not text can only be read as bytes, with
+     * SCIMResponse.getResponseBody, or written with StreamingSCIMResponse.writeTo.
+     *
+     * @return boolean
+     */
+    public boolean isText();
+
+    /**
+     * Encode the scim object and write it to the given stream. The stream is flushed but not closed.
+     *
+     * @param scimObject   - scim object to be encoded
+     * @param outputStream - stream to write to
+     * @throws CharonException
+     * @throws IOException
+     */
+    public void encodeSCIMObject(SCIMObject scimObject, OutputStream outputStream)
+            throws CharonException, IOException;
+
+    /**
+     * Decode the resource read from the given stream.
+     *
+     * @param inputStream    - stream of the encoded resource
+     * @param resourceSchema - SCIM defined resource schema
+     * @param scimObject     - a container holding the attributes and schema list
+     * @return SCIMObject
+     */
+    public SCIMObject decodeResource(InputStream inputStream, ResourceTypeSchema resourceSchema,
+                                     AbstractSCIMObject scimObject)
+            throws BadRequestException, CharonException, InternalErrorException;
+}
@@ -0,0 +1,508 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.encoder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONException;
+import org.wso2.charon.core.v2.attributes.Attribute;
+import org.wso2.charon.core.v2.attributes.ComplexAttribute;
+import org.wso2.charon.core.v2.attributes.DefaultAttributeFactory;
+import org.wso2.charon.core.v2.attributes.MultiValuedAttribute;
+import org.wso2.charon.core.v2.attributes.SimpleAttribute;
+import org.wso2.charon.core.v2.exceptions.AbstractCharonException;
+import org.wso2.charon.core.v2.exceptions.BadRequestException;
+import org.wso2.charon.core.v2.exceptions.CharonException;
+import org.wso2.charon.core.v2.exceptions.InternalErrorException;
+import org.wso2.charon.core.v2.objects.AbstractSCIMObject;
+import org.wso2.charon.core.v2.objects.SCIMObject;
+import org.wso2.charon.core.v2.protocol.ResponseCodeConstants;
+import org.wso2.charon.core.v2.schema.AttributeSchema;
+import org.wso2.charon.core.v2.schema.ResourceTypeSchema;
+import org.wso2.charon.core.v2.schema.SCIMConstants;
+import org.wso2.charon.core.v2.schema.SCIMResourceSchemaManager;
+import org.wso2.charon.core.v2.utils.AttributeUtil;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A decoder which reads the json encoded resource token by token with a JSONStreamReader and builds the
+ * attributes directly against the resource schema, without building an intermediate JSONObject tree.
+ * It produces the same SCIMObject as the JSONDecoder and can be used wherever a JSONDecoder is expected. It reads
+ * the same lenient json as org.json does (see JSONStreamReader), and rejects the payloads the JSONDecoder rejects.
+ * Only decodeResource is streamed, the other operations are inherited from JSONDecoder.
+ */
+public class StreamingJSONDecoder extends JSONDecoder {
+
+    private Log logger;
+
+    public StreamingJSONDecoder() {
+        logger = LogFactory.getLog(StreamingJSONDecoder.class);
+    }
+
+    /**
+     * Decode the resource string sent in the SCIM request payload.
+     *
+     * @param scimResourceString - json encoded string of user info
+     * @param resourceSchema     - SCIM defined user schema
+     * @param scimObject         - a container holding the attributes and schema list
+     * @return SCIMObject
+     */
+    @Override
+    public SCIMObject decodeResource(String scimResourceString, ResourceTypeSchema resourceSchema,
+                                     AbstractSCIMObject scimObject)
+            throws BadRequestException, CharonException, InternalErrorException {
+        return decodeResource(new StringReader(scimResourceString), resourceSchema, scimObject);
+    }
+
+    /**
+     * Decode the resource sent in the SCIM request payload, reading it directly from the request reader.
+     *
+     * @param scimResourceReader - reader of the json encoded user info
+     * @param resourceSchema     - SCIM defined user schema
+     * @param scimObject         - a container holding the attributes and schema list
+     * @return SCIMObject
+     */
+    public SCIMObject decodeResource(Reader scimResourceReader, ResourceTypeSchema resourceSchema,
+                                     AbstractSCIMObject scimObject)
+            throws BadRequestException, CharonException, InternalErrorException {
+        return decodeResource(new JSONStreamReader(scimResourceReader), resourceSchema, scimObject);
+    }
+
+    /**
+     * Decode the resource read token by token from the given reader, eg: a BinaryStreamReader of a payload
+     * sent in the compact binary encoding.
+     *
+     * @param reader         - token reader of the encoded user info
+     * @param resourceSchema - SCIM defined user schema
+     * @param scimObject     - a container holding the attributes and schema list
+     * @return SCIMObject
+     */
+    public SCIMObject decodeResource(TokenStreamReader reader, ResourceTypeSchema resourceSchema,
+                                     AbstractSCIMObject scimObject)
+            throws BadRequestException, CharonException, InternalErrorException {
+        try {
+            DecodingPlan plan = DecodingPlan.getPlan(resourceSchema);
+
+            //set the schemas in scimobject
+            for (int i = 0; i < resourceSchema.getSchemasList().size(); i++) {
+                scimObject.setSchema(resourceSchema.getSchemasList().get(i));
+            }
+            //decoded attribute or the error of decoding it, per attribute schema
+            Object[] decoded = new Object[plan.size()];
+            boolean[] decodedByName = new boolean[plan.size()];
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                //user may define an attribute by its name or by its fully qualified URI, name takes precedence.
+                DecodingPlan.AttributeHandler handler = plan.getHandlerByName(key);
+                boolean byName = handler != null;
+                if (handler == null) {
+                    handler = plan.getHandlerByURI(key);
+                }
+                if (handler == null || (!byName && decodedByName[handler.getPosition()])) {
+                    reader.skipValue();
+                    continue;
+                }
+                decodedByName[handler.getPosition()] = byName;
+                decoded[handler.getPosition()] = decodeAttribute(reader, handler);
+            }
+            reader.endObject();
+
+            //errors are reported in schema order, as the tree based decoder does.
+            for (Object value : decoded) {
+                if (value instanceof AbstractCharonException) {
+                    throwDecodingError((AbstractCharonException) value);
+                } else if (value != null) {
+                    scimObject.setAttribute((Attribute) value, resourceSchema);
+                }
+            }
+            return scimObject;
+        } catch (JSONException e) {
+            logger.error("error in decoding the resource");
+            throw new BadRequestException(ResponseCodeConstants.INVALID_SYNTAX);
+        }
+    }
+
+    /*
+     * Decode the value the reader is positioned at as the given attribute. If the value can not be decoded
+     * the rest of the value is skipped and the error is returned instead of the attribute.
+     *
+     * @param reader  - json reader positioned at the value
+     * @param handler - compiled handler of the attribute
+     * @return Attribute or AbstractCharonException
+     */
+    private Object decodeAttribute(TokenStreamReader reader, DecodingPlan.AttributeHandler handler)
+            throws JSONException {
+        AttributeSchema attributeSchema = handler.getAttributeSchema();
+        int depth = reader.getDepth();
+        try {
+            switch (handler.getKind()) {
+                case DecodingPlan.COMPLEX_MULTI_VALUED:
+                    if (reader.peek() != TokenStreamReader.Token.BEGIN_ARRAY) {
+                        logger.error("Error decoding the complex multivalued attribute");
+                        throw new BadRequestException(ResponseCodeConstants.INVALID_SYNTAX);
+                    }
+                    return decodeComplexMultiValuedAttribute(reader, handler);
+                case DecodingPlan.COMPLEX:
+                    if (reader.peek() != TokenStreamReader.Token.BEGIN_OBJECT) {
+                        logger.error("Error decoding the complex attribute");
+                        throw new BadRequestException(ResponseCodeConstants.INVALID_SYNTAX);
+                    }
+                    return decodeComplexAttribute(reader, handler);
+                case DecodingPlan.PRIMITIVE_MULTI_VALUED:
+                    if (reader.peek() != TokenStreamReader.Token.BEGIN_ARRAY) {
+                        logger.error("Error decoding the primitive multivalued attribute");
+                        throw new BadRequestException(ResponseCodeConstants.INVALID_SYNTAX);
+                    }
+                    return decodePrimitiveMultiValuedAttribute(reader, attributeSchema);
+                default:
+                    Object attributeValue = readSimpleValue(reader);
+                    if (attributeValue == null) {
+                        logger.error("Error decoding the simple attribute");
+                        throw new BadRequestException(ResponseCodeConstants.INVALID_SYNTAX);
+                    }
+                    return buildSimpleAttribute(attributeSchema, attributeValue);
+            }
+        } catch (AbstractCharonException e) {
+            reader.recover(depth);
+            return e;
+        }
+    }
+
+    /*
+     * Reads a value which is allowed for a simple attribute; a String, Boolean or Integer.
+     * Returns null if the value is of any other kind, after consuming it.
+     */
+    private Object readSimpleValue(TokenStreamReader reader) throws JSONException, CharonException {
+        TokenStreamReader.Token token = reader.peek();
+        if (token == TokenStreamReader.Token.BEGIN_OBJECT || token == TokenStreamReader.Token.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        Object value = reader.nextScalar();
+        if (value == null) {
+            throw missingElementError();
+        }
+        if (value instanceof String || value instanceof Boolean || value instanceof Integer) {
+            return value;
+        }
+        return null;
+    }
+
+    /*
+     * A missing array element, eg: [1,,2], is read by org.json as a java null which the JSONDecoder fails to
+     * get from the JSONArray. It is rejected with the same error.
+     */
+    private static CharonException missingElementError() {
+        String error = "Error in accessing JSON value of multivalued attribute";
+        return new CharonException(error);
+    }
+
+    /*
+     * Return a simple attribute with the user defined value included and necessary attribute characteristics set
+     *
+     * @param attributeSchema - Attribute schema
+     * @param attributeValue  - value for the attribute
+     * @return SimpleAttribute
+     */
+    private SimpleAttribute buildSimpleAttribute(AttributeSchema attributeSchema,
+                                                 Object attributeValue) throws CharonException, BadRequestException {
+        Object attributeValueObject = AttributeUtil.getAttributeValueFromString(
+                attributeValue, attributeSchema.getType());
+        SimpleAttribute simpleAttribute = new SimpleAttribute(attributeSchema.getName(), attributeValueObject);
+        return (SimpleAttribute) DefaultAttributeFactory.createAttribute(attributeSchema,
+                simpleAttribute);
+    }
+
+    /*
+     * Return a primitive type multi valued attribute, read from the json array the reader is positioned at.
+     *
+     * @param reader          - json reader positioned at the array
+     * @param attributeSchema - Attribute schema
+     * @return MultiValuedAttribute
+     */
+    private MultiValuedAttribute decodePrimitiveMultiValuedAttribute(TokenStreamReader reader,
+                                                                     AttributeSchema attributeSchema)
+            throws JSONException, CharonException, BadRequestException, InternalErrorException {
+        MultiValuedAttribute multiValuedAttribute = new MultiValuedAttribute(attributeSchema.getName());
+        List<Object> primitiveValues = new ArrayList<Object>();
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Object attributeValue = readSimpleValue(reader);
+            if (attributeValue == null) {
+                String error = "Unknown JSON representation for the MultiValued attribute " +
+                        attributeSchema.getName() + " which has data type as " + attributeSchema.getType();
+                throw new BadRequestException(error, ResponseCodeConstants.INVALID_SYNTAX);
+            }
+            primitiveValues.add(attributeValue);
+        }
+        reader.endArray();
+        multiValuedAttribute.setAttributePrimitiveValues(primitiveValues);
+
+        return (MultiValuedAttribute) DefaultAttributeFactory.createAttribute(attributeSchema,
+                multiValuedAttribute);
+    }
+
+    /*
+     * Return complex type multi valued attribute, read from the json array the reader is positioned at.
+     *
+     * @param reader  - json reader positioned at the array
+     * @param handler - compiled handler of the attribute
+     * @return MultiValuedAttribute
+     */
+    private MultiValuedAttribute decodeComplexMultiValuedAttribute(TokenStreamReader reader,
+                                                                   DecodingPlan.AttributeHandler handler)
+            throws JSONException, CharonException, BadRequestException, InternalErrorException {
+        MultiValuedAttribute multiValuedAttribute = new MultiValuedAttribute(handler.getAttributeSchema().getName());
+        multiValuedAttribute.setAttributeValues(readComplexValues(reader, handler));
+        return (MultiValuedAttribute) DefaultAttributeFactory.createAttribute(handler.getAttributeSchema(),
+                multiValuedAttribute);
+    }
+
+    private List<Attribute> readComplexValues(TokenStreamReader reader, DecodingPlan.AttributeHandler handler)
+            throws JSONException, CharonException, BadRequestException, InternalErrorException {
+        List<Attribute> complexAttributeValues = new ArrayList<Attribute>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            TokenStreamReader.Token token = reader.peek();
+            if (token == TokenStreamReader.Token.NULL && reader.nextScalar() == null) {
+                throw missingElementError();
+            }
+            if (token != TokenStreamReader.Token.BEGIN_OBJECT) {
+                AttributeSchema attributeSchema = handler.getAttributeSchema();
+                String error = "Unknown JSON representation for the MultiValued attribute " +
+                        attributeSchema.getName() + " which has data type as " + attributeSchema.getType();
+                throw new BadRequestException(error, ResponseCodeConstants.INVALID_SYNTAX);
+            }
+            complexAttributeValues.add(decodeComplexValue(reader, handler));
+        }
+        reader.endArray();
+        return complexAttributeValues;
+    }
+
+    /*
+     * Return a complex attribute, read from the json object the reader is positioned at.
+     *
+     * @param reader  - json reader positioned at the object
+     * @param handler - compiled handler of the complex attribute
+     * @return ComplexAttribute
+     */
+    private ComplexAttribute decodeComplexAttribute(TokenStreamReader reader, DecodingPlan.AttributeHandler handler)
+            throws JSONException, CharonException, BadRequestException, InternalErrorException {
+        AttributeSchema complexAttributeSchema = handler.getAttributeSchema();
+        DecodingPlan subAttributePlan = handler.getSubAttributePlan();
+        //As according to the spec we have complex attribute inside complex attribute only for extension,
+        //we need to treat it separately
+        boolean isExtension = complexAttributeSchema.getName().equals(
+                SCIMResourceSchemaManager.getInstance().getExtensionName());
+        Object[] decoded = new Object[subAttributePlan.size()];
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            DecodingPlan.AttributeHandler subHandler = subAttributePlan.getHandlerByName(reader.nextName());
+            if (subHandler == null) {
+                reader.skipValue();
+            } else if (!subHandler.isComplexType()) {
+                decoded[subHandler.getPosition()] = decodeAttribute(reader, subHandler);
+            } else if (isExtension && !subHandler.hasComplexSubAttributes()) {
+                decoded[subHandler.getPosition()] = decodeExtensionSubAttribute(reader, subHandler);
+            } else {
+                //schema violation, reported below in schema order
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        Map<String, Attribute> subAttributesMap = new HashMap<String, Attribute>();
+        for (int i = 0; i < subAttributePlan.size(); i++) {
+            DecodingPlan.AttributeHandler subHandler = subAttributePlan.getHandler(i);
+            if (subHandler.isComplexType() && (!isExtension || subHandler.hasComplexSubAttributes())) {
+                String error = "Complex attribute can not have complex sub attributes";
+                throw new InternalErrorException(error);
+            }
+            if (decoded[i] instanceof AbstractCharonException) {
+                throwDecodingError((AbstractCharonException) decoded[i]);
+            } else if (decoded[i] != null) {
+                subAttributesMap.put(subHandler.getAttributeSchema().getName(), (Attribute) decoded[i]);
+            }
+        }
+        ComplexAttribute complexAttribute = new ComplexAttribute(complexAttributeSchema.getName());
+        complexAttribute.setSubAttributesList(subAttributesMap);
+        return (ComplexAttribute) DefaultAttributeFactory.createAttribute(complexAttributeSchema, complexAttribute);
+    }
+
+    /*
+     * Decode a complex sub attribute of the extension. Returns null for an empty multi valued sub attribute,
+     * as it is not set in the extension.
+     */
+    private Object decodeExtensionSubAttribute(TokenStreamReader reader, DecodingPlan.AttributeHandler subHandler)
+            throws JSONException {
+        AttributeSchema subAttributeSchema = subHandler.getAttributeSchema();
+        int depth = reader.getDepth();
+        try {
+            if (subHandler.getKind() == DecodingPlan.COMPLEX_MULTI_VALUED) {
+                if (reader.peek() != TokenStreamReader.Token.BEGIN_ARRAY) {
+                    logger.error("Error decoding the extension sub attribute");
+                    throw new BadRequestException(ResponseCodeConstants.INVALID_SYNTAX);
+                }
+                List<Attribute> complexAttributeValues = readComplexValues(reader, subHandler);
+                if (complexAttributeValues.isEmpty()) {
+                    return null;
+                }
+                MultiValuedAttribute multiValuedAttribute = new MultiValuedAttribute(subAttributeSchema.getName());
+                multiValuedAttribute.setAttributeValues(complexAttributeValues);
+                return DefaultAttributeFactory.createAttribute(subAttributeSchema, multiValuedAttribute);
+            } else {
+                if (reader.peek() != TokenStreamReader.Token.BEGIN_OBJECT) {
+                    logger.error("Error decoding the extension sub attribute");
+                    throw new BadRequestException(ResponseCodeConstants.INVALID_SYNTAX);
+                }
+                return decodeComplexAttribute(reader, subHandler);
+            }
+        } catch (AbstractCharonException e) {
+            reader.recover(depth);
+            return e;
+        }
+    }
+
+    /*
+     * To build a complex type value of a Multi Valued Attribute. (eg. Email with value,type,primary as sub attributes
+     *
+     * @param reader  - json reader positioned at the object
+     * @param handler - compiled handler of the multi valued attribute
+     * @return ComplexAttribute
+     */
+    private ComplexAttribute decodeComplexValue(TokenStreamReader reader, DecodingPlan.AttributeHandler handler)
+            throws JSONException, CharonException, BadRequestException, InternalErrorException {
+        AttributeSchema attributeSchema = handler.getAttributeSchema();
+        DecodingPlan subAttributePlan = handler.getSubAttributePlan();
+        Object[] decoded = new Object[subAttributePlan.size()];
+        //raw values of value and type, used to name the complex value
+        Object value = null;
+        Object type = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            DecodingPlan.AttributeHandler subHandler = subAttributePlan.getHandlerByName(name);
+            boolean isValue = SCIMConstants.CommonSchemaConstants.VALUE.equals(name);
+            boolean isType = SCIMConstants.CommonSchemaConstants.TYPE.equals(name);
+            if (subHandler == null && !isType) {
+                reader.skipValue();
+                continue;
+            }
+            TokenStreamReader.Token token = reader.peek();
+            if ((isValue || isType) && token != TokenStreamReader.Token.BEGIN_OBJECT &&
+                    token != TokenStreamReader.Token.BEGIN_ARRAY) {
+                Object rawValue = reader.nextScalar();
+                if (isValue) {
+                    value = rawValue;
+                } else {
+                    type = rawValue;
+                }
+                if (subHandler != null) {
+                    decoded[subHandler.getPosition()] = buildSubAttributeValue(subHandler, rawValue);
+                }
+            } else if (subHandler != null) {
+                decoded[subHandler.getPosition()] = decodeSubAttributeValue(reader, subHandler);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        ComplexAttribute complexAttribute = new ComplexAttribute(attributeSchema.getName());
+        //setting up a name for the complex attribute for the reference purpose
+        //(value,type) pair is considered as a primary key for each entry
+        if (subAttributePlan.getHandlerByName(SCIMConstants.CommonSchemaConstants.VALUE) != null) {
+            complexAttribute.setName(attributeSchema.getName() + "_" +
+                    (value != null ? value : SCIMConstants.DEFAULT) + "_" +
+                    (type != null ? type : SCIMConstants.DEFAULT));
+        }
+        Map<String, Attribute> subAttributesMap = new HashMap<String, Attribute>();
+        for (int i = 0; i < subAttributePlan.size(); i++) {
+            if (decoded[i] instanceof AbstractCharonException) {
+                throwDecodingError((AbstractCharonException) decoded[i]);
+            } else if (decoded[i] != null) {
+                subAttributesMap.put(subAttributePlan.getHandler(i).getAttributeSchema().getName(),
+                        (Attribute) decoded[i]);
+            }
+        }
+        complexAttribute.setSubAttributesList(subAttributesMap);
+        return (ComplexAttribute) DefaultAttributeFactory.createAttribute(attributeSchema,
+                complexAttribute);
+    }
+
+    /*
+     * Decode a sub attribute of a complex value of a multi valued attribute.
+     */
+    private Object decodeSubAttributeValue(TokenStreamReader reader, DecodingPlan.AttributeHandler subHandler)
+            throws JSONException {
+        int depth = reader.getDepth();
+        try {
+            if (subHandler.getAttributeSchema().getMultiValued()) {
+                if (reader.peek() != TokenStreamReader.Token.BEGIN_ARRAY) {
+                    throw new BadRequestException(ResponseCodeConstants.INVALID_SYNTAX);
+                }
+                return decodePrimitiveMultiValuedAttribute(reader, subHandler.getAttributeSchema());
+            }
+            return buildSubAttributeValue(subHandler, readSimpleValue(reader));
+        } catch (AbstractCharonException e) {
+            reader.recover(depth);
+            return e;
+        }
+    }
+
+    /*
+     * Build a single valued sub attribute of a complex value from an already read scalar.
+     */
+    private Object buildSubAttributeValue(DecodingPlan.AttributeHandler subHandler, Object subAttributeValue) {
+        if (subHandler.getAttributeSchema().getMultiValued() || !(subAttributeValue instanceof String ||
+                subAttributeValue instanceof Boolean || subAttributeValue instanceof Integer)) {
+            return new BadRequestException(ResponseCodeConstants.INVALID_SYNTAX);
+        }
+        try {
+            return buildSimpleAttribute(subHandler.getAttributeSchema(), subAttributeValue);
+        } catch (AbstractCharonException e) {
+            return e;
+        }
+    }
+
+    /*
+     * Rethrow a deferred decoding error with its original type.
+     */
+    private void throwDecodingError(AbstractCharonException e)
+            throws BadRequestException, CharonException, InternalErrorException {
+        if (e instanceof BadRequestException) {
+            throw (BadRequestException) e;
+        } else if (e instanceof InternalErrorException) {
+            throw (InternalErrorException) e;
+        } else if (e instanceof CharonException) {
+            throw (CharonException) e;
+        }
+        throw new CharonException(e.getDetail(), e);
+    }
+}
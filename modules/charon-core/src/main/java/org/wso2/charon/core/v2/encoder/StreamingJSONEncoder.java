@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.encoder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONException;
+import org.wso2.charon.core.v2.attributes.Attribute;
+import org.wso2.charon.core.v2.attributes.ComplexAttribute;
+import org.wso2.charon.core.v2.attributes.MultiValuedAttribute;
+import org.wso2.charon.core.v2.attributes.SimpleAttribute;
+import org.wso2.charon.core.v2.exceptions.AbstractCharonException;
+import org.wso2.charon.core.v2.exceptions.BadRequestException;
+import org.wso2.charon.core.v2.exceptions.CharonException;
+import org.wso2.charon.core.v2.extensions.ResourceIterator;
+import org.wso2.charon.core.v2.objects.ListedResource;
+import org.wso2.charon.core.v2.objects.SCIMObject;
+import org.wso2.charon.core.v2.protocol.ResponseBodyWriter;
+import org.wso2.charon.core.v2.schema.SCIMConstants;
+import org.wso2.charon.core.v2.schema.SCIMDefinitions;
+import org.wso2.charon.core.v2.utils.AttributeUtil;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An encoder which writes the attribute tree of a SCIM object straight to a Writer or an OutputStream
+ * with a JSONStreamWriter, instead of building a JSONObject and converting it to a string.
+ * The written json is equivalent to what the JSONEncoder produces.
+ */
+public class StreamingJSONEncoder extends JSONEncoder {
+
+    private Log logger = LogFactory.getLog(StreamingJSONEncoder.class);
+
+    /**
+     * Validates each resource of a streamed list response just before it is encoded.
+     */
+    public interface ResourceValidator {
+
+        public void validate(SCIMObject scimObject) throws CharonException, BadRequestException;
+    }
+
+    /*
+     * return encoded string from scim object
+     * @param scimObject
+     * @return
+     * @throws CharonException
+     */
+    @Override
+    public String encodeSCIMObject(SCIMObject scimObject) throws CharonException {
+        StringWriter stringWriter = new StringWriter();
+        try {
+            encodeSCIMObject(scimObject, stringWriter);
+        } catch (IOException e) {
+            //can not happen with a StringWriter
+            throw new CharonException("Error in encoding resource..", e);
+        }
+        return stringWriter.toString();
+    }
+
+    /*
+     * Encode the scim object and write it to the given writer. The writer is flushed but not closed.
+     *
+     * @param scimObject
+     * @param writer
+     * @throws CharonException
+     * @throws IOException
+     */
+    public void encodeSCIMObject(SCIMObject scimObject, Writer writer) throws CharonException, IOException {
+        JSONStreamWriter jsonWriter = new JSONStreamWriter(writer);
+        try {
+            writeSCIMObject(scimObject, jsonWriter);
+            jsonWriter.finish();
+        } finally {
+            jsonWriter.release();
+        }
+    }
+
+    /*
+     * Encode the scim object and write it to the given stream as UTF-8. The stream is flushed but not closed.
+     *
+     * @param scimObject
+     * @param outputStream
+     * @throws CharonException
+     * @throws IOException
+     */
+    public void encodeSCIMObject(SCIMObject scimObject, OutputStream outputStream)
+            throws CharonException, IOException {
+        JSONStreamWriter jsonWriter = new JSONStreamWriter(outputStream);
+        try {
+            writeSCIMObject(scimObject, jsonWriter);
+            jsonWriter.finish();
+        } finally {
+            jsonWriter.release();
+        }
+    }
+
+    /*
+     * Returns a body writer which encodes the scim object when the response is written out.
+     *
+     * @param scimObject
+     * @return ResponseBodyWriter
+     */
+    public ResponseBodyWriter getResponseBodyWriter(final SCIMObject scimObject) {
+        return new ResponseBodyWriter() {
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                try {
+                    encodeSCIMObject(scimObject, outputStream);
+                } catch (CharonException e) {
+                    logger.error("Error in encoding the response body");
+                    throw new IOException(e.getDetail(), e);
+                }
+            }
+        };
+    }
+
+    /*
+     * Returns a body writer which encodes a list response while iterating over its resources, so that only
+     * one resource is held at a time. The members of the listed resource (totalResults, startIndex,
+     * itemsPerPage) are written first, followed by the Resources array. The iterator is closed once the body
+     * is written, hence the body can only be written once. The writer is Closeable, so that the iterator can
+     * also be released if the body is never written.
+     *
+     * @param listedResource - listed resource carrying the schemas and the paging attributes
+     * @param resources      - resources of the page
+     * @param validator      - validator run on each resource before it is encoded, may be null
+     * @return ResponseBodyWriter
+     */
+    public ResponseBodyWriter getResponseBodyWriter(ListedResource listedResource,
+                                                    ResourceIterator<? extends SCIMObject> resources,
+                                                    ResourceValidator validator) {
+        return new ListedResourceBodyWriter(listedResource, resources, validator);
+    }
+
+    /*
+     * Write a list response to the given json writer, encoding the resources one at a time as they are
+     * taken from the iterator.
+     *
+     * @param listedResource
+     * @param resources
+     * @param validator
+     * @param jsonWriter
+     * @throws CharonException
+     * @throws BadRequestException
+     * @throws IOException
+     */
+    public void writeListedResource(ListedResource listedResource, ResourceIterator<? extends SCIMObject> resources,
+                                    ResourceValidator validator, TokenStreamWriter jsonWriter)
+            throws CharonException, BadRequestException, IOException {
+        try {
+            jsonWriter.beginObject();
+            //encode schemas
+            jsonWriter.name(SCIMConstants.CommonSchemaConstants.SCHEMAS).beginArray();
+            for (String schema : listedResource.getSchemaList()) {
+                jsonWriter.value(schema);
+            }
+            jsonWriter.endArray();
+            //encode the paging attributes before the resources
+            Map<String, Attribute> attributes = listedResource.getAttributeList();
+            for (Attribute attribute : attributes.values()) {
+                if (!SCIMConstants.ListedResourceSchemaConstants.RESOURCES.equals(attribute.getName()) &&
+                        attribute instanceof SimpleAttribute) {
+                    writeSimpleAttribute((SimpleAttribute) attribute, jsonWriter);
+                }
+            }
+            jsonWriter.name(SCIMConstants.ListedResourceSchemaConstants.RESOURCES).beginArray();
+            while (resources.hasNext()) {
+                SCIMObject resource = resources.next();
+                if (validator != null) {
+                    validator.validate(resource);
+                }
+                //resources are written as the complex values of the Resources attribute, as the JSONEncoder does.
+                jsonWriter.beginObject();
+                writeAttributes(resource.getAttributeList(), jsonWriter);
+                jsonWriter.endObject();
+            }
+            jsonWriter.endArray();
+            jsonWriter.endObject();
+        } catch (JSONException e) {
+            String errorMessage = "Error in encoding resource..";
+            throw new CharonException(errorMessage, e);
+        }
+    }
+
+    /*
+     * Write the scim object as a json object to the given json writer.
+     *
+     * @param scimObject
+     * @param jsonWriter
+     * @throws CharonException
+     * @throws IOException
+     */
+    public void writeSCIMObject(SCIMObject scimObject, TokenStreamWriter jsonWriter)
+            throws CharonException, IOException {
+        try {
+            jsonWriter.beginObject();
+            //encode schemas
+            jsonWriter.name(SCIMConstants.CommonSchemaConstants.SCHEMAS).beginArray();
+            for (String schema : scimObject.getSchemaList()) {
+                jsonWriter.value(schema);
+            }
+            jsonWriter.endArray();
+            //encode attribute list
+            Map<String, Attribute> attributes = scimObject.getAttributeList();
+            if (attributes != null && !attributes.isEmpty()) {
+                writeAttributes(attributes, jsonWriter);
+            }
+            jsonWriter.endObject();
+        } catch (JSONException e) {
+            String errorMessage = "Error in encoding resource..";
+            throw new CharonException(errorMessage, e);
+        }
+    }
+
+    /*
+     * Write each attribute as a member of the json object being written.
+     */
+    private void writeAttributes(Map<String, Attribute> attributes, TokenStreamWriter jsonWriter)
+            throws IOException, JSONException {
+        for (Attribute attribute : attributes.values()) {
+            //using instanceof instead of polymorphic way, in order to make encoder pluggable.
+            if (attribute instanceof SimpleAttribute) {
+                writeSimpleAttribute((SimpleAttribute) attribute, jsonWriter);
+
+            } else if (attribute instanceof ComplexAttribute) {
+                writeComplexAttribute((ComplexAttribute) attribute, jsonWriter);
+
+            } else if (attribute instanceof MultiValuedAttribute) {
+                writeMultiValuedAttribute((MultiValuedAttribute) attribute, jsonWriter);
+            }
+        }
+    }
+
+    /*
+     * Write the simple attribute as a member, attributes without a value are left out.
+     */
+    private void writeSimpleAttribute(SimpleAttribute attribute, TokenStreamWriter jsonWriter)
+            throws IOException, JSONException {
+        if (attribute.getValue() != null) {
+            jsonWriter.name(attribute.getName());
+            //if type is DateTime, convert before encoding.
+            if (attribute.getType() != null && attribute.getType() == SCIMDefinitions.DataType.DATE_TIME) {
+                jsonWriter.value(AttributeUtil.formatDateTime((Date) attribute.getValue()));
+            } else {
+                jsonWriter.value(attribute.getValue());
+            }
+        }
+    }
+
+    /*
+     * Write the complex attribute as a member, a complex attribute without sub attributes is left out.
+     */
+    private void writeComplexAttribute(ComplexAttribute complexAttribute, TokenStreamWriter jsonWriter)
+            throws IOException, JSONException {
+        Map<String, Attribute> subAttributes = complexAttribute.getSubAttributesList();
+        if (subAttributes.isEmpty()) {
+            return;
+        }
+        jsonWriter.name(complexAttribute.getName()).beginObject();
+        writeAttributes(subAttributes, jsonWriter);
+        jsonWriter.endObject();
+    }
+
+    /*
+     * Write the multi valued attribute as a member holding an array of its values.
+     */
+    private void writeMultiValuedAttribute(MultiValuedAttribute multiValuedAttribute, TokenStreamWriter jsonWriter)
+            throws IOException, JSONException {
+        jsonWriter.name(multiValuedAttribute.getName()).beginArray();
+        List<Attribute> attributeValues = multiValuedAttribute.getAttributeValues();
+        if (attributeValues != null) {
+            for (Attribute attributeValue : attributeValues) {
+                if (attributeValue instanceof SimpleAttribute) {
+                    SimpleAttribute simpleAttributeValue = (SimpleAttribute) attributeValue;
+                    //date values are left out as the JSONEncoder does.
+                    if (simpleAttributeValue.getValue() != null && (simpleAttributeValue.getType() == null ||
+                            simpleAttributeValue.getType() != SCIMDefinitions.DataType.DATE_TIME)) {
+                        jsonWriter.beginObject();
+                        writeSimpleAttribute(simpleAttributeValue, jsonWriter);
+                        jsonWriter.endObject();
+                    }
+                } else if (attributeValue instanceof ComplexAttribute) {
+                    jsonWriter.beginObject();
+                    writeAttributes(((ComplexAttribute) attributeValue).getSubAttributesList(), jsonWriter);
+                    jsonWriter.endObject();
+                }
+            }
+        }
+        List<Object> primitiveValues = multiValuedAttribute.getAttributePrimitiveValues();
+        if (primitiveValues != null) {
+            for (Object primitiveValue : primitiveValues) {
+                jsonWriter.value(primitiveValue);
+            }
+        }
+        jsonWriter.endArray();
+    }
+
+    /*
+     * Body writer of a list response, which holds the iterator of the resources until the body is written or
+     * the writer is closed.
+     */
+    private class ListedResourceBodyWriter implements ResponseBodyWriter, Closeable {
+
+        private final ListedResource listedResource;
+        private final ResourceIterator<? extends SCIMObject> resources;
+        private final ResourceValidator validator;
+        private boolean closed;
+
+        private ListedResourceBodyWriter(ListedResource listedResource,
+                                         ResourceIterator<? extends SCIMObject> resources,
+                                         ResourceValidator validator) {
+            this.listedResource = listedResource;
+            this.resources = resources;
+            this.validator = validator;
+        }
+
+        @Override
+        public void writeTo(OutputStream outputStream) throws IOException {
+            if (closed) {
+                throw new IOException("The list response has already been written or closed");
+            }
+            JSONStreamWriter jsonWriter = new JSONStreamWriter(outputStream);
+            try {
+                writeListedResource(listedResource, resources, validator, jsonWriter);
+                jsonWriter.finish();
+            } catch (AbstractCharonException e) {
+                logger.error("Error in encoding the listed resource");
+                throw new IOException(e.getDetail(), e);
+            } finally {
+                jsonWriter.release();
+                close();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                resources.close();
+            }
+        }
+    }
+}
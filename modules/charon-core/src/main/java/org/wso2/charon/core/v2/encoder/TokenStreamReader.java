@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.encoder;
+
+import org.json.JSONException;
+
+/**
+ * A pull based reader of an encoded SCIM payload, token by token. Implemented by the JSONStreamReader and the
+ * BinaryStreamReader, so that the StreamingJSONDecoder can build the attributes from either encoding.
+ * Scalar values are returned with the same java types that org.json uses (String, Boolean, Integer, Long,
+ * Double and JSONObject.NULL).
+ */
+public interface TokenStreamReader {
+
+    /**
+     * Kinds of tokens the reader can be positioned at.
+     */
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    /**
+     * Returns the type of the next token without consuming it.
+     *
+     * @return Token
+     * @throws JSONException
+     */
+    public Token peek() throws JSONException;
+
+    public void beginObject() throws JSONException;
+
+    public void endObject() throws JSONException;
+
+    public void beginArray() throws JSONException;
+
+    public void endArray() throws JSONException;
+
+    /**
+     * Whether the current object or array has more elements.
+     *
+     * @return boolean
+     * @throws JSONException
+     */
+    public boolean hasNext() throws JSONException;
+
+    /**
+     * Consumes the next member name of the current object. Duplicate names within an object are rejected.
+     *
+     * @return String
+     * @throws JSONException
+     */
+    public String nextName() throws JSONException;
+
+    /**
+     * Consumes the next scalar value. Returns a String, Boolean, Integer, Long, Double or JSONObject.NULL.
+     *
+     * @return Object
+     * @throws JSONException
+     */
+    public Object nextScalar() throws JSONException;
+
+    /**
+     * Consumes the next value, including all nested values of an object or an array.
+     *
+     * @throws JSONException
+     */
+    public void skipValue() throws JSONException;
+
+    /**
+     * Nesting depth of the reader. Used together with recover(int) to carry on reading after a value
+     * could not be decoded.
+     *
+     * @return int
+     */
+    public int getDepth();
+
+    /**
+     * Consumes what is left of a partially read value, so that the reader is again positioned right after
+     * the value which was started at the given depth.
+     *
+     * @param depth - depth of the reader before the value was started
+     * @throws JSONException
+     */
+    public void recover(int depth) throws JSONException;
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.encoder;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+
+/**
+ * Writes an encoded SCIM payload token by token. Implemented by the JSONStreamWriter and the
+ * BinaryStreamWriter, so that the StreamingJSONEncoder can write the attribute tree in either encoding.
+ */
+public interface TokenStreamWriter {
+
+    public TokenStreamWriter beginObject() throws IOException, JSONException;
+
+    public TokenStreamWriter endObject() throws IOException, JSONException;
+
+    public TokenStreamWriter beginArray() throws IOException, JSONException;
+
+    public TokenStreamWriter endArray() throws IOException, JSONException;
+
+    /**
+     * Writes the name of the next member of the current object.
+     *
+     * @param name - member name
+     * @return this writer
+     */
+    public TokenStreamWriter name(String name) throws IOException, JSONException;
+
+    /**
+     * Writes a scalar value. Strings, numbers, booleans and null are written as they are. Any other object
+     * is written as the string of its toString().
+     *
+     * @param value - value to be written
+     * @return this writer
+     */
+    public TokenStreamWriter value(Object value) throws IOException, JSONException;
+
+    /**
+     * Writes the buffered content to the underlying writer or stream and flushes it.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException;
+
+    /**
+     * Flushes the written content and releases the buffers. The underlying writer or stream is not closed.
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException;
+
+    /**
+     * Releases the buffers without writing out what is buffered, eg: after an encoding error.
+     */
+    public void release();
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.extensions;
+
+/**
+ * Statistics of a cache of a CachingUserManager, as they were when it was taken.
+ * Counts start when the cache is created. A load is a read from the user manager behind the cache, and an
+ * eviction is a resource dropped to make room or because it expired.
+ */
+public final class CacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long loadCount;
+    private final long totalLoadTime;
+    private final long evictionCount;
+
+    public CacheStats(long hitCount, long missCount, long loadCount, long totalLoadTime, long evictionCount) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadCount = loadCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCount = evictionCount;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * Returns the share of the requests which were served from the cache, 1 if there were no requests.
+     *
+     * @return hit ratio
+     */
+    public double getHitRatio() {
+        long requestCount = getRequestCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    public long getLoadCount() {
+        return loadCount;
+    }
+
+    /**
+     * Returns the total time spent loading resources, in nanoseconds.
+     *
+     * @return total load time
+     */
+    public long getTotalLoadTime() {
+        return totalLoadTime;
+    }
+
+    /**
+     * Returns the average time spent loading a resource, in nanoseconds.
+     *
+     * @return average load time
+     */
+    public double getAverageLoadTime() {
+        return loadCount == 0 ? 0.0 : (double) totalLoadTime / loadCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hitCount=" + hitCount + ", missCount=" + missCount + ", hitRatio=" + getHitRatio() +
+                ", loadCount=" + loadCount + ", averageLoadTime=" + getAverageLoadTime() +
+                ", evictionCount=" + evictionCount + "}";
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.extensions;
+
+import org.wso2.charon.core.v2.attributes.Attribute;
+import org.wso2.charon.core.v2.attributes.ComplexAttribute;
+import org.wso2.charon.core.v2.attributes.MultiValuedAttribute;
+import org.wso2.charon.core.v2.attributes.SimpleAttribute;
+import org.wso2.charon.core.v2.exceptions.BadRequestException;
+import org.wso2.charon.core.v2.exceptions.CharonException;
+import org.wso2.charon.core.v2.exceptions.ConflictException;
+import org.wso2.charon.core.v2.exceptions.NotFoundException;
+import org.wso2.charon.core.v2.exceptions.NotImplementedException;
+import org.wso2.charon.core.v2.objects.AbstractSCIMObject;
+import org.wso2.charon.core.v2.objects.Group;
+import org.wso2.charon.core.v2.objects.User;
+import org.wso2.charon.core.v2.schema.SCIMConstants;
+import org.wso2.charon.core.v2.utils.codeutils.Node;
+import org.wso2.charon.core.v2.utils.codeutils.PageCursor;
+import org.wso2.charon.core.v2.utils.codeutils.SearchRequest;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A UserManager which caches the users and groups read by id from another UserManager, so that repeated
+ * reads of the same resource (eg: GET /Users/{id}, and the read of the old resource on each PUT) do not hit
+ * the store behind it.
+ * Each cache is bounded in the number of resources and in the time a resource is kept after it was read. A
+ * resource is cached once for each set of required attributes it was read with, and all of them are dropped
+ * when the resource is updated or deleted through this user manager. As a group lists its members and a
+ * user lists its groups, writes of one also drop the related resources of the other. Changes made to the
+ * store by other means are seen once the cached resources expire.
+ * Resources are copied on their way in and out of the caches, so that the cached resources are not changed
+ * by the callers, eg: by ServerSideValidator.
+ * List, search and Me requests are not cached and go to the user manager behind the cache.
+ */
+public class CachingUserManager implements CursorUserManager {
+
+    private static final int DEFAULT_MAXIMUM_SIZE = 10000;
+    private static final long DEFAULT_TIME_TO_LIVE_SECONDS = 300;
+
+    private final UserManager userManager;
+    private final ResourceCache<User> userCache;
+    private final ResourceCache<Group> groupCache;
+
+    public CachingUserManager(UserManager userManager) {
+        this(userManager, DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Creates a cache in front of the given user manager.
+     *
+     * @param userManager - user manager the resources are read from and written to
+     * @param maximumSize - maximum number of users, and of groups, to be cached
+     * @param timeToLive  - time a resource is kept after it was read
+     * @param unit        - unit of the time to live
+     */
+    public CachingUserManager(UserManager userManager, int maximumSize, long timeToLive, TimeUnit unit) {
+        if (userManager == null) {
+            throw new IllegalArgumentException("Provided user manager handler is null.");
+        }
+        if (maximumSize < 0 || timeToLive < 0) {
+            throw new IllegalArgumentException("Maximum size and time to live of the cache can not be negative.");
+        }
+        this.userManager = userManager;
+        this.userCache = new ResourceCache<>(maximumSize, unit.toNanos(timeToLive));
+        this.groupCache = new ResourceCache<>(maximumSize, unit.toNanos(timeToLive));
+    }
+
+        /***************User Manipulation operations.*******************/
+
+    @Override
+    public User createUser(User user, Map<String, Boolean> requiredAttributes)
+            throws CharonException, ConflictException, BadRequestException {
+        return userManager.createUser(user, requiredAttributes);
+    }
+
+    @Override
+    public User getUser(String id, Map<String, Boolean> requiredAttributes)
+            throws CharonException, BadRequestException {
+        User user = userCache.get(id, requiredAttributes);
+        if (user != null) {
+            return user;
+        }
+        long generation = userCache.getGeneration(id);
+        long start = System.nanoTime();
+        user = userManager.getUser(id, requiredAttributes);
+        userCache.put(id, requiredAttributes, user, generation, System.nanoTime() - start);
+        return user;
+    }
+
+    @Override
+    public void deleteUser(String userId)
+            throws NotFoundException, CharonException, NotImplementedException, BadRequestException {
+        try {
+            userManager.deleteUser(userId);
+        } finally {
+            invalidateUser(userId);
+        }
+    }
+
+    @Override
+    public List<Object> listUsersWithGET(Node node, int startIndex, int count, String sortBy, String sortOrder,
+                                         Map<String, Boolean> requiredAttributes)
+            throws CharonException, NotImplementedException, BadRequestException {
+        return userManager.listUsersWithGET(node, startIndex, count, sortBy, sortOrder, requiredAttributes);
+    }
+
+    @Override
+    public List<Object> listUsersWithPost(SearchRequest searchRequest, Map<String, Boolean> requiredAttributes)
+            throws CharonException, NotImplementedException, BadRequestException {
+        return userManager.listUsersWithPost(searchRequest, requiredAttributes);
+    }
+
+    @Override
+    public List<Object> listUsersWithCursor(Node node, PageCursor cursor, int count, String sortBy,
+                                            String sortOrder, Map<String, Boolean> requiredAttributes)
+            throws CharonException, NotImplementedException, BadRequestException {
+        if (!(userManager instanceof CursorUserManager)) {
+            String error = "Cursor based pagination is not supported by the user manager.";
+            throw new NotImplementedException(error);
+        }
+        return ((CursorUserManager) userManager).listUsersWithCursor(node, cursor, count, sortBy, sortOrder,
+                requiredAttributes);
+    }
+
+    @Override
+    public User updateUser(User updatedUser, Map<String, Boolean> requiredAttributes)
+            throws NotImplementedException, CharonException, BadRequestException {
+        try {
+            return userManager.updateUser(updatedUser, requiredAttributes);
+        } finally {
+            invalidateUser(getId(updatedUser));
+        }
+    }
+
+    @Override
+    public User getMe(String userName, Map<String, Boolean> requiredAttributes)
+            throws CharonException, BadRequestException, NotFoundException {
+        return userManager.getMe(userName, requiredAttributes);
+    }
+
+    @Override
+    public User createMe(User user, Map<String, Boolean> requiredAttributes)
+            throws CharonException, ConflictException, BadRequestException {
+        return userManager.createMe(user, requiredAttributes);
+    }
+
+    @Override
+    public void deleteMe(String userName)
+            throws NotFoundException, CharonException, NotImplementedException, BadRequestException {
+        try {
+            userManager.deleteMe(userName);
+        } finally {
+            //the id of the user is not known here
+            userCache.invalidate(new UserNameMatcher(userName));
+            groupCache.invalidateAll();
+        }
+    }
+
+    @Override
+    public User updateMe(User updatedUser, Map<String, Boolean> requiredAttributes)
+            throws NotImplementedException, CharonException, BadRequestException {
+        try {
+            return userManager.updateMe(updatedUser, requiredAttributes);
+        } finally {
+            String id = getId(updatedUser);
+            if (id != null) {
+                invalidateUser(id);
+            } else {
+                userCache.invalidate(new UserNameMatcher(updatedUser.getUserName()));
+                groupCache.invalidateAll();
+            }
+        }
+    }
+
+   /* ****************Group manipulation operations.********************/
+
+    @Override
+    public Group createGroup(Group group, Map<String, Boolean> requiredAttributes)
+            throws CharonException, ConflictException, NotImplementedException, BadRequestException {
+        try {
+            return userManager.createGroup(group, requiredAttributes);
+        } finally {
+            //the members now list the group
+            invalidateUsers(getValues(group, SCIMConstants.GroupSchemaConstants.MEMBERS));
+        }
+    }
+
+    @Override
+    public Group getGroup(String id, Map<String, Boolean> requiredAttributes)
+            throws NotImplementedException, BadRequestException, CharonException {
+        Group group = groupCache.get(id, requiredAttributes);
+        if (group != null) {
+            return group;
+        }
+        long generation = groupCache.getGeneration(id);
+        long start = System.nanoTime();
+        group = userManager.getGroup(id, requiredAttributes);
+        groupCache.put(id, requiredAttributes, group, generation, System.nanoTime() - start);
+        return group;
+    }
+
+    @Override
+    public void deleteGroup(String id)
+            throws NotFoundException, CharonException, NotImplementedException, BadRequestException {
+        try {
+            userManager.deleteGroup(id);
+        } finally {
+            groupCache.invalidate(id);
+            userCache.invalidate(new MemberMatcher<User>(SCIMConstants.UserSchemaConstants.GROUPS,
+                    Collections.singleton(id)));
+        }
+    }
+
+    @Override
+    public List<Object> listGroupsWithGET(Node node, int startIndex, int count, String sortBy, String sortOrder,
+                                          Map<String, Boolean> requiredAttributes)
+            throws CharonException, NotImplementedException, BadRequestException {
+        return userManager.listGroupsWithGET(node, startIndex, count, sortBy, sortOrder, requiredAttributes);
+    }
+
+    @Override
+    public Group updateGroup(Group oldGroup, Group newGroup, Map<String, Boolean> requiredAttributes)
+            throws NotImplementedException, BadRequestException, CharonException {
+        try {
+            return userManager.updateGroup(oldGroup, newGroup, requiredAttributes);
+        } finally {
+            groupCache.invalidate(getId(oldGroup));
+            groupCache.invalidate(getId(newGroup));
+            //both the removed and the added members list the group differently now
+            Set<String> members = getValues(oldGroup, SCIMConstants.GroupSchemaConstants.MEMBERS);
+            members.addAll(getValues(newGroup, SCIMConstants.GroupSchemaConstants.MEMBERS));
+            invalidateUsers(members);
+        }
+    }
+
+    @Override
+    public List<Object> listGroupsWithPost(SearchRequest searchRequest, Map<String, Boolean> requiredAttributes)
+            throws NotImplementedException, BadRequestException, CharonException {
+        return userManager.listGroupsWithPost(searchRequest, requiredAttributes);
+    }
+
+    /**
+     * Returns the statistics of the user cache.
+     *
+     * @return CacheStats
+     */
+    public CacheStats getUserCacheStats() {
+        return userCache.getStats();
+    }
+
+    /**
+     * Returns the statistics of the group cache.
+     *
+     * @return CacheStats
+     */
+    public CacheStats getGroupCacheStats() {
+        return groupCache.getStats();
+    }
+
+    /**
+     * Drops all the cached users and groups, eg: after the store was changed by other means.
+     */
+    public void invalidateAll() {
+        userCache.invalidateAll();
+        groupCache.invalidateAll();
+    }
+
+    /*
+     * Drops the user and the groups which list it as a member.
+     */
+    private void invalidateUser(String id) throws CharonException {
+        userCache.invalidate(id);
+        if (id != null) {
+            groupCache.invalidate(new MemberMatcher<Group>(SCIMConstants.GroupSchemaConstants.MEMBERS,
+                    Collections.singleton(id)));
+        }
+    }
+
+    private void invalidateUsers(Set<String> ids) {
+        for (String id : ids) {
+            userCache.invalidate(id);
+        }
+    }
+
+    private static String getId(AbstractSCIMObject resource) throws CharonException {
+        return resource == null ? null : resource.getId();
+    }
+
+    /*
+     * Returns the value sub attributes of a multi valued complex attribute, eg: the ids of the members of a
+     * group or of the groups of a user.
+     */
+    private static Set<String> getValues(AbstractSCIMObject resource, String attributeName) {
+        Set<String> values = new HashSet<>();
+        Attribute attribute = resource == null ? null : resource.getAttributeList().get(attributeName);
+        if (!(attribute instanceof MultiValuedAttribute) ||
+                ((MultiValuedAttribute) attribute).getAttributeValues() == null) {
+            return values;
+        }
+        for (Attribute value : ((MultiValuedAttribute) attribute).getAttributeValues()) {
+            if (value instanceof ComplexAttribute && ((ComplexAttribute) value).getSubAttributesList() != null) {
+                Attribute subAttribute = ((ComplexAttribute) value).getSubAttributesList().get(
+                        SCIMConstants.CommonSchemaConstants.VALUE);
+                if (subAttribute instanceof SimpleAttribute &&
+                        ((SimpleAttribute) subAttribute).getValue() instanceof String) {
+                    values.add((String) ((SimpleAttribute) subAttribute).getValue());
+                }
+            }
+        }
+        return values;
+    }
+
+    /*
+     * Matches the resources which refer to any of the given ids in a multi valued complex attribute.
+     */
+    private static final class MemberMatcher<T extends AbstractSCIMObject> implements ResourceCache.Matcher<T> {
+
+        private final String attributeName;
+        private final Set<String> ids;
+
+        private MemberMatcher(String attributeName, Set<String> ids) {
+            this.attributeName = attributeName;
+            this.ids = ids;
+        }
+
+        @Override
+        public boolean matches(T resource) {
+            return !Collections.disjoint(getValues(resource, attributeName), ids);
+        }
+    }
+
+    private static final class UserNameMatcher implements ResourceCache.Matcher<User> {
+
+        private final String userName;
+
+        private UserNameMatcher(String userName) {
+            this.userName = userName;
+        }
+
+        @Override
+        public boolean matches(User user) throws CharonException {
+            //userName is not case exact
+            return userName != null && userName.equalsIgnoreCase(user.getUserName());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.extensions;
+
+import org.wso2.charon.core.v2.exceptions.BadRequestException;
+import org.wso2.charon.core.v2.exceptions.CharonException;
+import org.wso2.charon.core.v2.exceptions.NotImplementedException;
+import org.wso2.charon.core.v2.utils.codeutils.Node;
+import org.wso2.charon.core.v2.utils.codeutils.PageCursor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A UserManager which can list users page by page with cursors, so that each page is read from the store
+ * with a seek to the end of the previous one (eg: an index on the sort attribute and id) instead of skipping
+ * startIndex users. The endpoints use it when a list or search request has a cursor.
+ */
+public interface CursorUserManager extends UserManager {
+
+    /**
+     * Returns the users matching the filter which are ordered after the cursor, ordered by the sortBy
+     * attribute and then by id, or by id only if there is no sortBy attribute. Users without a value for the
+     * sortBy attribute are last in ascending and first in descending order. The first element of the list is
+     * the total number of users matching the filter, as in listUsersWithGET. The cursor of the next page is
+     * taken from the last user, so it has to be returned with its sortBy attribute even if that attribute is
+     * not one of the required attributes.
+     *
+     * @param node               - root of the filter tree, null if there is no filter
+     * @param cursor             - position of the last user of the previous page, null for the first page
+     * @param count              - maximum number of users to be returned
+     * @param sortBy             - attribute URI to sort by, or null
+     * @param sortOrder          - ascending or descending
+     * @param requiredAttributes - URIs of the attributes which must be returned
+     * @return total number of matching users, followed by the users of the page
+     */
+    public List<Object> listUsersWithCursor(Node node, PageCursor cursor, int count, String sortBy,
+                                            String sortOrder, Map<String, Boolean> requiredAttributes)
+            throws CharonException, NotImplementedException, BadRequestException;
+}
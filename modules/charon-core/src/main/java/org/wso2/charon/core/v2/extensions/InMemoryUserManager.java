@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.extensions;
+
+import org.wso2.charon.core.v2.exceptions.BadRequestException;
+import org.wso2.charon.core.v2.exceptions.CharonException;
+import org.wso2.charon.core.v2.exceptions.ConflictException;
+import org.wso2.charon.core.v2.exceptions.NotFoundException;
+import org.wso2.charon.core.v2.objects.AbstractSCIMObject;
+import org.wso2.charon.core.v2.objects.Group;
+import org.wso2.charon.core.v2.objects.User;
+import org.wso2.charon.core.v2.protocol.ResponseCodeConstants;
+import org.wso2.charon.core.v2.schema.SCIMResourceSchemaManager;
+import org.wso2.charon.core.v2.schema.SCIMResourceTypeSchema;
+import org.wso2.charon.core.v2.utils.CopyUtil;
+import org.wso2.charon.core.v2.utils.codeutils.FilterEvaluator;
+import org.wso2.charon.core.v2.utils.codeutils.FilterPredicate;
+import org.wso2.charon.core.v2.utils.codeutils.Node;
+import org.wso2.charon.core.v2.utils.codeutils.PageCursor;
+import org.wso2.charon.core.v2.utils.codeutils.ResourceSorter;
+import org.wso2.charon.core.v2.utils.codeutils.SearchRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A UserManager which keeps the users and groups in memory, eg: for tests, demos or as a reference for
+ * other implementations.
+ * Users and groups are kept in concurrent maps keyed by id, and users are also indexed by userName and
+ * externalId, which are kept unique. Reads do not lock, writes lock on the id of the resource only.
+ * Resources are copied on their way in and out, so that the stored resources are not changed by the callers.
+ * List and search requests are filtered, sorted and paged with FilterEvaluator and ResourceSorter. A filter
+ * of the form userName eq "x" or externalId eq "x" is answered from the index.
+ */
+public class InMemoryUserManager implements CursorUserManager {
+
+    private final ConcurrentMap<String, User> users = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Group> groups = new ConcurrentHashMap<>();
+
+    private final UserIndex userIndex = new UserIndex();
+
+        /***************User Manipulation operations.*******************/
+
+    @Override
+    public User createUser(User user, Map<String, Boolean> requiredAttributes)
+            throws CharonException, ConflictException, BadRequestException {
+        User storedUser = CopyUtil.copySCIMObject(user);
+        String id = getRequiredId(storedUser);
+        synchronized (userIndex.getLock(id)) {
+            if (users.containsKey(id)) {
+                throw new ConflictException("User with the id " + id + " already exists.");
+            }
+            String error = userIndex.claim(storedUser, null, id);
+            if (error != null) {
+                throw new ConflictException(error);
+            }
+            users.put(id, storedUser);
+        }
+        return user;
+    }
+
+    @Override
+    public User getUser(String id, Map<String, Boolean> requiredAttributes) throws CharonException {
+        User user = id == null ? null : users.get(id);
+        return user == null ? null : CopyUtil.copySCIMObject(user);
+    }
+
+    @Override
+    public void deleteUser(String userId) throws NotFoundException, CharonException {
+        if (userId == null) {
+            throw new NotFoundException();
+        }
+        synchronized (userIndex.getLock(userId)) {
+            User removedUser = users.remove(userId);
+            if (removedUser == null) {
+                throw new NotFoundException();
+            }
+            userIndex.release(removedUser, null, userId);
+        }
+    }
+
+    @Override
+    public List<Object> listUsersWithGET(Node node, int startIndex, int count, String sortBy, String sortOrder,
+                                         Map<String, Boolean> requiredAttributes)
+            throws CharonException, BadRequestException {
+        SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getUserResourceSchema();
+        FilterPredicate predicate = FilterEvaluator.compile(node, schema);
+        ResourceSorter sorter = ResourceSorter.compile(sortBy, sortOrder, schema);
+        return toListResult(sorter.getPage(getUserCandidates(node, schema), predicate, startIndex, count));
+    }
+
+    @Override
+    public List<Object> listUsersWithPost(SearchRequest searchRequest, Map<String, Boolean> requiredAttributes)
+            throws CharonException, BadRequestException {
+        return listUsersWithGET(searchRequest.getFilter(), searchRequest.getStartIndex(), searchRequest.getCount(),
+                searchRequest.getSortBy(), searchRequest.getSortOder(), requiredAttributes);
+    }
+
+    @Override
+    public List<Object> listUsersWithCursor(Node node, PageCursor cursor, int count, String sortBy,
+                                            String sortOrder, Map<String, Boolean> requiredAttributes)
+            throws CharonException, BadRequestException {
+        SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getUserResourceSchema();
+        FilterPredicate predicate = FilterEvaluator.compile(node, schema);
+        ResourceSorter sorter = ResourceSorter.compile(sortBy, sortOrder, schema);
+        return toListResult(sorter.getPageAfter(getUserCandidates(node, schema), predicate, cursor, count));
+    }
+
+    @Override
+    public User updateUser(User updatedUser, Map<String, Boolean> requiredAttributes)
+            throws CharonException, BadRequestException {
+        User storedUser = CopyUtil.copySCIMObject(updatedUser);
+        String id = getRequiredId(storedUser);
+        synchronized (userIndex.getLock(id)) {
+            User oldUser = users.get(id);
+            if (oldUser == null) {
+                throw new CharonException("User with the id " + id + " does not exist.");
+            }
+            //the new keys are claimed before the old ones are released, so that no other user can take them
+            String error = userIndex.claim(storedUser, oldUser, id);
+            if (error != null) {
+                throw new BadRequestException(error, ResponseCodeConstants.UNIQUENESS);
+            }
+            users.put(id, storedUser);
+            userIndex.release(oldUser, storedUser, id);
+        }
+        return updatedUser;
+    }
+
+    @Override
+    public User getMe(String userName, Map<String, Boolean> requiredAttributes)
+            throws CharonException, NotFoundException {
+        String id = userIndex.getUserId(userName);
+        User user = id == null ? null : getUser(id, requiredAttributes);
+        if (user == null) {
+            throw new NotFoundException();
+        }
+        return user;
+    }
+
+    @Override
+    public User createMe(User user, Map<String, Boolean> requiredAttributes)
+            throws CharonException, ConflictException, BadRequestException {
+        return createUser(user, requiredAttributes);
+    }
+
+    @Override
+    public void deleteMe(String userName) throws NotFoundException, CharonException {
+        String id = userIndex.getUserId(userName);
+        if (id == null) {
+            throw new NotFoundException();
+        }
+        deleteUser(id);
+    }
+
+    @Override
+    public User updateMe(User updatedUser, Map<String, Boolean> requiredAttributes)
+            throws CharonException, BadRequestException {
+        return updateUser(updatedUser, requiredAttributes);
+    }
+
+   /* ****************Group manipulation operations.********************/
+
+    @Override
+    public Group createGroup(Group group, Map<String, Boolean> requiredAttributes)
+            throws CharonException, ConflictException, BadRequestException {
+        Group storedGroup = CopyUtil.copySCIMObject(group);
+        String id = getRequiredId(storedGroup);
+        if (groups.putIfAbsent(id, storedGroup) != null) {
+            throw new ConflictException("Group with the id " + id + " already exists.");
+        }
+        return group;
+    }
+
+    @Override
+    public Group getGroup(String id, Map<String, Boolean> requiredAttributes) throws CharonException {
+        Group group = id == null ? null : groups.get(id);
+        return group == null ? null : CopyUtil.copySCIMObject(group);
+    }
+
+    @Override
+    public void deleteGroup(String id) throws NotFoundException {
+        if (id == null || groups.remove(id) == null) {
+            throw new NotFoundException();
+        }
+    }
+
+    @Override
+    public List<Object> listGroupsWithGET(Node node, int startIndex, int count, String sortBy, String sortOrder,
+                                          Map<String, Boolean> requiredAttributes)
+            throws CharonException, BadRequestException {
+        SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getGroupResourceSchema();
+        FilterPredicate predicate = FilterEvaluator.compile(node, schema);
+        ResourceSorter sorter = ResourceSorter.compile(sortBy, sortOrder, schema);
+        return toListResult(sorter.getPage(groups.values(), predicate, startIndex, count));
+    }
+
+    @Override
+    public Group updateGroup(Group oldGroup, Group newGroup, Map<String, Boolean> requiredAttributes)
+            throws CharonException, BadRequestException {
+        Group storedGroup = CopyUtil.copySCIMObject(newGroup);
+        String id = getRequiredId(storedGroup);
+        if (groups.replace(id, storedGroup) == null) {
+            throw new CharonException("Group with the id " + id + " does not exist.");
+        }
+        return newGroup;
+    }
+
+    @Override
+    public List<Object> listGroupsWithPost(SearchRequest searchRequest, Map<String, Boolean> requiredAttributes)
+            throws BadRequestException, CharonException {
+        return listGroupsWithGET(searchRequest.getFilter(), searchRequest.getStartIndex(),
+                searchRequest.getCount(), searchRequest.getSortBy(), searchRequest.getSortOder(),
+                requiredAttributes);
+    }
+
+    /*
+     * Returns the users which may match the filter. An eq filter on userName or externalId, or an in expression
+     * of FilterOptimizer on them, is looked up in the index, any other filter has to be tested against every user.
+     */
+    private Iterable<User> getUserCandidates(Node node, SCIMResourceTypeSchema schema) throws BadRequestException {
+        List<String> ids = userIndex.getUserIds(node, schema);
+        if (ids == null) {
+            return users.values();
+        }
+        List<User> candidates = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            User user = users.get(id);
+            if (user != null) {
+                candidates.add(user);
+            }
+        }
+        return candidates;
+    }
+
+    /*
+     * Returns the total number of results followed by copies of the resources of the page.
+     */
+    private static List<Object> toListResult(ResourceSorter.Page<? extends AbstractSCIMObject> page)
+            throws CharonException {
+        List<Object> result = new ArrayList<>(page.getResources().size() + 1);
+        result.add(page.getTotalResults());
+        for (AbstractSCIMObject resource : page.getResources()) {
+            result.add(CopyUtil.copySCIMObject(resource));
+        }
+        return result;
+    }
+
+    private static String getRequiredId(AbstractSCIMObject resource) throws CharonException {
+        String id = resource.getId();
+        if (id == null) {
+            throw new CharonException("Id of the resource is not set.");
+        }
+        return id;
+    }
+}
@@ -0,0 +1,540 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.extensions;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.charon.core.v2.encoder.BinaryRecordSerializer;
+import org.wso2.charon.core.v2.exceptions.BadRequestException;
+import org.wso2.charon.core.v2.exceptions.CharonException;
+import org.wso2.charon.core.v2.exceptions.ConflictException;
+import org.wso2.charon.core.v2.exceptions.NotFoundException;
+import org.wso2.charon.core.v2.objects.AbstractSCIMObject;
+import org.wso2.charon.core.v2.objects.Group;
+import org.wso2.charon.core.v2.objects.User;
+import org.wso2.charon.core.v2.protocol.ResponseCodeConstants;
+import org.wso2.charon.core.v2.schema.SCIMConstants;
+import org.wso2.charon.core.v2.schema.SCIMResourceSchemaManager;
+import org.wso2.charon.core.v2.schema.SCIMResourceTypeSchema;
+import org.wso2.charon.core.v2.utils.codeutils.FilterEvaluator;
+import org.wso2.charon.core.v2.utils.codeutils.FilterPredicate;
+import org.wso2.charon.core.v2.utils.codeutils.Node;
+import org.wso2.charon.core.v2.utils.codeutils.PageCursor;
+import org.wso2.charon.core.v2.utils.codeutils.ResourceSorter;
+import org.wso2.charon.core.v2.utils.codeutils.SearchRequest;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A UserManager which keeps the users and groups on the disk, in append only logs of memory mapped segment
+ * files (see SegmentLog), under the Users and Groups sub directories of the given directory.
+ * Resources are stored as BinaryRecordSerializer records, which can still be read after the schema is
+ * extended or changed. A write is a sequential append of the record and a read deserializes a slice of a
+ * mapped segment, so neither opens a file. Superseded records are compacted in the background, and the logs
+ * are replayed when the user manager is opened, which recovers them after a crash.
+ * As in InMemoryUserManager, userName and externalId are kept unique by indexes, which are rebuilt when the
+ * user manager is opened, and list and search requests are filtered, sorted and paged with FilterEvaluator
+ * and ResourceSorter, decoding one resource at a time.
+ */
+public class LogStructuredUserManager implements CursorUserManager, Closeable {
+
+    private static final Log logger = LogFactory.getLog(LogStructuredUserManager.class);
+
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final long COMPACTION_INTERVAL_SECONDS = 60;
+
+    private final SegmentLog userLog;
+    private final SegmentLog groupLog;
+    private final BinaryRecordSerializer serializer = new BinaryRecordSerializer();
+
+    private final UserIndex userIndex = new UserIndex();
+
+    private final ScheduledExecutorService compactionExecutor;
+
+    public LogStructuredUserManager(File directory) throws CharonException {
+        this(directory, DEFAULT_SEGMENT_SIZE, true);
+    }
+
+    /**
+     * Opens the store in the given directory, replaying its logs.
+     *
+     * @param directory   - directory of the store, created if it does not exist
+     * @param segmentSize - size of the segment files in bytes
+     * @param syncWrites  - whether each write is forced to the disk before it returns
+     * @throws CharonException if the logs could not be read
+     */
+    public LogStructuredUserManager(File directory, int segmentSize, boolean syncWrites) throws CharonException {
+        SegmentLog users = null;
+        SegmentLog groups = null;
+        boolean opened = false;
+        try {
+            users = new SegmentLog(new File(directory, SCIMConstants.USER_ENDPOINT.substring(1)), segmentSize,
+                    syncWrites);
+            groups = new SegmentLog(new File(directory, SCIMConstants.GROUP_ENDPOINT.substring(1)), segmentSize,
+                    syncWrites);
+            for (String id : users.keys()) {
+                User user;
+                try {
+                    user = deserializeUser(users.get(id));
+                } catch (CharonException e) {
+                    //one bad record must not make the whole store unusable
+                    logger.error("Skipping the stored user " + id + " which could not be read.", e);
+                    continue;
+                }
+                String error = user == null ? null : userIndex.claim(user, null, id);
+                if (error != null) {
+                    logger.error("Stored user " + id + " is not unique. " + error);
+                }
+            }
+            opened = true;
+        } catch (IOException e) {
+            throw new CharonException("Error in opening the user store in " + directory, e);
+        } finally {
+            if (!opened) {
+                closeQuietly(users);
+                closeQuietly(groups);
+            }
+        }
+        userLog = users;
+        groupLog = groups;
+        compactionExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "charon-log-compaction");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        compactionExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                } catch (CharonException e) {
+                    logger.error(e.getDetail(), e);
+                }
+            }
+        }, COMPACTION_INTERVAL_SECONDS, COMPACTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+        /***************User Manipulation operations.*******************/
+
+    @Override
+    public User createUser(User user, Map<String, Boolean> requiredAttributes)
+            throws CharonException, ConflictException {
+        String id = getRequiredId(user);
+        byte[] record = serializer.serialize(user, getUserSchema());
+        synchronized (userIndex.getLock(id)) {
+            if (userLog.get(id) != null) {
+                throw new ConflictException("User with the id " + id + " already exists.");
+            }
+            String error = userIndex.claim(user, null, id);
+            if (error != null) {
+                throw new ConflictException(error);
+            }
+            try {
+                userLog.put(id, record);
+            } catch (IOException e) {
+                userIndex.release(user, null, id);
+                throw new CharonException("Error in writing the user " + id, e);
+            }
+        }
+        return user;
+    }
+
+    @Override
+    public User getUser(String id, Map<String, Boolean> requiredAttributes) throws CharonException {
+        return id == null ? null : readUser(id);
+    }
+
+    @Override
+    public void deleteUser(String userId) throws NotFoundException, CharonException {
+        if (userId == null) {
+            throw new NotFoundException();
+        }
+        synchronized (userIndex.getLock(userId)) {
+            User user = readUser(userId);
+            if (user == null) {
+                throw new NotFoundException();
+            }
+            try {
+                userLog.delete(userId);
+            } catch (IOException e) {
+                throw new CharonException("Error in deleting the user " + userId, e);
+            }
+            userIndex.release(user, null, userId);
+        }
+    }
+
+    @Override
+    public List<Object> listUsersWithGET(Node node, int startIndex, int count, String sortBy, String sortOrder,
+                                         Map<String, Boolean> requiredAttributes)
+            throws CharonException, BadRequestException {
+        SCIMResourceTypeSchema schema = getUserSchema();
+        FilterPredicate predicate = FilterEvaluator.compile(node, schema);
+        ResourceSorter sorter = ResourceSorter.compile(sortBy, sortOrder, schema);
+        return toListResult(sorter.getPage(getUserCandidates(node, schema), predicate, startIndex, count));
+    }
+
+    @Override
+    public List<Object> listUsersWithPost(SearchRequest searchRequest, Map<String, Boolean> requiredAttributes)
+            throws CharonException, BadRequestException {
+        return listUsersWithGET(searchRequest.getFilter(), searchRequest.getStartIndex(), searchRequest.getCount(),
+                searchRequest.getSortBy(), searchRequest.getSortOder(), requiredAttributes);
+    }
+
+    @Override
+    public List<Object> listUsersWithCursor(Node node, PageCursor cursor, int count, String sortBy,
+                                            String sortOrder, Map<String, Boolean> requiredAttributes)
+            throws CharonException, BadRequestException {
+        SCIMResourceTypeSchema schema = getUserSchema();
+        FilterPredicate predicate = FilterEvaluator.compile(node, schema);
+        ResourceSorter sorter = ResourceSorter.compile(sortBy, sortOrder, schema);
+        return toListResult(sorter.getPageAfter(getUserCandidates(node, schema), predicate, cursor, count));
+    }
+
+    @Override
+    public User updateUser(User updatedUser, Map<String, Boolean> requiredAttributes)
+            throws CharonException, BadRequestException {
+        String id = getRequiredId(updatedUser);
+        byte[] record = serializer.serialize(updatedUser, getUserSchema());
+        synchronized (userIndex.getLock(id)) {
+            User oldUser = readUser(id);
+            if (oldUser == null) {
+                throw new CharonException("User with the id " + id + " does not exist.");
+            }
+            //the new keys are claimed before the old ones are released, so that no other user can take them
+            String error = userIndex.claim(updatedUser, oldUser, id);
+            if (error != null) {
+                throw new BadRequestException(error, ResponseCodeConstants.UNIQUENESS);
+            }
+            try {
+                userLog.put(id, record);
+            } catch (IOException e) {
+                userIndex.release(updatedUser, oldUser, id);
+                throw new CharonException("Error in writing the user " + id, e);
+            }
+            userIndex.release(oldUser, updatedUser, id);
+        }
+        return updatedUser;
+    }
+
+    @Override
+    public User getMe(String userName, Map<String, Boolean> requiredAttributes)
+            throws CharonException, NotFoundException {
+        String id = userIndex.getUserId(userName);
+        User user = id == null ? null : readUser(id);
+        if (user == null) {
+            throw new NotFoundException();
+        }
+        return user;
+    }
+
+    @Override
+    public User createMe(User user, Map<String, Boolean> requiredAttributes)
+            throws CharonException, ConflictException {
+        return createUser(user, requiredAttributes);
+    }
+
+    @Override
+    public void deleteMe(String userName) throws NotFoundException, CharonException {
+        String id = userIndex.getUserId(userName);
+        if (id == null) {
+            throw new NotFoundException();
+        }
+        deleteUser(id);
+    }
+
+    @Override
+    public User updateMe(User updatedUser, Map<String, Boolean> requiredAttributes)
+            throws CharonException, BadRequestException {
+        return updateUser(updatedUser, requiredAttributes);
+    }
+
+   /* ****************Group manipulation operations.********************/
+
+    @Override
+    public Group createGroup(Group group, Map<String, Boolean> requiredAttributes)
+            throws CharonException, ConflictException {
+        String id = getRequiredId(group);
+        byte[] record = serializer.serialize(group, getGroupSchema());
+        synchronized (userIndex.getLock(id)) {
+            if (groupLog.get(id) != null) {
+                throw new ConflictException("Group with the id " + id + " already exists.");
+            }
+            writeGroup(id, record);
+        }
+        return group;
+    }
+
+    @Override
+    public Group getGroup(String id, Map<String, Boolean> requiredAttributes) throws CharonException {
+        return id == null ? null : readGroup(id);
+    }
+
+    @Override
+    public void deleteGroup(String id) throws NotFoundException, CharonException {
+        if (id == null) {
+            throw new NotFoundException();
+        }
+        synchronized (userIndex.getLock(id)) {
+            try {
+                if (!groupLog.delete(id)) {
+                    throw new NotFoundException();
+                }
+            } catch (IOException e) {
+                throw new CharonException("Error in deleting the group " + id, e);
+            }
+        }
+    }
+
+    @Override
+    public List<Object> listGroupsWithGET(Node node, int startIndex, int count, String sortBy, String sortOrder,
+                                          Map<String, Boolean> requiredAttributes)
+            throws CharonException, BadRequestException {
+        SCIMResourceTypeSchema schema = getGroupSchema();
+        FilterPredicate predicate = FilterEvaluator.compile(node, schema);
+        ResourceSorter sorter = ResourceSorter.compile(sortBy, sortOrder, schema);
+        return toListResult(sorter.getPage(getGroups(), predicate, startIndex, count));
+    }
+
+    @Override
+    public Group updateGroup(Group oldGroup, Group newGroup, Map<String, Boolean> requiredAttributes)
+            throws CharonException {
+        String id = getRequiredId(newGroup);
+        byte[] record = serializer.serialize(newGroup, getGroupSchema());
+        synchronized (userIndex.getLock(id)) {
+            if (groupLog.get(id) == null) {
+                throw new CharonException("Group with the id " + id + " does not exist.");
+            }
+            writeGroup(id, record);
+        }
+        return newGroup;
+    }
+
+    @Override
+    public List<Object> listGroupsWithPost(SearchRequest searchRequest, Map<String, Boolean> requiredAttributes)
+            throws BadRequestException, CharonException {
+        return listGroupsWithGET(searchRequest.getFilter(), searchRequest.getStartIndex(),
+                searchRequest.getCount(), searchRequest.getSortBy(), searchRequest.getSortOder(),
+                requiredAttributes);
+    }
+
+    /**
+     * Compacts the segments of the logs which hold mostly superseded records. This is done in the background
+     * every minute, and can be called to have it done right away.
+     *
+     * @throws CharonException
+     */
+    public void compact() throws CharonException {
+        try {
+            userLog.compact();
+            groupLog.compact();
+        } catch (IOException e) {
+            throw new CharonException("Error in compacting the user store.", e);
+        }
+    }
+
+    /**
+     * Stops the compaction and closes the logs. The user manager must not be used afterwards.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        compactionExecutor.shutdown();
+        try {
+            compactionExecutor.awaitTermination(COMPACTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            userLog.close();
+        } finally {
+            groupLog.close();
+        }
+    }
+
+    private void writeGroup(String id, byte[] record) throws CharonException {
+        try {
+            groupLog.put(id, record);
+        } catch (IOException e) {
+            throw new CharonException("Error in writing the group " + id, e);
+        }
+    }
+
+    /*
+     * Reads the stored user, returns null if there is no user with the id.
+     */
+    private User readUser(String id) throws CharonException {
+        return deserializeUser(userLog.get(id));
+    }
+
+    private User deserializeUser(ByteBuffer record) throws CharonException {
+        return record == null ? null : serializer.deserialize(record, getUserSchema(), new User());
+    }
+
+    private Group readGroup(String id) throws CharonException {
+        ByteBuffer record = groupLog.get(id);
+        return record == null ? null : serializer.deserialize(record, getGroupSchema(), new Group());
+    }
+
+    private static void closeQuietly(SegmentLog log) {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                logger.error("Error in closing the log of the user store.", e);
+            }
+        }
+    }
+
+    private static SCIMResourceTypeSchema getUserSchema() {
+        return SCIMResourceSchemaManager.getInstance().getUserResourceSchema();
+    }
+
+    private static SCIMResourceTypeSchema getGroupSchema() {
+        return SCIMResourceSchemaManager.getInstance().getGroupResourceSchema();
+    }
+
+    /*
+     * Returns the users which may match the filter. An eq filter on userName or externalId, or an in expression
+     * of FilterOptimizer on them, is looked up in the index, any other filter has to be tested against every user.
+     */
+    private Iterable<User> getUserCandidates(Node node, SCIMResourceTypeSchema schema)
+            throws BadRequestException, CharonException {
+        List<String> ids = userIndex.getUserIds(node, schema);
+        if (ids == null) {
+            return getUsers();
+        }
+        List<User> candidates = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            User user = readUser(id);
+            if (user != null) {
+                candidates.add(user);
+            }
+        }
+        return candidates;
+    }
+
+    /*
+     * Returns the stored users, decoded one at a time while iterating. A user deleted meanwhile, or which
+     * could not be decoded, is skipped.
+     */
+    private Iterable<User> getUsers() {
+        return new Iterable<User>() {
+            @Override
+            public Iterator<User> iterator() {
+                return new DecodingIterator<User>(userLog.keys().iterator()) {
+                    @Override
+                    User read(String id) throws CharonException {
+                        return readUser(id);
+                    }
+                };
+            }
+        };
+    }
+
+    private Iterable<Group> getGroups() {
+        return new Iterable<Group>() {
+            @Override
+            public Iterator<Group> iterator() {
+                return new DecodingIterator<Group>(groupLog.keys().iterator()) {
+                    @Override
+                    Group read(String id) throws CharonException {
+                        return readGroup(id);
+                    }
+                };
+            }
+        };
+    }
+
+    /*
+     * Returns the total number of results followed by the resources of the page.
+     */
+    private static List<Object> toListResult(ResourceSorter.Page<? extends AbstractSCIMObject> page) {
+        List<Object> result = new ArrayList<>(page.getResources().size() + 1);
+        result.add(page.getTotalResults());
+        result.addAll(page.getResources());
+        return result;
+    }
+
+    private static String getRequiredId(AbstractSCIMObject resource) throws CharonException {
+        String id = resource.getId();
+        if (id == null) {
+            throw new CharonException("Id of the resource is not set.");
+        }
+        return id;
+    }
+
+    /*
+     * Iterates the stored resources of the given ids, skipping the ones which are no longer stored or could
+     * not be decoded.
+     */
+    private abstract static class DecodingIterator<T> implements Iterator<T> {
+
+        private final Iterator<String> ids;
+        //resource read ahead by hasNext
+        private T nextResource;
+
+        private DecodingIterator(Iterator<String> ids) {
+            this.ids = ids;
+        }
+
+        abstract T read(String id) throws CharonException;
+
+        @Override
+        public boolean hasNext() {
+            while (nextResource == null && ids.hasNext()) {
+                String id = ids.next();
+                try {
+                    nextResource = read(id);
+                } catch (CharonException e) {
+                    logger.error("Skipping the stored resource " + id + " which could not be read.", e);
+                }
+            }
+            return nextResource != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T resource = nextResource;
+            nextResource = null;
+            return resource;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.extensions;
+
+import org.wso2.charon.core.v2.exceptions.CharonException;
+import org.wso2.charon.core.v2.objects.AbstractSCIMObject;
+import org.wso2.charon.core.v2.utils.CopyUtil;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of SCIM resources by id, bounded in the number of cached resources and in the time a resource
+ * is kept.
+ * A resource may be cached once for each set of required attributes it was read with, since a user manager
+ * may return a different set of attributes for each. All of them are dropped together when the resource is
+ * invalidated.
+ * The cache is split in segments by id, each of them a map in least recently used order with its own lock,
+ * and the least recently used resources of a segment are evicted when it is full.
+ * Resources are copied on their way in and out, so that the cached resources are not changed by the callers.
+ * A resource loaded while it is invalidated is not cached: loads take the generation of the segment before
+ * reading the resource, and a resource is only put if no invalidation happened in the segment since then.
+ */
+final class ResourceCache<T extends AbstractSCIMObject> {
+
+    private static final int MAX_SEGMENT_COUNT = 16;
+
+    private final List<Segment> segments;
+    private final long timeToLiveNanos;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong totalLoadTime = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * @param maximumSize     - maximum number of cached resources, counting each set of required attributes
+     * @param timeToLiveNanos - time a resource is kept after it was loaded, in nanoseconds
+     */
+    ResourceCache(int maximumSize, long timeToLiveNanos) {
+        int segmentCount = Math.max(1, Math.min(MAX_SEGMENT_COUNT, maximumSize));
+        this.segments = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            //spread the remainder, so that the segments add up to the maximum size
+            segments.add(new Segment(maximumSize / segmentCount + (i < maximumSize % segmentCount ? 1 : 0)));
+        }
+        this.timeToLiveNanos = timeToLiveNanos;
+    }
+
+    /**
+     * Returns a copy of the cached resource read with the given required attributes, or null if it is not
+     * cached or has expired.
+     *
+     * @param id                 - id of the resource
+     * @param requiredAttributes - required attributes the resource was read with
+     * @return copy of the resource
+     * @throws CharonException
+     */
+    T get(String id, Map<String, Boolean> requiredAttributes) throws CharonException {
+        T resource = getSegment(id).get(id, requiredAttributes, System.nanoTime());
+        if (resource == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        //cached resources are never changed, so they can be copied without the lock
+        return CopyUtil.copySCIMObject(resource);
+    }
+
+    /**
+     * Returns the generation to be given to put, to be taken before the resource is loaded.
+     *
+     * @param id - id of the resource to be loaded
+     * @return generation of the segment of the resource
+     */
+    long getGeneration(String id) {
+        Segment segment = getSegment(id);
+        synchronized (segment) {
+            return segment.generation;
+        }
+    }
+
+    /**
+     * Records a load of the resource, and caches a copy of it unless it was invalidated since the given
+     * generation was taken.
+     *
+     * @param id                 - id of the resource
+     * @param requiredAttributes - required attributes the resource was read with
+     * @param resource           - loaded resource, or null if there is no such resource
+     * @param generation         - generation taken before the resource was loaded
+     * @param loadTime           - time taken to load the resource, in nanoseconds
+     * @throws CharonException
+     */
+    void put(String id, Map<String, Boolean> requiredAttributes, T resource, long generation, long loadTime)
+            throws CharonException {
+        loadCount.incrementAndGet();
+        totalLoadTime.addAndGet(loadTime);
+        if (resource == null) {
+            return;
+        }
+        T copy = CopyUtil.copySCIMObject(resource);
+        //the caller may change its map of required attributes later
+        Map<String, Boolean> key = requiredAttributes == null ? null : new HashMap<>(requiredAttributes);
+        evictionCount.addAndGet(getSegment(id).put(id, key, copy, generation, System.nanoTime() + timeToLiveNanos));
+    }
+
+    /**
+     * Drops the resource with the given id, read with any set of required attributes.
+     *
+     * @param id - id of the resource
+     */
+    void invalidate(String id) {
+        if (id == null) {
+            return;
+        }
+        Segment segment = getSegment(id);
+        synchronized (segment) {
+            segment.generation++;
+            segment.remove(id);
+        }
+    }
+
+    /**
+     * Drops the resources which match the given matcher.
+     *
+     * @param matcher - decides which resources are dropped
+     */
+    void invalidate(Matcher<? super T> matcher) throws CharonException {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.generation++;
+                Iterator<Node> nodes = segment.nodes.values().iterator();
+                while (nodes.hasNext()) {
+                    Node node = nodes.next();
+                    for (Entry entry : node.entries.values()) {
+                        if (matcher.matches(entry.resource)) {
+                            segment.size -= node.entries.size();
+                            nodes.remove();
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all the resources.
+     */
+    void invalidateAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.generation++;
+                segment.nodes.clear();
+                segment.size = 0;
+            }
+        }
+    }
+
+    CacheStats getStats() {
+        return new CacheStats(hitCount.get(), missCount.get(), loadCount.get(), totalLoadTime.get(),
+                evictionCount.get());
+    }
+
+    private Segment getSegment(String id) {
+        int hash = id.hashCode();
+        //spread the bits of the hash, as the ids may only differ in their higher bits
+        hash ^= (hash >>> 16);
+        return segments.get((hash & 0x7fffffff) % segments.size());
+    }
+
+    /**
+     * Decides whether a cached resource is dropped.
+     */
+    interface Matcher<T> {
+
+        boolean matches(T resource) throws CharonException;
+    }
+
+    /*
+     * A part of the cache, guarded by its own lock.
+     */
+    private final class Segment {
+
+        private final int capacity;
+        //resources by id, in least recently used order
+        private final LinkedHashMap<String, Node> nodes = new LinkedHashMap<>(16, 0.75f, true);
+        //number of cached resources, counting each set of required attributes
+        private int size;
+        //incremented on each invalidation
+        private long generation;
+
+        private Segment(int capacity) {
+            this.capacity = capacity;
+        }
+
+        private synchronized T get(String id, Map<String, Boolean> requiredAttributes, long now) {
+            Node node = nodes.get(id);
+            if (node == null) {
+                return null;
+            }
+            Entry entry = node.entries.get(requiredAttributes);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt - now <= 0) {
+                node.entries.remove(requiredAttributes);
+                size--;
+                if (node.entries.isEmpty()) {
+                    nodes.remove(id);
+                }
+                evictionCount.incrementAndGet();
+                return null;
+            }
+            return entry.resource;
+        }
+
+        /*
+         * Returns the number of resources evicted to make room.
+         */
+        private synchronized int put(String id, Map<String, Boolean> requiredAttributes, T resource,
+                                     long generation, long expiresAt) {
+            if (generation != this.generation || capacity == 0) {
+                return 0;
+            }
+            Node node = nodes.get(id);
+            if (node == null) {
+                node = new Node();
+                nodes.put(id, node);
+            }
+            if (node.entries.put(requiredAttributes, new Entry(resource, expiresAt)) == null) {
+                size++;
+            }
+            int evicted = 0;
+            Iterator<Node> eldest = nodes.values().iterator();
+            while (size > capacity && eldest.hasNext()) {
+                Node evictedNode = eldest.next();
+                if (evictedNode == node) {
+                    //only the entries of this resource are left, drop its other sets of required attributes
+                    Iterator<Map<String, Boolean>> keys = node.entries.keySet().iterator();
+                    while (size > capacity && keys.hasNext()) {
+                        Map<String, Boolean> key = keys.next();
+                        if (!equals(key, requiredAttributes)) {
+                            keys.remove();
+                            size--;
+                            evicted++;
+                        }
+                    }
+                    break;
+                }
+                size -= evictedNode.entries.size();
+                evicted += evictedNode.entries.size();
+                eldest.remove();
+            }
+            return evicted;
+        }
+
+        private void remove(String id) {
+            Node node = nodes.remove(id);
+            if (node != null) {
+                size -= node.entries.size();
+            }
+        }
+
+        private boolean equals(Object one, Object other) {
+            return one == null ? other == null : one.equals(other);
+        }
+    }
+
+    /*
+     * The cached copies of a resource, by the required attributes they were read with.
+     */
+    private final class Node {
+
+        private final Map<Map<String, Boolean>, Entry> entries = new HashMap<>(4);
+    }
+
+    private final class Entry {
+
+        private final T resource;
+        private final long expiresAt;
+
+        private Entry(T resource, long expiresAt) {
+            this.resource = resource;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
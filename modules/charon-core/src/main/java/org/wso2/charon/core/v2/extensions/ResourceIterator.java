@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.extensions;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * A page of resources handed over one at a time by the user manager, so that a list response can be encoded
+ * without holding the whole page in memory. The iterator is closed once the response has been written,
+ * allowing implementations to release any cursor or connection held for it.
+ *
+ * @param <T> - type of the listed resources
+ */
+public interface ResourceIterator<T> extends Iterator<T>, Closeable {
+
+    /**
+     * Total number of resources matching the query, across all pages.
+     *
+     * @return int
+     */
+    public int getTotalResults();
+
+    /**
+     * Number of resources this iterator returns, ie: the size of the page.
+     *
+     * @return int
+     */
+    public int getItemsPerPage();
+}
@@ -0,0 +1,531 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.extensions;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * An append only key value log kept in a directory of segment files.
+ * Every put or delete is appended to the active segment as a record of
+ *      length (int) | crc32 (int) | type (byte) | key length (unsigned short) | key (UTF-8) | value
+ * where the length and the crc cover the bytes after the crc. The active segment is preallocated and written
+ * with sequential appends, and a record with a length of 0 marks its end. When it is full the segment is
+ * sealed and a new one is started.
+ * Segments are memory mapped and an in memory index maps each live key to its latest record, so a get is a
+ * slice of the mapped segment. The index is rebuilt on open by replaying the segments in order, which also
+ * recovers from a crash: the log is cut at the first torn or corrupt record of the last segment.
+ * Sealed segments holding mostly superseded records are compacted by copying their live records to the
+ * active segment and deleting them. A compacted segment is renamed before it is removed from the log, so a
+ * segment file is either replayed with all the segments before it, or not at all.
+ * Gets do not lock, puts, deletes and compaction are serialized.
+ */
+final class SegmentLog implements Closeable {
+
+    private static final Log logger = LogFactory.getLog(SegmentLog.class);
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    //a compacted segment is renamed to this before it is deleted, so that it is never replayed again
+    private static final String COMPACTED_SUFFIX = ".compacted";
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    //length and crc, followed by the type and the key length covered by the crc
+    private static final int PREFIX_SIZE = 8;
+    private static final int HEADER_SIZE = PREFIX_SIZE + 3;
+    private static final int MAX_KEY_LENGTH = 0xffff;
+    //a sealed segment is compacted when less than this share of its bytes is live
+    private static final double COMPACTION_THRESHOLD = 0.5;
+
+    private final File directory;
+    private final int segmentSize;
+    private final boolean syncWrites;
+
+    private final ConcurrentMap<String, Location> index = new ConcurrentHashMap<>();
+    //segments in the order they were written, the last one being the active segment
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile boolean closed = false;
+
+    /**
+     * Opens the log in the given directory, creating it if needed, and replays its segments.
+     *
+     * @param directory   - directory of the segment files
+     * @param segmentSize - size of a segment in bytes, a segment only gets bigger to fit a single large record
+     * @param syncWrites  - whether each write is forced to the disk before it returns
+     * @throws IOException
+     */
+    SegmentLog(File directory, int segmentSize, boolean syncWrites) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create the directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncWrites = syncWrites;
+        replay();
+    }
+
+    /**
+     * Returns the value of the given key as a read only slice of the mapped segment, or null if there is no
+     * value for the key.
+     *
+     * @param key - key of the value
+     * @return ByteBuffer
+     */
+    ByteBuffer get(String key) {
+        Location location = index.get(key);
+        return location == null ? null : location.getValue();
+    }
+
+    /**
+     * Returns a view of the keys which have a value.
+     *
+     * @return Set
+     */
+    Set<String> keys() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    void put(String key, byte[] value) throws IOException {
+        writeLock.lock();
+        try {
+            Location location = append(PUT, key, value, 0, value.length);
+            release(index.put(key, location));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the value of the given key.
+     *
+     * @param key - key of the value
+     * @return false if there was no value for the key
+     * @throws IOException
+     */
+    boolean delete(String key) throws IOException {
+        writeLock.lock();
+        try {
+            if (!index.containsKey(key)) {
+                return false;
+            }
+            append(DELETE, key, null, 0, 0);
+            release(index.remove(key));
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Compacts the sealed segments of which less than half of the bytes are live, oldest first.
+     *
+     * @return number of segments compacted
+     * @throws IOException
+     */
+    synchronized int compact() throws IOException {
+        int compacted = 0;
+        for (Segment segment : segments) {
+            if (segment != getActiveSegment() && segment.liveBytes.get() < segment.size * COMPACTION_THRESHOLD) {
+                compact(segment);
+                compacted++;
+            }
+        }
+        return compacted;
+    }
+
+    /**
+     * Forces the active segment to the disk and closes the segment files. The mapped segments stay readable
+     * until they are garbage collected, so that concurrent gets do not fail.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            Segment activeSegment = getActiveSegment();
+            activeSegment.channel.force(true);
+            activeSegment.channel.truncate(activeSegment.size);
+            for (Segment segment : segments) {
+                segment.channel.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /*
+     * Rebuilds the index from the segments, and opens the last one for appending. A torn or corrupt record
+     * ends the segment it is in.
+     */
+    private void replay() throws IOException {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SEGMENT_SUFFIX) || name.endsWith(COMPACTED_SUFFIX);
+            }
+        });
+        List<Segment> openedSegments = new ArrayList<>();
+        for (File file : files == null ? new File[0] : files) {
+            String name = file.getName();
+            if (name.endsWith(COMPACTED_SUFFIX)) {
+                //left behind by a compaction which could not delete it
+                if (!file.delete()) {
+                    logger.warn("Could not delete the compacted segment " + file);
+                }
+                continue;
+            }
+            try {
+                long id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                openedSegments.add(new Segment(id, file, (int) file.length()));
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring the file " + file + " which is not a segment of the log.");
+            }
+        }
+        Collections.sort(openedSegments, new Comparator<Segment>() {
+            @Override
+            public int compare(Segment first, Segment second) {
+                return Long.compare(first.id, second.id);
+            }
+        });
+        for (int i = 0; i < openedSegments.size(); i++) {
+            Segment segment = openedSegments.get(i);
+            int end = replay(segment);
+            boolean last = i == openedSegments.size() - 1;
+            if (findEnd(segment) > end) {
+                if (last) {
+                    logger.warn("Cutting a torn record off the end of the segment " + segment.file);
+                } else {
+                    logger.error("Segment " + segment.file + " is corrupt after offset " + end +
+                            ", the records after it are lost.");
+                }
+            }
+            segment.size = end;
+            if (last) {
+                //cut a torn record off and preallocate the rest, so that no stale bytes follow the new records
+                segment.channel.truncate(end);
+                segment.resize(Math.max(segmentSize, end));
+            }
+            segments.add(segment);
+        }
+        if (segments.isEmpty()) {
+            segments.add(createSegment(1, segmentSize));
+        }
+    }
+
+    /*
+     * Applies the records of the segment to the index and returns the offset the valid records end at.
+     */
+    private int replay(Segment segment) {
+        int offset = 0;
+        int recordLength;
+        while ((recordLength = readRecordLength(segment, offset)) > 0) {
+            ByteBuffer buffer = segment.buffer;
+            byte type = buffer.get(offset + PREFIX_SIZE);
+            int keyLength = buffer.getShort(offset + PREFIX_SIZE + 1) & MAX_KEY_LENGTH;
+            String key = readKey(segment, offset, keyLength);
+            segment.size = offset + recordLength;
+            if (type == PUT) {
+                Location location = new Location(segment, offset, recordLength, keyLength);
+                segment.liveBytes.addAndGet(recordLength);
+                release(index.put(key, location));
+            } else {
+                release(index.remove(key));
+            }
+            offset += recordLength;
+        }
+        return offset;
+    }
+
+    /*
+     * Returns the offset after the last non zero byte of a segment, which is past the valid records unless
+     * something follows them.
+     */
+    private static int findEnd(Segment segment) {
+        int end = segment.capacity;
+        while (end > 0 && segment.buffer.get(end - 1) == 0) {
+            end--;
+        }
+        return end;
+    }
+
+    /*
+     * Returns the length of the record at the given offset, or 0 if there is no valid record there.
+     */
+    private static int readRecordLength(Segment segment, int offset) {
+        ByteBuffer buffer = segment.buffer;
+        if (offset + HEADER_SIZE > segment.capacity) {
+            return 0;
+        }
+        int length = buffer.getInt(offset);
+        if (length < HEADER_SIZE - PREFIX_SIZE || length > segment.capacity - offset - PREFIX_SIZE) {
+            return 0;
+        }
+        int keyLength = buffer.getShort(offset + PREFIX_SIZE + 1) & MAX_KEY_LENGTH;
+        byte type = buffer.get(offset + PREFIX_SIZE);
+        if ((type != PUT && type != DELETE) || keyLength > length - 3) {
+            return 0;
+        }
+        ByteBuffer record = buffer.duplicate();
+        record.limit(offset + PREFIX_SIZE + length);
+        record.position(offset + PREFIX_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(toArray(record), 0, length);
+        if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+            return 0;
+        }
+        return PREFIX_SIZE + length;
+    }
+
+    /*
+     * Appends a record to the active segment, starting a new segment if it does not fit.
+     */
+    private Location append(byte type, String key, byte[] value, int valueOffset, int valueLength)
+            throws IOException {
+        if (closed) {
+            throw new IOException("The log in " + directory + " is closed.");
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > MAX_KEY_LENGTH) {
+            throw new IOException("Key of " + keyBytes.length + " bytes is too long.");
+        }
+        int recordLength = HEADER_SIZE + keyBytes.length + valueLength;
+        ByteBuffer record = ByteBuffer.allocate(recordLength);
+        record.putInt(recordLength - PREFIX_SIZE);
+        record.putInt(0);
+        record.put(type);
+        record.putShort((short) keyBytes.length);
+        record.put(keyBytes);
+        if (valueLength > 0) {
+            record.put(value, valueOffset, valueLength);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), PREFIX_SIZE, recordLength - PREFIX_SIZE);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+
+        Segment segment = getActiveSegment();
+        if (segment.size + recordLength > segment.capacity) {
+            segment = roll(recordLength);
+        }
+        int offset = segment.size;
+        while (record.hasRemaining()) {
+            segment.channel.write(record, offset + record.position());
+        }
+        if (syncWrites) {
+            segment.channel.force(false);
+        }
+        //the size is published after the record is written, for the compaction which reads up to it
+        segment.size = offset + recordLength;
+        if (type != PUT) {
+            return null;
+        }
+        segment.liveBytes.addAndGet(recordLength);
+        return new Location(segment, offset, recordLength, keyBytes.length);
+    }
+
+    /*
+     * Seals the active segment and starts a new one which fits a record of the given length.
+     */
+    private Segment roll(int recordLength) throws IOException {
+        Segment activeSegment = getActiveSegment();
+        activeSegment.channel.force(true);
+        activeSegment.channel.truncate(activeSegment.size);
+        Segment segment = createSegment(activeSegment.id + 1, Math.max(segmentSize, recordLength));
+        segments.add(segment);
+        return segment;
+    }
+
+    private Segment createSegment(long id, int capacity) throws IOException {
+        File file = new File(directory, String.format("%020d", id) + SEGMENT_SUFFIX);
+        Segment segment = new Segment(id, file, 0);
+        segment.resize(capacity);
+        return segment;
+    }
+
+    /*
+     * Copies the live records of a sealed segment to the active segment, and deletes it. A delete is copied
+     * as well unless there are no older segments, which could hold a value it has to hide. A segment stays in
+     * the log until its file is renamed away, so a segment without older segments in the log has no older
+     * files left on the disk either.
+     */
+    private void compact(Segment segment) throws IOException {
+        int offset = 0;
+        int recordLength;
+        while (offset < segment.size && (recordLength = readRecordLength(segment, offset)) > 0) {
+            int keyLength = segment.buffer.getShort(offset + PREFIX_SIZE + 1) & MAX_KEY_LENGTH;
+            String key = readKey(segment, offset, keyLength);
+            byte type = segment.buffer.get(offset + PREFIX_SIZE);
+            writeLock.lock();
+            try {
+                Location location = index.get(key);
+                if (type == PUT && location != null && location.segment == segment && location.offset == offset) {
+                    byte[] value = toArray(location.getValue());
+                    index.put(key, append(PUT, key, value, 0, value.length));
+                    release(location);
+                } else if (type == DELETE && location == null && segments.get(0) != segment) {
+                    append(DELETE, key, null, 0, 0);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            offset += recordLength;
+        }
+        File compactedFile = new File(directory, segment.file.getName() + COMPACTED_SUFFIX);
+        writeLock.lock();
+        try {
+            //the copies have to be on the disk before the originals are gone
+            getActiveSegment().channel.force(false);
+            //the segment is kept, and compacted again later, if it can not be taken out of the log
+            if (!segment.file.renameTo(compactedFile)) {
+                throw new IOException("Could not rename the compacted segment " + segment.file);
+            }
+            syncDirectory();
+            segments.remove(segment);
+            segment.channel.close();
+        } finally {
+            writeLock.unlock();
+        }
+        if (!compactedFile.delete()) {
+            logger.warn("Could not delete the compacted segment " + compactedFile);
+        }
+    }
+
+    /*
+     * Forces the renaming of a segment to the disk, where the file system supports it.
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.debug("Could not sync the directory " + directory, e);
+        }
+    }
+
+    private static String readKey(Segment segment, int offset, int keyLength) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.limit(offset + HEADER_SIZE + keyLength);
+        buffer.position(offset + HEADER_SIZE);
+        return new String(toArray(buffer), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static void release(Location location) {
+        if (location != null) {
+            location.segment.liveBytes.addAndGet(-location.length);
+        }
+    }
+
+    private Segment getActiveSegment() {
+        return segments.get(segments.size() - 1);
+    }
+
+    /*
+     * A segment file with its mapping. Only the bytes below size are records.
+     */
+    private static final class Segment {
+
+        private final long id;
+        private final File file;
+        private final FileChannel channel;
+        private final AtomicLong liveBytes = new AtomicLong();
+        private volatile MappedByteBuffer buffer;
+        private volatile int capacity;
+        private volatile int size;
+
+        private Segment(long id, File file, int length) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+            map(length);
+        }
+
+        /*
+         * Sets the length of the file, zero filling what is added, and maps it.
+         */
+        private void resize(int length) throws IOException {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                randomAccessFile.setLength(length);
+            } finally {
+                randomAccessFile.close();
+            }
+            map(length);
+        }
+
+        private void map(int length) throws IOException {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            capacity = length;
+        }
+    }
+
+    /*
+     * Position of the latest record of a key.
+     */
+    private static final class Location {
+
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+        private final int keyLength;
+
+        private Location(Segment segment, int offset, int length, int keyLength) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.keyLength = keyLength;
+        }
+
+        private ByteBuffer getValue() {
+            ByteBuffer value = segment.buffer.duplicate();
+            value.limit(offset + length);
+            value.position(offset + HEADER_SIZE + keyLength);
+            return value.slice().asReadOnlyBuffer();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.extensions;
+
+import org.wso2.charon.core.v2.exceptions.BadRequestException;
+import org.wso2.charon.core.v2.exceptions.CharonException;
+import org.wso2.charon.core.v2.exceptions.NotImplementedException;
+import org.wso2.charon.core.v2.objects.User;
+import org.wso2.charon.core.v2.utils.codeutils.Node;
+import org.wso2.charon.core.v2.utils.codeutils.SearchRequest;
+
+import java.util.Map;
+
+/**
+ * A UserManager which can hand over the users of a list or search response one at a time.
+ * When the endpoints are given such a user manager together with a StreamingJSONEncoder, list responses are
+ * encoded while iterating, instead of collecting the page first.
+ */
+public interface StreamingUserManager extends UserManager {
+
+    public ResourceIterator<User> iterateUsersWithGET(Node node, int startIndex, int count, String sortBy,
+                                                      String sortOrder, Map<String, Boolean> requiredAttributes)
+            throws CharonException, NotImplementedException, BadRequestException;
+
+    public ResourceIterator<User> iterateUsersWithPost(SearchRequest searchRequest,
+                                                       Map<String, Boolean> requiredAttributes)
+            throws CharonException, NotImplementedException, BadRequestException;
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.extensions;
+
+import org.wso2.charon.core.v2.attributes.Attribute;
+import org.wso2.charon.core.v2.attributes.SimpleAttribute;
+import org.wso2.charon.core.v2.exceptions.BadRequestException;
+import org.wso2.charon.core.v2.exceptions.CharonException;
+import org.wso2.charon.core.v2.objects.User;
+import org.wso2.charon.core.v2.schema.SCIMConstants;
+import org.wso2.charon.core.v2.schema.SCIMResourceTypeSchema;
+import org.wso2.charon.core.v2.schema.SCIMSchemaDefinitions;
+import org.wso2.charon.core.v2.utils.AttributeUtil;
+import org.wso2.charon.core.v2.utils.codeutils.ExpressionNode;
+import org.wso2.charon.core.v2.utils.codeutils.InExpressionNode;
+import org.wso2.charon.core.v2.utils.codeutils.Node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The userName and externalId indexes of the users of a user manager, which keep them unique, and the locks
+ * the writes of a resource are serialized on, as used by InMemoryUserManager and LogStructuredUserManager.
+ * Keys are claimed and released while holding the lock of the user, so that the indexes follow the stored
+ * users.
+ */
+final class UserIndex {
+
+    private static final int LOCK_COUNT = 64;
+
+    //index keys are folded to lower case for attributes which are not case exact
+    private final ConcurrentMap<String, String> userNameIndex = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> externalIdIndex = new ConcurrentHashMap<>();
+
+    //writes of the same resource are serialized on one of these
+    private final Object[] locks = new Object[LOCK_COUNT];
+
+    UserIndex() {
+        for (int i = 0; i < LOCK_COUNT; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    Object getLock(String id) {
+        return locks[(id.hashCode() & Integer.MAX_VALUE) % LOCK_COUNT];
+    }
+
+    /*
+     * Claims the userName and externalId of the user for the given id. If another user holds one of them, the
+     * keys claimed by this call are released again and the error is returned.
+     *
+     * @param user    - user to be stored
+     * @param oldUser - user currently stored with the id, whose keys are kept, or null
+     * @param id      - id of the user
+     * @return null, or the error if the userName or externalId belongs to another user
+     */
+    String claim(User user, User oldUser, String id) throws CharonException {
+        String userNameKey = getUserNameKey(user);
+        String oldUserNameKey = oldUser == null ? null : getUserNameKey(oldUser);
+        if (!claim(userNameIndex, userNameKey, id)) {
+            return "User with the userName " + user.getUserName() + " already exists.";
+        }
+        if (!claim(externalIdIndex, getExternalIdKey(user), id)) {
+            releaseIfChanged(userNameIndex, userNameKey, oldUserNameKey, id);
+            return "User with the externalId " + getExternalId(user) + " already exists.";
+        }
+        return null;
+    }
+
+    /*
+     * Releases the userName and externalId of the user, except for the ones which are the same in the kept
+     * user.
+     *
+     * @param user     - user whose keys are released
+     * @param keptUser - user stored with the id, whose keys are kept, or null
+     * @param id       - id of the user
+     */
+    void release(User user, User keptUser, String id) throws CharonException {
+        releaseIfChanged(userNameIndex, getUserNameKey(user), keptUser == null ? null : getUserNameKey(keptUser),
+                id);
+        releaseIfChanged(externalIdIndex, getExternalIdKey(user),
+                keptUser == null ? null : getExternalIdKey(keptUser), id);
+    }
+
+    String getUserId(String userName) {
+        return userName == null ? null : userNameIndex.get(getIndexKey(userName,
+                SCIMSchemaDefinitions.SCIMUserSchemaDefinition.USERNAME.getCaseExact()));
+    }
+
+    /*
+     * Returns the ids of the users found in the userName or externalId index for the values of an eq filter on
+     * them, or of an in expression of FilterOptimizer, or null if the filter can not be looked up in an index.
+     */
+    List<String> getUserIds(Node node, SCIMResourceTypeSchema schema) throws BadRequestException {
+        String attributeValue;
+        List<String> values;
+        if (node instanceof ExpressionNode) {
+            ExpressionNode expressionNode = (ExpressionNode) node;
+            if (expressionNode.getValue() == null ||
+                    !SCIMConstants.OperationalConstants.EQ.trim().equalsIgnoreCase(expressionNode.getOperation())) {
+                return null;
+            }
+            attributeValue = expressionNode.getAttributeValue();
+            values = Collections.singletonList(expressionNode.getValue());
+        } else if (node instanceof InExpressionNode) {
+            attributeValue = ((InExpressionNode) node).getAttributeValue();
+            values = ((InExpressionNode) node).getValues();
+        } else {
+            return null;
+        }
+        String attributeURI = AttributeUtil.getAttributeURI(attributeValue, schema);
+        Map<String, String> index;
+        boolean caseExact;
+        if (SCIMConstants.UserSchemaConstants.USER_NAME_URI.equals(attributeURI)) {
+            index = userNameIndex;
+            caseExact = SCIMSchemaDefinitions.SCIMUserSchemaDefinition.USERNAME.getCaseExact();
+        } else if (SCIMConstants.CommonSchemaConstants.EXTERNAL_ID_URI.equals(attributeURI)) {
+            index = externalIdIndex;
+            caseExact = SCIMSchemaDefinitions.EXTERNAL_ID.getCaseExact();
+        } else {
+            return null;
+        }
+        //values which only differ in case may be the key of the same user
+        Set<String> ids = new LinkedHashSet<>();
+        for (String value : values) {
+            String id = index.get(getIndexKey(value, caseExact));
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    private static String getUserNameKey(User user) throws CharonException {
+        return getIndexKey(user.getUserName(),
+                SCIMSchemaDefinitions.SCIMUserSchemaDefinition.USERNAME.getCaseExact());
+    }
+
+    private static String getExternalIdKey(User user) throws CharonException {
+        return getIndexKey(getExternalId(user), SCIMSchemaDefinitions.EXTERNAL_ID.getCaseExact());
+    }
+
+    private static String getExternalId(User user) throws CharonException {
+        Attribute externalId = user.getAttribute(SCIMConstants.CommonSchemaConstants.EXTERNAL_ID);
+        return externalId instanceof SimpleAttribute ? ((SimpleAttribute) externalId).getStringValue() : null;
+    }
+
+    private static String getIndexKey(String value, boolean caseExact) {
+        if (value == null) {
+            return null;
+        }
+        return caseExact ? value : value.toLowerCase(Locale.ENGLISH);
+    }
+
+    /*
+     * Claims the key of a unique index for the given id. Returns false if another resource holds the key.
+     */
+    private static boolean claim(ConcurrentMap<String, String> index, String key, String id) {
+        if (key == null) {
+            return true;
+        }
+        String holder = index.putIfAbsent(key, id);
+        return holder == null || holder.equals(id);
+    }
+
+    /*
+     * Releases the key unless it is the same as the key which is kept.
+     */
+    private static void releaseIfChanged(ConcurrentMap<String, String> index, String key, String keptKey,
+                                         String id) {
+        if (key != null && !key.equals(keptKey)) {
+            index.remove(key, id);
+        }
+    }
+}
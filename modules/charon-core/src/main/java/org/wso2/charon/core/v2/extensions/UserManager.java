@@ -34,6 +34,9 @@ import java.util.Map;
  * This is the interface for UserManager extension.
  * An implementation can plugin their own user manager-(either LDAP based, DB based etc)
  * by implementing this interface and mentioning it in configuration.
+ * The filter trees given to the list operations are rewritten by FilterOptimizer, so they may hold an
+ * InExpressionNode, and are null if there is no filter or the filter matches every resource. They are
+ * shared between requests and must not be modified.
  */
 public interface UserManager {
 
@@ -43,6 +43,8 @@ public class ListedResource implements SCIMObject {
     //The 1-based index of the first result in the
     //current set of query results
     protected int startIndex;
+    //cursor of the next page, with cursor pagination
+    protected String nextCursor;
     /*Collection of attributes which constitute this resource.*/
     protected Map<String, Attribute> attributeList = new HashMap<String, Attribute>();
 
@@ -138,6 +140,26 @@ public class ListedResource implements SCIMObject {
         }
     }
 
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /*
+     * set the cursor of the next page, when the resources are paged with cursors
+     * @param nextCursor
+     */
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+        if (!isAttributeExist(SCIMConstants.ListedResourceSchemaConstants.NEXT_CURSOR)) {
+            SimpleAttribute nextCursorAttribute =
+                    new SimpleAttribute(SCIMConstants.ListedResourceSchemaConstants.NEXT_CURSOR, nextCursor);
+            attributeList.put(SCIMConstants.ListedResourceSchemaConstants.NEXT_CURSOR, nextCursorAttribute);
+        } else {
+            ((SimpleAttribute) attributeList.get(SCIMConstants.ListedResourceSchemaConstants.NEXT_CURSOR))
+                    .setValue(nextCursor);
+        }
+    }
+
     public int getStartIndex() {
         return startIndex; }
 
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.protocol;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * A SCIMResponse carrying a pre-encoded body, eg: a cached response of a discovery endpoint. Both the string
+ * and the stream forms of the body are served from the encoded body without encoding it again.
+ */
+public class CachedSCIMResponse extends StreamingSCIMResponse {
+
+    private final EncodedResponseBody encodedBody;
+
+    /**
+     * Constructor with three params
+     *
+     * @param responseStatus - HTTP status code corresponding to the operation status
+     * @param encodedBody    - pre-encoded response body
+     * @param headerMap      - HTTP headers (eg-Content-type)
+     */
+    public CachedSCIMResponse(int responseStatus, EncodedResponseBody encodedBody, Map<String, String> headerMap) {
+        super(responseStatus, encodedBody, headerMap);
+        this.encodedBody = encodedBody;
+        this.responseMessage = encodedBody.getText();
+    }
+
+    public EncodedResponseBody getEncodedBody() {
+        return encodedBody;
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        encodedBody.writeTo(outputStream);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.protocol;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * An encoded response body kept as immutable UTF-8 bytes together with a strong ETag computed from them,
+ * so that it can be written out any number of times without encoding it again.
+ */
+public final class EncodedResponseBody implements ResponseBodyWriter {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String text;
+    private final byte[] bytes;
+    private final String eTag;
+
+    public EncodedResponseBody(String encodedBody) {
+        this.text = encodedBody;
+        this.bytes = encodedBody.getBytes(UTF_8);
+        this.eTag = computeETag(bytes);
+    }
+
+    /**
+     * Write the body to the given stream. The stream is flushed but not closed.
+     *
+     * @param outputStream - stream of the http response
+     * @throws IOException
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(bytes);
+        outputStream.flush();
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Length of the body in bytes, eg: for the Content-Length header.
+     *
+     * @return int
+     */
+    public int getLength() {
+        return bytes.length;
+    }
+
+    /**
+     * Strong entity tag of the body, quoted as it goes in the ETag header.
+     *
+     * @return String
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    private static String computeETag(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder eTag = new StringBuilder(digest.length * 2 + 2);
+            eTag.append('"');
+            for (byte b : digest) {
+                eTag.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+            }
+            return eTag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            //every java platform is required to support SHA-256
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.protocol;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the body of a SCIM response directly to the response stream, so that the body does not have to be
+ * held as a string.
+ */
+public interface ResponseBodyWriter {
+
+    /**
+     * Write the response body to the given stream. The stream is flushed but not closed.
+     *
+     * @param outputStream - stream of the http response
+     * @throws IOException
+     */
+    public void writeTo(OutputStream outputStream) throws IOException;
+}
@@ -87,6 +87,7 @@ public class ResponseCodeConstants {
     public static final String INVALID_VALUE = "invalidValue";
     public static final String INVALID_VERS = "invalidVers";
     public static final String SENSITIVE = "sensitive";
+    public static final String INVALID_CURSOR = "invalidCursor";
     //For HTTP status code 201 responses, the following details are defined
     public static final String CREATED = "Created";
 }
\ No newline at end of file
@@ -17,6 +17,7 @@
  */
 package org.wso2.charon.core.v2.protocol;
 
+import java.nio.charset.Charset;
 import java.util.Map;
 
 /**
@@ -51,6 +52,15 @@ public class SCIMResponse {
         return responseMessage;
     }
 
+    /**
+     * Returns the body as the bytes sent to the client, that is the UTF-8 encoded response message.
+     *
+     * @return byte[]
+     */
+    public byte[] getResponseBody() {
+        return responseMessage == null ? null : responseMessage.getBytes(Charset.forName("UTF-8"));
+    }
+
     public Map<String, String> getHeaderParamMap() {
         return headerParamMap;
     }
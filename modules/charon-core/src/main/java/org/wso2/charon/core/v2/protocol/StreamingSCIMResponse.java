@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.protocol;
+
+import org.wso2.charon.core.v2.encoder.JSONEncoder;
+import org.wso2.charon.core.v2.exceptions.AbstractCharonException;
+import org.wso2.charon.core.v2.exceptions.CharonException;
+import org.wso2.charon.core.v2.schema.SCIMConstants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A SCIMResponse whose body is written by a ResponseBodyWriter when the response is sent, instead of being
+ * carried as a string. Servlet containers can check for this type and stream the body straight to the socket
+ * with writeTo. getResponseBody and getResponseMessage still render the body for callers which need it, the latter
+ * only if the body is text: the body of a binary codec is refused by getResponseMessage rather than corrupted by
+ * decoding it as UTF-8.
+ *
+ * The status is decided before the body is written; the endpoints check what they can, eg: the first resource
+ * of a list response, before they return the response. If the body still fails part way, writeTo throws an
+ * IOException after a part of the body has been written to the stream. The container should then abort the
+ * response, eg: drop the connection instead of ending the chunked body, so that the client does not take the
+ * truncated body as a complete one.
+ * getResponseBody and getResponseMessage render the whole body before returning it, so a failure there is not
+ * visible to the client: the response is replaced with the json encoded SCIM error, and its status and headers
+ * with those of the error, as if the endpoint had failed. Callers which read the body should hence read it
+ * before getResponseStatus and getHeaderParamMap.
+ *
+ * Writing the body releases what the body writer holds, eg: the iterator of a list response. A response which is
+ * not written should be closed instead, eg: in a finally block of the container.
+ */
+public class StreamingSCIMResponse extends SCIMResponse implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    protected ResponseBodyWriter responseBodyWriter;
+    //encodes the error which replaces a body failing in getResponseMessage
+    private final JSONEncoder errorEncoder;
+    //whether the body is UTF-8 text which getResponseMessage can return
+    private final boolean textBody;
+    //body rendered by getResponseBody or getResponseMessage
+    private byte[] responseBody;
+
+    /**
+     * Constructor with three params
+     *
+     * @param responseStatus     - HTTP status code corresponding to the operation status
+     * @param responseBodyWriter - writer of the json encoded response body
+     * @param headerMap          - HTTP headers (eg-Content-type)
+     */
+    public StreamingSCIMResponse(int responseStatus, ResponseBodyWriter responseBodyWriter,
+                                 Map<String, String> headerMap) {
+        this(responseStatus, responseBodyWriter, headerMap, null, true);
+    }
+
+    /**
+     * Constructor with four params
+     *
+     * @param responseStatus     - HTTP status code corresponding to the operation status
+     * @param responseBodyWriter - writer of the response body
+     * @param headerMap          - HTTP headers (eg-Content-type)
+     * @param errorEncoder       - encoder of the error which replaces a body failing in getResponseMessage,
+     *                             if null a JSONEncoder is used
+     */
+    public StreamingSCIMResponse(int responseStatus, ResponseBodyWriter responseBodyWriter,
+                                 Map<String, String> headerMap, JSONEncoder errorEncoder) {
+        this(responseStatus, responseBodyWriter, headerMap, errorEncoder, true);
+    }
+
+    /**
+     * Constructor with five params
+     *
+     * @param responseStatus     - HTTP status code corresponding to the operation status
+     * @param responseBodyWriter - writer of the response body
+     * @param headerMap          - HTTP headers (eg-Content-type)
+     * @param errorEncoder       - encoder of the error which replaces a body failing to render,
+     *                             if null a JSONEncoder is used
+     * @param textBody           - whether the body is UTF-8 text, if not getResponseMessage refuses it
+     */
+    public StreamingSCIMResponse(int responseStatus, ResponseBodyWriter responseBodyWriter,
+                                 Map<String, String> headerMap, JSONEncoder errorEncoder, boolean textBody) {
+        super(responseStatus, null, headerMap);
+        this.responseBodyWriter = responseBodyWriter;
+        this.errorEncoder = errorEncoder;
+        this.textBody = textBody;
+    }
+
+    public ResponseBodyWriter getResponseBodyWriter() {
+        return responseBodyWriter;
+    }
+
+    public boolean isTextBody() {
+        return textBody;
+    }
+
+    /**
+     * Write the response body to the given stream. If the body fails part way, an IOException is
+     * thrown after a part of it has been written.
+     *
+     * @param outputStream - stream of the http response
+     * @throws IOException
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        if (responseMessage != null) {
+            outputStream.write(responseMessage.getBytes(UTF_8));
+            outputStream.flush();
+        } else if (responseBody != null) {
+            outputStream.write(responseBody);
+            outputStream.flush();
+        } else if (responseBodyWriter != null) {
+            responseBodyWriter.writeTo(outputStream);
+        }
+    }
+
+    /**
+     * Renders the body into bytes. This defeats the purpose of streaming and is only meant for callers which
+     * can not write to a stream. If the body fails to render, the response is replaced with the SCIM error.
+     *
+     * @return byte[]
+     */
+    @Override
+    public byte[] getResponseBody() {
+        renderResponseBody();
+        if (responseMessage != null) {
+            return responseMessage.getBytes(UTF_8);
+        }
+        return responseBody;
+    }
+
+    /**
+     * Renders the body into a string. This defeats the purpose of streaming and is only meant for callers
+     * which can not write to a stream. If the body fails to render, the response is replaced with the SCIM
+     * error. A body which is not text, eg: one of the binary codec, is refused as decoding it would corrupt it;
+     * it should be read with getResponseBody instead.
+     *
+     * @return String
+     * @throws UnsupportedOperationException if the body is not text
+     */
+    @Override
+    public String getResponseMessage() {
+        renderResponseBody();
+        if (responseMessage == null && responseBody != null) {
+            if (!textBody) {
+                throw new UnsupportedOperationException("The response body is not text, it should be read with " +
+                        "getResponseBody or written with writeTo");
+            }
+            responseMessage = new String(responseBody, UTF_8);
+        }
+        return responseMessage;
+    }
+
+    /**
+     * Releases what the body writer holds if the body has not been written, eg: the iterator of a list
+     * response. Closing a written response has no effect.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (responseBodyWriter instanceof Closeable) {
+            ((Closeable) responseBodyWriter).close();
+        }
+    }
+
+    private void renderResponseBody() {
+        if (responseMessage == null && responseBody == null && responseBodyWriter != null) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            try {
+                responseBodyWriter.writeTo(outputStream);
+                responseBody = outputStream.toByteArray();
+            } catch (IOException e) {
+                setErrorResponse(e);
+            }
+        }
+    }
+
+    private void setErrorResponse(IOException e) {
+        AbstractCharonException error;
+        if (e.getCause() instanceof AbstractCharonException) {
+            error = (AbstractCharonException) e.getCause();
+        } else {
+            error = new CharonException("Error in writing the response body", e);
+        }
+        JSONEncoder encoder = errorEncoder != null ? errorEncoder : new JSONEncoder();
+        Map<String, String> errorHeaders = new HashMap<String, String>();
+        errorHeaders.put(SCIMConstants.CONTENT_TYPE_HEADER, SCIMConstants.APPLICATION_JSON);
+        responseStatus = error.getStatus();
+        responseMessage = encoder.encodeSCIMException(error);
+        headerParamMap = errorHeaders;
+    }
+}
@@ -19,16 +19,23 @@ package org.wso2.charon.core.v2.protocol.endpoints;
 
 import org.wso2.charon.core.v2.encoder.JSONDecoder;
 import org.wso2.charon.core.v2.encoder.JSONEncoder;
+import org.wso2.charon.core.v2.encoder.SCIMCodec;
+import org.wso2.charon.core.v2.encoder.StreamingJSONEncoder;
 import org.wso2.charon.core.v2.exceptions.AbstractCharonException;
 import org.wso2.charon.core.v2.exceptions.BadRequestException;
 import org.wso2.charon.core.v2.exceptions.CharonException;
 import org.wso2.charon.core.v2.exceptions.NotFoundException;
+import org.wso2.charon.core.v2.objects.SCIMObject;
+import org.wso2.charon.core.v2.protocol.ResponseBodyWriter;
 import org.wso2.charon.core.v2.protocol.SCIMResponse;
+import org.wso2.charon.core.v2.protocol.StreamingSCIMResponse;
 import org.wso2.charon.core.v2.schema.SCIMConstants;
 import org.wso2.charon.core.v2.schema.SCIMResourceSchemaManager;
 import org.wso2.charon.core.v2.schema.SCIMResourceTypeSchema;
 import org.wso2.charon.core.v2.utils.AttributeUtil;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
 
 /**
@@ -43,7 +50,7 @@ public abstract class AbstractResourceManager implements ResourceManager {
     private static JSONDecoder decoder;
 
     //Keeps  a map of endpoint urls of the exposed resources.
-    private static Map<String, String> endpointURLMap;
+    private static volatile Map<String, String> endpointURLMap;
 
     /*
      * Returns the encoder for json.
@@ -58,6 +65,16 @@ public abstract class AbstractResourceManager implements ResourceManager {
         return encoder;
     }
 
+    /*
+     * Sets the encoder used by the resource endpoints, eg: a StreamingJSONEncoder to have the responses
+     * written straight to the response stream.
+     *
+     * @param jsonEncoder - encoder to be used
+     */
+    public static void setEncoder(JSONEncoder jsonEncoder) {
+        encoder = jsonEncoder;
+    }
+
     /*
      * Returns the decoder for json.
      *
@@ -74,6 +91,16 @@ public abstract class AbstractResourceManager implements ResourceManager {
 
     }
 
+    /*
+     * Sets the decoder used by the resource endpoints, eg: a StreamingJSONDecoder instead of the default
+     * JSONDecoder.
+     *
+     * @param jsonDecoder - decoder to be used
+     */
+    public static void setDecoder(JSONDecoder jsonDecoder) {
+        decoder = jsonDecoder;
+    }
+
     /*
      * Returns the endpoint according to the resource.
      *
@@ -93,6 +120,63 @@ public abstract class AbstractResourceManager implements ResourceManager {
         AbstractResourceManager.endpointURLMap = endpointURLMap;
     }
 
+    static Map<String, String> getEndpointURLMap() {
+        return endpointURLMap;
+    }
+
+    /*
+     * Returns SCIM Response object carrying the encoded scim object. If a StreamingJSONEncoder is in use,
+     * the object is encoded when the response body is written out, instead of into a string.
+     *
+     * @param responseStatus - HTTP status code
+     * @param scimObject     - scim object to be returned in the body
+     * @param headerMap      - HTTP headers
+     * @return SCIMResponse
+     * @throws CharonException
+     */
+    protected static SCIMResponse buildSCIMResponse(int responseStatus, SCIMObject scimObject,
+                                                    Map<String, String> headerMap) throws CharonException {
+        JSONEncoder jsonEncoder = getEncoder();
+        if (jsonEncoder instanceof StreamingJSONEncoder) {
+            return new StreamingSCIMResponse(responseStatus,
+                    ((StreamingJSONEncoder) jsonEncoder).getResponseBodyWriter(scimObject), headerMap, jsonEncoder);
+        }
+        return new SCIMResponse(responseStatus, jsonEncoder.encodeSCIMObject(scimObject), headerMap);
+    }
+
+    /*
+     * Returns SCIM Response object whose body is written with the given codec, eg: the codec of the request
+     * Content-Type. The Content-Type header is set to the media type of the codec. As the body may not be
+     * text, it should be written with StreamingSCIMResponse.writeTo or read with getResponseBody; getResponseMessage
+     * refuses the body of a codec which is not text.
+     * Falls back to the configured encoder if no codec is given.
+     *
+     * @param responseStatus - HTTP status code
+     * @param scimObject     - scim object to be returned in the body
+     * @param headerMap      - HTTP headers
+     * @param codec          - codec of the response body, may be null
+     * @return SCIMResponse
+     * @throws CharonException
+     */
+    protected static SCIMResponse buildSCIMResponse(int responseStatus, final SCIMObject scimObject,
+                                                    Map<String, String> headerMap, final SCIMCodec codec)
+            throws CharonException {
+        if (codec == null) {
+            return buildSCIMResponse(responseStatus, scimObject, headerMap);
+        }
+        headerMap.put(SCIMConstants.CONTENT_TYPE_HEADER, codec.getContentType());
+        return new StreamingSCIMResponse(responseStatus, new ResponseBodyWriter() {
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                try {
+                    codec.encodeSCIMObject(scimObject, outputStream);
+                } catch (CharonException e) {
+                    throw new IOException(e.getDetail(), e);
+                }
+            }
+        }, headerMap, getEncoder(), codec.isText());
+    }
+
     /*
      * Returns SCIM Response object after json encoding the exception
      *
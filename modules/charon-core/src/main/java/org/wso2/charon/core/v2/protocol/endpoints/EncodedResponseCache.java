@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.protocol.endpoints;
+
+import org.json.JSONException;
+import org.wso2.charon.core.v2.config.CharonConfiguration;
+import org.wso2.charon.core.v2.config.SCIMUserSchemaExtensionBuilder;
+import org.wso2.charon.core.v2.encoder.JSONEncoder;
+import org.wso2.charon.core.v2.exceptions.AbstractCharonException;
+import org.wso2.charon.core.v2.protocol.EncodedResponseBody;
+
+/**
+ * Holds the pre-encoded response body of an endpoint whose response only depends on the charon configuration,
+ * the user schema extension, the endpoint urls and the encoder (eg: ServiceProviderConfig and ResourceType). The
+ * body is built once and built again only after one of those has changed, so that a body encoded by one encoder
+ * is never returned for another.
+ */
+class EncodedResponseCache {
+
+    /**
+     * Builds the encoded body when there is no up to date one in the cache.
+     */
+    interface BodyBuilder {
+
+        String build(JSONEncoder encoder) throws AbstractCharonException, JSONException;
+    }
+
+    private volatile Entry entry;
+
+    /**
+     * Returns the body cached for the given encoder, building it with the given builder if it is missing or out
+     * of date.
+     *
+     * @param encoder - encoder of the body
+     * @param builder - builder of the encoded body
+     * @return EncodedResponseBody
+     */
+    EncodedResponseBody get(JSONEncoder encoder, BodyBuilder builder) throws AbstractCharonException, JSONException {
+        Entry current = entry;
+        if (current != null && current.encoder == encoder && current.isUpToDate()) {
+            return current.body;
+        }
+        //the state is taken before building, so that a change made while building leaves the entry out of date.
+        long configVersion = CharonConfiguration.getInstance().getVersion();
+        Object extensionSchema = SCIMUserSchemaExtensionBuilder.getInstance().getExtensionSchema();
+        Object endpointURLMap = AbstractResourceManager.getEndpointURLMap();
+        EncodedResponseBody body = new EncodedResponseBody(builder.build(encoder));
+        entry = new Entry(encoder, configVersion, extensionSchema, endpointURLMap, body);
+        return body;
+    }
+
+    private static class Entry {
+
+        private final JSONEncoder encoder;
+        private final long configVersion;
+        private final Object extensionSchema;
+        private final Object endpointURLMap;
+        private final EncodedResponseBody body;
+
+        private Entry(JSONEncoder encoder, long configVersion, Object extensionSchema, Object endpointURLMap,
+                      EncodedResponseBody body) {
+            this.encoder = encoder;
+            this.configVersion = configVersion;
+            this.extensionSchema = extensionSchema;
+            this.endpointURLMap = endpointURLMap;
+            this.body = body;
+        }
+
+        private boolean isUpToDate() {
+            return configVersion == CharonConfiguration.getInstance().getVersion() &&
+                    extensionSchema == SCIMUserSchemaExtensionBuilder.getInstance().getExtensionSchema() &&
+                    endpointURLMap == AbstractResourceManager.getEndpointURLMap();
+        }
+    }
+}
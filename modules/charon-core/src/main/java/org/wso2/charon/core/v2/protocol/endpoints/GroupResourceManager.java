@@ -38,8 +38,10 @@ import org.wso2.charon.core.v2.schema.SCIMResourceSchemaManager;
 import org.wso2.charon.core.v2.schema.SCIMResourceTypeSchema;
 import org.wso2.charon.core.v2.schema.SCIMSchemaDefinitions;
 import org.wso2.charon.core.v2.schema.ServerSideValidator;
+import org.wso2.charon.core.v2.utils.AttributeProjection;
 import org.wso2.charon.core.v2.utils.CopyUtil;
-import org.wso2.charon.core.v2.utils.codeutils.FilterTreeManager;
+import org.wso2.charon.core.v2.utils.codeutils.FilterCost;
+import org.wso2.charon.core.v2.utils.codeutils.FilterTreeCache;
 import org.wso2.charon.core.v2.utils.codeutils.Node;
 import org.wso2.charon.core.v2.utils.codeutils.SearchRequest;
 
@@ -74,9 +76,11 @@ public class GroupResourceManager extends AbstractResourceManager {
             encoder = getEncoder();
             // returns core-group schema
             SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getGroupResourceSchema();
+            //the attributes and excludedAttributes parameters are compiled once for the whole request
+            AttributeProjection projection = AttributeProjection.compile(attributes, excludeAttributes);
             //get the URIs of required attributes which must be given a value
-            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs((SCIMResourceTypeSchema)
-                    CopyUtil.deepCopy(schema),attributes, excludeAttributes);
+            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs(schema,
+                    projection);
 
             //API user should pass a UserManager storage to GroupResourceEndpoint.
             //retrieve the group from the provided storage.
@@ -88,13 +92,11 @@ public class GroupResourceManager extends AbstractResourceManager {
                 throw new NotFoundException(message);
             }
 
-            ServerSideValidator.validateRetrievedSCIMObjectInList(group, schema, attributes, excludeAttributes);
-            //convert the group into specific format.
-            String encodedGroup = encoder.encodeSCIMObject(group);
+            ServerSideValidator.validateRetrievedSCIMObjectInList(group, schema, projection);
             //if there are any http headers to be added in the response header.
             Map<String, String> httpHeaders = new HashMap<String, String>();
             httpHeaders.put(SCIMConstants.CONTENT_TYPE_HEADER, SCIMConstants.APPLICATION_JSON);
-            return new SCIMResponse(ResponseCodeConstants.CODE_OK, encodedGroup, httpHeaders);
+            return buildSCIMResponse(ResponseCodeConstants.CODE_OK, group, httpHeaders);
         } catch (NotFoundException e) {
             return encodeSCIMException(e);
         } catch (BadRequestException e) {
@@ -129,9 +131,11 @@ public class GroupResourceManager extends AbstractResourceManager {
             decoder = getDecoder();
             // returns core-group schema
             SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getGroupResourceSchema();
+            //the attributes and excludedAttributes parameters are compiled once for the whole request
+            AttributeProjection projection = AttributeProjection.compile(attributes, excludeAttributes);
             //get the URIs of required attributes which must be given a value
-            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs((SCIMResourceTypeSchema)
-                    CopyUtil.deepCopy(schema),attributes, excludeAttributes);
+            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs(schema,
+                    projection);
             //decode the SCIM group object, encoded in the submitted payload.
             Group group = (Group) decoder.decodeResource(scimObjectString, schema, new Group());
             //validate decoded group
@@ -225,7 +229,6 @@ public class GroupResourceManager extends AbstractResourceManager {
                                     int count, String sortBy, String sortOrder,
                                     String attributes, String excludeAttributes) {
 
-        FilterTreeManager filterTreeManager = null;
         Node rootNode = null;
         JSONEncoder encoder = null;
         try {
@@ -251,19 +254,22 @@ public class GroupResourceManager extends AbstractResourceManager {
                 sortOrder = SCIMConstants.OperationalConstants.ASCENDING;
             }
 
-            // unless configured returns core-user schema or else returns extended user schema)
-            SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getUserResourceSchema();
+            //filters, attributes and the returned groups are checked against the group schema
+            SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getGroupResourceSchema();
             if(filter != null){
-                filterTreeManager = new FilterTreeManager(filter, schema);
-                rootNode = filterTreeManager.buildTree();
+                rootNode = FilterTreeCache.getInstance().getOptimizedFilterTree(filter, schema);
+                //reject filters over the configured limits before they reach the user manager
+                FilterCost.estimate(rootNode, schema).checkLimits();
             }
 
             //obtain the json encoder
             encoder = getEncoder();
 
+            //the attributes and excludedAttributes parameters are compiled once for the whole request
+            AttributeProjection projection = AttributeProjection.compile(attributes, excludeAttributes);
             //get the URIs of required attributes which must be given a value
-            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs((SCIMResourceTypeSchema)
-                    CopyUtil.deepCopy(schema),attributes, excludeAttributes);
+            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs(schema,
+                    projection);
 
             List<Object> returnedGroups;
             int totalResults = 0;
@@ -285,17 +291,14 @@ public class GroupResourceManager extends AbstractResourceManager {
 
                 for (Object group: returnedGroups){
                     //perform service provider side validation.
-                    ServerSideValidator.validateRetrievedSCIMObjectInList((Group) group, SCIMSchemaDefinitions.SCIM_GROUP_SCHEMA,
-                            attributes, excludeAttributes);
+                    ServerSideValidator.validateRetrievedSCIMObjectInList((Group) group, SCIMSchemaDefinitions.SCIM_GROUP_SCHEMA, projection);
                 }
                 //create a listed resource object out of the returned groups list.
                 ListedResource listedResource = createListedResource(returnedGroups, startIndex, totalResults);
-                //convert the listed resource into specific format.
-                String encodedListedResource = encoder.encodeSCIMObject(listedResource);
                 //if there are any http headers to be added in the response header.
                 Map<String, String> ResponseHeaders = new HashMap<String, String>();
                 ResponseHeaders.put(SCIMConstants.CONTENT_TYPE_HEADER, SCIMConstants.APPLICATION_JSON);
-                return new SCIMResponse(ResponseCodeConstants.CODE_OK, encodedListedResource, ResponseHeaders);
+                return buildSCIMResponse(ResponseCodeConstants.CODE_OK, listedResource, ResponseHeaders);
 
             } else {
                 String error = "Provided user manager handler is null.";
@@ -369,10 +372,12 @@ public class GroupResourceManager extends AbstractResourceManager {
                 searchRequest.setSortOder(SCIMConstants.OperationalConstants.ASCENDING);
             }
 
-            //get the URIs of required attributes which must be given a value
-            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs((SCIMResourceTypeSchema)
-                    CopyUtil.deepCopy(schema), searchRequest.getAttributesAsString(),
+            //the attributes and excludedAttributes parameters are compiled once for the whole request
+            AttributeProjection projection = AttributeProjection.compile(searchRequest.getAttributesAsString(),
                     searchRequest.getExcludedAttributesAsString());
+            //get the URIs of required attributes which must be given a value
+            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs(schema,
+                    projection);
 
             List<Object> returnedGroups;
             int totalResults = 0;
@@ -394,18 +399,15 @@ public class GroupResourceManager extends AbstractResourceManager {
 
                 for(Object group : returnedGroups){
                     //perform service provider side validation.
-                    ServerSideValidator.validateRetrievedSCIMObjectInList((Group) group, schema,
-                            searchRequest.getAttributesAsString(), searchRequest.getExcludedAttributesAsString());
+                    ServerSideValidator.validateRetrievedSCIMObjectInList((Group) group, schema, projection);
                 }
                 //create a listed resource object out of the returned users list.
                 ListedResource listedResource = createListedResource(
                         returnedGroups, searchRequest.getStartIndex(), totalResults);
-                //convert the listed resource into specific format.
-                String encodedListedResource = encoder.encodeSCIMObject(listedResource);
                 //if there are any http headers to be added in the response header.
                 Map<String, String> ResponseHeaders = new HashMap<String, String>();
                 ResponseHeaders.put(SCIMConstants.CONTENT_TYPE_HEADER, SCIMConstants.APPLICATION_JSON);
-                return new SCIMResponse(ResponseCodeConstants.CODE_OK, encodedListedResource, ResponseHeaders);
+                return buildSCIMResponse(ResponseCodeConstants.CODE_OK, listedResource, ResponseHeaders);
 
             } else {
                 String error = "Provided user manager handler is null.";
@@ -449,9 +451,11 @@ public class GroupResourceManager extends AbstractResourceManager {
             decoder = getDecoder();
 
             SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getGroupResourceSchema();
+            //the attributes and excludedAttributes parameters are compiled once for the whole request
+            AttributeProjection projection = AttributeProjection.compile(attributes, excludeAttributes);
             //get the URIs of required attributes which must be given a value
-            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs((SCIMResourceTypeSchema)
-                    CopyUtil.deepCopy(schema), attributes, excludeAttributes);
+            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs(schema,
+                    projection);
             //decode the SCIM User object, encoded in the submitted payload.
             Group group = (Group) decoder.decodeResource(scimObjectString, schema, new Group());
             Group updatedGroup = null;
@@ -476,9 +480,9 @@ public class GroupResourceManager extends AbstractResourceManager {
             Map<String, String> httpHeaders = new HashMap<String, String>();
             if (updatedGroup != null) {
                 //create a deep copy of the user object since we are going to change it.
-                Group copiedGroup = (Group) CopyUtil.deepCopy(updatedGroup);
+                Group copiedGroup = CopyUtil.copySCIMObject(updatedGroup);
                 //need to remove password before returning
-                ServerSideValidator.ValidateReturnedAttributes(copiedGroup, attributes, excludeAttributes);
+                ServerSideValidator.ValidateReturnedAttributes(copiedGroup, projection);
                 encodedGroup = encoder.encodeSCIMObject(copiedGroup);
                 //add location header
                 httpHeaders.put(SCIMConstants.LOCATION_HEADER, getResourceEndpointURL(
@@ -12,6 +12,7 @@ import org.wso2.charon.core.v2.schema.SCIMConstants;
 import org.wso2.charon.core.v2.schema.SCIMResourceSchemaManager;
 import org.wso2.charon.core.v2.schema.SCIMResourceTypeSchema;
 import org.wso2.charon.core.v2.schema.ServerSideValidator;
+import org.wso2.charon.core.v2.utils.AttributeProjection;
 import org.wso2.charon.core.v2.utils.CopyUtil;
 
 import java.util.HashMap;
@@ -37,10 +38,11 @@ public class MeResourceManager extends AbstractResourceManager{
             //obtain the schema corresponding to user
             // unless configured returns core-user schema or else returns extended user schema)
             SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getUserResourceSchema();
+            //the attributes and excludedAttributes parameters are compiled once for the whole request
+            AttributeProjection projection = AttributeProjection.compile(attributes, excludeAttributes);
             //get the URIs of required attributes which must be given a value
-
-            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs((SCIMResourceTypeSchema)
-                    CopyUtil.deepCopy(schema),attributes, excludeAttributes);
+            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs(schema,
+                    projection);
 
             /*API user should pass a UserManager impl to UserResourceEndpoint.
             retrieve the user from the provided UM handler.*/
@@ -52,15 +54,13 @@ public class MeResourceManager extends AbstractResourceManager{
                 throw new NotFoundException(error);
             }
             //perform service provider side validation.
-            ServerSideValidator.validateRetrievedSCIMObject(user, schema, attributes, excludeAttributes);
-            //convert the user into requested format.
-            String encodedUser = encoder.encodeSCIMObject(user);
+            ServerSideValidator.validateRetrievedSCIMObject(user, schema, projection);
             //if there are any http headers to be added in the response header.
             Map<String, String> ResponseHeaders = new HashMap<String, String>();
             ResponseHeaders.put(SCIMConstants.CONTENT_TYPE_HEADER, SCIMConstants.APPLICATION_JSON);
             ResponseHeaders.put(SCIMConstants.LOCATION_HEADER, getResourceEndpointURL(
                     SCIMConstants.USER_ENDPOINT) + "/" + user.getId());
-            return new SCIMResponse(ResponseCodeConstants.CODE_OK, encodedUser, ResponseHeaders);
+            return buildSCIMResponse(ResponseCodeConstants.CODE_OK, user, ResponseHeaders);
 
         } catch (NotFoundException e) {
             return AbstractResourceManager.encodeSCIMException(e);
@@ -84,9 +84,11 @@ public class MeResourceManager extends AbstractResourceManager{
             //obtain the schema corresponding to user
             // unless configured returns core-user schema or else returns extended user schema)
             SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getUserResourceSchema();
+            //the attributes and excludedAttributes parameters are compiled once for the whole request
+            AttributeProjection projection = AttributeProjection.compile(attributes, excludeAttributes);
             //get the URIs of required attributes which must be given a value
-            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs((SCIMResourceTypeSchema)
-                    CopyUtil.deepCopy(schema),attributes, excludeAttributes);
+            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs(schema,
+                    projection);
             //decode the SCIM User object, encoded in the submitted payload.
             User user = (User) decoder.decodeResource(scimObjectString, schema, new User());
             //validate the created user.
@@ -110,9 +112,9 @@ public class MeResourceManager extends AbstractResourceManager{
 
             if (createdUser != null) {
                 //create a deep copy of the user object since we are going to change it.
-                User copiedUser = (User) CopyUtil.deepCopy(createdUser);
+                User copiedUser = CopyUtil.copySCIMObject(createdUser);
                 //need to remove password before returning
-                ServerSideValidator.ValidateReturnedAttributes(copiedUser, attributes, excludeAttributes);
+                ServerSideValidator.ValidateReturnedAttributes(copiedUser, projection);
                 encodedUser = encoder.encodeSCIMObject(copiedUser);
                 //add location header
                 ResponseHeaders.put(SCIMConstants.LOCATION_HEADER, getResourceEndpointURL(
@@ -197,9 +199,11 @@ public class MeResourceManager extends AbstractResourceManager{
 
             SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getUserResourceSchema();
 
+            //the attributes and excludedAttributes parameters are compiled once for the whole request
+            AttributeProjection projection = AttributeProjection.compile(attributes, excludeAttributes);
             //get the URIs of required attributes which must be given a value
-            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs((SCIMResourceTypeSchema)
-                    CopyUtil.deepCopy(schema),attributes, excludeAttributes);
+            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs(schema,
+                    projection);
             //decode the SCIM User object, encoded in the submitted payload.
             User user = (User) decoder.decodeResource(scimObjectString, schema, new User());
 
@@ -225,9 +229,9 @@ public class MeResourceManager extends AbstractResourceManager{
             Map<String, String> httpHeaders = new HashMap<String, String>();
             if (updatedUser != null) {
                 //create a deep copy of the user object since we are going to change it.
-                User copiedUser = (User) CopyUtil.deepCopy(updatedUser);
+                User copiedUser = CopyUtil.copySCIMObject(updatedUser);
                 //need to remove password before returning
-                ServerSideValidator.ValidateReturnedAttributes(copiedUser,attributes,excludeAttributes);
+                ServerSideValidator.ValidateReturnedAttributes(copiedUser, projection);
                 encodedUser = encoder.encodeSCIMObject(copiedUser);
                 //add location header
                 httpHeaders.put(SCIMConstants.LOCATION_HEADER, getResourceEndpointURL(
@@ -20,8 +20,11 @@ package org.wso2.charon.core.v2.protocol.endpoints;
 import org.json.JSONException;
 import org.wso2.charon.core.v2.attributes.MultiValuedAttribute;
 import org.wso2.charon.core.v2.encoder.JSONDecoder;
+import org.wso2.charon.core.v2.exceptions.AbstractCharonException;
 import org.wso2.charon.core.v2.exceptions.NotFoundException;
 import org.wso2.charon.core.v2.extensions.UserManager;
+import org.wso2.charon.core.v2.protocol.CachedSCIMResponse;
+import org.wso2.charon.core.v2.protocol.EncodedResponseBody;
 import org.wso2.charon.core.v2.protocol.ResponseCodeConstants;
 import org.wso2.charon.core.v2.protocol.SCIMResponse;
 import org.wso2.charon.core.v2.schema.SCIMResourceSchemaManager;
@@ -46,6 +49,9 @@ import java.util.Map;
  */
 public class ResourceTypeResourceManager extends AbstractResourceManager{
 
+    //encoded resource types, shared by all the instances
+    private static final EncodedResponseCache resourceTypeCache = new EncodedResponseCache();
+
     /**
      * Retrieves a resource type
      *
@@ -61,66 +67,67 @@ public class ResourceTypeResourceManager extends AbstractResourceManager{
      * @return
      */
     private SCIMResponse getResourceType(){
-        JSONEncoder encoder = null;
         try {
-            //obtain the json encoder
-            encoder = getEncoder();
-            //obtain the json decoder
-            JSONDecoder decoder = getDecoder();
-
-            // get the service provider config schema
-            SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getResourceTypeResourceSchema();
-            //create a string in json format for user resource type with relevant values
-            String scimUserObjectString = encoder.buildUserResourceTypeJsonBody();
-            //create a string in json format for group resource type with relevant values
-            String scimGroupObjectString = encoder.buildGroupResourceTypeJsonBody();
-            //build the user abstract scim object
-            AbstractSCIMObject userResourceTypeObject = (AbstractSCIMObject) decoder.decodeResource(
-                    scimUserObjectString, schema, new AbstractSCIMObject());
-            //add meta data
-            userResourceTypeObject = ServerSideValidator.validateResourceTypeSCIMObject(userResourceTypeObject);
-            //build the group abstract scim object
-            AbstractSCIMObject groupResourceTypeObject = (AbstractSCIMObject) decoder.decodeResource(
-                    scimGroupObjectString, schema, new AbstractSCIMObject());
-            //add meta data
-            groupResourceTypeObject = ServerSideValidator.validateResourceTypeSCIMObject(groupResourceTypeObject);
-            //build the root abstract scim object
-            AbstractSCIMObject resourceTypeObject = buildCombinedResourceType(userResourceTypeObject,
-                    groupResourceTypeObject);
-            //encode the newly created SCIM Resource Type object.
-            String encodedObject;
+            //the encoded resource types are only built again once the configuration or the encoder has changed.
+            EncodedResponseBody encodedObject = resourceTypeCache.get(getEncoder(),
+                    new EncodedResponseCache.BodyBuilder() {
+                        @Override
+                        public String build(JSONEncoder encoder) throws AbstractCharonException, JSONException {
+                            return encodeResourceType(encoder);
+                        }
+                    });
             Map<String, String> ResponseHeaders = new HashMap<String, String>();
-
-            if (resourceTypeObject != null) {
-                //create a deep copy of the resource type object since we are going to change it.
-                AbstractSCIMObject copiedObject = (AbstractSCIMObject) CopyUtil.deepCopy(resourceTypeObject);
-                encodedObject = encoder.encodeSCIMObject(copiedObject);
-                //add location header
-                ResponseHeaders.put(SCIMConstants.LOCATION_HEADER, getResourceEndpointURL(
-                        SCIMConstants.RESOURCE_TYPE_ENDPOINT));
-                ResponseHeaders.put(SCIMConstants.CONTENT_TYPE_HEADER, SCIMConstants.APPLICATION_JSON);
-
-            } else {
-                String error = "Newly created User resource is null.";
-                throw new InternalErrorException(error);
-            }
+            //add location header
+            ResponseHeaders.put(SCIMConstants.LOCATION_HEADER, getResourceEndpointURL(
+                    SCIMConstants.RESOURCE_TYPE_ENDPOINT));
+            ResponseHeaders.put(SCIMConstants.CONTENT_TYPE_HEADER, SCIMConstants.APPLICATION_JSON);
+            ResponseHeaders.put(SCIMConstants.ETAG_HEADER, encodedObject.getETag());
             //put the URI of the resource type object in the response header parameter.
-            return new SCIMResponse(ResponseCodeConstants.CODE_OK,
-                    encodedObject, ResponseHeaders);
-        }
-        catch (CharonException e) {
-            return encodeSCIMException(e);
-        } catch (BadRequestException e) {
-            return encodeSCIMException(e);
-        } catch (InternalErrorException e) {
-            return encodeSCIMException(e);
-        } catch (NotFoundException e) {
+            return new CachedSCIMResponse(ResponseCodeConstants.CODE_OK, encodedObject, ResponseHeaders);
+        } catch (AbstractCharonException e) {
             return encodeSCIMException(e);
         } catch (JSONException e) {
             return null;
         }
     }
 
+    /*
+     * Build the user and group resource type objects and encode them as one resource type object.
+     */
+    private String encodeResourceType(JSONEncoder encoder)
+            throws CharonException, BadRequestException, InternalErrorException, NotFoundException, JSONException {
+        //obtain the json decoder
+        JSONDecoder decoder = getDecoder();
+
+        // get the service provider config schema
+        SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getResourceTypeResourceSchema();
+        //create a string in json format for user resource type with relevant values
+        String scimUserObjectString = encoder.buildUserResourceTypeJsonBody();
+        //create a string in json format for group resource type with relevant values
+        String scimGroupObjectString = encoder.buildGroupResourceTypeJsonBody();
+        //build the user abstract scim object
+        AbstractSCIMObject userResourceTypeObject = (AbstractSCIMObject) decoder.decodeResource(
+                scimUserObjectString, schema, new AbstractSCIMObject());
+        //add meta data
+        userResourceTypeObject = ServerSideValidator.validateResourceTypeSCIMObject(userResourceTypeObject);
+        //build the group abstract scim object
+        AbstractSCIMObject groupResourceTypeObject = (AbstractSCIMObject) decoder.decodeResource(
+                scimGroupObjectString, schema, new AbstractSCIMObject());
+        //add meta data
+        groupResourceTypeObject = ServerSideValidator.validateResourceTypeSCIMObject(groupResourceTypeObject);
+        //build the root abstract scim object
+        AbstractSCIMObject resourceTypeObject = buildCombinedResourceType(userResourceTypeObject,
+                groupResourceTypeObject);
+
+        if (resourceTypeObject == null) {
+            String error = "Newly created User resource is null.";
+            throw new InternalErrorException(error);
+        }
+        //create a deep copy of the resource type object since we are going to change it.
+        AbstractSCIMObject copiedObject = CopyUtil.copySCIMObject(resourceTypeObject);
+        return encoder.encodeSCIMObject(copiedObject);
+    }
+
     @Override
     public SCIMResponse create(String scimObjectString, UserManager userManager, String attributes, String excludeAttributes) {
         String error= "Request is undefined";
@@ -21,7 +21,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.json.JSONException;
 import org.wso2.charon.core.v2.encoder.JSONDecoder;
-import org.wso2.charon.core.v2.exceptions.NotFoundException;
+import org.wso2.charon.core.v2.exceptions.AbstractCharonException;
 import org.wso2.charon.core.v2.extensions.UserManager;
 import org.wso2.charon.core.v2.protocol.ResponseCodeConstants;
 import org.wso2.charon.core.v2.config.CharonConfiguration;
@@ -30,6 +30,8 @@ import org.wso2.charon.core.v2.exceptions.BadRequestException;
 import org.wso2.charon.core.v2.exceptions.CharonException;
 import org.wso2.charon.core.v2.exceptions.InternalErrorException;
 import org.wso2.charon.core.v2.objects.AbstractSCIMObject;
+import org.wso2.charon.core.v2.protocol.CachedSCIMResponse;
+import org.wso2.charon.core.v2.protocol.EncodedResponseBody;
 import org.wso2.charon.core.v2.protocol.SCIMResponse;
 import org.wso2.charon.core.v2.schema.SCIMConstants;
 import org.wso2.charon.core.v2.schema.SCIMResourceSchemaManager;
@@ -49,6 +51,9 @@ public class ServiceProviderConfigResourceManager extends AbstractResourceManage
 
     private Log logger;
 
+    //encoded service provider config, shared by all the instances
+    private static final EncodedResponseCache serviceProviderConfigCache = new EncodedResponseCache();
+
     public ServiceProviderConfigResourceManager() {
         logger = LogFactory.getLog(ServiceProviderConfigResourceManager.class);
     }
@@ -64,55 +69,55 @@ public class ServiceProviderConfigResourceManager extends AbstractResourceManage
     }
 
     private SCIMResponse getServiceProviderConfig(){
-        JSONEncoder encoder = null;
         try {
-            //obtain the json encoder
-            encoder = getEncoder();
-            //obtain the json decoder
-            JSONDecoder decoder = getDecoder();
-
-            // get the service provider config schema
-            SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getServiceProviderConfigResourceSchema();
-            //create a string in json format with relevant values
-            String scimObjectString = encoder.buildServiceProviderConfigJsonBody(CharonConfiguration.getInstance().getConfig());
-            //decode the SCIM service provider config object, encoded in the submitted payload.
-            AbstractSCIMObject ServiceProviderConfigObject = (AbstractSCIMObject) decoder.decodeResource(
-                    scimObjectString, schema, new AbstractSCIMObject());
-
-            //encode the newly created SCIM service provider config object and add id attribute to Location header.
-            String encodedObject;
+            //the encoded config is only built again once the configuration or the encoder has changed.
+            EncodedResponseBody encodedObject = serviceProviderConfigCache.get(getEncoder(),
+                    new EncodedResponseCache.BodyBuilder() {
+                        @Override
+                        public String build(JSONEncoder encoder) throws AbstractCharonException, JSONException {
+                            return encodeServiceProviderConfig(encoder);
+                        }
+                    });
             Map<String, String> ResponseHeaders = new HashMap<String, String>();
-
-            if (ServiceProviderConfigObject != null) {
-                //create a deep copy of the service provider config object since we are going to change it.
-                AbstractSCIMObject copiedObject = (AbstractSCIMObject) CopyUtil.deepCopy(ServiceProviderConfigObject);
-                encodedObject = encoder.encodeSCIMObject(copiedObject);
-                //add location header
-                ResponseHeaders.put(SCIMConstants.LOCATION_HEADER, getResourceEndpointURL(
-                        SCIMConstants.SERVICE_PROVIDER_CONFIG_ENDPOINT));
-                ResponseHeaders.put(SCIMConstants.CONTENT_TYPE_HEADER, SCIMConstants.APPLICATION_JSON);
-
-            } else {
-                String error = "Newly created User resource is null.";
-                throw new InternalErrorException(error);
-            }
+            //add location header
+            ResponseHeaders.put(SCIMConstants.LOCATION_HEADER, getResourceEndpointURL(
+                    SCIMConstants.SERVICE_PROVIDER_CONFIG_ENDPOINT));
+            ResponseHeaders.put(SCIMConstants.CONTENT_TYPE_HEADER, SCIMConstants.APPLICATION_JSON);
+            ResponseHeaders.put(SCIMConstants.ETAG_HEADER, encodedObject.getETag());
             //put the URI of the service provider config object in the response header parameter.
-            return new SCIMResponse(ResponseCodeConstants.CODE_OK,
-                    encodedObject, ResponseHeaders);
-        }
-        catch (CharonException e) {
-            return encodeSCIMException(e);
-        } catch (BadRequestException e) {
-            return encodeSCIMException(e);
-        } catch (InternalErrorException e) {
-            return encodeSCIMException(e);
-        } catch (NotFoundException e) {
+            return new CachedSCIMResponse(ResponseCodeConstants.CODE_OK, encodedObject, ResponseHeaders);
+        } catch (AbstractCharonException e) {
             return encodeSCIMException(e);
         } catch (JSONException e) {
             return  null;
         }
     }
 
+    /*
+     * Build the service provider config object from the charon configuration and encode it.
+     */
+    private String encodeServiceProviderConfig(JSONEncoder encoder)
+            throws CharonException, BadRequestException, InternalErrorException, JSONException {
+        //obtain the json decoder
+        JSONDecoder decoder = getDecoder();
+
+        // get the service provider config schema
+        SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getServiceProviderConfigResourceSchema();
+        //create a string in json format with relevant values
+        String scimObjectString = encoder.buildServiceProviderConfigJsonBody(CharonConfiguration.getInstance().getConfig());
+        //decode the SCIM service provider config object, encoded in the submitted payload.
+        AbstractSCIMObject ServiceProviderConfigObject = (AbstractSCIMObject) decoder.decodeResource(
+                scimObjectString, schema, new AbstractSCIMObject());
+
+        if (ServiceProviderConfigObject == null) {
+            String error = "Newly created User resource is null.";
+            throw new InternalErrorException(error);
+        }
+        //create a deep copy of the service provider config object since we are going to change it.
+        AbstractSCIMObject copiedObject = CopyUtil.copySCIMObject(ServiceProviderConfigObject);
+        return encoder.encodeSCIMObject(copiedObject);
+    }
+
     @Override
     public SCIMResponse create(String scimObjectString, UserManager userManager, String attributes, String excludeAttributes) {
         String error= "Request is undefined";
@@ -4,26 +4,38 @@ package org.wso2.charon.core.v2.protocol.endpoints;
 import org.wso2.charon.core.v2.config.CharonConfiguration;
 import org.wso2.charon.core.v2.encoder.JSONDecoder;
 import org.wso2.charon.core.v2.encoder.JSONEncoder;
+import org.wso2.charon.core.v2.encoder.SCIMCodec;
+import org.wso2.charon.core.v2.encoder.StreamingJSONEncoder;
 import org.wso2.charon.core.v2.exceptions.*;
+import org.wso2.charon.core.v2.extensions.CursorUserManager;
+import org.wso2.charon.core.v2.extensions.ResourceIterator;
+import org.wso2.charon.core.v2.extensions.StreamingUserManager;
 import org.wso2.charon.core.v2.extensions.UserManager;
 import org.wso2.charon.core.v2.objects.ListedResource;
+import org.wso2.charon.core.v2.objects.SCIMObject;
 import org.wso2.charon.core.v2.objects.User;
 import org.wso2.charon.core.v2.utils.ResourceManagerUtil;
 import org.wso2.charon.core.v2.protocol.ResponseCodeConstants;
 import org.wso2.charon.core.v2.protocol.SCIMResponse;
+import org.wso2.charon.core.v2.protocol.StreamingSCIMResponse;
 import org.wso2.charon.core.v2.schema.SCIMResourceSchemaManager;
 import org.wso2.charon.core.v2.schema.SCIMResourceTypeSchema;
-import org.wso2.charon.core.v2.utils.codeutils.FilterTreeManager;
+import org.wso2.charon.core.v2.utils.codeutils.FilterCost;
+import org.wso2.charon.core.v2.utils.codeutils.FilterTreeCache;
 import org.wso2.charon.core.v2.utils.codeutils.Node;
+import org.wso2.charon.core.v2.utils.codeutils.PageCursor;
+import org.wso2.charon.core.v2.utils.codeutils.ResourceSorter;
 import org.wso2.charon.core.v2.attributes.Attribute;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.logging.Log;
 import org.wso2.charon.core.v2.schema.SCIMConstants;
 import org.wso2.charon.core.v2.schema.ServerSideValidator;
+import org.wso2.charon.core.v2.utils.AttributeProjection;
 import org.wso2.charon.core.v2.utils.CopyUtil;
 import org.wso2.charon.core.v2.utils.codeutils.SearchRequest;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
 
 /**
@@ -48,6 +60,19 @@ public class UserResourceManager extends AbstractResourceManager {
      * @return SCIM response to be returned.
      */
     public SCIMResponse get(String id, UserManager userManager, String attributes, String excludeAttributes) {
+        return get(id, userManager, attributes, excludeAttributes, null);
+    }
+
+    /**
+     * Retrieves a user resource given an unique user id, encoding it with the given codec.
+     *
+     * @param id          - unique resource id
+     * @param userManager - userManager instance defined by the external implementor of charon
+     * @param codec       - codec of the response body, eg: the one of the accepted media type
+     * @return SCIM response to be returned.
+     */
+    public SCIMResponse get(String id, UserManager userManager, String attributes, String excludeAttributes,
+                            SCIMCodec codec) {
         JSONEncoder encoder = null;
         try {
             //obtain the json encoder
@@ -57,9 +82,11 @@ public class UserResourceManager extends AbstractResourceManager {
             // unless configured returns core-user schema or else returns extended user schema)
             SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getUserResourceSchema();
 
+            //the attributes and excludedAttributes parameters are compiled once for the whole request
+            AttributeProjection projection = AttributeProjection.compile(attributes, excludeAttributes);
             //get the URIs of required attributes which must be given a value
-            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs((SCIMResourceTypeSchema)
-                    CopyUtil.deepCopy(schema),attributes, excludeAttributes);
+            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs(schema,
+                    projection);
 
             /*API user should pass a UserManager impl to UserResourceEndpoint.
             retrieve the user from the provided UM handler.*/
@@ -71,15 +98,13 @@ public class UserResourceManager extends AbstractResourceManager {
                 throw new NotFoundException(error);
             }
             //perform service provider side validation.
-            ServerSideValidator.validateRetrievedSCIMObject(user, schema, attributes, excludeAttributes);
-            //convert the user into requested format.
-            String encodedUser = encoder.encodeSCIMObject(user);
+            ServerSideValidator.validateRetrievedSCIMObject(user, schema, projection);
             //if there are any http headers to be added in the response header.
             Map<String, String> ResponseHeaders = new HashMap<String, String>();
             ResponseHeaders.put(SCIMConstants.CONTENT_TYPE_HEADER, SCIMConstants.APPLICATION_JSON);
             ResponseHeaders.put(SCIMConstants.LOCATION_HEADER, getResourceEndpointURL(
                     SCIMConstants.USER_ENDPOINT) + "/" + user.getId());
-            return new SCIMResponse(ResponseCodeConstants.CODE_OK, encodedUser, ResponseHeaders);
+            return buildSCIMResponse(ResponseCodeConstants.CODE_OK, user, ResponseHeaders, codec);
 
         } catch (NotFoundException e) {
             return AbstractResourceManager.encodeSCIMException(e);
@@ -98,6 +123,25 @@ public class UserResourceManager extends AbstractResourceManager {
      */
     public SCIMResponse create(String scimObjectString, UserManager userManager,
                                String attributes, String excludeAttributes)  {
+        return create(scimObjectString, null, null, userManager, attributes, excludeAttributes);
+    }
+
+    /**
+     * Returns SCIMResponse based on the sucess or failure of the create user operation, reading the user from
+     * the request stream with the codec of its Content-Type and encoding the created user with the same codec.
+     *
+     * @param scimObjectStream - request stream containing user info
+     * @param codec            - codec of the request Content-Type
+     * @param userManager      - userManager instance defined by the external implementor of charon
+     * @return SCIM response to be returned.
+     */
+    public SCIMResponse create(InputStream scimObjectStream, SCIMCodec codec, UserManager userManager,
+                               String attributes, String excludeAttributes) {
+        return create(null, scimObjectStream, codec, userManager, attributes, excludeAttributes);
+    }
+
+    private SCIMResponse create(String scimObjectString, InputStream scimObjectStream, SCIMCodec codec,
+                                UserManager userManager, String attributes, String excludeAttributes) {
 
         JSONEncoder encoder =null;
         try {
@@ -111,12 +155,19 @@ public class UserResourceManager extends AbstractResourceManager {
             // unless configured returns core-user schema or else returns extended user schema)
             SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getUserResourceSchema();
             //decode the SCIM User object, encoded in the submitted payload.
-            User user = (User) decoder.decodeResource(scimObjectString, schema, new User());
+            User user;
+            if (codec != null) {
+                user = (User) codec.decodeResource(scimObjectStream, schema, new User());
+            } else {
+                user = (User) decoder.decodeResource(scimObjectString, schema, new User());
+            }
             //validate the created user.
             ServerSideValidator.validateCreatedSCIMObject(user, schema);
+            //the attributes and excludedAttributes parameters are compiled once for the whole request
+            AttributeProjection projection = AttributeProjection.compile(attributes, excludeAttributes);
             //get the URIs of required attributes which must be given a value
-            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs((SCIMResourceTypeSchema)
-                                    CopyUtil.deepCopy(schema),attributes, excludeAttributes);
+            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs(schema,
+                    projection);
             User createdUser ;
 
             if (userManager != null) {
@@ -135,13 +186,17 @@ public class UserResourceManager extends AbstractResourceManager {
 
             if (createdUser != null) {
                 //create a deep copy of the user object since we are going to change it.
-                User copiedUser = (User) CopyUtil.deepCopy(createdUser);
+                User copiedUser = CopyUtil.copySCIMObject(createdUser);
                 //need to remove password before returning
-                ServerSideValidator.ValidateReturnedAttributes(copiedUser, attributes, excludeAttributes);
-                encodedUser = encoder.encodeSCIMObject(copiedUser);
+                ServerSideValidator.ValidateReturnedAttributes(copiedUser, projection);
                 //add location header
                 ResponseHeaders.put(SCIMConstants.LOCATION_HEADER, getResourceEndpointURL(
                         SCIMConstants.USER_ENDPOINT) + "/" + createdUser.getId());
+                if (codec != null) {
+                    return buildSCIMResponse(ResponseCodeConstants.CODE_CREATED, copiedUser, ResponseHeaders,
+                            codec);
+                }
+                encodedUser = encoder.encodeSCIMObject(copiedUser);
                 ResponseHeaders.put(SCIMConstants.CONTENT_TYPE_HEADER, SCIMConstants.APPLICATION_JSON);
 
             } else {
@@ -223,7 +278,6 @@ public class UserResourceManager extends AbstractResourceManager {
                                     int startIndex, int count, String sortBy, String sortOrder,
                                     String attributes, String excludeAttributes) {
 
-        FilterTreeManager filterTreeManager = null;
         Node rootNode = null;
         JSONEncoder encoder = null;
         try {
@@ -253,21 +307,31 @@ public class UserResourceManager extends AbstractResourceManager {
             SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getUserResourceSchema();
 
             if(filter != null){
-                filterTreeManager = new FilterTreeManager(filter, schema);
-                rootNode = filterTreeManager.buildTree();
+                rootNode = FilterTreeCache.getInstance().getOptimizedFilterTree(filter, schema);
+                //reject filters over the configured limits before they reach the user manager
+                FilterCost.estimate(rootNode, schema).checkLimits();
             }
 
             //obtain the json encoder
             encoder = getEncoder();
 
+            //the attributes and excludedAttributes parameters are compiled once for the whole request
+            AttributeProjection projection = AttributeProjection.compile(attributes, excludeAttributes);
             //get the URIs of required attributes which must be given a value
-            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs((SCIMResourceTypeSchema)
-                    CopyUtil.deepCopy(schema),attributes, excludeAttributes);
+            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs(schema,
+                    projection);
 
             List<Object> returnedUsers;
             int totalResults = 0 ;
             //API user should pass a UserManager storage to UserResourceEndpoint.
             if (userManager != null) {
+                if (userManager instanceof StreamingUserManager && encoder instanceof StreamingJSONEncoder) {
+                    //validate and encode the users one at a time while the response is written.
+                    ResourceIterator<User> users = ((StreamingUserManager) userManager).iterateUsersWithGET(
+                            rootNode, startIndex, count, sortBy, sortOrder, requiredAttributes);
+                    return buildStreamingListResponse((StreamingJSONEncoder) encoder, users, startIndex, schema,
+                            projection);
+                }
                 List<Object> tempList = userManager.listUsersWithGET(rootNode, startIndex, count,
                         sortBy, sortOrder, requiredAttributes);
 
@@ -284,16 +348,14 @@ public class UserResourceManager extends AbstractResourceManager {
 
                 for(Object user : returnedUsers){
                     //perform service provider side validation.
-                    ServerSideValidator.validateRetrievedSCIMObjectInList((User) user, schema, attributes, excludeAttributes);
+                    ServerSideValidator.validateRetrievedSCIMObjectInList((User) user, schema, projection);
                 }
                 //create a listed resource object out of the returned users list.
                 ListedResource listedResource = createListedResource(returnedUsers, startIndex, totalResults);
-                //convert the listed resource into specific format.
-                String encodedListedResource = encoder.encodeSCIMObject(listedResource);
                 //if there are any http headers to be added in the response header.
                 Map<String, String> ResponseHeaders = new HashMap<String, String>();
                 ResponseHeaders.put(SCIMConstants.CONTENT_TYPE_HEADER, SCIMConstants.APPLICATION_JSON);
-                return new SCIMResponse(ResponseCodeConstants.CODE_OK, encodedListedResource, ResponseHeaders);
+                return buildSCIMResponse(ResponseCodeConstants.CODE_OK, listedResource, ResponseHeaders);
 
             } else {
                 String error = "Provided user manager handler is null.";
@@ -318,6 +380,107 @@ public class UserResourceManager extends AbstractResourceManager {
         }
     }
 
+    /**
+     * To list the resources of resource endpoint page by page with cursors instead of startIndex.
+     * @param userManager
+     * @param filter
+     * @param cursor - nextCursor of the previous page, or an empty string for the first page
+     * @param count
+     * @param sortBy
+     * @param sortOrder
+     * @param attributes
+     * @param excludeAttributes
+     * @return
+     */
+    public SCIMResponse listWithGET(UserManager userManager, String filter, String cursor, int count,
+                                    String sortBy, String sortOrder, String attributes, String excludeAttributes) {
+        try {
+            //If count is not set, server default should be taken
+            if (count == 0) {
+                count = CharonConfiguration.getInstance().getCountValueForPagination();
+            }
+            //If a value for "sortBy" is provided and no "sortOrder" is specified, "sortOrder" SHALL default to ascending.
+            if (sortOrder == null && sortBy != null) {
+                sortOrder = SCIMConstants.OperationalConstants.ASCENDING;
+            }
+            SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getUserResourceSchema();
+            Node rootNode = null;
+            if (filter != null) {
+                rootNode = FilterTreeCache.getInstance().getOptimizedFilterTree(filter, schema);
+                //reject filters over the configured limits before they reach the user manager
+                FilterCost.estimate(rootNode, schema).checkLimits();
+            }
+            return listWithCursor(userManager, rootNode, cursor, count, sortBy, sortOrder, schema,
+                    AttributeProjection.compile(attributes, excludeAttributes));
+        } catch (CharonException e) {
+            return AbstractResourceManager.encodeSCIMException(e);
+        } catch (InternalErrorException e) {
+            return AbstractResourceManager.encodeSCIMException(e);
+        } catch (BadRequestException e) {
+            return AbstractResourceManager.encodeSCIMException(e);
+        } catch (NotImplementedException e) {
+            return AbstractResourceManager.encodeSCIMException(e);
+        } catch (IOException e) {
+            String error = "Error in tokenization of the input filter";
+            CharonException charonException = new CharonException(error);
+            return AbstractResourceManager.encodeSCIMException(charonException);
+        }
+    }
+
+    /*
+     * Lists the page of users after the given cursor with a CursorUserManager. The cursor of the next page is
+     * taken from the last user of the page, and left out once a page is not full.
+     */
+    private SCIMResponse listWithCursor(UserManager userManager, Node rootNode, String cursor, int count,
+                                        String sortBy, String sortOrder, SCIMResourceTypeSchema schema,
+                                        AttributeProjection projection)
+            throws CharonException, InternalErrorException, BadRequestException, NotImplementedException {
+        //API user should pass a UserManager storage to UserResourceEndpoint.
+        if (userManager == null) {
+            String error = "Provided user manager handler is null.";
+            throw new InternalErrorException(error);
+        }
+        if (!(userManager instanceof CursorUserManager)) {
+            String error = "Cursor based pagination is not supported by the user manager.";
+            throw new NotImplementedException(error);
+        }
+        //validates sortBy and sortOrder, and takes the cursor of the next page
+        ResourceSorter sorter = ResourceSorter.compile(sortBy, sortOrder, schema);
+        PageCursor pageCursor = null;
+        if (cursor != null && cursor.length() != 0) {
+            pageCursor = PageCursor.decode(cursor);
+            if (!pageCursor.matches(sorter.getSortByURI(), sorter.isDescending())) {
+                String error = "Given cursor does not belong to a list with the same sortBy and sortOrder.";
+                throw new BadRequestException(error, ResponseCodeConstants.INVALID_CURSOR);
+            }
+        }
+        //get the URIs of required attributes which must be given a value
+        Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs(schema,
+                projection);
+
+        List<Object> returnedUsers = ((CursorUserManager) userManager).listUsersWithCursor(rootNode, pageCursor,
+                count, sorter.getSortByURI(), sortOrder, requiredAttributes);
+        int totalResults = (int) returnedUsers.get(0);
+        returnedUsers.remove(0);
+
+        //the cursor is taken before the validation removes the attributes which are not asked for, which may
+        //include the sortBy attribute
+        String nextCursor = null;
+        if (!returnedUsers.isEmpty() && returnedUsers.size() >= count) {
+            nextCursor = sorter.getCursor((User) returnedUsers.get(returnedUsers.size() - 1)).encode();
+        }
+        for (Object user : returnedUsers) {
+            //perform service provider side validation.
+            ServerSideValidator.validateRetrievedSCIMObjectInList((User) user, schema, projection);
+        }
+        //an empty page is not an error here, the previous page may have ended with the last user.
+        ListedResource listedResource = createListedResource(returnedUsers, totalResults, nextCursor);
+        //if there are any http headers to be added in the response header.
+        Map<String, String> ResponseHeaders = new HashMap<String, String>();
+        ResponseHeaders.put(SCIMConstants.CONTENT_TYPE_HEADER, SCIMConstants.APPLICATION_JSON);
+        return buildSCIMResponse(ResponseCodeConstants.CODE_OK, listedResource, ResponseHeaders);
+    }
+
     /*
      * this facilitates the querying using HTTP POST
      * @param resourceString
@@ -362,15 +525,32 @@ public class UserResourceManager extends AbstractResourceManager {
                 searchRequest.setSortOder(SCIMConstants.OperationalConstants.ASCENDING);
             }
 
-            //get the URIs of required attributes which must be given a value
-            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs((SCIMResourceTypeSchema)
-                    CopyUtil.deepCopy(schema), searchRequest.getAttributesAsString(),
+            //the attributes and excludedAttributes parameters are compiled once for the whole request
+            AttributeProjection projection = AttributeProjection.compile(searchRequest.getAttributesAsString(),
                     searchRequest.getExcludedAttributesAsString());
 
+            //a search request with a cursor is paged with cursors instead of startIndex
+            if (searchRequest.getCursor() != null) {
+                return listWithCursor(userManager, searchRequest.getFilter(), searchRequest.getCursor(),
+                        searchRequest.getCount(), searchRequest.getSortBy(), searchRequest.getSortOder(), schema,
+                        projection);
+            }
+
+            //get the URIs of required attributes which must be given a value
+            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs(schema,
+                    projection);
+
             List<Object> returnedUsers;
             int totalResults = 0;
             //API user should pass a UserManager storage to UserResourceEndpoint.
             if (userManager != null) {
+                if (userManager instanceof StreamingUserManager && encoder instanceof StreamingJSONEncoder) {
+                    //validate and encode the users one at a time while the response is written.
+                    ResourceIterator<User> users = ((StreamingUserManager) userManager).iterateUsersWithPost(
+                            searchRequest, requiredAttributes);
+                    return buildStreamingListResponse((StreamingJSONEncoder) encoder, users,
+                            searchRequest.getStartIndex(), schema, projection);
+                }
                 List<Object> tempList = userManager.listUsersWithPost(searchRequest, requiredAttributes);
 
                 totalResults = (int) tempList.get(0);
@@ -387,18 +567,15 @@ public class UserResourceManager extends AbstractResourceManager {
 
                 for(Object user : returnedUsers){
                     //perform service provider side validation.
-                    ServerSideValidator.validateRetrievedSCIMObjectInList((User) user, schema,
-                            searchRequest.getAttributesAsString(), searchRequest.getExcludedAttributesAsString());
+                    ServerSideValidator.validateRetrievedSCIMObjectInList((User) user, schema, projection);
                 }
                 //create a listed resource object out of the returned users list.
                 ListedResource listedResource = createListedResource(
                         returnedUsers, searchRequest.getStartIndex(), totalResults);
-                //convert the listed resource into specific format.
-                String encodedListedResource = encoder.encodeSCIMObject(listedResource);
                 //if there are any http headers to be added in the response header.
                 Map<String, String> ResponseHeaders = new HashMap<String, String>();
                 ResponseHeaders.put(SCIMConstants.CONTENT_TYPE_HEADER, SCIMConstants.APPLICATION_JSON);
-                return new SCIMResponse(ResponseCodeConstants.CODE_OK, encodedListedResource, ResponseHeaders);
+                return buildSCIMResponse(ResponseCodeConstants.CODE_OK, listedResource, ResponseHeaders);
 
             } else {
                 String error = "Provided user manager handler is null.";
@@ -440,9 +617,11 @@ public class UserResourceManager extends AbstractResourceManager {
 
             SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getUserResourceSchema();
 
+            //the attributes and excludedAttributes parameters are compiled once for the whole request
+            AttributeProjection projection = AttributeProjection.compile(attributes, excludeAttributes);
             //get the URIs of required attributes which must be given a value
-            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs((SCIMResourceTypeSchema)
-                    CopyUtil.deepCopy(schema),attributes, excludeAttributes);
+            Map<String, Boolean> requiredAttributes = ResourceManagerUtil.getOnlyRequiredAttributesURIs(schema,
+                    projection);
 
             //decode the SCIM User object, encoded in the submitted payload.
             User user = (User) decoder.decodeResource(scimObjectString, schema, new User());
@@ -468,9 +647,9 @@ public class UserResourceManager extends AbstractResourceManager {
             Map<String, String> httpHeaders = new HashMap<String, String>();
             if (updatedUser != null) {
                 //create a deep copy of the user object since we are going to change it.
-                User copiedUser = (User) CopyUtil.deepCopy(updatedUser);
+                User copiedUser = CopyUtil.copySCIMObject(updatedUser);
                 //need to remove password before returning
-                ServerSideValidator.ValidateReturnedAttributes(copiedUser, attributes, excludeAttributes);
+                ServerSideValidator.ValidateReturnedAttributes(copiedUser, projection);
                 encodedUser = encoder.encodeSCIMObject(copiedUser);
                 //add location header
                 httpHeaders.put(SCIMConstants.LOCATION_HEADER, getResourceEndpointURL(
@@ -536,4 +715,137 @@ public class UserResourceManager extends AbstractResourceManager {
         return listedResource;
     }
 
+    /*
+     * Creates the listed resource of a page taken with a cursor, which has the cursor of the next page
+     * instead of a startIndex.
+     */
+    protected ListedResource createListedResource(List<Object> users, int totalResults, String nextCursor) {
+        ListedResource listedResource = new ListedResource();
+        listedResource.setSchema(SCIMConstants.LISTED_RESOURCE_CORE_SCHEMA_URI);
+        listedResource.setTotalResults(totalResults);
+        listedResource.setItemsPerPage(users.size());
+        if (nextCursor != null) {
+            listedResource.setNextCursor(nextCursor);
+        }
+        for (Object user : users) {
+            listedResource.setResources(((User) user).getAttributeList());
+        }
+        return listedResource;
+    }
+
+    /**
+     * Creates a list response which validates and encodes the users one at a time, as they are taken from the
+     * iterator when the response body is written. The first user is validated before the response is returned,
+     * so that a user failing validation is reported with the error status, as in a non streamed response, as long
+     * as it is the first one. A later user failing validation fails the response body part way
+     * (see StreamingSCIMResponse). The iterator is closed if the response can not be created.
+     * @param encoder
+     * @param users
+     * @param startIndex
+     * @param schema
+     * @param projection - compiled attributes and excludedAttributes parameters of the request
+     * @return
+     * @throws NotFoundException
+     * @throws CharonException
+     * @throws BadRequestException
+     */
+    protected SCIMResponse buildStreamingListResponse(StreamingJSONEncoder encoder, ResourceIterator<User> users,
+                                                      int startIndex, final SCIMResourceTypeSchema schema,
+                                                      final AttributeProjection projection)
+            throws NotFoundException, CharonException, BadRequestException {
+        boolean created = false;
+        try {
+            //if user not found, return an error in relevant format.
+            if (!users.hasNext()) {
+                String error = "No resulted users found in the user store.";
+                //throw resource not found.
+                throw new NotFoundException(error);
+            }
+            final User firstUser = users.next();
+            ServerSideValidator.validateRetrievedSCIMObjectInList(firstUser, schema, projection);
+
+            ListedResource listedResource = new ListedResource();
+            listedResource.setSchema(SCIMConstants.LISTED_RESOURCE_CORE_SCHEMA_URI);
+            listedResource.setTotalResults(users.getTotalResults());
+            listedResource.setStartIndex(startIndex);
+            listedResource.setItemsPerPage(users.getItemsPerPage());
+
+            StreamingJSONEncoder.ResourceValidator validator = new StreamingJSONEncoder.ResourceValidator() {
+                @Override
+                public void validate(SCIMObject user) throws CharonException, BadRequestException {
+                    //the first user has already been validated
+                    if (user != firstUser) {
+                        //perform service provider side validation.
+                        ServerSideValidator.validateRetrievedSCIMObjectInList((User) user, schema, projection);
+                    }
+                }
+            };
+            //if there are any http headers to be added in the response header.
+            Map<String, String> ResponseHeaders = new HashMap<String, String>();
+            ResponseHeaders.put(SCIMConstants.CONTENT_TYPE_HEADER, SCIMConstants.APPLICATION_JSON);
+            SCIMResponse response = new StreamingSCIMResponse(ResponseCodeConstants.CODE_OK,
+                    encoder.getResponseBodyWriter(listedResource, new FirstUserIterator(firstUser, users), validator),
+                    ResponseHeaders, encoder);
+            created = true;
+            return response;
+        } finally {
+            if (!created) {
+                try {
+                    users.close();
+                } catch (IOException e) {
+                    logger.error("Error in closing the user iterator", e);
+                }
+            }
+        }
+    }
+
+    /*
+     * Returns a user already taken from the iterator, followed by the rest of the users of the iterator.
+     */
+    private static class FirstUserIterator implements ResourceIterator<User> {
+
+        private final ResourceIterator<User> users;
+        private User firstUser;
+
+        private FirstUserIterator(User firstUser, ResourceIterator<User> users) {
+            this.firstUser = firstUser;
+            this.users = users;
+        }
+
+        @Override
+        public int getTotalResults() {
+            return users.getTotalResults();
+        }
+
+        @Override
+        public int getItemsPerPage() {
+            return users.getItemsPerPage();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return firstUser != null || users.hasNext();
+        }
+
+        @Override
+        public User next() {
+            if (firstUser != null) {
+                User user = firstUser;
+                firstUser = null;
+                return user;
+            }
+            return users.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() throws IOException {
+            users.close();
+        }
+    }
+
 }
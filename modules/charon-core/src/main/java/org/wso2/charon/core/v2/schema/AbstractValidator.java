@@ -24,6 +24,7 @@ import org.wso2.charon.core.v2.exceptions.BadRequestException;
 import org.wso2.charon.core.v2.exceptions.CharonException;
 import org.wso2.charon.core.v2.objects.AbstractSCIMObject;
 import org.wso2.charon.core.v2.protocol.ResponseCodeConstants;
+import org.wso2.charon.core.v2.utils.AttributeProjection;
 import org.wso2.charon.core.v2.utils.CopyUtil;
 import org.wso2.charon.core.v2.attributes.*;
 
@@ -239,47 +240,51 @@ public abstract class AbstractValidator {
      */
     public static void ValidateReturnedAttributes(AbstractSCIMObject scimObject, String requestedAttributes,
                                                   String requestedExcludingAttributes) throws CharonException {
-        List<String> requestedAttributesList = null;
-        List<String> requestedExcludingAttributesList = null;
+        ValidateReturnedAttributes(scimObject,
+                AttributeProjection.compile(requestedAttributes, requestedExcludingAttributes));
+    }
 
-        if(requestedAttributes!=null ){
-            //make a list from the comma separated requestedAttributes
-            requestedAttributesList = Arrays.asList(requestedAttributes.split(","));
-        }
-        if(requestedExcludingAttributes!=null){
-            //make a list from the comma separated requestedExcludingAttributes
-            requestedExcludingAttributesList = Arrays.asList(requestedExcludingAttributes.split(","));
-        }
+    /**
+     * This method is to remove any defined and requested attributes and include
+     * requested attributes if not they have been removed, according to the compiled
+     * 'attributes' and 'excludedAttributes' parameters.
+     *
+     * @param scimObject
+     * @param projection
+     */
+    public static void ValidateReturnedAttributes(AbstractSCIMObject scimObject, AttributeProjection projection)
+            throws CharonException {
         Map<String, Attribute> attributeList = scimObject.getAttributeList();
         ArrayList<Attribute> attributeTemporyList= new ArrayList<Attribute>();
         for (Attribute attribute : attributeList.values()) {
             attributeTemporyList.add(attribute);
         }
         for(Attribute attribute : attributeTemporyList){
+            AttributeProjection.Path attributePath = projection.getRoot().child(attribute.getName());
             //check for never/request attributes.
             if (attribute.getReturned().equals(SCIMDefinitions.Returned.NEVER)) {
                 scimObject.deleteAttribute(attribute.getName());
             }
             //if the returned property is request, need to check whether is it specifically requested by the user.
             // If so return it.
-            if(requestedAttributes ==null && requestedExcludingAttributes == null){
+            if(!projection.isAttributesRequested() && !projection.isExcludedAttributesRequested()){
                 if (attribute.getReturned().equals(SCIMDefinitions.Returned.REQUEST)){
                     scimObject.deleteAttribute(attribute.getName());
                 }
             }
             else {
                 //A request should only contains either attributes or exclude attribute params. Not both
-                if(requestedAttributes !=null){
+                if(projection.isAttributesRequested()){
                     //if attributes are set, delete all the request and default attributes
                     //and add only the requested attributes
                     if ((attribute.getReturned().equals(SCIMDefinitions.Returned.DEFAULT)
                             || attribute.getReturned().equals(SCIMDefinitions.Returned.REQUEST))
-                            && (!requestedAttributesList.contains(attribute.getName())
-                            && !isSubAttributeExistsInList(requestedAttributesList,attribute))){
+                            && (!attributePath.isIncluded()
+                            && !isSubAttributeExistsInList(attributePath, attribute))){
                         scimObject.deleteAttribute(attribute.getName());
                     }
                 }
-                else if(requestedExcludingAttributes !=null){
+                else if(projection.isExcludedAttributesRequested()){
                     //removing attributes which has returned as request. This is because no request is made
                     if (attribute.getReturned().equals(SCIMDefinitions.Returned.REQUEST)) {
                         scimObject.deleteAttribute(attribute.getName());
@@ -287,7 +292,7 @@ public abstract class AbstractValidator {
                     //if exclude attribute is set, set of exclude attributes need to be
                     // removed from the default set of attributes
                     if ((attribute.getReturned().equals(SCIMDefinitions.Returned.DEFAULT))
-                            && requestedExcludingAttributesList.contains(attribute.getName())){
+                            && attributePath.isExcluded()){
                         scimObject.deleteAttribute(attribute.getName());
                     }
                 }
@@ -310,8 +315,7 @@ public abstract class AbstractValidator {
                         }
                         for(Attribute subSimpleAttribute : valuesSubAttributeTemporyList){
                             removeValuesSubAttributeOnReturn(subSimpleAttribute, subAttribute, attribute,
-                                    requestedAttributes, requestedExcludingAttributes, requestedAttributesList,
-                                    requestedExcludingAttributesList, scimObject);
+                                    attributePath, projection, scimObject);
                         }
                     }
                 }
@@ -322,6 +326,7 @@ public abstract class AbstractValidator {
                         subAttributeTemporyList.add(subAttribute);
                     }
                     for(Attribute subAttribute : subAttributeTemporyList){
+                        AttributeProjection.Path subAttributePath = attributePath.child(subAttribute.getName());
                         if(subAttribute.getType().equals(SCIMDefinitions.DataType.COMPLEX)){
                             //this applicable for extension schema only
                             if(subAttribute.getMultiValued()){
@@ -338,8 +343,7 @@ public abstract class AbstractValidator {
                                         }
                                         for (Attribute subSubSimpleAttribute : valuesSubSubAttributeTemporyList) {
                                             removeValuesSubSubAttributeOnReturn(attribute, subAttribute, subSubValue, subSubSimpleAttribute,
-                                                    requestedAttributes, requestedExcludingAttributes,
-                                                    requestedAttributesList, requestedExcludingAttributesList, scimObject);
+                                                    attributePath, subAttributePath, projection, scimObject);
                                         }
                                     }
                             }
@@ -351,16 +355,15 @@ public abstract class AbstractValidator {
                                 }
                                 for(Attribute subSubAttribute : subSubAttributeTemporyList){
                                     removeSubSubAttributesOnReturn(attribute, subAttribute, subSubAttribute,
-                                            requestedAttributes, requestedExcludingAttributes,
-                                            requestedAttributesList, requestedExcludingAttributesList,scimObject);
+                                            attributePath, subAttributePath, projection, scimObject);
                                 }
                             }
-                            removeSubAttributesOnReturn(subAttribute, attribute, requestedAttributes, requestedExcludingAttributes,
-                                    requestedAttributesList, requestedExcludingAttributesList,scimObject);
+                            removeSubAttributesOnReturn(subAttribute, attribute, attributePath, subAttributePath,
+                                    projection, scimObject);
                         }
                         else{
-                            removeSubAttributesOnReturn(subAttribute, attribute, requestedAttributes, requestedExcludingAttributes,
-                                    requestedAttributesList, requestedExcludingAttributesList,scimObject);
+                            removeSubAttributesOnReturn(subAttribute, attribute, attributePath, subAttributePath,
+                                    projection, scimObject);
                         }
                     }
                 }
@@ -374,42 +377,41 @@ public abstract class AbstractValidator {
      *
      * @param subAttribute
      * @param attribute
-     * @param requestedAttributes
-     * @param requestedExcludingAttributes
-     * @param requestedAttributesList
-     * @param requestedExcludingAttributesList
+     * @param attributePath
+     * @param subAttributePath
+     * @param projection
      * @param scimObject
      */
 
-    private static void removeSubAttributesOnReturn(Attribute subAttribute, Attribute attribute, String requestedAttributes,
-                                                    String requestedExcludingAttributes, List<String> requestedAttributesList,
-                                                    List<String> requestedExcludingAttributesList, AbstractSCIMObject scimObject){
+    private static void removeSubAttributesOnReturn(Attribute subAttribute, Attribute attribute,
+                                                    AttributeProjection.Path attributePath,
+                                                    AttributeProjection.Path subAttributePath,
+                                                    AttributeProjection projection, AbstractSCIMObject scimObject){
         //check for never/request attributes.
         if (subAttribute.getReturned().equals(SCIMDefinitions.Returned.NEVER)) {
             scimObject.deleteSubAttribute(attribute.getName(),subAttribute.getName());
         }
         //if the returned property is request, need to check whether is it specifically requested by the user.
         // If so return it.
-        if(requestedAttributes ==null && requestedExcludingAttributes == null){
+        if(!projection.isAttributesRequested() && !projection.isExcludedAttributesRequested()){
             if (subAttribute.getReturned().equals(SCIMDefinitions.Returned.REQUEST)){
                 scimObject.deleteSubAttribute(attribute.getName(),subAttribute.getName());
             }
         }
         else{
             //A request should only contains either attributes or exclude attribute params. Not the both
-            if(requestedAttributes !=null){
+            if(projection.isAttributesRequested()){
                 //if attributes are set, delete all the request and default attributes
                 // and add only the requested attributes
                 if ((subAttribute.getReturned().equals(SCIMDefinitions.Returned.DEFAULT)
                         || subAttribute.getReturned().equals(SCIMDefinitions.Returned.REQUEST))
-                        && (!requestedAttributesList.contains(
-                        attribute.getName()+"."+subAttribute.getName()) &&
-                        !requestedAttributesList.contains(attribute.getName())&&
-                        !isSubSubAttributeExistsInList(requestedAttributesList, attribute, subAttribute))){
+                        && (!subAttributePath.isIncluded() &&
+                        !attributePath.isIncluded() &&
+                        !isSubSubAttributeExistsInList(subAttributePath, subAttribute))){
                     scimObject.deleteSubAttribute(attribute.getName(),subAttribute.getName());
                 }
             }
-            else if(requestedExcludingAttributes !=null){
+            else if(projection.isExcludedAttributesRequested()){
                 //removing attributes which has returned as request. This is because no request is made
                 if (subAttribute.getReturned().equals(SCIMDefinitions.Returned.REQUEST)) {
                     scimObject.deleteSubAttribute(attribute.getName(),subAttribute.getName());
@@ -417,8 +419,7 @@ public abstract class AbstractValidator {
                 //if exclude attribute is set, set of exclude attributes need to be
                 // removed from the default set of attributes
                 if ((subAttribute.getReturned().equals(SCIMDefinitions.Returned.DEFAULT))
-                        && requestedExcludingAttributesList.contains(
-                        attribute.getName()+"."+subAttribute.getName())){
+                        && subAttributePath.isExcluded()){
                     scimObject.deleteSubAttribute(attribute.getName(),subAttribute.getName());
                 }
             }
@@ -434,43 +435,44 @@ public abstract class AbstractValidator {
      * @param attribute
      * @param subAttribute
      * @param subSubAttribute
-     * @param requestedAttributes
-     * @param requestedExcludingAttributes
-     * @param requestedAttributesList
-     * @param requestedExcludingAttributesList
+     * @param attributePath
+     * @param subAttributePath
+     * @param projection
      * @param scimObject
      * @throws CharonException
      */
-    private static void removeSubSubAttributesOnReturn(Attribute attribute, Attribute subAttribute, Attribute subSubAttribute, String requestedAttributes,
-                                                       String requestedExcludingAttributes, List<String> requestedAttributesList,
-                                                       List<String> requestedExcludingAttributesList, AbstractSCIMObject scimObject) throws CharonException {
+    private static void removeSubSubAttributesOnReturn(Attribute attribute, Attribute subAttribute, Attribute subSubAttribute,
+                                                       AttributeProjection.Path attributePath,
+                                                       AttributeProjection.Path subAttributePath,
+                                                       AttributeProjection projection, AbstractSCIMObject scimObject)
+            throws CharonException {
+        AttributeProjection.Path subSubAttributePath = subAttributePath.child(subSubAttribute.getName());
         //check for never/request attributes.
         if (subSubAttribute.getReturned().equals(SCIMDefinitions.Returned.NEVER)) {
             scimObject.deleteSubSubAttribute(subSubAttribute.getName(), subAttribute.getName(), attribute.getName());
         }
         //if the returned property is request, need to check whether is it specifically requested by the user.
         // If so return it.
-        if(requestedAttributes ==null && requestedExcludingAttributes == null){
+        if(!projection.isAttributesRequested() && !projection.isExcludedAttributesRequested()){
             if (subSubAttribute.getReturned().equals(SCIMDefinitions.Returned.REQUEST)){
                 scimObject.deleteSubSubAttribute(subSubAttribute.getName(), subAttribute.getName(), attribute.getName());
             }
         }
         else{
             //A request should only contains either attributes or exclude attribute params. Not the both
-            if(requestedAttributes !=null){
+            if(projection.isAttributesRequested()){
                 //if attributes are set, delete all the request and default attributes
                 // and add only the requested attributes
                 if ((subSubAttribute.getReturned().equals(SCIMDefinitions.Returned.DEFAULT)
                         || subSubAttribute.getReturned().equals(SCIMDefinitions.Returned.REQUEST))
-                        && (!requestedAttributesList.contains(
-                        attribute.getName()+"."+ subAttribute.getName()+"."+ subSubAttribute.getName()) &&
-                        !requestedAttributesList.contains(attribute.getName()) &&
-                        !requestedAttributesList.contains(attribute.getName()+"."+ subAttribute.getName()) &&
+                        && (!subSubAttributePath.isIncluded() &&
+                        !attributePath.isIncluded() &&
+                        !subAttributePath.isIncluded() &&
                         !subSubAttribute.getReturned().equals(SCIMDefinitions.Returned.ALWAYS))){
                     scimObject.deleteSubSubAttribute(subSubAttribute.getName(), subAttribute.getName(), attribute.getName());
                 }
             }
-            else if(requestedExcludingAttributes !=null){
+            else if(projection.isExcludedAttributesRequested()){
                 //removing attributes which has returned as request. This is because no request is made
                 if (subSubAttribute.getReturned().equals(SCIMDefinitions.Returned.REQUEST)) {
                     scimObject.deleteSubSubAttribute(subSubAttribute.getName(), subAttribute.getName(), attribute.getName());
@@ -478,8 +480,7 @@ public abstract class AbstractValidator {
                 //if exclude attribute is set, set of exclude attributes need to be
                 // removed from the default set of attributes
                 if ((subSubAttribute.getReturned().equals(SCIMDefinitions.Returned.DEFAULT))
-                        && requestedExcludingAttributesList.contains(
-                        attribute.getName()+"."+subAttribute.getName()+"."+subSubAttribute.getName())){
+                        && subSubAttributePath.isExcluded()){
                     scimObject.deleteSubSubAttribute(subSubAttribute.getName(), subAttribute.getName(), attribute.getName());
                 }
             }
@@ -494,23 +495,20 @@ public abstract class AbstractValidator {
      * @param subSimpleAttribute
      * @param subAttribute
      * @param attribute
-     * @param requestedAttributes
-     * @param requestedExcludingAttributes
-     * @param requestedAttributesList
-     * @param requestedExcludingAttributesList
+     * @param attributePath
+     * @param projection
      * @param scimObject
      */
     private static void removeValuesSubAttributeOnReturn(Attribute subSimpleAttribute, Attribute subAttribute,
-                                                         Attribute attribute, String requestedAttributes,
-                                                         String requestedExcludingAttributes,
-                                                         List<String> requestedAttributesList,
-                                                         List<String> requestedExcludingAttributesList,
+                                                         Attribute attribute, AttributeProjection.Path attributePath,
+                                                         AttributeProjection projection,
                                                          AbstractSCIMObject scimObject){
+        AttributeProjection.Path subSimpleAttributePath = attributePath.child(subSimpleAttribute.getName());
         if(subSimpleAttribute.getReturned().equals(SCIMDefinitions.Returned.NEVER)){
             scimObject.deleteValuesSubAttribute(attribute.getName(),
                     subAttribute.getName(),subSimpleAttribute.getName());
         }
-        if(requestedAttributes ==null && requestedExcludingAttributes == null){
+        if(!projection.isAttributesRequested() && !projection.isExcludedAttributesRequested()){
             if (attribute.getReturned().equals(SCIMDefinitions.Returned.REQUEST)){
                 scimObject.deleteValuesSubAttribute(attribute.getName(),
                         subAttribute.getName(), subSimpleAttribute.getName());
@@ -518,20 +516,19 @@ public abstract class AbstractValidator {
         }
         else{
             //A request should only contains either attributes or exclude attribute params. Not the both
-            if(requestedAttributes !=null){
+            if(projection.isAttributesRequested()){
                 //if attributes are set, delete all the request and default attributes
                 // and add only the requested attributes
                 if ((subSimpleAttribute.getReturned().equals(SCIMDefinitions.Returned.DEFAULT)
                         || subSimpleAttribute.getReturned().equals(SCIMDefinitions.Returned.REQUEST))
-                        && (!requestedAttributesList.contains(
-                        attribute.getName()+"."+subSimpleAttribute.getName()) &&
-                        !requestedAttributesList.contains(attribute.getName()) &&
-                        !isSubSubAttributeExistsInList(requestedAttributesList, attribute, subSimpleAttribute))){
+                        && (!subSimpleAttributePath.isIncluded() &&
+                        !attributePath.isIncluded() &&
+                        !isSubSubAttributeExistsInList(subSimpleAttributePath, subSimpleAttribute))){
                     scimObject.deleteValuesSubAttribute(attribute.getName(),
                             subAttribute.getName(), subSimpleAttribute.getName());
                 }
             }
-            else if(requestedExcludingAttributes !=null){
+            else if(projection.isExcludedAttributesRequested()){
                 //removing attributes which has returned as request. This is because no request is made
                 if (subSimpleAttribute.getReturned().equals(SCIMDefinitions.Returned.REQUEST)) {
                     scimObject.deleteValuesSubAttribute(attribute.getName(),
@@ -540,8 +537,7 @@ public abstract class AbstractValidator {
                 //if exclude attribute is set, set of exclude attributes need to be
                 // removed from the default set of attributes
                 if ((subSimpleAttribute.getReturned().equals(SCIMDefinitions.Returned.DEFAULT))
-                        && requestedExcludingAttributesList.contains(
-                        attribute.getName()+"."+subSimpleAttribute.getName())){
+                        && subSimpleAttributePath.isExcluded()){
                     scimObject.deleteValuesSubAttribute(attribute.getName(),
                             subAttribute.getName(),subSimpleAttribute.getName());
                 }
@@ -561,25 +557,24 @@ public abstract class AbstractValidator {
      * @param subAttribute
      * @param subValue
      * @param subSimpleAttribute
-     * @param requestedAttributes
-     * @param requestedExcludingAttributes
-     * @param requestedAttributesList
-     * @param requestedExcludingAttributesList
+     * @param attributePath
+     * @param subAttributePath
+     * @param projection
      * @param scimObject
      */
     private static void removeValuesSubSubAttributeOnReturn(Attribute attribute, Attribute subAttribute, Attribute subValue,
                                                             Attribute subSimpleAttribute,
-                                                            String requestedAttributes, String requestedExcludingAttributes,
-                                                            List<String> requestedAttributesList,
-                                                            List<String> requestedExcludingAttributesList,
+                                                            AttributeProjection.Path attributePath,
+                                                            AttributeProjection.Path subAttributePath,
+                                                            AttributeProjection projection,
                                                             AbstractSCIMObject scimObject){
-
+        AttributeProjection.Path subSimpleAttributePath = subAttributePath.child(subSimpleAttribute.getName());
 
         if(subSimpleAttribute.getReturned().equals(SCIMDefinitions.Returned.NEVER)){
             scimObject.deleteSubValuesSubAttribute(attribute.getName(),
                     subAttribute.getName(),subValue.getName(),subSimpleAttribute.getName());
         }
-        if(requestedAttributes ==null && requestedExcludingAttributes == null){
+        if(!projection.isAttributesRequested() && !projection.isExcludedAttributesRequested()){
             if (attribute.getReturned().equals(SCIMDefinitions.Returned.REQUEST)){
                 scimObject.deleteSubValuesSubAttribute(attribute.getName(),
                         subAttribute.getName(),subValue.getName(),subSimpleAttribute.getName());
@@ -587,20 +582,19 @@ public abstract class AbstractValidator {
         }
         else{
             //A request should only contains either attributes or exclude attribute params. Not the both
-            if(requestedAttributes !=null){
+            if(projection.isAttributesRequested()){
                 //if attributes are set, delete all the request and default attributes
                 // and add only the requested attributes
                 if ((subSimpleAttribute.getReturned().equals(SCIMDefinitions.Returned.DEFAULT)
                         || subSimpleAttribute.getReturned().equals(SCIMDefinitions.Returned.REQUEST))
-                        && (!requestedAttributesList.contains(
-                        attribute.getName()+"."+subAttribute.getName()+"."+subSimpleAttribute.getName()) &&
-                        !requestedAttributesList.contains(attribute.getName()) &&
-                        !requestedAttributesList.contains(attribute.getName()+"."+subAttribute.getName()))){
+                        && (!subSimpleAttributePath.isIncluded() &&
+                        !attributePath.isIncluded() &&
+                        !subAttributePath.isIncluded())){
                     scimObject.deleteSubValuesSubAttribute(attribute.getName(),
                             subAttribute.getName(),subValue.getName(),subSimpleAttribute.getName());
                 }
             }
-            else if(requestedExcludingAttributes !=null){
+            else if(projection.isExcludedAttributesRequested()){
                 //removing attributes which has returned as request. This is because no request is made
                 if (subSimpleAttribute.getReturned().equals(SCIMDefinitions.Returned.REQUEST)) {
                     scimObject.deleteSubValuesSubAttribute(attribute.getName(),
@@ -609,8 +603,7 @@ public abstract class AbstractValidator {
                 //if exclude attribute is set, set of exclude attributes need to be
                 // removed from the default set of attributes
                 if ((subSimpleAttribute.getReturned().equals(SCIMDefinitions.Returned.DEFAULT))
-                        && requestedExcludingAttributesList.contains(
-                        attribute.getName()+"."+subAttribute.getName()+"."+subSimpleAttribute.getName())){
+                        && subSimpleAttributePath.isExcluded()){
                     scimObject.deleteSubValuesSubAttribute(attribute.getName(),
                             subAttribute.getName(),subValue.getName(),subSimpleAttribute.getName());
                 }
@@ -619,30 +612,29 @@ public abstract class AbstractValidator {
     }
 
     /**
-     * This checks whether, within the 'requestedAttributes', is there a sub attribute of the 'attribute'.
+     * This checks whether, within the requested attributes, is there a sub attribute of the 'attribute'.
      * If so we should not delete the 'attribute'
      *
-     * @param requestedAttributes
+     * @param attributePath
      * @param attribute
      * @return boolean
      */
-    private static boolean isSubAttributeExistsInList(List<String> requestedAttributes, Attribute attribute) {
-        ArrayList<Attribute> subAttributes = null;
+    private static boolean isSubAttributeExistsInList(AttributeProjection.Path attributePath, Attribute attribute) {
+        List<Attribute> subAttributes = null;
         if(attribute instanceof MultiValuedAttribute){
-            subAttributes = (ArrayList<Attribute>)
-                    ((MultiValuedAttribute)attribute).getAttributeValues();
+            subAttributes = ((MultiValuedAttribute)attribute).getAttributeValues();
             if(subAttributes != null){
                 for(Attribute subAttribute : subAttributes){
-                    ArrayList<Attribute> subSimpleAttributes =new ArrayList<Attribute>((
-                            (ComplexAttribute)subAttribute).getSubAttributesList().values());
-                    for(Attribute subSimpleAttribute : subSimpleAttributes){
-                        if(requestedAttributes.contains(attribute.getName()+"."+subSimpleAttribute.getName())){
+                    for(Attribute subSimpleAttribute :
+                            ((ComplexAttribute)subAttribute).getSubAttributesList().values()){
+                        if(attributePath.child(subSimpleAttribute.getName()).isIncluded()){
                             return true;
                         }
                     }
                     //this case is only valid for extension schema
                     if(subAttribute.getType().equals(SCIMDefinitions.DataType.COMPLEX)){
-                        boolean isSubSubAttributeExists = isSubSubAttributeExistsInList(requestedAttributes, attribute, subAttribute);
+                        boolean isSubSubAttributeExists = isSubSubAttributeExistsInList(
+                                attributePath.child(subAttribute.getName()), subAttribute);
                         if(isSubSubAttributeExists){
                             return true;
                         }
@@ -651,53 +643,41 @@ public abstract class AbstractValidator {
             }
         }
         else if(attribute instanceof ComplexAttribute){
-            //complex attributes have sub attribute map, hence need conversion to arraylist
-            subAttributes = new ArrayList<Attribute>
-                    (((HashMap)(((ComplexAttribute)attribute).getSubAttributesList())).values());
-            if(subAttributes != null){
-                for(Attribute subAttribute : subAttributes){
-                    if(requestedAttributes.contains(attribute.getName()+"."+subAttribute.getName())){
+            for(Attribute subAttribute : ((ComplexAttribute)attribute).getSubAttributesList().values()){
+                AttributeProjection.Path subAttributePath = attributePath.child(subAttribute.getName());
+                if(subAttributePath.isIncluded()){
+                    return true;
+                }
+                //this case is only valid for extension schema
+                if(subAttribute.getType().equals(SCIMDefinitions.DataType.COMPLEX)){
+                    boolean isSubSubAttributeExists = isSubSubAttributeExistsInList(subAttributePath, subAttribute);
+                    if(isSubSubAttributeExists){
                         return true;
                     }
-                    //this case is only valid for extension schema
-                    if(subAttribute.getType().equals(SCIMDefinitions.DataType.COMPLEX)){
-                        boolean isSubSubAttributeExists = isSubSubAttributeExistsInList(requestedAttributes, attribute, subAttribute);
-                        if(isSubSubAttributeExists){
-                            return true;
-                        }
-                    }
                 }
             }
-            else{
-                return false;
-            }
         }
         return false;
     }
 
     /**
-     * This checks whether, within the 'requestedAttributes', is there a sub attribute of the 'subAttribute'.
+     * This checks whether, within the requested attributes, is there a sub attribute of the 'parentAttribute'.
      * If so we should not delete the 'attribute'
      * This case is only applicable for extension
      *
-     * @param requestedAttributes
-     * @param grandParentAttribute
+     * @param parentAttributePath
      * @param parentAttribute
      * @return
      */
-    private static boolean isSubSubAttributeExistsInList(List<String> requestedAttributes,
-                                                         Attribute grandParentAttribute, Attribute parentAttribute) {
-        ArrayList<Attribute> subAttributes = null;
+    private static boolean isSubSubAttributeExistsInList(AttributeProjection.Path parentAttributePath,
+                                                         Attribute parentAttribute) {
         if(parentAttribute instanceof MultiValuedAttribute){
-            subAttributes = (ArrayList<Attribute>)
-                    ((MultiValuedAttribute)parentAttribute).getAttributeValues();
+            List<Attribute> subAttributes = ((MultiValuedAttribute)parentAttribute).getAttributeValues();
             if(subAttributes != null){
                 for(Attribute subAttribute : subAttributes){
-                    ArrayList<Attribute> subSimpleAttributes =new ArrayList<Attribute>((
-                            (ComplexAttribute)subAttribute).getSubAttributesList().values());
-                    for(Attribute subSimpleAttribute : subSimpleAttributes){
-                        if(requestedAttributes.contains(grandParentAttribute.getName()+"."+
-                                parentAttribute.getName()+"."+subSimpleAttribute.getName())){
+                    for(Attribute subSimpleAttribute :
+                            ((ComplexAttribute)subAttribute).getSubAttributesList().values()){
+                        if(parentAttributePath.child(subSimpleAttribute.getName()).isIncluded()){
                             return true;
                         }
                     }
@@ -705,20 +685,11 @@ public abstract class AbstractValidator {
             }
         }
         else if(parentAttribute instanceof ComplexAttribute){
-            //complex attributes have sub attribute map, hence need conversion to arraylist
-            subAttributes = new ArrayList<Attribute>
-                    (((HashMap)(((ComplexAttribute)parentAttribute).getSubAttributesList())).values());
-            if(subAttributes != null){
-                for(Attribute subAttribute : subAttributes){
-                    if(requestedAttributes.contains(grandParentAttribute.getName()+"."+
-                            parentAttribute.getName()+"."+subAttribute.getName())){
-                        return true;
-                    }
+            for(Attribute subAttribute : ((ComplexAttribute)parentAttribute).getSubAttributesList().values()){
+                if(parentAttributePath.child(subAttribute.getName()).isIncluded()){
+                    return true;
                 }
             }
-            else{
-                return false;
-            }
         }
         return false;
     }
@@ -753,7 +724,7 @@ public abstract class AbstractValidator {
                             "Removing it and updating from previous value.";
                     logger.debug(error);
                     newObject.deleteAttribute(attributeSchema.getName());
-                    newObject.setAttribute((Attribute) (CopyUtil.deepCopy(oldObject.getAttribute(attributeSchema.getName()))));
+                    newObject.setAttribute(CopyUtil.copyAttribute(oldObject.getAttribute(attributeSchema.getName())));
                 } else if (newAttributeList.containsKey(attributeSchema.getName()) &&
                         !oldAttributeList.containsKey(attributeSchema.getName())) {
                     String error = "Read only attribute: " + attributeSchema.getName() +
@@ -762,7 +733,7 @@ public abstract class AbstractValidator {
                     newObject.deleteAttribute(attributeSchema.getName());
                 } else if (!newAttributeList.containsKey(attributeSchema.getName()) &&
                         oldAttributeList.containsKey(attributeSchema.getName())) {
-                    newObject.setAttribute((Attribute) (CopyUtil.deepCopy(oldObject.getAttribute(attributeSchema.getName()))));
+                    newObject.setAttribute(CopyUtil.copyAttribute(oldObject.getAttribute(attributeSchema.getName())));
                 }
             } else if (attributeSchema.getMutability().equals(SCIMDefinitions.Mutability.IMMUTABLE)) {
                 if (newAttributeList.containsKey(attributeSchema.getName()) &&
@@ -771,7 +742,7 @@ public abstract class AbstractValidator {
 
                 } else if (!newAttributeList.containsKey(attributeSchema.getName()) &&
                         oldAttributeList.containsKey(attributeSchema.getName())) {
-                    newObject.setAttribute((Attribute) (CopyUtil.deepCopy(oldObject.getAttribute(attributeSchema.getName()))));
+                    newObject.setAttribute(CopyUtil.copyAttribute(oldObject.getAttribute(attributeSchema.getName())));
                 }
             }
             checkIfReadOnlyAndImmutableSubAttributesModified(newAttributeList, oldAttributeList, attributeSchema);
@@ -829,18 +800,18 @@ public abstract class AbstractValidator {
             else if(newAttribute ==null && oldAttribute != null) {
                 if (attributeSchema.getMultiValued()) {
                     List<Attribute> oldSubValuesList = ((MultiValuedAttribute) oldAttribute).getAttributeValues();
-                    Attribute clonedMultiValuedAttribute=(Attribute) CopyUtil.deepCopy(oldAttribute);
+                    Attribute clonedMultiValuedAttribute=CopyUtil.copyAttribute(oldAttribute);
                     clonedMultiValuedAttribute.deleteSubAttributes();
 
                     for (Attribute subValue : oldSubValuesList) {
-                        Attribute clonedSubValue=(Attribute) CopyUtil.deepCopy(subValue);
+                        Attribute clonedSubValue=CopyUtil.copyAttribute(subValue);
                         clonedSubValue.deleteSubAttributes();
 
                         for (AttributeSchema subAttributeSchema : subAttributeSchemaList) {
                             if (subAttributeSchema.getMutability().equals(SCIMDefinitions.Mutability.READ_ONLY)
                                     || subAttributeSchema.getMutability().equals(SCIMDefinitions.Mutability.IMMUTABLE)) {
                                 if(((ComplexAttribute)subValue).isSubAttributeExist(subAttributeSchema.getName())){
-                                    Attribute clonedSubValuesAttribute=(Attribute) CopyUtil.deepCopy(
+                                    Attribute clonedSubValuesAttribute=CopyUtil.copyAttribute(
                                             ((ComplexAttribute)subValue).getSubAttribute(subAttributeSchema.getName()));
                                     ((ComplexAttribute)clonedSubValue).setSubAttribute(clonedSubValuesAttribute);
                                 }
@@ -851,7 +822,7 @@ public abstract class AbstractValidator {
                 }
                 else {
                     Map<String, Attribute> oldSubAttributeList = ((ComplexAttribute) (oldAttribute)).getSubAttributesList();
-                    Attribute clonedAttribute=(Attribute) CopyUtil.deepCopy(oldAttribute);
+                    Attribute clonedAttribute=CopyUtil.copyAttribute(oldAttribute);
                     clonedAttribute.deleteSubAttributes();
                     for (AttributeSchema subAttributeSchema : subAttributeSchemaList) {
 
@@ -859,7 +830,7 @@ public abstract class AbstractValidator {
                                 || subAttributeSchema.getMutability().equals(SCIMDefinitions.Mutability.IMMUTABLE)) {
                             if (oldSubAttributeList.containsKey(subAttributeSchema.getName())) {
                                 ((ComplexAttribute)(clonedAttribute)).setSubAttribute(
-                                        (Attribute) CopyUtil.deepCopy(oldSubAttributeList.get(subAttributeSchema.getName())));
+                                        CopyUtil.copyAttribute(oldSubAttributeList.get(subAttributeSchema.getName())));
                             }
                         }
                     }
@@ -933,8 +904,8 @@ public abstract class AbstractValidator {
                     logger.debug(error);
                     ((ComplexAttribute) newAttribute).removeSubAttribute(attributeSchema.getName());
                     ((ComplexAttribute) newAttribute).setSubAttribute(
-                            (Attribute)(CopyUtil.deepCopy((
-                                    (ComplexAttribute)oldAttribute).getSubAttribute(attributeSchema.getName()))));
+                            CopyUtil.copyAttribute((
+                                    (ComplexAttribute)oldAttribute).getSubAttribute(attributeSchema.getName())));
                 } else if (newAttributeList.containsKey(attributeSchema.getName()) &&
                         !oldAttributeList.containsKey(attributeSchema.getName())) {
                     String error = "Read only attribute: " + attributeSchema.getName() +
@@ -944,8 +915,8 @@ public abstract class AbstractValidator {
                 } else if (!newAttributeList.containsKey(attributeSchema.getName()) &&
                         oldAttributeList.containsKey(attributeSchema.getName())) {
                     ((ComplexAttribute) newAttribute).setSubAttribute(
-                            (Attribute)(CopyUtil.deepCopy((
-                                    (ComplexAttribute)oldAttribute).getSubAttribute(attributeSchema.getName()))));
+                            CopyUtil.copyAttribute((
+                                    (ComplexAttribute)oldAttribute).getSubAttribute(attributeSchema.getName())));
                 }
             } else if (attributeSchema.getMutability().equals(SCIMDefinitions.Mutability.IMMUTABLE)) {
                 if (newAttributeList.containsKey(attributeSchema.getName()) &&
@@ -955,8 +926,8 @@ public abstract class AbstractValidator {
                 } else if (!newAttributeList.containsKey(attributeSchema.getName()) &&
                         oldAttributeList.containsKey(attributeSchema.getName())) {
                     ((ComplexAttribute) newAttribute).setSubAttribute(
-                            (Attribute)(CopyUtil.deepCopy((
-                                    (ComplexAttribute)oldAttribute).getSubAttribute(attributeSchema.getName()))));                }
+                            CopyUtil.copyAttribute((
+                                    (ComplexAttribute)oldAttribute).getSubAttribute(attributeSchema.getName())));                }
             }
             if(attributeSchema.getType().equals(SCIMDefinitions.DataType.COMPLEX)){
                 checkIfReadOnlyAndImmutableSubAttributesModified(newAttributeList, oldAttributeList, attributeSchema);
@@ -1064,8 +1035,8 @@ public abstract class AbstractValidator {
                             "Removing it and updating from previous value.";
                     logger.debug(error);
                     ((ComplexAttribute)newAttribute).removeSubAttribute(subAttributeSchema.getName());
-                    ((ComplexAttribute)newAttribute).setSubAttribute((Attribute)(CopyUtil.deepCopy(
-                            (((ComplexAttribute)oldAttribute).getSubAttribute(subAttributeSchema.getName())))));
+                    ((ComplexAttribute)newAttribute).setSubAttribute(CopyUtil.copyAttribute(
+                            (((ComplexAttribute)oldAttribute).getSubAttribute(subAttributeSchema.getName()))));
                 }
                 else if(newSubAttributeList.containsKey(subAttributeSchema.getName()) &&
                         !oldSubAttributeList.containsKey(subAttributeSchema.getName())){
@@ -1076,8 +1047,8 @@ public abstract class AbstractValidator {
                 }
                 else if(!newSubAttributeList.containsKey(subAttributeSchema.getName()) &&
                         oldSubAttributeList.containsKey(subAttributeSchema.getName())){
-                    ((ComplexAttribute)newAttribute).setSubAttribute((Attribute)(CopyUtil.deepCopy(
-                            ((ComplexAttribute)oldAttribute).getSubAttribute(subAttributeSchema.getName()))));
+                    ((ComplexAttribute)newAttribute).setSubAttribute(CopyUtil.copyAttribute(
+                            ((ComplexAttribute)oldAttribute).getSubAttribute(subAttributeSchema.getName())));
                 }
             }
             else if(subAttributeSchema.getMutability().equals(SCIMDefinitions.Mutability.IMMUTABLE)){
@@ -1089,8 +1060,8 @@ public abstract class AbstractValidator {
                 }
                 else if(!newSubAttributeList.containsKey(subAttributeSchema.getName()) &&
                         oldSubAttributeList.containsKey(subAttributeSchema.getName())){
-                    ((ComplexAttribute)newAttribute).setSubAttribute((Attribute)(CopyUtil.deepCopy(
-                            ((ComplexAttribute)oldAttribute).getSubAttribute(subAttributeSchema.getName()))));
+                    ((ComplexAttribute)newAttribute).setSubAttribute(CopyUtil.copyAttribute(
+                            ((ComplexAttribute)oldAttribute).getSubAttribute(subAttributeSchema.getName())));
                 }
             }
 
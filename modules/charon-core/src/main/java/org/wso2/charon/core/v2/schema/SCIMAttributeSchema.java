@@ -18,7 +18,6 @@
 package org.wso2.charon.core.v2.schema;
 
 import org.wso2.charon.core.v2.exceptions.CharonException;
-import org.wso2.charon.core.v2.utils.CopyUtil;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -150,15 +149,11 @@ public class SCIMAttributeSchema implements AttributeSchema, Serializable {
 
     @Override
     public void removeSubAttribute(String subAttributeName) throws CharonException {
-        ArrayList<AttributeSchema> tempSubAttributes = (ArrayList<AttributeSchema>) CopyUtil.deepCopy(subAttributes);
-        int count = 0;
-        for(AttributeSchema subAttributeSchema : tempSubAttributes){
-
-            if(subAttributeSchema.getName().equals(subAttributeName)){
-                subAttributes.remove(count);
+        for (int i = 0; i < subAttributes.size(); i++) {
+            if (subAttributes.get(i).getName().equals(subAttributeName)) {
+                subAttributes.remove(i);
                 return;
             }
-            count++;
         }
     }
 
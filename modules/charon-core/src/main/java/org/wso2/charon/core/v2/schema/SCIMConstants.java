@@ -34,8 +34,11 @@ public class SCIMConstants {
 
     /*Data formats*/
     public static final String JSON = "json";
+    public static final String BINARY = "binary";
 
     public static final String APPLICATION_JSON = "application/scim+json";
+    //compact binary encoding of the SCIM attribute tree, only meant for trusted internal clients
+    public static final String APPLICATION_SCIM_BINARY = "application/x-scim+binary";
 
     public static final String dateTimeFormat = "yyyy-MM-dd'T'HH:mm:ss'Z'";
 
@@ -54,6 +57,7 @@ public class SCIMConstants {
     //HTTP Headers used in SCIM request/response other than auth headers.
     public static final String LOCATION_HEADER = "Location";
     public static final String CONTENT_TYPE_HEADER = "Content-Type";
+    public static final String ETAG_HEADER = "ETag";
 
     public static final String DEFAULT = "default";
 
@@ -108,6 +112,7 @@ public class SCIMConstants {
         public static final String RESOURCES = "Resources";
         public static final String ITEMS_PER_PAGE = "itemsPerPage";
         public static final String START_INDEX = "startIndex";
+        public static final String NEXT_CURSOR = "nextCursor";
     }
     /*Constants found in user schema.*/
 
@@ -512,6 +517,8 @@ public class SCIMConstants {
         public static final String NOT = "not";
         public static final String LEFT = "(";
         public static final String RIGHT = ")";
+        public static final String LEFT_BRACKET = "[";
+        public static final String RIGHT_BRACKET = "]";
 
         public static final String ASCENDING = "ascending";
         public static final String DESCENDING = "descending";
@@ -529,6 +536,7 @@ public class SCIMConstants {
         public static final String EXCLUDED_ATTRIBUTES = "excludedAttributes";
         public static final String COUNT = "count";
         public static final String START_INDEX = "startIndex";
+        public static final String CURSOR = "cursor";
         public static final String SORT_BY = "sortBy";
         public static final String SORT_ORDER = "sortOrder";
         public static final String FILTER = "filter";
@@ -27,11 +27,22 @@ import org.wso2.charon.core.v2.config.SCIMUserSchemaExtensionBuilder;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class SCIMResourceSchemaManager {
 
 	private static SCIMResourceSchemaManager manager = new SCIMResourceSchemaManager();
 
+	//user schema built with the extension, kept until the extension schema is rebuilt.
+	//published as a whole, so that it is read without a lock.
+	private volatile ExtendedUserSchema extendedUserSchema;
+	//attribute schemas of the user and group resources by URI, built for the user schema they were taken from.
+	//published as a whole as well, so that it is read without a lock.
+	private volatile AttributeSchemaIndex attributeSchemaIndex;
+
 	public static SCIMResourceSchemaManager getInstance() {
 		return manager;
 	}
@@ -46,7 +57,12 @@ public class SCIMResourceSchemaManager {
 
 		SCIMAttributeSchema schemaExtension = SCIMUserSchemaExtensionBuilder.getInstance().getExtensionSchema();
 		if (schemaExtension != null) {
-			return SCIMResourceTypeSchema.createSCIMResourceSchema(
+			ExtendedUserSchema cached = extendedUserSchema;
+			if (cached != null && cached.extension == schemaExtension) {
+				return cached.schema;
+			}
+			//a schema built by two threads at once is equivalent, either of them is kept
+			SCIMResourceTypeSchema userSchema = SCIMResourceTypeSchema.createSCIMResourceSchema(
 					new ArrayList<String>(Arrays.asList(SCIMConstants.USER_CORE_SCHEMA_URI, schemaExtension.getURI())),
 					SCIMSchemaDefinitions.ID, SCIMSchemaDefinitions.EXTERNAL_ID, SCIMSchemaDefinitions.META,
 					SCIMSchemaDefinitions.SCIMUserSchemaDefinition.USERNAME,
@@ -71,6 +87,8 @@ public class SCIMResourceSchemaManager {
 					SCIMSchemaDefinitions.SCIMUserSchemaDefinition.ROLES,
 					SCIMSchemaDefinitions.SCIMUserSchemaDefinition.X509CERTIFICATES,
 					schemaExtension);
+			extendedUserSchema = new ExtendedUserSchema(schemaExtension, userSchema);
+			return userSchema;
 		}
 		return SCIMSchemaDefinitions.SCIM_USER_SCHEMA;
 	}
@@ -142,6 +160,41 @@ public class SCIMResourceSchemaManager {
 		return SCIMSchemaDefinitions.SCIM_GROUP_SCHEMA;
 	}
 
+	/**
+	 * Returns the attribute schema of the user or group resources with the given URI, which is the instance
+	 * shared by the attributes created from it.
+	 *
+	 * @param uri - URI of the attribute or sub attribute
+	 * @return AttributeSchema, or null if no attribute of the user or group resources has the URI
+	 */
+	public AttributeSchema getAttributeSchema(String uri) {
+		SCIMResourceTypeSchema userSchema = getUserResourceSchema();
+		AttributeSchemaIndex index = attributeSchemaIndex;
+		if (index == null || index.userSchema != userSchema) {
+			//threads which race here build equal indexes, the last one is kept
+			Map<String, AttributeSchema> schemas = new HashMap<String, AttributeSchema>();
+			addAttributeSchemas(schemas, userSchema.getAttributesList());
+			addAttributeSchemas(schemas, getGroupResourceSchema().getAttributesList());
+			index = new AttributeSchemaIndex(userSchema, Collections.unmodifiableMap(schemas));
+			attributeSchemaIndex = index;
+		}
+		return index.attributeSchemas.get(uri);
+	}
+
+	private static void addAttributeSchemas(Map<String, AttributeSchema> schemas,
+											List<? extends AttributeSchema> attributeSchemas) {
+		if (attributeSchemas == null) {
+			return;
+		}
+		for (AttributeSchema attributeSchema : attributeSchemas) {
+			//the first of the attributes sharing a URI is kept, eg: id of both users and groups
+			if (attributeSchema.getURI() != null && !schemas.containsKey(attributeSchema.getURI())) {
+				schemas.put(attributeSchema.getURI(), attributeSchema);
+			}
+			addAttributeSchemas(schemas, attributeSchema.getSubAttributeSchemas());
+		}
+	}
+
 	/**
 	 * return resource type resource schema
 	 * @return
@@ -150,4 +203,31 @@ public class SCIMResourceSchemaManager {
 		return SCIMSchemaDefinitions.SCIM_RESOURCE_TYPE_SCHEMA;
 	}
 
-}
\ No newline at end of file
+	/*
+	 * The user schema together with the extension schema it was built with.
+	 */
+	private static final class ExtendedUserSchema {
+
+		private final SCIMAttributeSchema extension;
+		private final SCIMResourceTypeSchema schema;
+
+		private ExtendedUserSchema(SCIMAttributeSchema extension, SCIMResourceTypeSchema schema) {
+			this.extension = extension;
+			this.schema = schema;
+		}
+	}
+
+	/*
+	 * The attribute schemas by URI, together with the user schema they were taken from.
+	 */
+	private static final class AttributeSchemaIndex {
+
+		private final SCIMResourceTypeSchema userSchema;
+		private final Map<String, AttributeSchema> attributeSchemas;
+
+		private AttributeSchemaIndex(SCIMResourceTypeSchema userSchema, Map<String, AttributeSchema> attributeSchemas) {
+			this.userSchema = userSchema;
+			this.attributeSchemas = attributeSchemas;
+		}
+	}
+}
@@ -24,7 +24,8 @@ import org.wso2.charon.core.v2.exceptions.NotFoundException;
 import org.wso2.charon.core.v2.objects.AbstractSCIMObject;
 import org.wso2.charon.core.v2.objects.User;
 import org.wso2.charon.core.v2.protocol.endpoints.AbstractResourceManager;
-import org.wso2.charon.core.v2.utils.AttributeUtil;
+import org.wso2.charon.core.v2.utils.AttributeProjection;
+import org.wso2.charon.core.v2.utils.DateTimeUtil;
 
 import java.util.*;
 
@@ -51,11 +52,12 @@ public class ServerSideValidator extends AbstractValidator{
         //add created and last modified dates
         String id = UUID.randomUUID().toString();
         scimObject.setId(id);
-        Date date = new Date();
+        //dates are kept in second resolution, as they are encoded.
+        Date date = DateTimeUtil.truncateToSeconds(new Date());
         //set the created date and time
-        scimObject.setCreatedDate(AttributeUtil.parseDateTime(AttributeUtil.formatDateTime(date)));
+        scimObject.setCreatedDate(date);
         //creates date and the last modified are the same if not updated.
-        scimObject.setLastModified(AttributeUtil.parseDateTime(AttributeUtil.formatDateTime(date)));
+        scimObject.setLastModified(new Date(date.getTime()));
         //set location and resourceType
         if (resourceSchema.isSchemaAvailable(SCIMConstants.USER_CORE_SCHEMA_URI)){
             String location = createLocationHeader(AbstractResourceManager.getResourceEndpointURL(
@@ -101,6 +103,23 @@ public class ServerSideValidator extends AbstractValidator{
         ValidateReturnedAttributes(scimObject,reuqestedAttributes,requestedExcludingAttributes);
     }
 
+    /**
+     * validate Retrieved SCIM Object in List, with the 'attributes' and 'excludedAttributes' parameters
+     * compiled once for the whole list
+     * @param scimObject
+     * @param resourceSchema
+     * @param projection
+     * @throws BadRequestException
+     * @throws CharonException
+     */
+    public static void validateRetrievedSCIMObjectInList(AbstractSCIMObject scimObject,
+                                                         SCIMResourceTypeSchema resourceSchema,
+                                                         AttributeProjection projection)
+            throws BadRequestException, CharonException {
+        validateSCIMObjectForRequiredAttributes(scimObject, resourceSchema);
+        ValidateReturnedAttributes(scimObject, projection);
+    }
+
     /**
      * validate Retrieved SCIM Object
      * @param scimObject
@@ -119,6 +138,23 @@ public class ServerSideValidator extends AbstractValidator{
         validateSchemaList(scimObject, resourceSchema);
     }
 
+    /**
+     * validate Retrieved SCIM Object, with the compiled 'attributes' and 'excludedAttributes' parameters
+     * @param scimObject
+     * @param resourceSchema
+     * @param projection
+     * @throws BadRequestException
+     * @throws CharonException
+     */
+    public static void validateRetrievedSCIMObject(AbstractSCIMObject scimObject,
+                                                   SCIMResourceTypeSchema resourceSchema,
+                                                   AttributeProjection projection)
+            throws BadRequestException, CharonException {
+        validateSCIMObjectForRequiredAttributes(scimObject, resourceSchema);
+        ValidateReturnedAttributes(scimObject, projection);
+        validateSchemaList(scimObject, resourceSchema);
+    }
+
 
     /**
      * Perform validation on SCIM Object update on service provider side
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.utils;
+
+/**
+ * The 'attributes' and 'excludedAttributes' parameters of a request, compiled into two tries of attribute
+ * paths (eg: emails.value), one for the included and one for the excluded paths. Both the URIs to be fetched
+ * from the user manager and the attributes to be removed from the returned resource are decided by walking
+ * these tries, one attribute name at a time, instead of matching concatenated paths against the lists.
+ * The tries are keyed by character, as attribute names (eg: of the schema extension) may contain dots.
+ * A projection is immutable once compiled.
+ */
+public final class AttributeProjection {
+
+    private static final char PATH_SEPARATOR = '.';
+
+    private final String requestedAttributes;
+    private final String requestedExcludingAttributes;
+    private final boolean attributesRequested;
+    private final boolean excludedAttributesRequested;
+    private final Path root;
+
+    private AttributeProjection(String requestedAttributes, String requestedExcludingAttributes) {
+        this.requestedAttributes = requestedAttributes;
+        this.requestedExcludingAttributes = requestedExcludingAttributes;
+        this.attributesRequested = requestedAttributes != null;
+        this.excludedAttributesRequested = requestedExcludingAttributes != null;
+        this.root = new Path(buildTrie(requestedAttributes), buildTrie(requestedExcludingAttributes), true);
+    }
+
+    /**
+     * Compiles the comma separated attributes and excludedAttributes parameters. Either may be null.
+     *
+     * @param requestedAttributes          - value of the attributes parameter
+     * @param requestedExcludingAttributes - value of the excludedAttributes parameter
+     * @return AttributeProjection
+     */
+    public static AttributeProjection compile(String requestedAttributes, String requestedExcludingAttributes) {
+        return new AttributeProjection(requestedAttributes, requestedExcludingAttributes);
+    }
+
+    /**
+     * The attributes parameter the projection was compiled from, or null.
+     *
+     * @return String
+     */
+    public String getRequestedAttributes() {
+        return requestedAttributes;
+    }
+
+    /**
+     * The excludedAttributes parameter the projection was compiled from, or null.
+     *
+     * @return String
+     */
+    public String getRequestedExcludingAttributes() {
+        return requestedExcludingAttributes;
+    }
+
+    /**
+     * Whether the attributes parameter is given.
+     *
+     * @return boolean
+     */
+    public boolean isAttributesRequested() {
+        return attributesRequested;
+    }
+
+    /**
+     * Whether the excludedAttributes parameter is given.
+     *
+     * @return boolean
+     */
+    public boolean isExcludedAttributesRequested() {
+        return excludedAttributesRequested;
+    }
+
+    /**
+     * The empty path, whose children are the top level attributes.
+     *
+     * @return Path
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    private static Node buildTrie(String names) {
+        if (names == null) {
+            return null;
+        }
+        Node trie = new Node();
+        for (String name : names.split(",")) {
+            Node node = trie;
+            for (int i = 0; i < name.length(); i++) {
+                node = node.getOrAddChild(name.charAt(i));
+            }
+            node.terminal = true;
+        }
+        return trie;
+    }
+
+    /**
+     * A position in the included and excluded tries, reached by walking a path of attribute names.
+     */
+    public static final class Path {
+
+        //position of a path which is not a prefix of any given path
+        private static final Path NONE = new Path(null, null, false);
+
+        private final Node included;
+        private final Node excluded;
+        private final boolean root;
+
+        private Path(Node included, Node excluded, boolean root) {
+            this.included = included;
+            this.excluded = excluded;
+            this.root = root;
+        }
+
+        /**
+         * Returns the path of the given sub attribute of this path.
+         *
+         * @param name - attribute name
+         * @return Path
+         */
+        public Path child(String name) {
+            if (included == null && excluded == null) {
+                return NONE;
+            }
+            //names are matched as they would be if concatenated, a null name included.
+            String attributeName = String.valueOf(name);
+            Node includedChild = walk(root ? included : child(included, PATH_SEPARATOR), attributeName);
+            Node excludedChild = walk(root ? excluded : child(excluded, PATH_SEPARATOR), attributeName);
+            if (includedChild == null && excludedChild == null) {
+                return NONE;
+            }
+            return new Path(includedChild, excludedChild, false);
+        }
+
+        /**
+         * Whether this path is one of the paths of the attributes parameter.
+         *
+         * @return boolean
+         */
+        public boolean isIncluded() {
+            return included != null && included.terminal;
+        }
+
+        /**
+         * Whether this path is one of the paths of the excludedAttributes parameter.
+         *
+         * @return boolean
+         */
+        public boolean isExcluded() {
+            return excluded != null && excluded.terminal;
+        }
+
+        private static Node walk(Node node, String name) {
+            for (int i = 0; node != null && i < name.length(); i++) {
+                node = node.getChild(name.charAt(i));
+            }
+            return node;
+        }
+
+        private static Node child(Node node, char c) {
+            return node == null ? null : node.getChild(c);
+        }
+    }
+
+    /*
+     * Trie node. The fan out is small, so the children are kept in parallel arrays.
+     */
+    private static final class Node {
+
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private boolean terminal;
+
+        private Node getChild(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node getOrAddChild(char c) {
+            Node child = getChild(c);
+            if (child == null) {
+                child = new Node();
+                char[] newKeys = new char[keys.length + 1];
+                Node[] newChildren = new Node[children.length + 1];
+                System.arraycopy(keys, 0, newKeys, 0, keys.length);
+                System.arraycopy(children, 0, newChildren, 0, children.length);
+                newKeys[keys.length] = c;
+                newChildren[children.length] = child;
+                keys = newKeys;
+                children = newChildren;
+            }
+            return child;
+        }
+    }
+}
@@ -23,7 +23,6 @@ import org.wso2.charon.core.v2.protocol.ResponseCodeConstants;
 import org.wso2.charon.core.v2.schema.*;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
@@ -122,8 +121,7 @@ public class AttributeUtil {
      */
     public static Date parseDateTime(String dateTimeString) throws CharonException {
         try {
-            SimpleDateFormat sdf = new SimpleDateFormat(SCIMConstants.dateTimeFormat);
-            return sdf.parse(dateTimeString);
+            return DateTimeUtil.parse(dateTimeString);
         } catch (ParseException e) {
             throw new CharonException("Error in parsing date time. " +
                     "Date time should adhere to the format: "+SCIMConstants.dateTimeFormat);
@@ -145,9 +143,7 @@ public class AttributeUtil {
      * @param date
      */
     public static String formatDateTime(Date date) {
-        SimpleDateFormat sdf = new SimpleDateFormat(SCIMConstants.dateTimeFormat);
-        String formattedDate = sdf.format(date);
-        return formattedDate;
+        return DateTimeUtil.format(date);
     }
 
     /**
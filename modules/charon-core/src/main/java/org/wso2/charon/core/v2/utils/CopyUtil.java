@@ -17,20 +17,40 @@
  */
 package org.wso2.charon.core.v2.utils;
 
+import org.wso2.charon.core.v2.attributes.AbstractAttribute;
+import org.wso2.charon.core.v2.attributes.Attribute;
+import org.wso2.charon.core.v2.attributes.ComplexAttribute;
+import org.wso2.charon.core.v2.attributes.MultiValuedAttribute;
+import org.wso2.charon.core.v2.attributes.SimpleAttribute;
 import org.wso2.charon.core.v2.exceptions.CharonException;
+import org.wso2.charon.core.v2.objects.AbstractSCIMObject;
+import org.wso2.charon.core.v2.objects.Group;
+import org.wso2.charon.core.v2.objects.User;
+import org.wso2.charon.core.v2.schema.AttributeSchema;
+import org.wso2.charon.core.v2.schema.SCIMAttributeSchema;
+import org.wso2.charon.core.v2.schema.SCIMDefinitions;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
- * This is to create a deep copy of the object using java serialization.
- * SCIMObject instances have complex object graphs and hard to deep copy by
- * overriding clone method. Hence, using serialization to do the deep copy.
+ * This is to create deep copies of SCIM objects, attributes and schemas.
+ * The classes defined in charon are copied structurally, field by field, which is much cheaper than
+ * java serialization. Anything else (eg: sub classes defined outside charon, or attribute values of
+ * unknown types) is still deep copied using java serialization.
  */
 public class CopyUtil {
+
     public static Object deepCopy(Object oldObject) throws CharonException {
         ObjectOutputStream objOutPutStream;
         ObjectInputStream objInputStream;
@@ -57,4 +77,178 @@ public class CopyUtil {
         }
         return newObject;
     }
-}
\ No newline at end of file
+
+    /**
+     * Creates a deep copy of the given SCIM object, with all of its attributes copied.
+     *
+     * @param oldObject - SCIM object to be copied
+     * @return copy of the SCIM object, of the same class
+     * @throws CharonException
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends AbstractSCIMObject> T copySCIMObject(T oldObject) throws CharonException {
+        if (oldObject == null) {
+            return null;
+        }
+        AbstractSCIMObject newObject;
+        Class<?> objectClass = oldObject.getClass();
+        if (objectClass == User.class) {
+            newObject = new User();
+        } else if (objectClass == Group.class) {
+            newObject = new Group();
+        } else if (objectClass == AbstractSCIMObject.class) {
+            newObject = new AbstractSCIMObject();
+        } else {
+            //may carry state of its own, which is not known here.
+            return (T) deepCopy(oldObject);
+        }
+        for (Map.Entry<String, Attribute> entry : oldObject.getAttributeList().entrySet()) {
+            newObject.getAttributeList().put(entry.getKey(), copyAttribute(entry.getValue()));
+        }
+        newObject.getSchemaList().addAll(oldObject.getSchemaList());
+        return (T) newObject;
+    }
+
+    /**
+     * Creates a deep copy of the given attribute, with all of its sub attributes and values copied.
+     *
+     * @param oldAttribute - attribute to be copied
+     * @return copy of the attribute
+     * @throws CharonException
+     */
+    public static Attribute copyAttribute(Attribute oldAttribute) throws CharonException {
+        if (oldAttribute == null) {
+            return null;
+        }
+        Class<?> attributeClass = oldAttribute.getClass();
+        if (attributeClass == SimpleAttribute.class) {
+            SimpleAttribute simpleAttribute = (SimpleAttribute) oldAttribute;
+            SimpleAttribute newAttribute = new SimpleAttribute(simpleAttribute.getName(),
+                    copyValue(simpleAttribute.getValue()));
+            copyCharacteristics(simpleAttribute, newAttribute);
+            return newAttribute;
+        } else if (attributeClass == ComplexAttribute.class) {
+            ComplexAttribute complexAttribute = (ComplexAttribute) oldAttribute;
+            ComplexAttribute newAttribute = new ComplexAttribute();
+            copyCharacteristics(complexAttribute, newAttribute);
+            if (complexAttribute.getSubAttributesList() == null) {
+                newAttribute.setSubAttributesList(null);
+            } else {
+                Map<String, Attribute> subAttributes = new HashMap<String, Attribute>();
+                for (Map.Entry<String, Attribute> entry : complexAttribute.getSubAttributesList().entrySet()) {
+                    subAttributes.put(entry.getKey(), copyAttribute(entry.getValue()));
+                }
+                newAttribute.setSubAttributesList(subAttributes);
+            }
+            return newAttribute;
+        } else if (attributeClass == MultiValuedAttribute.class) {
+            MultiValuedAttribute multiValuedAttribute = (MultiValuedAttribute) oldAttribute;
+            MultiValuedAttribute newAttribute = new MultiValuedAttribute();
+            copyCharacteristics(multiValuedAttribute, newAttribute);
+            if (multiValuedAttribute.getAttributeValues() == null) {
+                newAttribute.setAttributeValues(null);
+            } else {
+                List<Attribute> values = new ArrayList<Attribute>(multiValuedAttribute.getAttributeValues().size());
+                for (Attribute value : multiValuedAttribute.getAttributeValues()) {
+                    values.add(copyAttribute(value));
+                }
+                newAttribute.setAttributeValues(values);
+            }
+            if (multiValuedAttribute.getAttributePrimitiveValues() == null) {
+                newAttribute.setAttributePrimitiveValues(null);
+            } else {
+                List<Object> primitiveValues =
+                        new ArrayList<Object>(multiValuedAttribute.getAttributePrimitiveValues().size());
+                for (Object value : multiValuedAttribute.getAttributePrimitiveValues()) {
+                    primitiveValues.add(copyValue(value));
+                }
+                newAttribute.setAttributePrimitiveValues(primitiveValues);
+            }
+            return newAttribute;
+        }
+        return (Attribute) deepCopy(oldAttribute);
+    }
+
+    /**
+     * Creates a deep copy of the given list of attribute schemas.
+     *
+     * @param oldAttributeSchemas - attribute schemas to be copied
+     * @return copy of the list
+     * @throws CharonException
+     */
+    public static ArrayList<AttributeSchema> copyAttributeSchemas(List<? extends AttributeSchema> oldAttributeSchemas)
+            throws CharonException {
+        if (oldAttributeSchemas == null) {
+            return null;
+        }
+        ArrayList<AttributeSchema> attributeSchemas = new ArrayList<AttributeSchema>(oldAttributeSchemas.size());
+        for (AttributeSchema attributeSchema : oldAttributeSchemas) {
+            if (attributeSchema != null && attributeSchema.getClass() == SCIMAttributeSchema.class) {
+                attributeSchemas.add(copyAttributeSchema((SCIMAttributeSchema) attributeSchema));
+            } else {
+                attributeSchemas.add((AttributeSchema) deepCopy(attributeSchema));
+            }
+        }
+        return attributeSchemas;
+    }
+
+    /**
+     * Creates a deep copy of the given attribute schema, with all of its sub attribute schemas copied.
+     *
+     * @param oldAttributeSchema - attribute schema to be copied
+     * @return copy of the attribute schema
+     */
+    public static SCIMAttributeSchema copyAttributeSchema(SCIMAttributeSchema oldAttributeSchema) {
+        if (oldAttributeSchema == null) {
+            return null;
+        }
+        ArrayList<SCIMAttributeSchema> subAttributes = null;
+        if (oldAttributeSchema.getSubAttributeSchemas() != null) {
+            subAttributes = new ArrayList<SCIMAttributeSchema>(oldAttributeSchema.getSubAttributeSchemas().size());
+            for (SCIMAttributeSchema subAttributeSchema : oldAttributeSchema.getSubAttributeSchemas()) {
+                subAttributes.add(copyAttributeSchema(subAttributeSchema));
+            }
+        }
+        ArrayList<String> canonicalValues = oldAttributeSchema.getCanonicalValues() == null ?
+                null : new ArrayList<String>(oldAttributeSchema.getCanonicalValues());
+        ArrayList<SCIMDefinitions.ReferenceType> referenceTypes = oldAttributeSchema.getReferenceTypes() == null ?
+                null : new ArrayList<SCIMDefinitions.ReferenceType>(oldAttributeSchema.getReferenceTypes());
+        return SCIMAttributeSchema.createSCIMAttributeSchema(oldAttributeSchema.getURI(),
+                oldAttributeSchema.getName(), oldAttributeSchema.getType(), oldAttributeSchema.getMultiValued(),
+                oldAttributeSchema.getDescription(), oldAttributeSchema.getRequired(),
+                oldAttributeSchema.getCaseExact(), oldAttributeSchema.getMutability(),
+                oldAttributeSchema.getReturned(), oldAttributeSchema.getUniqueness(), canonicalValues,
+                referenceTypes, subAttributes);
+    }
+
+    private static void copyCharacteristics(AbstractAttribute oldAttribute, AbstractAttribute newAttribute) {
+        //the schema is shared, only the characteristics which differ from it are copied by the setters
+        newAttribute.setAttributeSchema(oldAttribute.getAttributeSchema());
+        newAttribute.setURI(oldAttribute.getURI());
+        newAttribute.setName(oldAttribute.getName());
+        newAttribute.setType(oldAttribute.getType());
+        newAttribute.setMultiValued(oldAttribute.getMultiValued());
+        newAttribute.setDescription(oldAttribute.getDescription());
+        newAttribute.setRequired(oldAttribute.getRequired());
+        newAttribute.setCaseExact(oldAttribute.getCaseExact());
+        newAttribute.setMutability(oldAttribute.getMutability());
+        newAttribute.setReturned(oldAttribute.getReturned());
+        newAttribute.setUniqueness(oldAttribute.getUniqueness());
+    }
+
+    /*
+     * Immutable values are shared, dates are copied and anything else is deep copied with serialization.
+     */
+    private static Object copyValue(Object value) throws CharonException {
+        if (value == null || value instanceof String || value instanceof Boolean || value instanceof Integer
+                || value instanceof Long || value instanceof Double || value instanceof Float
+                || value instanceof Short || value instanceof Byte || value instanceof Character
+                || value instanceof BigInteger || value instanceof BigDecimal || value instanceof Enum) {
+            return value;
+        }
+        if (value.getClass() == Date.class) {
+            return new Date(((Date) value).getTime());
+        }
+        return deepCopy(value);
+    }
+}
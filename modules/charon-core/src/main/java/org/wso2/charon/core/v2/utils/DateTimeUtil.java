@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.utils;
+
+import org.wso2.charon.core.v2.schema.SCIMConstants;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Parses and formats DATE_TIME values of the fixed SCIMConstants.dateTimeFormat (yyyy-MM-dd'T'HH:mm:ss'Z')
+ * without creating a SimpleDateFormat per call. The fields are read and written by hand, in the default
+ * time zone as SimpleDateFormat does, and the text of recently formatted seconds is kept in a small cache.
+ * Values the fast path does not handle (eg: text SimpleDateFormat would accept leniently, years before
+ * 1900, or times close to a time zone transition) are handed over to SimpleDateFormat, so the results are
+ * always the same as before. This class is thread safe.
+ */
+public final class DateTimeUtil {
+
+    private static final int DATE_TIME_LENGTH = 20;
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long MILLIS_PER_DAY = 86400000L;
+    private static final int MIN_YEAR = 1900;
+    private static final int MAX_YEAR = 9999;
+
+    //number of cached seconds, must be a power of two
+    private static final int CACHE_SIZE = 64;
+
+    //entries are immutable, so a stale or missing entry only costs a format.
+    private static final FormattedSecond[] formattedSeconds = new FormattedSecond[CACHE_SIZE];
+
+    private static volatile ZoneState zoneState = new ZoneState(TimeZone.getDefault(), 0);
+
+    private DateTimeUtil() {
+    }
+
+    /**
+     * Formats the date in yyyy-MM-dd'T'HH:mm:ss'Z' in the default time zone.
+     *
+     * @param date - date to be formatted
+     * @return String
+     */
+    public static String format(Date date) {
+        long millis = date.getTime();
+        long second = floorDiv(millis, MILLIS_PER_SECOND);
+        int index = (int) (second & (CACHE_SIZE - 1));
+        FormattedSecond cached = formattedSeconds[index];
+        if (cached != null && cached.second == second && cached.generation == zoneState.generation) {
+            return cached.text;
+        }
+        //the default time zone is looked up again on a miss, a change clears the cache.
+        ZoneState zone = refreshZoneState();
+        String text = formatFields(millis, zone.timeZone);
+        if (text == null) {
+            SimpleDateFormat sdf = new SimpleDateFormat(SCIMConstants.dateTimeFormat);
+            sdf.setTimeZone(zone.timeZone);
+            text = sdf.format(date);
+        }
+        formattedSeconds[index] = new FormattedSecond(second, zone.generation, text);
+        return text;
+    }
+
+    /**
+     * Parses a date in yyyy-MM-dd'T'HH:mm:ss'Z' in the default time zone.
+     *
+     * @param dateTimeString - date time text
+     * @return Date
+     * @throws ParseException - if the text can not be parsed
+     */
+    public static Date parse(String dateTimeString) throws ParseException {
+        ZoneState zone = refreshZoneState();
+        long millis = parseFields(dateTimeString, zone.timeZone);
+        if (millis != Long.MIN_VALUE) {
+            return new Date(millis);
+        }
+        SimpleDateFormat sdf = new SimpleDateFormat(SCIMConstants.dateTimeFormat);
+        sdf.setTimeZone(zone.timeZone);
+        return sdf.parse(dateTimeString);
+    }
+
+    /**
+     * Returns the date with the milliseconds dropped, which is the value the date has after being formatted
+     * and parsed back.
+     *
+     * @param date - date to be truncated
+     * @return Date
+     */
+    public static Date truncateToSeconds(Date date) {
+        return new Date(floorDiv(date.getTime(), MILLIS_PER_SECOND) * MILLIS_PER_SECOND);
+    }
+
+    private static ZoneState refreshZoneState() {
+        ZoneState zone = zoneState;
+        TimeZone current = TimeZone.getDefault();
+        if (!current.getID().equals(zone.timeZone.getID()) || !current.hasSameRules(zone.timeZone)) {
+            zone = new ZoneState(current, zone.generation + 1);
+            zoneState = zone;
+        }
+        return zone;
+    }
+
+    /*
+     * Formats the fields by hand, returns null if the date is out of the range handled here.
+     */
+    private static String formatFields(long millis, TimeZone timeZone) {
+        long local = millis + timeZone.getOffset(millis);
+        long days = floorDiv(local, MILLIS_PER_DAY);
+        int millisOfDay = (int) (local - days * MILLIS_PER_DAY);
+
+        //civil date from the days since the epoch, in the proleptic gregorian calendar
+        long shifted = days + 719468;
+        long era = floorDiv(shifted, 146097);
+        int dayOfEra = (int) (shifted - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+        int month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < MIN_YEAR || year > MAX_YEAR) {
+            return null;
+        }
+
+        int secondOfDay = millisOfDay / 1000;
+        char[] chars = new char[DATE_TIME_LENGTH];
+        writeDigits(chars, 0, (int) year, 4);
+        chars[4] = '-';
+        writeDigits(chars, 5, month, 2);
+        chars[7] = '-';
+        writeDigits(chars, 8, day, 2);
+        chars[10] = 'T';
+        writeDigits(chars, 11, secondOfDay / 3600, 2);
+        chars[13] = ':';
+        writeDigits(chars, 14, secondOfDay / 60 % 60, 2);
+        chars[16] = ':';
+        writeDigits(chars, 17, secondOfDay % 60, 2);
+        chars[19] = 'Z';
+        return new String(chars);
+    }
+
+    /*
+     * Parses the fields by hand, returns Long.MIN_VALUE if the text is not the canonical form or the local
+     * time is close to a time zone transition, which are left to SimpleDateFormat.
+     */
+    private static long parseFields(String text, TimeZone timeZone) {
+        if (text == null || text.length() != DATE_TIME_LENGTH || text.charAt(4) != '-' || text.charAt(7) != '-'
+                || text.charAt(10) != 'T' || text.charAt(13) != ':' || text.charAt(16) != ':'
+                || text.charAt(19) != 'Z') {
+            return Long.MIN_VALUE;
+        }
+        int year = readDigits(text, 0, 4);
+        int month = readDigits(text, 5, 2);
+        int day = readDigits(text, 8, 2);
+        int hour = readDigits(text, 11, 2);
+        int minute = readDigits(text, 14, 2);
+        int second = readDigits(text, 17, 2);
+        if (year < MIN_YEAR || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return Long.MIN_VALUE;
+        }
+
+        //days since the epoch of the civil date, in the proleptic gregorian calendar
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097L + dayOfEra - 719468;
+
+        long local = days * MILLIS_PER_DAY + (hour * 3600 + minute * 60 + second) * MILLIS_PER_SECOND;
+        //a single offset around the local time means there is no gap or overlap to resolve.
+        int offset = timeZone.getOffset(local - MILLIS_PER_DAY);
+        if (offset != timeZone.getOffset(local + MILLIS_PER_DAY) || offset != timeZone.getOffset(local - offset)) {
+            return Long.MIN_VALUE;
+        }
+        return local - offset;
+    }
+
+    private static int readDigits(String text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static void writeDigits(char[] chars, int start, int value, int count) {
+        for (int i = start + count - 1; i >= start; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static long floorDiv(long x, long y) {
+        long quotient = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            quotient--;
+        }
+        return quotient;
+    }
+
+    private static final class ZoneState {
+
+        private final TimeZone timeZone;
+        private final int generation;
+
+        private ZoneState(TimeZone timeZone, int generation) {
+            this.timeZone = timeZone;
+            this.generation = generation;
+        }
+    }
+
+    private static final class FormattedSecond {
+
+        private final long second;
+        private final int generation;
+        private final String text;
+
+        private FormattedSecond(long second, int generation, String text) {
+            this.second = second;
+            this.generation = generation;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.utils;
+
+import org.wso2.charon.core.v2.schema.SCIMResourceTypeSchema;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded cache of the attribute URI maps computed by ResourceManagerUtil.getOnlyRequiredAttributesURIs.
+ * The maps only depend on the resource schema and on the attributes and excludedAttributes parameters, which
+ * take only a few distinct values in practice. Entries are keyed by the schema and by the normalized
+ * parameters.
+ */
+public final class RequiredAttributeURICache extends ResourceSchemaLRUCache<List<String>, Map<String, Boolean>> {
+
+    private static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private static RequiredAttributeURICache cache = new RequiredAttributeURICache(DEFAULT_MAX_ENTRIES);
+
+    private RequiredAttributeURICache(int maxEntries) {
+        super(maxEntries);
+    }
+
+    public static RequiredAttributeURICache getInstance() {
+        return cache;
+    }
+
+    /*
+     * Returns the cached URI map, or null if there is none.
+     */
+    Map<String, Boolean> get(SCIMResourceTypeSchema schema, String requestedAttributes,
+                             String requestedExcludingAttributes) {
+        return get(schema, key(requestedAttributes, requestedExcludingAttributes));
+    }
+
+    /*
+     * Caches the URI map, which must not be modified afterwards.
+     */
+    void put(SCIMResourceTypeSchema schema, String requestedAttributes, String requestedExcludingAttributes,
+             Map<String, Boolean> uris) {
+        put(schema, key(requestedAttributes, requestedExcludingAttributes), uris);
+    }
+
+    private static List<String> key(String requestedAttributes, String requestedExcludingAttributes) {
+        return Arrays.asList(normalize(requestedAttributes), normalize(requestedExcludingAttributes));
+    }
+
+    /*
+     * The parameters are only looked up as a list of names, so the order and repetition of the names
+     * do not change the result.
+     */
+    private static String normalize(String names) {
+        if (names == null) {
+            return null;
+        }
+        String[] nameArray = names.split(",");
+        Arrays.sort(nameArray);
+        //names end with a separator, so that no names and a single empty name do not look the same.
+        StringBuilder normalized = new StringBuilder();
+        for (int i = 0; i < nameArray.length; i++) {
+            if (i == 0 || !nameArray[i].equals(nameArray[i - 1])) {
+                normalized.append(nameArray[i]).append(',');
+            }
+        }
+        return normalized.toString();
+    }
+}
@@ -16,6 +16,7 @@ public class ResourceManagerUtil {
     /**
      * this method is to get the URI list of the attributes which need to retrieved from the databases.
      * Note that we should consider the 'attributes' and 'excludedAttributes' parameters for this process.
+     * The maps are cached in RequiredAttributeURICache, hence the returned map can not be modified.
      * @param schema
      * @param requestedAttributes
      * @param requestedExcludingAttributes
@@ -27,46 +28,73 @@ public class ResourceManagerUtil {
                                                                       String requestedExcludingAttributes)
             throws CharonException {
 
-        ArrayList<AttributeSchema> attributeSchemaArrayList = (ArrayList<AttributeSchema>)
-                CopyUtil.deepCopy(schema.getAttributesList());
+        RequiredAttributeURICache cache = RequiredAttributeURICache.getInstance();
+        Map<String, Boolean> requiredAttributes = cache.get(schema, requestedAttributes, requestedExcludingAttributes);
+        if (requiredAttributes == null) {
+            requiredAttributes = Collections.unmodifiableMap(computeRequiredAttributesURIs(schema,
+                    AttributeProjection.compile(requestedAttributes, requestedExcludingAttributes)));
+            cache.put(schema, requestedAttributes, requestedExcludingAttributes, requiredAttributes);
+        }
+        return requiredAttributes;
+    }
 
-        List<String> requestedAttributesList = null;
-        List<String> requestedExcludingAttributesList = null;
+    /**
+     * Returns the URIs of the attributes to be fetched from the user manager, according to the 'attributes' and
+     * 'excludedAttributes' parameters compiled into the given projection. Endpoints compile the projection once
+     * per request and use it for the returned resources as well.
+     *
+     * @param schema     - resource schema
+     * @param projection - compiled 'attributes' and 'excludedAttributes' parameters
+     * @return map of the attribute URIs
+     * @throws CharonException
+     */
+    public static Map<String, Boolean> getOnlyRequiredAttributesURIs(SCIMResourceTypeSchema schema,
+                                                                     AttributeProjection projection)
+            throws CharonException {
 
-        if (requestedAttributes != null) {
-            //make a list from the comma separated requestedAttributes
-            requestedAttributesList = Arrays.asList(requestedAttributes.split(","));
-        }
-        if (requestedExcludingAttributes != null) {
-            //make a list from the comma separated requestedExcludingAttributes
-            requestedExcludingAttributesList = Arrays.asList(requestedExcludingAttributes.split(","));
+        RequiredAttributeURICache cache = RequiredAttributeURICache.getInstance();
+        Map<String, Boolean> requiredAttributes = cache.get(schema, projection.getRequestedAttributes(),
+                projection.getRequestedExcludingAttributes());
+        if (requiredAttributes == null) {
+            requiredAttributes = Collections.unmodifiableMap(computeRequiredAttributesURIs(schema, projection));
+            cache.put(schema, projection.getRequestedAttributes(), projection.getRequestedExcludingAttributes(),
+                    requiredAttributes);
         }
+        return requiredAttributes;
+    }
+
+    private static Map<String, Boolean> computeRequiredAttributesURIs(SCIMResourceTypeSchema schema,
+                                                                      AttributeProjection projection)
+            throws CharonException {
+
+        ArrayList<AttributeSchema> attributeSchemaArrayList = CopyUtil.copyAttributeSchemas(schema.getAttributesList());
 
         ArrayList<AttributeSchema> attributeList = schema.getAttributesList();
 
         for (AttributeSchema attributeSchema : attributeList) {
+            AttributeProjection.Path attributePath = projection.getRoot().child(attributeSchema.getName());
             //check for never/request attributes.
             if (attributeSchema.getReturned().equals(SCIMDefinitions.Returned.NEVER)) {
                 removeAttributesFromList(attributeSchemaArrayList, attributeSchema.getName());
             }
             //if the returned property is request, need to check whether is it specifically requested by the user.
             // If so return it.
-            if (requestedAttributes == null && requestedExcludingAttributes == null) {
+            if (!projection.isAttributesRequested() && !projection.isExcludedAttributesRequested()) {
                 if (attributeSchema.getReturned().equals(SCIMDefinitions.Returned.REQUEST)) {
                     removeAttributesFromList(attributeSchemaArrayList, attributeSchema.getName());
                 }
             } else {
                 //A request should only contains either attributes or exclude attribute params. Not both
-                if (requestedAttributes != null) {
+                if (projection.isAttributesRequested()) {
                     //if attributes are set, delete all the request and default attributes
                     //and add only the requested attributes
                     if ((attributeSchema.getReturned().equals(SCIMDefinitions.Returned.DEFAULT)
                             || attributeSchema.getReturned().equals(SCIMDefinitions.Returned.REQUEST))
-                            && (!requestedAttributesList.contains(attributeSchema.getName())
-                            && !isSubAttributeExistsInList(requestedAttributesList, attributeSchema))) {
+                            && (!attributePath.isIncluded()
+                            && !isSubAttributeExistsInList(attributePath, attributeSchema))) {
                         removeAttributesFromList(attributeSchemaArrayList, attributeSchema.getName());
                     }
-                } else if (requestedExcludingAttributes != null) {
+                } else if (projection.isExcludedAttributesRequested()) {
                     //removing attributes which has returned as request. This is because no request is made
                     if (attributeSchema.getReturned().equals(SCIMDefinitions.Returned.REQUEST)) {
                         removeAttributesFromList(attributeSchemaArrayList, attributeSchema.getName());
@@ -74,14 +102,12 @@ public class ResourceManagerUtil {
                     //if exclude attribute is set, set of exclude attributes need to be
                     // removed from the default set of attributes
                     if ((attributeSchema.getReturned().equals(SCIMDefinitions.Returned.DEFAULT))
-                            && requestedExcludingAttributesList.contains(attributeSchema.getName())) {
+                            && attributePath.isExcluded()) {
                         removeAttributesFromList(attributeSchemaArrayList, attributeSchema.getName());
                     }
                 }
             }
-            getOnlyRequiredSubAttributesURIs(attributeSchema, attributeSchemaArrayList,
-                    requestedAttributes, requestedExcludingAttributes,
-                    requestedAttributesList, requestedExcludingAttributesList);
+            getOnlyRequiredSubAttributesURIs(attributeSchema, attributePath, attributeSchemaArrayList, projection);
         }
        return convertSchemasToURIs(attributeSchemaArrayList);
     }
@@ -90,19 +116,15 @@ public class ResourceManagerUtil {
      * this method is to get the URI list of the sub attributes which need to retrieved from the databases.
      * Note that we should consider the 'attributes' and 'excludedAttributes' parameters for this process.
      * @param attributeSchema
+     * @param attributePath
      * @param attributeSchemaArrayList
-     * @param requestedAttributes
-     * @param requestedExcludingAttributes
-     * @param requestedAttributesList
-     * @param requestedExcludingAttributesList
+     * @param projection
      * @throws CharonException
      */
     private static void getOnlyRequiredSubAttributesURIs(AttributeSchema attributeSchema,
+                                                         AttributeProjection.Path attributePath,
                                                          ArrayList<AttributeSchema> attributeSchemaArrayList,
-                                                         String requestedAttributes,
-                                                         String requestedExcludingAttributes,
-                                                         List<String> requestedAttributesList,
-                                                         List<String> requestedExcludingAttributesList)
+                                                         AttributeProjection projection)
             throws CharonException {
         if (attributeSchema.getType().equals(SCIMDefinitions.DataType.COMPLEX)) {
 
@@ -118,6 +140,7 @@ public class ResourceManagerUtil {
                 List<SCIMAttributeSchema> subAttributeList = attributeSchema.getSubAttributeSchemas();
 
                 for (SCIMAttributeSchema subAttributeSchema : subAttributeList) {
+                    AttributeProjection.Path subAttributePath = attributePath.child(subAttributeSchema.getName());
 
                     //check for never/request attributes.
                     if (subAttributeSchema.getReturned().equals(SCIMDefinitions.Returned.NEVER)) {
@@ -125,25 +148,23 @@ public class ResourceManagerUtil {
                     }
                     //if the returned property is request, need to check whether is it specifically requested by the user.
                     // If so return it.
-                    if (requestedAttributes == null && requestedExcludingAttributes == null) {
+                    if (!projection.isAttributesRequested() && !projection.isExcludedAttributesRequested()) {
                         if (subAttributeSchema.getReturned().equals(SCIMDefinitions.Returned.REQUEST)) {
                             realAttributeSchema.removeSubAttribute(subAttributeSchema.getName());
                         }
                     } else {
                         //A request should only contains either attributes or exclude attribute params. Not both
-                        if (requestedAttributes != null) {
+                        if (projection.isAttributesRequested()) {
                             //if attributes are set, delete all the request and default attributes
                             //and add only the requested attributes
                             if ((subAttributeSchema.getReturned().equals(SCIMDefinitions.Returned.DEFAULT)
                                     || subAttributeSchema.getReturned().equals(SCIMDefinitions.Returned.REQUEST))
-                                    && (!requestedAttributesList.contains(attributeSchema.getName() + "." +
-                                    subAttributeSchema.getName())
-                                    && !isSubSubAttributeExistsInList(requestedAttributesList,
-                                    attributeSchema, subAttributeSchema))
-                                    && (!requestedAttributesList.contains(attributeSchema.getName()))) {
+                                    && (!subAttributePath.isIncluded()
+                                    && !isSubSubAttributeExistsInList(subAttributePath, subAttributeSchema))
+                                    && (!attributePath.isIncluded())) {
                                 realAttributeSchema.removeSubAttribute(subAttributeSchema.getName());
                             }
-                        } else if (requestedExcludingAttributes != null) {
+                        } else if (projection.isExcludedAttributesRequested()) {
                             //removing attributes which has returned as request. This is because no request is made
                             if (subAttributeSchema.getReturned().equals(SCIMDefinitions.Returned.REQUEST)) {
                                 realAttributeSchema.removeSubAttribute(subAttributeSchema.getName());
@@ -151,16 +172,13 @@ public class ResourceManagerUtil {
                             //if exclude attribute is set, set of exclude attributes need to be
                             // removed from the default set of attributes
                             if ((subAttributeSchema.getReturned().equals(SCIMDefinitions.Returned.DEFAULT))
-                                    && requestedExcludingAttributesList.contains(attributeSchema.getName()
-                                    + "." + subAttributeSchema.getName())) {
+                                    && subAttributePath.isExcluded()) {
                                 realAttributeSchema.removeSubAttribute(subAttributeSchema.getName());
                             }
                         }
                     }
-                    getOnlyRequiredSubSubAttributesURIs(attributeSchema, subAttributeSchema,
-                            attributeSchemaArrayList, requestedAttributes,
-                            requestedExcludingAttributes,requestedAttributesList,
-                            requestedExcludingAttributesList);
+                    getOnlyRequiredSubSubAttributesURIs(subAttributeSchema, attributePath, subAttributePath,
+                            attributeSchemaArrayList, projection);
                 }
             }
         }
@@ -169,22 +187,18 @@ public class ResourceManagerUtil {
     /**
      * this method is to get the URI list of the sub sub attributes which need to retrieved from the databases.
      * Note that we should consider the 'attributes' and 'excludedAttributes' parameters for this process.
-     * @param attribute
      * @param subAttribute
+     * @param attributePath
+     * @param subAttributePath
      * @param attributeSchemaArrayList
-     * @param requestedAttributes
-     * @param requestedExcludingAttributes
-     * @param requestedAttributesList
-     * @param requestedExcludingAttributesList
+     * @param projection
      * @throws CharonException
      */
-    private static void getOnlyRequiredSubSubAttributesURIs(AttributeSchema attribute,
-                                                            AttributeSchema subAttribute,
+    private static void getOnlyRequiredSubSubAttributesURIs(AttributeSchema subAttribute,
+                                                            AttributeProjection.Path attributePath,
+                                                            AttributeProjection.Path subAttributePath,
                                                             ArrayList<AttributeSchema> attributeSchemaArrayList,
-                                                            String requestedAttributes,
-                                                            String requestedExcludingAttributes,
-                                                            List<String> requestedAttributesList,
-                                                            List<String> requestedExcludingAttributesList)
+                                                            AttributeProjection projection)
             throws CharonException {
 
         if (subAttribute.getType().equals(SCIMDefinitions.DataType.COMPLEX)) {
@@ -208,6 +222,8 @@ public class ResourceManagerUtil {
                 List<SCIMAttributeSchema> subSubAttributeList = subAttribute.getSubAttributeSchemas();
 
                 for (SCIMAttributeSchema subSubAttributeSchema : subSubAttributeList) {
+                    AttributeProjection.Path subSubAttributePath =
+                            subAttributePath.child(subSubAttributeSchema.getName());
 
                     //check for never/request attributes.
                     if (subSubAttributeSchema.getReturned().equals(SCIMDefinitions.Returned.NEVER)) {
@@ -215,24 +231,23 @@ public class ResourceManagerUtil {
                     }
                     //if the returned property is request, need to check whether is it specifically requested by the user.
                     // If so return it.
-                    if (requestedAttributes == null && requestedExcludingAttributes == null) {
+                    if (!projection.isAttributesRequested() && !projection.isExcludedAttributesRequested()) {
                         if (subSubAttributeSchema.getReturned().equals(SCIMDefinitions.Returned.REQUEST)) {
                             realAttributeSchema.removeSubAttribute(subSubAttributeSchema.getName());
                         }
                     } else {
                         //A request should only contains either attributes or exclude attribute params. Not both
-                        if (requestedAttributes != null) {
+                        if (projection.isAttributesRequested()) {
                             //if attributes are set, delete all the request and default attributes
                             //and add only the requested attributes
                             if ((subSubAttributeSchema.getReturned().equals(SCIMDefinitions.Returned.DEFAULT)
                                     || subSubAttributeSchema.getReturned().equals(SCIMDefinitions.Returned.REQUEST))
-                                    && (!requestedAttributesList.contains(attribute.getName() + "." +
-                                    subAttribute.getName() + "." + subSubAttributeSchema.getName()))
-                                    && (!requestedAttributesList.contains(attribute.getName()))
-                                    && (!requestedAttributesList.contains(attribute.getName() + "." + subAttribute.getName()))) {
+                                    && (!subSubAttributePath.isIncluded())
+                                    && (!attributePath.isIncluded())
+                                    && (!subAttributePath.isIncluded())) {
                                 realAttributeSchema.removeSubAttribute(subSubAttributeSchema.getName());
                             }
-                        } else if (requestedExcludingAttributes != null) {
+                        } else if (projection.isExcludedAttributesRequested()) {
                             //removing attributes which has returned as request. This is because no request is made
                             if (subSubAttributeSchema.getReturned().equals(SCIMDefinitions.Returned.REQUEST)) {
                                 realAttributeSchema.removeSubAttribute(subSubAttributeSchema.getName());
@@ -240,8 +255,7 @@ public class ResourceManagerUtil {
                             //if exclude attribute is set, set of exclude attributes need to be
                             // removed from the default set of attributes
                             if ((subSubAttributeSchema.getReturned().equals(SCIMDefinitions.Returned.DEFAULT))
-                                    && requestedExcludingAttributesList.contains(attribute.getName() +
-                                    "." + subAttribute.getName() + "." + subSubAttributeSchema.getName())) {
+                                    && subSubAttributePath.isExcluded()) {
                                 realAttributeSchema.removeSubAttribute(subSubAttributeSchema.getName());
                             }
                         }
@@ -252,17 +266,19 @@ public class ResourceManagerUtil {
     }
 
     /**
-     * this checks whether the sub attribute or sub sub attribute is exist in the given list.
-     * @param requestedAttributes
+     * this checks whether the sub attribute or sub sub attribute is exist in the given projection.
+     * @param attributePath
      * @param attributeSchema
      * @return
      */
-    private static boolean isSubAttributeExistsInList(List<String> requestedAttributes, AttributeSchema attributeSchema) {
+    private static boolean isSubAttributeExistsInList(AttributeProjection.Path attributePath,
+                                                      AttributeSchema attributeSchema) {
         if(attributeSchema.getType().equals(SCIMDefinitions.DataType.COMPLEX)){
             List<SCIMAttributeSchema> subAttributeSchemas = attributeSchema.getSubAttributeSchemas();
 
             for(SCIMAttributeSchema subAttributeSchema : subAttributeSchemas) {
-                if (requestedAttributes.contains(attributeSchema.getName() + "." + subAttributeSchema.getName())) {
+                AttributeProjection.Path subAttributePath = attributePath.child(subAttributeSchema.getName());
+                if (subAttributePath.isIncluded()) {
                     return true;
                 }
 
@@ -270,10 +286,7 @@ public class ResourceManagerUtil {
                     List<SCIMAttributeSchema> subSubAttributeSchemas = subAttributeSchema.getSubAttributeSchemas();
 
                     for (SCIMAttributeSchema subSubAttributeSchema : subSubAttributeSchemas) {
-                        if (requestedAttributes.contains(
-                                attributeSchema.getName() + "." +
-                                        subAttributeSchema.getName() + "." +
-                                        subSubAttributeSchema.getName())) {
+                        if (subAttributePath.child(subSubAttributeSchema.getName()).isIncluded()) {
                             return true;
                         }
                     }
@@ -286,22 +299,19 @@ public class ResourceManagerUtil {
      }
 
     /**
-     * this checks whether sub attribute is exist in the given list.
-     * @param requestedAttributes
-     * @param attributeSchema
+     * this checks whether sub attribute is exist in the given projection.
+     * @param subAttributePath
      * @param subAttributeSchema
      * @return
      */
-    private static boolean isSubSubAttributeExistsInList(List<String> requestedAttributes,
-                                                         AttributeSchema attributeSchema,
+    private static boolean isSubSubAttributeExistsInList(AttributeProjection.Path subAttributePath,
                                                          AttributeSchema subAttributeSchema) {
 
         if(subAttributeSchema.getType().equals(SCIMDefinitions.DataType.COMPLEX)){
             List<SCIMAttributeSchema> subSubAttributeSchemas = subAttributeSchema.getSubAttributeSchemas();
 
             for(SCIMAttributeSchema subSubAttributeSchema : subSubAttributeSchemas) {
-                if (requestedAttributes.contains(attributeSchema.getName() + "." +
-                        subAttributeSchema.getName()+"."+subSubAttributeSchema.getName())) {
+                if (subAttributePath.child(subSubAttributeSchema.getName()).isIncluded()) {
                     return true;
                 }
             }
@@ -347,13 +357,11 @@ public class ResourceManagerUtil {
      */
      private static void removeAttributesFromList(List<AttributeSchema> attributeSchemaList, String attributeName)
              throws CharonException {
-         List<AttributeSchema> tempList = (List<AttributeSchema>) CopyUtil.deepCopy(attributeSchemaList);
-         int count = 0;
-         for(AttributeSchema attributeSchema : tempList){
-             if(attributeSchema.getName().equals(attributeName)){
-                   attributeSchemaList.remove(count);
+         Iterator<AttributeSchema> iterator = attributeSchemaList.iterator();
+         while (iterator.hasNext()) {
+             if (iterator.next().getName().equals(attributeName)) {
+                 iterator.remove();
              }
-             count++;
          }
      }
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.utils;
+
+import org.wso2.charon.core.v2.config.SCIMUserSchemaExtensionBuilder;
+import org.wso2.charon.core.v2.schema.AttributeSchema;
+import org.wso2.charon.core.v2.schema.SCIMResourceTypeSchema;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of values computed from a resource schema, eg: parsed filters or attribute URI maps.
+ * Entries are keyed by the identity of the schema and of its attribute list, and by a key given by the sub
+ * class. The least recently used entry is evicted once the cache is full, and the whole cache is dropped when
+ * the user schema extension is rebuilt.
+ *
+ * @param <K> - key of the values within a schema
+ * @param <V> - cached values, which must not be modified once cached
+ */
+public class ResourceSchemaLRUCache<K, V> {
+
+    private final int maxEntries;
+    private final Map<Key<K>, V> entries;
+    //extension schema the cached entries were computed with
+    private Object extensionSchema;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    protected ResourceSchemaLRUCache(final int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Key<K>, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key<K>, V> eldest) {
+                if (size() > ResourceSchemaLRUCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /*
+     * Returns the cached value, or null if there is none.
+     */
+    protected V get(SCIMResourceTypeSchema schema, K key) {
+        Key<K> schemaKey = new Key<K>(schema, key);
+        V value;
+        synchronized (this) {
+            dropIfExtensionChanged();
+            value = entries.get(schemaKey);
+        }
+        if (value != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return value;
+    }
+
+    /*
+     * Caches the value, which must not be modified afterwards.
+     */
+    protected void put(SCIMResourceTypeSchema schema, K key, V value) {
+        Key<K> schemaKey = new Key<K>(schema, key);
+        synchronized (this) {
+            dropIfExtensionChanged();
+            entries.put(schemaKey, value);
+        }
+    }
+
+    private void dropIfExtensionChanged() {
+        Object currentExtensionSchema = SCIMUserSchemaExtensionBuilder.getInstance().getExtensionSchema();
+        if (extensionSchema != currentExtensionSchema) {
+            entries.clear();
+            extensionSchema = currentExtensionSchema;
+        }
+    }
+
+    /**
+     * Removes all the cached entries.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /*
+     * Cache key. The schema and its attribute list are compared by identity, so that a schema whose attribute
+     * list has been replaced does not match the old entries.
+     */
+    private static final class Key<K> {
+
+        private final SCIMResourceTypeSchema schema;
+        private final List<AttributeSchema> attributeList;
+        private final K key;
+        private final int hashCode;
+
+        private Key(SCIMResourceTypeSchema schema, K key) {
+            this.schema = schema;
+            this.attributeList = schema.getAttributesList();
+            this.key = key;
+            int hash = System.identityHashCode(schema);
+            hash = 31 * hash + System.identityHashCode(attributeList);
+            hash = 31 * hash + key.hashCode();
+            this.hashCode = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key<?> other = (Key<?>) o;
+            return schema == other.schema && attributeList == other.attributeList && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -42,6 +42,7 @@ public class ExpressionNode extends Node {
     }
 
     public void setOperation(String operation) {
+        checkMutable();
         this.operation = operation;
     }
 
@@ -50,6 +51,7 @@ public class ExpressionNode extends Node {
     }
 
     public void setValue(String value) {
+        checkMutable();
         this.value = value;
     }
 
@@ -58,6 +60,7 @@ public class ExpressionNode extends Node {
     }
 
     public void setAttributeValue(String attributeValue) {
+        checkMutable();
         this.attributeValue = attributeValue;
     }
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.utils.codeutils;
+
+import org.wso2.charon.core.v2.config.CharonConfiguration;
+import org.wso2.charon.core.v2.exceptions.BadRequestException;
+import org.wso2.charon.core.v2.protocol.ResponseCodeConstants;
+import org.wso2.charon.core.v2.schema.AttributeSchema;
+import org.wso2.charon.core.v2.schema.SCIMResourceTypeSchema;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Estimated cost of evaluating a filter tree, used to reject filters which are too expensive before they
+ * reach the user manager, and which user managers may use to choose how to evaluate a filter.
+ *
+ * Each expression costs 1, and a range comparison (gt, ge, lt, le) or a sw / ew 2, and a co 4 as it has to
+ * look at the whole value. An expression on a multi valued attribute, or on a sub attribute of one, costs
+ * twice as much as it is evaluated on every value. Each value of an InExpressionNode counts as an eq
+ * expression, and the expressions of a value path filter count as expressions on its multi valued attribute.
+ */
+public final class FilterCost {
+
+    private static final int BASE_COST = 1;
+    private static final int RANGE_COST = 2;
+    private static final int PREFIX_COST = 2;
+    private static final int CONTAINS_COST = 4;
+    private static final int MULTI_VALUED_FACTOR = 2;
+
+    private int depth;
+    private int termCount;
+    private int substringTermCount;
+    private int multiValuedTermCount;
+    private int cost;
+
+    private FilterCost() {
+    }
+
+    /**
+     * Estimates the cost of the given filter tree.
+     *
+     * @param rootNode - root of the filter tree, may be null
+     * @param schema   - resource schema the filter attributes belong to
+     * @return FilterCost
+     * @throws BadRequestException if an attribute of the filter is not in the schema
+     */
+    public static FilterCost estimate(Node rootNode, SCIMResourceTypeSchema schema) throws BadRequestException {
+        FilterCost filterCost = new FilterCost();
+        filterCost.depth = filterCost.add(rootNode, schema);
+        return filterCost;
+    }
+
+    /*
+     * Adds the cost of the given tree and returns its depth. The tree is walked without recursion, so that a
+     * long chain of logical operators does not overflow the stack.
+     */
+    private int add(Node rootNode, SCIMResourceTypeSchema schema) throws BadRequestException {
+        int maxDepth = 0;
+        Deque<Node> pendingNodes = new ArrayDeque<>();
+        Deque<Integer> pendingDepths = new ArrayDeque<>();
+        if (rootNode != null) {
+            pendingNodes.push(rootNode);
+            pendingDepths.push(1);
+        }
+        while (!pendingNodes.isEmpty()) {
+            Node node = pendingNodes.pop();
+            int depth = pendingDepths.pop();
+            maxDepth = Math.max(maxDepth, depth);
+            if (node instanceof ExpressionNode) {
+                ExpressionNode expressionNode = (ExpressionNode) node;
+                addTerm(FilterEvaluator.getOperation(expressionNode.getOperation()),
+                        isMultiValued(expressionNode.getAttributeValue(), schema));
+            } else if (node instanceof InExpressionNode) {
+                InExpressionNode inExpressionNode = (InExpressionNode) node;
+                boolean multiValued = isMultiValued(inExpressionNode.getAttributeValue(), schema);
+                for (int i = 0; i < inExpressionNode.getValues().size(); i++) {
+                    addTerm(FilterEvaluator.EQ, multiValued);
+                }
+            } else if (node instanceof ValuePathNode) {
+                push(((ValuePathNode) node).getValueFilter(), depth + 1, pendingNodes, pendingDepths);
+            } else {
+                push(node.getLeftNode(), depth + 1, pendingNodes, pendingDepths);
+                push(node.getRightNode(), depth + 1, pendingNodes, pendingDepths);
+            }
+        }
+        return maxDepth;
+    }
+
+    private static void push(Node node, int depth, Deque<Node> pendingNodes, Deque<Integer> pendingDepths) {
+        if (node != null) {
+            pendingNodes.push(node);
+            pendingDepths.push(depth);
+        }
+    }
+
+    private void addTerm(int operation, boolean multiValued) {
+        int termCost;
+        switch (operation) {
+            case FilterEvaluator.CO:
+                termCost = CONTAINS_COST;
+                substringTermCount++;
+                break;
+            case FilterEvaluator.SW:
+            case FilterEvaluator.EW:
+                termCost = PREFIX_COST;
+                substringTermCount++;
+                break;
+            case FilterEvaluator.GT:
+            case FilterEvaluator.GE:
+            case FilterEvaluator.LT:
+            case FilterEvaluator.LE:
+                termCost = RANGE_COST;
+                break;
+            default:
+                termCost = BASE_COST;
+        }
+        if (multiValued) {
+            termCost *= MULTI_VALUED_FACTOR;
+            multiValuedTermCount++;
+        }
+        termCount++;
+        cost += termCost;
+    }
+
+    private static boolean isMultiValued(String attributeName, SCIMResourceTypeSchema schema)
+            throws BadRequestException {
+        List<AttributeSchema> attributePath = FilterEvaluator.getAttributePath(attributeName, schema);
+        for (AttributeSchema attributeSchema : attributePath) {
+            if (Boolean.TRUE.equals(attributeSchema.getMultiValued())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks the cost against the filter limits of the charon configuration.
+     *
+     * @throws BadRequestException invalidFilter if the filter is nested too deep, tooMany if it has too many
+     *                             expressions or costs too much
+     */
+    public void checkLimits() throws BadRequestException {
+        CharonConfiguration configuration = CharonConfiguration.getInstance();
+        if (configuration.getMaxFilterDepth() > 0 && depth > configuration.getMaxFilterDepth()) {
+            String error = "Filter is nested deeper than the maximum of " + configuration.getMaxFilterDepth();
+            throw new BadRequestException(error, ResponseCodeConstants.INVALID_FILTER);
+        }
+        if (configuration.getMaxFilterTerms() > 0 && termCount > configuration.getMaxFilterTerms()) {
+            String error = "Filter has more expressions than the maximum of " + configuration.getMaxFilterTerms();
+            throw new BadRequestException(error, ResponseCodeConstants.TOO_MANY);
+        }
+        if (configuration.getMaxFilterCost() > 0 && cost > configuration.getMaxFilterCost()) {
+            String error = "Filter is too expensive to evaluate, its cost " + cost + " is more than the maximum of " +
+                    configuration.getMaxFilterCost();
+            throw new BadRequestException(error, ResponseCodeConstants.TOO_MANY);
+        }
+    }
+
+    /**
+     * Depth of the filter tree, 1 for a single expression.
+     *
+     * @return int
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Number of expressions in the filter.
+     *
+     * @return int
+     */
+    public int getTermCount() {
+        return termCount;
+    }
+
+    /**
+     * Number of co, sw and ew expressions in the filter.
+     *
+     * @return int
+     */
+    public int getSubstringTermCount() {
+        return substringTermCount;
+    }
+
+    /**
+     * Number of expressions on multi valued attributes or their sub attributes.
+     *
+     * @return int
+     */
+    public int getMultiValuedTermCount() {
+        return multiValuedTermCount;
+    }
+
+    /**
+     * Estimated cost of evaluating the filter on a single resource.
+     *
+     * @return int
+     */
+    public int getCost() {
+        return cost;
+    }
+}
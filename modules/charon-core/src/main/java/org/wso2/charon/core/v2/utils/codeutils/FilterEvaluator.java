@@ -0,0 +1,739 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.utils.codeutils;
+
+import org.wso2.charon.core.v2.attributes.Attribute;
+import org.wso2.charon.core.v2.attributes.ComplexAttribute;
+import org.wso2.charon.core.v2.attributes.MultiValuedAttribute;
+import org.wso2.charon.core.v2.attributes.SimpleAttribute;
+import org.wso2.charon.core.v2.exceptions.BadRequestException;
+import org.wso2.charon.core.v2.objects.AbstractSCIMObject;
+import org.wso2.charon.core.v2.protocol.ResponseCodeConstants;
+import org.wso2.charon.core.v2.schema.AttributeSchema;
+import org.wso2.charon.core.v2.schema.SCIMConstants;
+import org.wso2.charon.core.v2.schema.SCIMDefinitions;
+import org.wso2.charon.core.v2.schema.SCIMResourceTypeSchema;
+import org.wso2.charon.core.v2.utils.AttributeUtil;
+import org.wso2.charon.core.v2.utils.DateTimeUtil;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles filter trees built by FilterTreeManager into FilterPredicates, which evaluate the filter on SCIM
+ * objects in memory, eg: in user managers and caches which do not have a query language of their own.
+ *
+ * Attributes and filter values are resolved once against the resource schema when the filter is compiled.
+ * Values are compared according to the data type of the attribute, strings ignoring the case unless the
+ * attribute is caseExact, and dateTimes, integers and decimals by their values. An expression on a multi
+ * valued attribute matches if any of its values matches, and one on a complex multi valued attribute without
+ * a sub attribute is applied to its "value" sub attribute. and, or and not are evaluated with short circuit.
+ * The values of an InExpressionNode on a string attribute are looked up in a set. A value path filter is
+ * evaluated on each value of its multi valued attribute in turn, and stops at the first value which matches.
+ */
+public final class FilterEvaluator {
+
+    private static final String VALUE_SUB_ATTRIBUTE = "value";
+
+    //filter operators, indexes in OPERATIONS
+    static final int EQ = 0;
+    static final int NE = 1;
+    static final int CO = 2;
+    static final int SW = 3;
+    static final int EW = 4;
+    static final int PR = 5;
+    static final int GT = 6;
+    static final int GE = 7;
+    static final int LT = 8;
+    static final int LE = 9;
+
+    static final String[] OPERATIONS = {
+            SCIMConstants.OperationalConstants.EQ.trim(), SCIMConstants.OperationalConstants.NE.trim(),
+            SCIMConstants.OperationalConstants.CO.trim(), SCIMConstants.OperationalConstants.SW.trim(),
+            SCIMConstants.OperationalConstants.EW.trim(), SCIMConstants.OperationalConstants.PR.trim(),
+            SCIMConstants.OperationalConstants.GT.trim(), SCIMConstants.OperationalConstants.GE.trim(),
+            SCIMConstants.OperationalConstants.LT.trim(), SCIMConstants.OperationalConstants.LE.trim()};
+
+    //matches every object, used when there is no filter
+    private static final FilterPredicate MATCH_ALL = new FilterPredicate() {
+        @Override
+        public boolean test(AbstractSCIMObject scimObject) {
+            return true;
+        }
+    };
+
+    private FilterEvaluator() {
+    }
+
+    /**
+     * Compiles the given filter tree into a predicate. The predicate holds no state of its own and can be
+     * shared between threads.
+     *
+     * @param rootNode - root of the filter tree, if null the predicate matches every object
+     * @param schema   - resource schema the filter attributes belong to
+     * @return FilterPredicate
+     * @throws BadRequestException if the filter is not valid for the schema
+     */
+    public static FilterPredicate compile(Node rootNode, SCIMResourceTypeSchema schema) throws BadRequestException {
+        if (rootNode == null) {
+            return MATCH_ALL;
+        }
+        return compileNode(rootNode, schema, null);
+    }
+
+    /**
+     * Returns the objects of the given list which match the predicate, in the same order.
+     *
+     * @param scimObjects - objects to be filtered
+     * @param predicate   - compiled filter
+     * @return list of the matching objects
+     */
+    public static <T extends AbstractSCIMObject> List<T> filter(List<T> scimObjects, FilterPredicate predicate) {
+        List<T> filteredObjects = new ArrayList<>();
+        for (T scimObject : scimObjects) {
+            if (scimObject != null && predicate.test(scimObject)) {
+                filteredObjects.add(scimObject);
+            }
+        }
+        return filteredObjects;
+    }
+
+    /*
+     * Compiles a node of the filter. Inside a value path filter, valuePath is the path of the value path
+     * attribute, and the attributes are looked up in its values.
+     */
+    private static AttributePredicate compileNode(Node node, SCIMResourceTypeSchema schema,
+                                                  List<AttributeSchema> valuePath) throws BadRequestException {
+        if (node instanceof ExpressionNode) {
+            return compileExpression((ExpressionNode) node, schema, valuePath);
+        }
+        if (node instanceof InExpressionNode) {
+            return compileInExpression((InExpressionNode) node, schema, valuePath);
+        }
+        if (node instanceof ValuePathNode) {
+            return compileValuePath((ValuePathNode) node, schema, valuePath);
+        }
+        if (node instanceof OperationNode) {
+            String operation = ((OperationNode) node).getOperation();
+            if (SCIMConstants.OperationalConstants.AND.equalsIgnoreCase(operation)) {
+                return new AndPredicate(compileOperand(node.getLeftNode(), schema, valuePath),
+                        compileOperand(node.getRightNode(), schema, valuePath));
+            }
+            if (SCIMConstants.OperationalConstants.OR.equalsIgnoreCase(operation)) {
+                return new OrPredicate(compileOperand(node.getLeftNode(), schema, valuePath),
+                        compileOperand(node.getRightNode(), schema, valuePath));
+            }
+            if (SCIMConstants.OperationalConstants.NOT.equalsIgnoreCase(operation)) {
+                return new NotPredicate(compileOperand(node.getRightNode(), schema, valuePath));
+            }
+        }
+        String error = "Given filter operator is not supported.";
+        throw new BadRequestException(error, ResponseCodeConstants.INVALID_FILTER);
+    }
+
+    private static AttributePredicate compileOperand(Node node, SCIMResourceTypeSchema schema,
+                                                     List<AttributeSchema> valuePath) throws BadRequestException {
+        if (node == null) {
+            String error = "Logical operator of the filter is missing an operand.";
+            throw new BadRequestException(error, ResponseCodeConstants.INVALID_FILTER);
+        }
+        return compileNode(node, schema, valuePath);
+    }
+
+    private static AttributePredicate compileExpression(ExpressionNode expressionNode,
+                                                        SCIMResourceTypeSchema schema,
+                                                        List<AttributeSchema> valuePath) throws BadRequestException {
+        int operation = getOperation(expressionNode.getOperation());
+        List<AttributeSchema> attributePath = getAttributePath(expressionNode.getAttributeValue(), schema);
+        AttributeSchema attributeSchema = attributePath.get(attributePath.size() - 1);
+        if (operation == PR) {
+            return new ExpressionPredicate(getNames(attributePath, valuePath), null);
+        }
+        attributeSchema = addValueSubAttribute(attributePath, OPERATIONS[operation]);
+        ValueMatcher matcher = createMatcher(operation == NE ? EQ : operation, expressionNode.getValue(),
+                attributeSchema);
+        AttributePredicate predicate = new ExpressionPredicate(getNames(attributePath, valuePath), matcher);
+        //ne matches when none of the values are equal, including when the attribute is not there
+        return operation == NE ? new NotPredicate(predicate) : predicate;
+    }
+
+    private static AttributePredicate compileInExpression(InExpressionNode inExpressionNode,
+                                                          SCIMResourceTypeSchema schema,
+                                                          List<AttributeSchema> valuePath)
+            throws BadRequestException {
+        List<AttributeSchema> attributePath = getAttributePath(inExpressionNode.getAttributeValue(), schema);
+        AttributeSchema attributeSchema = addValueSubAttribute(attributePath, OPERATIONS[EQ]);
+        SCIMDefinitions.DataType type = attributeSchema.getType();
+        ValueMatcher matcher;
+        if (SCIMDefinitions.DataType.STRING.equals(type) || SCIMDefinitions.DataType.REFERENCE.equals(type) ||
+                SCIMDefinitions.DataType.BINARY.equals(type)) {
+            boolean caseExact = attributeSchema.getCaseExact() || SCIMDefinitions.DataType.BINARY.equals(type);
+            matcher = new StringSetMatcher(inExpressionNode.getValues(), caseExact);
+        } else {
+            List<ValueMatcher> matchers = new ArrayList<>();
+            for (String value : inExpressionNode.getValues()) {
+                matchers.add(createMatcher(EQ, value, attributeSchema));
+            }
+            matcher = new AnyValueMatcher(matchers);
+        }
+        return new ExpressionPredicate(getNames(attributePath, valuePath), matcher);
+    }
+
+    private static AttributePredicate compileValuePath(ValuePathNode valuePathNode, SCIMResourceTypeSchema schema,
+                                                       List<AttributeSchema> valuePath)
+            throws BadRequestException {
+        List<AttributeSchema> attributePath = getAttributePath(valuePathNode.getAttributeValue(), schema);
+        AttributeSchema attributeSchema = attributePath.get(attributePath.size() - 1);
+        if (valuePath != null || !SCIMDefinitions.DataType.COMPLEX.equals(attributeSchema.getType())) {
+            String error = "Value path filter is not supported for the attribute " + attributeSchema.getName();
+            throw new BadRequestException(error, ResponseCodeConstants.INVALID_FILTER);
+        }
+        return new ValuePathPredicate(getNames(attributePath, null),
+                compileOperand(valuePathNode.getValueFilter(), schema, attributePath));
+    }
+
+    /*
+     * A complex attribute is compared by its value sub attribute, eg: emails eq "x", which is added to the
+     * path. Returns the schema of the attribute to be compared.
+     */
+    private static AttributeSchema addValueSubAttribute(List<AttributeSchema> attributePath, String operation)
+            throws BadRequestException {
+        AttributeSchema attributeSchema = attributePath.get(attributePath.size() - 1);
+        if (SCIMDefinitions.DataType.COMPLEX.equals(attributeSchema.getType())) {
+            AttributeSchema valueSchema = attributeSchema.getSubAttributeSchema(VALUE_SUB_ATTRIBUTE);
+            if (valueSchema == null) {
+                String error = "Filter operator " + operation + " is not supported for the complex attribute " +
+                        attributeSchema.getName();
+                throw new BadRequestException(error, ResponseCodeConstants.INVALID_FILTER);
+            }
+            attributePath.add(valueSchema);
+            return valueSchema;
+        }
+        return attributeSchema;
+    }
+
+    /*
+     * Returns the index of the given filter operator in OPERATIONS, ignoring the case.
+     */
+    static int getOperation(String operation) throws BadRequestException {
+        if (operation != null) {
+            for (int i = 0; i < OPERATIONS.length; i++) {
+                if (OPERATIONS[i].equalsIgnoreCase(operation.trim())) {
+                    return i;
+                }
+            }
+        }
+        String error = "Given filter operator is not supported.";
+        throw new BadRequestException(error, ResponseCodeConstants.INVALID_FILTER);
+    }
+
+    /*
+     * Returns the schemas from the top level attribute down to the attribute with the given name or URI.
+     */
+    static List<AttributeSchema> getAttributePath(String attributeName, SCIMResourceTypeSchema schema)
+            throws BadRequestException {
+        String attributeURI = AttributeUtil.getAttributeURI(attributeName, schema);
+        List<AttributeSchema> attributePath = new ArrayList<>();
+        if (!findAttributePath(attributeURI, schema.getAttributesList(), attributePath)) {
+            String error = "Not a valid attribute name/URI";
+            throw new BadRequestException(error, ResponseCodeConstants.INVALID_VALUE);
+        }
+        return attributePath;
+    }
+
+    private static boolean findAttributePath(String attributeURI, List<? extends AttributeSchema> attributeSchemas,
+                                             List<AttributeSchema> attributePath) {
+        if (attributeSchemas == null) {
+            return false;
+        }
+        for (AttributeSchema attributeSchema : attributeSchemas) {
+            attributePath.add(attributeSchema);
+            if (attributeSchema.getURI().equals(attributeURI) ||
+                    findAttributePath(attributeURI, attributeSchema.getSubAttributeSchemas(), attributePath)) {
+                return true;
+            }
+            attributePath.remove(attributePath.size() - 1);
+        }
+        return false;
+    }
+
+    /*
+     * Returns the names of the attributes on the path, below the value path attribute if there is one.
+     */
+    private static String[] getNames(List<AttributeSchema> attributePath, List<AttributeSchema> valuePath)
+            throws BadRequestException {
+        int start = valuePath == null ? 0 : valuePath.size();
+        if (valuePath != null &&
+                (attributePath.size() <= start || !attributePath.subList(0, start).equals(valuePath))) {
+            String error = "Attribute " + attributePath.get(attributePath.size() - 1).getName() +
+                    " of the value filter is not a sub attribute of " +
+                    valuePath.get(valuePath.size() - 1).getName();
+            throw new BadRequestException(error, ResponseCodeConstants.INVALID_FILTER);
+        }
+        String[] names = new String[attributePath.size() - start];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = attributePath.get(start + i).getName();
+        }
+        return names;
+    }
+
+    /*
+     * Creates the matcher of a filter value, which is converted to the type of the attribute once here.
+     */
+    private static ValueMatcher createMatcher(int operation, String value, AttributeSchema attributeSchema)
+            throws BadRequestException {
+        if (value == null) {
+            String error = "Value of the filter expression is missing.";
+            throw new BadRequestException(error, ResponseCodeConstants.INVALID_FILTER);
+        }
+        SCIMDefinitions.DataType type = attributeSchema.getType();
+        boolean substring = operation == CO || operation == SW || operation == EW;
+        boolean ordering = operation == GT || operation == GE || operation == LT || operation == LE;
+        if (SCIMDefinitions.DataType.STRING.equals(type) || SCIMDefinitions.DataType.REFERENCE.equals(type)) {
+            return new StringMatcher(operation, value, attributeSchema.getCaseExact());
+        }
+        if (SCIMDefinitions.DataType.BINARY.equals(type) && !ordering) {
+            return new StringMatcher(operation, value, true);
+        }
+        if (!substring) {
+            try {
+                if (SCIMDefinitions.DataType.BOOLEAN.equals(type) && !ordering) {
+                    if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value)) {
+                        throw new NumberFormatException(value);
+                    }
+                    return new BooleanMatcher(Boolean.parseBoolean(value));
+                }
+                if (SCIMDefinitions.DataType.INTEGER.equals(type)) {
+                    return new IntegerMatcher(operation, Long.parseLong(value));
+                }
+                if (SCIMDefinitions.DataType.DECIMAL.equals(type)) {
+                    return new DecimalMatcher(operation, Double.parseDouble(value));
+                }
+                if (SCIMDefinitions.DataType.DATE_TIME.equals(type)) {
+                    return new DateTimeMatcher(operation, DateTimeUtil.parse(value).getTime());
+                }
+            } catch (NumberFormatException | ParseException e) {
+                String error = "Filter value " + value + " is not a valid " + type + " value for the attribute " +
+                        attributeSchema.getName();
+                throw new BadRequestException(error, ResponseCodeConstants.INVALID_FILTER);
+            }
+        }
+        String error = "Filter operator " + OPERATIONS[operation] + " is not supported for the " + type +
+                " attribute " + attributeSchema.getName();
+        throw new BadRequestException(error, ResponseCodeConstants.INVALID_FILTER);
+    }
+
+    private static boolean isSatisfied(int operation, int comparison) {
+        switch (operation) {
+            case EQ:
+                return comparison == 0;
+            case GT:
+                return comparison > 0;
+            case GE:
+                return comparison >= 0;
+            case LT:
+                return comparison < 0;
+            case LE:
+                return comparison <= 0;
+            default:
+                return false;
+        }
+    }
+
+    /*
+     * Evaluates the filter on the attributes of an object, or on the sub attributes of a single value of
+     * a value path attribute.
+     */
+    private abstract static class AttributePredicate implements FilterPredicate {
+
+        @Override
+        public boolean test(AbstractSCIMObject scimObject) {
+            return test(scimObject.getAttributeList());
+        }
+
+        abstract boolean test(Map<String, Attribute> attributes);
+    }
+
+    private static final class AndPredicate extends AttributePredicate {
+
+        private final AttributePredicate left;
+        private final AttributePredicate right;
+
+        private AndPredicate(AttributePredicate left, AttributePredicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean test(Map<String, Attribute> attributes) {
+            return left.test(attributes) && right.test(attributes);
+        }
+    }
+
+    private static final class OrPredicate extends AttributePredicate {
+
+        private final AttributePredicate left;
+        private final AttributePredicate right;
+
+        private OrPredicate(AttributePredicate left, AttributePredicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean test(Map<String, Attribute> attributes) {
+            return left.test(attributes) || right.test(attributes);
+        }
+    }
+
+    private static final class NotPredicate extends AttributePredicate {
+
+        private final AttributePredicate operand;
+
+        private NotPredicate(AttributePredicate operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        boolean test(Map<String, Attribute> attributes) {
+            return !operand.test(attributes);
+        }
+    }
+
+    /*
+     * Evaluates a value path filter. The values of the multi valued attribute are looked at one by one, and
+     * the value filter is evaluated on the sub attributes of each until one matches.
+     */
+    private static final class ValuePathPredicate extends AttributePredicate {
+
+        private final String[] names;
+        private final AttributePredicate valueFilter;
+
+        private ValuePathPredicate(String[] names, AttributePredicate valueFilter) {
+            this.names = names;
+            this.valueFilter = valueFilter;
+        }
+
+        @Override
+        boolean test(Map<String, Attribute> attributes) {
+            Attribute attribute = attributes.get(names[0]);
+            return attribute != null && matches(attribute, 0);
+        }
+
+        private boolean matches(Attribute attribute, int depth) {
+            if (depth < names.length - 1) {
+                if (attribute instanceof ComplexAttribute) {
+                    Attribute subAttribute =
+                            ((ComplexAttribute) attribute).getSubAttributesList().get(names[depth + 1]);
+                    return subAttribute != null && matches(subAttribute, depth + 1);
+                }
+                return false;
+            }
+            if (attribute instanceof MultiValuedAttribute) {
+                for (Attribute value : ((MultiValuedAttribute) attribute).getAttributeValues()) {
+                    if (value instanceof ComplexAttribute &&
+                            valueFilter.test(((ComplexAttribute) value).getSubAttributesList())) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return attribute instanceof ComplexAttribute &&
+                    valueFilter.test(((ComplexAttribute) attribute).getSubAttributesList());
+        }
+    }
+
+    /*
+     * Evaluates a single filter expression. The attribute is looked up by the names of the attributes on its
+     * path, each value of a multi valued attribute on the path is looked at until one matches.
+     */
+    private static final class ExpressionPredicate extends AttributePredicate {
+
+        private final String[] names;
+        //null for pr
+        private final ValueMatcher matcher;
+
+        private ExpressionPredicate(String[] names, ValueMatcher matcher) {
+            this.names = names;
+            this.matcher = matcher;
+        }
+
+        @Override
+        boolean test(Map<String, Attribute> attributes) {
+            Attribute attribute = attributes.get(names[0]);
+            return attribute != null && matches(attribute, 0);
+        }
+
+        private boolean matches(Attribute attribute, int depth) {
+            if (depth == names.length - 1) {
+                return matcher == null ? isPresent(attribute) : matchesValue(attribute);
+            }
+            String subAttributeName = names[depth + 1];
+            if (attribute instanceof ComplexAttribute) {
+                Attribute subAttribute = ((ComplexAttribute) attribute).getSubAttributesList().get(subAttributeName);
+                return subAttribute != null && matches(subAttribute, depth + 1);
+            }
+            if (attribute instanceof MultiValuedAttribute) {
+                for (Attribute value : ((MultiValuedAttribute) attribute).getAttributeValues()) {
+                    if (value instanceof ComplexAttribute) {
+                        Attribute subAttribute =
+                                ((ComplexAttribute) value).getSubAttributesList().get(subAttributeName);
+                        if (subAttribute != null && matches(subAttribute, depth + 1)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        private boolean matchesValue(Attribute attribute) {
+            if (attribute instanceof SimpleAttribute) {
+                Object value = ((SimpleAttribute) attribute).getValue();
+                return value != null && matcher.matches(value);
+            }
+            if (attribute instanceof MultiValuedAttribute) {
+                MultiValuedAttribute multiValuedAttribute = (MultiValuedAttribute) attribute;
+                for (Object value : multiValuedAttribute.getAttributePrimitiveValues()) {
+                    if (value != null && matcher.matches(value)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static boolean isPresent(Attribute attribute) {
+            if (attribute instanceof SimpleAttribute) {
+                Object value = ((SimpleAttribute) attribute).getValue();
+                return value != null && !"".equals(value);
+            }
+            if (attribute instanceof MultiValuedAttribute) {
+                MultiValuedAttribute multiValuedAttribute = (MultiValuedAttribute) attribute;
+                return !multiValuedAttribute.getAttributeValues().isEmpty() ||
+                        !multiValuedAttribute.getAttributePrimitiveValues().isEmpty();
+            }
+            if (attribute instanceof ComplexAttribute) {
+                Map<String, Attribute> subAttributes = ((ComplexAttribute) attribute).getSubAttributesList();
+                return subAttributes != null && !subAttributes.isEmpty();
+            }
+            return false;
+        }
+    }
+
+    /*
+     * Compares attribute values with a filter value.
+     */
+    private interface ValueMatcher {
+
+        boolean matches(Object value);
+    }
+
+    private static final class StringMatcher implements ValueMatcher {
+
+        private final int operation;
+        private final String filterValue;
+        private final boolean caseExact;
+
+        private StringMatcher(int operation, String filterValue, boolean caseExact) {
+            this.operation = operation;
+            this.filterValue = filterValue;
+            this.caseExact = caseExact;
+        }
+
+        @Override
+        public boolean matches(Object value) {
+            String stringValue = value instanceof String ? (String) value : String.valueOf(value);
+            int length = filterValue.length();
+            switch (operation) {
+                case EQ:
+                    return caseExact ? stringValue.equals(filterValue) : stringValue.equalsIgnoreCase(filterValue);
+                case SW:
+                    return stringValue.regionMatches(!caseExact, 0, filterValue, 0, length);
+                case EW:
+                    return stringValue.regionMatches(!caseExact, stringValue.length() - length, filterValue, 0,
+                            length);
+                case CO:
+                    if (caseExact) {
+                        return stringValue.contains(filterValue);
+                    }
+                    for (int i = 0; i <= stringValue.length() - length; i++) {
+                        if (stringValue.regionMatches(true, i, filterValue, 0, length)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                default:
+                    return isSatisfied(operation, caseExact ? stringValue.compareTo(filterValue) :
+                            stringValue.compareToIgnoreCase(filterValue));
+            }
+        }
+    }
+
+    /*
+     * Matches strings equal to any of the given values, looked up in a set.
+     */
+    private static final class StringSetMatcher implements ValueMatcher {
+
+        private final Set<String> filterValues = new HashSet<>();
+        private final boolean caseExact;
+
+        private StringSetMatcher(List<String> filterValues, boolean caseExact) {
+            this.caseExact = caseExact;
+            for (String filterValue : filterValues) {
+                this.filterValues.add(caseExact ? filterValue : foldCase(filterValue));
+            }
+        }
+
+        @Override
+        public boolean matches(Object value) {
+            String stringValue = value instanceof String ? (String) value : String.valueOf(value);
+            return filterValues.contains(caseExact ? stringValue : foldCase(stringValue));
+        }
+
+        /*
+         * Maps the characters the same way String.equalsIgnoreCase compares them.
+         */
+        private static String foldCase(String value) {
+            char[] chars = value.toCharArray();
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+            }
+            return new String(chars);
+        }
+    }
+
+    private static final class AnyValueMatcher implements ValueMatcher {
+
+        private final List<ValueMatcher> matchers;
+
+        private AnyValueMatcher(List<ValueMatcher> matchers) {
+            this.matchers = matchers;
+        }
+
+        @Override
+        public boolean matches(Object value) {
+            for (ValueMatcher matcher : matchers) {
+                if (matcher.matches(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class BooleanMatcher implements ValueMatcher {
+
+        private final boolean filterValue;
+
+        private BooleanMatcher(boolean filterValue) {
+            this.filterValue = filterValue;
+        }
+
+        @Override
+        public boolean matches(Object value) {
+            if (value instanceof Boolean) {
+                return (Boolean) value == filterValue;
+            }
+            return String.valueOf(filterValue).equalsIgnoreCase(String.valueOf(value));
+        }
+    }
+
+    private static final class IntegerMatcher implements ValueMatcher {
+
+        private final int operation;
+        private final long filterValue;
+
+        private IntegerMatcher(int operation, long filterValue) {
+            this.operation = operation;
+            this.filterValue = filterValue;
+        }
+
+        @Override
+        public boolean matches(Object value) {
+            long longValue;
+            if (value instanceof Number) {
+                longValue = ((Number) value).longValue();
+            } else {
+                try {
+                    longValue = Long.parseLong(String.valueOf(value).trim());
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+            return isSatisfied(operation, longValue < filterValue ? -1 : (longValue == filterValue ? 0 : 1));
+        }
+    }
+
+    private static final class DecimalMatcher implements ValueMatcher {
+
+        private final int operation;
+        private final double filterValue;
+
+        private DecimalMatcher(int operation, double filterValue) {
+            this.operation = operation;
+            this.filterValue = filterValue;
+        }
+
+        @Override
+        public boolean matches(Object value) {
+            double doubleValue;
+            if (value instanceof Number) {
+                doubleValue = ((Number) value).doubleValue();
+            } else {
+                try {
+                    doubleValue = Double.parseDouble(String.valueOf(value).trim());
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+            return isSatisfied(operation, Double.compare(doubleValue, filterValue));
+        }
+    }
+
+    private static final class DateTimeMatcher implements ValueMatcher {
+
+        private final int operation;
+        private final long filterValue;
+
+        private DateTimeMatcher(int operation, long filterValue) {
+            this.operation = operation;
+            this.filterValue = filterValue;
+        }
+
+        @Override
+        public boolean matches(Object value) {
+            long time;
+            if (value instanceof Date) {
+                time = ((Date) value).getTime();
+            } else {
+                try {
+                    time = DateTimeUtil.parse(String.valueOf(value)).getTime();
+                } catch (ParseException e) {
+                    return false;
+                }
+            }
+            return isSatisfied(operation, time < filterValue ? -1 : (time == filterValue ? 0 : 1));
+        }
+    }
+}
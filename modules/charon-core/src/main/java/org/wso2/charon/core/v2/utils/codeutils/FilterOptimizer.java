@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.utils.codeutils;
+
+import org.wso2.charon.core.v2.exceptions.BadRequestException;
+import org.wso2.charon.core.v2.protocol.ResponseCodeConstants;
+import org.wso2.charon.core.v2.schema.SCIMConstants;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites filter trees into an equivalent, simpler form before they are evaluated, eg: by FilterEvaluator
+ * or SQLFilterTranslator.
+ *
+ * - not is pushed down to the expressions, not (a and b) becomes not a or not b, a double not is removed and
+ *   not (x eq v) becomes x ne v.
+ * - Nested and / or chains are flattened, and repeated expressions in a chain are kept once.
+ * - An or chain which has both an expression and its negation (eg: x pr or not (x pr)) matches everything.
+ *   If the whole filter matches everything, no filter is returned.
+ * - eq expressions on the same attribute in an or chain become a single InExpressionNode.
+ * - The value filter of a value path is optimized on its own, the value path itself is kept as an expression.
+ *
+ * The given tree is not modified, expression nodes which are not changed are shared with the optimized tree.
+ */
+public final class FilterOptimizer {
+
+    private static final String EQ = SCIMConstants.OperationalConstants.EQ.trim();
+    private static final String NE = SCIMConstants.OperationalConstants.NE.trim();
+
+    private FilterOptimizer() {
+    }
+
+    /**
+     * Returns the optimized form of the given filter tree.
+     *
+     * @param rootNode - root of the filter tree
+     * @return root of the optimized tree, or null if the filter matches every object
+     * @throws BadRequestException if a logical operator of the tree is not valid
+     */
+    public static Node optimize(Node rootNode) throws BadRequestException {
+        if (rootNode == null) {
+            return null;
+        }
+        Term term = normalize(rootNode, false);
+        return term == Term.TRUE ? null : term.toNode();
+    }
+
+    /*
+     * Builds the normalized term of the given node, or of its negation. The operands of nested operators which
+     * belong to the same chain are collected without recursion, so that a long chain, eg: of 20000 or
+     * expressions, does not overflow the stack.
+     */
+    private static Term normalize(Node node, boolean negated) throws BadRequestException {
+        //a not only flips the negation of its operand
+        while (isNot(node)) {
+            node = getOperand(node.getRightNode());
+            negated = !negated;
+        }
+        if (node instanceof OperationNode) {
+            //de morgan
+            boolean andChain = isAnd((OperationNode) node) != negated;
+            List<Term> operands = new ArrayList<>();
+            Deque<Node> pendingNodes = new ArrayDeque<>();
+            Deque<Boolean> pendingNegations = new ArrayDeque<>();
+            pushOperands(node, negated, pendingNodes, pendingNegations);
+            while (!pendingNodes.isEmpty()) {
+                Node operand = pendingNodes.pop();
+                boolean operandNegated = pendingNegations.pop();
+                while (isNot(operand)) {
+                    operand = getOperand(operand.getRightNode());
+                    operandNegated = !operandNegated;
+                }
+                if (operand instanceof OperationNode &&
+                        (isAnd((OperationNode) operand) != operandNegated) == andChain) {
+                    pushOperands(operand, operandNegated, pendingNodes, pendingNegations);
+                } else {
+                    addOperand(operands, normalize(operand, operandNegated), andChain);
+                }
+            }
+            return simplify(operands, andChain);
+        }
+        if (node instanceof ValuePathNode) {
+            return Term.valuePath((ValuePathNode) node, negated);
+        }
+        return Term.leaf(node, negated);
+    }
+
+    private static boolean isNot(Node node) {
+        return node instanceof OperationNode &&
+                SCIMConstants.OperationalConstants.NOT.equalsIgnoreCase(((OperationNode) node).getOperation());
+    }
+
+    private static boolean isAnd(OperationNode node) throws BadRequestException {
+        String operation = node.getOperation();
+        if (SCIMConstants.OperationalConstants.AND.equalsIgnoreCase(operation)) {
+            return true;
+        }
+        if (!SCIMConstants.OperationalConstants.OR.equalsIgnoreCase(operation)) {
+            String error = "Given filter operator is not supported.";
+            throw new BadRequestException(error, ResponseCodeConstants.INVALID_FILTER);
+        }
+        return false;
+    }
+
+    /*
+     * Pushes the operands of a logical operator, so that the left one is popped first.
+     */
+    private static void pushOperands(Node node, boolean negated, Deque<Node> pendingNodes,
+                                     Deque<Boolean> pendingNegations) throws BadRequestException {
+        pendingNodes.push(getOperand(node.getRightNode()));
+        pendingNegations.push(negated);
+        pendingNodes.push(getOperand(node.getLeftNode()));
+        pendingNegations.push(negated);
+    }
+
+    private static Node getOperand(Node node) throws BadRequestException {
+        if (node == null) {
+            String error = "Logical operator of the filter is missing an operand.";
+            throw new BadRequestException(error, ResponseCodeConstants.INVALID_FILTER);
+        }
+        return node;
+    }
+
+    private static void addOperand(List<Term> operands, Term operand, boolean andChain) {
+        if (operand.operands != null && operand.andChain == andChain) {
+            operands.addAll(operand.operands);
+        } else {
+            operands.add(operand);
+        }
+    }
+
+    private static Term simplify(List<Term> operands, boolean andChain) {
+        //repeated operands are kept once, operands which always match are left out of an and chain
+        Map<String, Term> distinctOperands = new LinkedHashMap<>();
+        List<Term> simplified = new ArrayList<>();
+        for (Term operand : operands) {
+            if (operand == Term.TRUE) {
+                if (!andChain) {
+                    return Term.TRUE;
+                }
+                continue;
+            }
+            if (operand.key == null) {
+                simplified.add(operand);
+            } else if (!distinctOperands.containsKey(operand.key)) {
+                distinctOperands.put(operand.key, operand);
+                simplified.add(operand);
+            }
+        }
+        if (!andChain) {
+            for (String key : distinctOperands.keySet()) {
+                if (distinctOperands.containsKey(Term.negate(key))) {
+                    return Term.TRUE;
+                }
+            }
+            simplified = mergeEqualities(simplified);
+        }
+        if (simplified.isEmpty()) {
+            return Term.TRUE;
+        }
+        if (simplified.size() == 1) {
+            return simplified.get(0);
+        }
+        return Term.chain(simplified, andChain);
+    }
+
+    /*
+     * Replaces the eq expressions of an or chain which are on the same attribute with an InExpressionNode, in
+     * the place of the first of them.
+     */
+    private static List<Term> mergeEqualities(List<Term> operands) {
+        Map<String, List<String>> valuesByAttribute = new HashMap<>();
+        Map<String, Integer> operandCounts = new HashMap<>();
+        for (Term operand : operands) {
+            String attribute = operand.getEqualityAttribute();
+            if (attribute != null) {
+                List<String> values = valuesByAttribute.get(attribute);
+                if (values == null) {
+                    values = new ArrayList<>();
+                    valuesByAttribute.put(attribute, values);
+                    operandCounts.put(attribute, 0);
+                }
+                values.addAll(operand.getEqualityValues());
+                operandCounts.put(attribute, operandCounts.get(attribute) + 1);
+            }
+        }
+        Set<String> merged = new HashSet<>();
+        List<Term> mergedOperands = new ArrayList<>();
+        for (Term operand : operands) {
+            String attribute = operand.getEqualityAttribute();
+            if (attribute == null || operandCounts.get(attribute) < 2) {
+                mergedOperands.add(operand);
+            } else if (merged.add(attribute)) {
+                mergedOperands.add(Term.leaf(new InExpressionNode(attribute, valuesByAttribute.get(attribute)),
+                        false));
+            }
+        }
+        return mergedOperands;
+    }
+
+    /*
+     * A normalized filter: a chain of operands, or an expression which may be negated.
+     */
+    private static final class Term {
+
+        //a term which matches everything
+        private static final Term TRUE = new Term(null, false, null, null, false);
+
+        private final Node node;
+        private final boolean negated;
+        private final List<Term> operands;
+        private final boolean andChain;
+        //identifies equivalent terms, null if the term can not be compared
+        private final String key;
+
+        private Term(Node node, boolean negated, List<Term> operands, String key, boolean andChain) {
+            this.node = node;
+            this.negated = negated;
+            this.operands = operands;
+            this.key = key;
+            this.andChain = andChain;
+        }
+
+        private static Term leaf(Node node, boolean negated) {
+            if (node instanceof ExpressionNode && ((ExpressionNode) node).getOperation() != null) {
+                ExpressionNode expressionNode = (ExpressionNode) node;
+                String operation = expressionNode.getOperation().trim().toLowerCase(Locale.ENGLISH);
+                //x ne v is the negation of x eq v
+                if (NE.equals(operation)) {
+                    negated = !negated;
+                    operation = EQ;
+                }
+                String key = "E" + length(expressionNode.getAttributeValue()) + length(operation) +
+                        length(expressionNode.getValue());
+                return new Term(node, negated, null, negated ? negate(key) : key, false);
+            }
+            if (node instanceof InExpressionNode) {
+                InExpressionNode inExpressionNode = (InExpressionNode) node;
+                String[] values = inExpressionNode.getValues().toArray(new String[0]);
+                Arrays.sort(values);
+                StringBuilder key = new StringBuilder("I").append(length(inExpressionNode.getAttributeValue()));
+                for (String value : values) {
+                    key.append(length(value));
+                }
+                return new Term(node, negated, null, negated ? negate(key.toString()) : key.toString(), false);
+            }
+            return new Term(node, negated, null, null, false);
+        }
+
+        /*
+         * A value path with its value filter optimized. A value filter which matches everything is kept as it
+         * is, as the value path still needs a value to be there.
+         */
+        private static Term valuePath(ValuePathNode valuePathNode, boolean negated) throws BadRequestException {
+            Term valueFilter = normalize(getOperand(valuePathNode.getValueFilter()), false);
+            if (valueFilter == TRUE) {
+                return new Term(valuePathNode, negated, null, null, false);
+            }
+            Node node = new ValuePathNode(valuePathNode.getAttributeValue(), valueFilter.toNode());
+            String key = valueFilter.key == null ? null :
+                    "V" + length(valuePathNode.getAttributeValue()) + length(valueFilter.key);
+            return new Term(node, negated, null, negated && key != null ? negate(key) : key, false);
+        }
+
+        private static Term chain(List<Term> operands, boolean andChain) {
+            String[] keys = new String[operands.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = operands.get(i).key;
+                if (keys[i] == null) {
+                    return new Term(null, false, operands, null, andChain);
+                }
+            }
+            //the order of the operands does not matter
+            Arrays.sort(keys);
+            StringBuilder key = new StringBuilder(andChain ? "A" : "O").append(keys.length).append('(');
+            for (String operandKey : keys) {
+                key.append(length(operandKey));
+            }
+            return new Term(null, false, operands, key.append(')').toString(), andChain);
+        }
+
+        private static String length(String value) {
+            return value == null ? "-" : value.length() + ":" + value;
+        }
+
+        private static String negate(String key) {
+            return key.startsWith("!") ? key.substring(1) : "!" + key;
+        }
+
+        /*
+         * The attribute of an eq expression or an InExpressionNode, which can be merged into another.
+         */
+        private String getEqualityAttribute() {
+            if (negated) {
+                return null;
+            }
+            if (node instanceof ExpressionNode) {
+                ExpressionNode expressionNode = (ExpressionNode) node;
+                if (expressionNode.getValue() == null || expressionNode.getAttributeValue() == null ||
+                        expressionNode.getOperation() == null) {
+                    return null;
+                }
+                //a ne expression which is not negated is an eq, eg: not (x ne v)
+                String operation = expressionNode.getOperation().trim();
+                if (EQ.equalsIgnoreCase(operation) || NE.equalsIgnoreCase(operation)) {
+                    return expressionNode.getAttributeValue();
+                }
+                return null;
+            }
+            if (node instanceof InExpressionNode) {
+                return ((InExpressionNode) node).getAttributeValue();
+            }
+            return null;
+        }
+
+        private List<String> getEqualityValues() {
+            if (node instanceof InExpressionNode) {
+                return ((InExpressionNode) node).getValues();
+            }
+            return Arrays.asList(((ExpressionNode) node).getValue());
+        }
+
+        private Node toNode() {
+            if (operands != null) {
+                String operation = andChain ?
+                        SCIMConstants.OperationalConstants.AND : SCIMConstants.OperationalConstants.OR;
+                Node chain = operands.get(0).toNode();
+                for (int i = 1; i < operands.size(); i++) {
+                    OperationNode operationNode = new OperationNode(operation);
+                    operationNode.setLeftNode(chain);
+                    operationNode.setRightNode(operands.get(i).toNode());
+                    chain = operationNode;
+                }
+                return chain;
+            }
+            if (node instanceof ExpressionNode && ((ExpressionNode) node).getOperation() != null) {
+                ExpressionNode expressionNode = (ExpressionNode) node;
+                String operation = expressionNode.getOperation().trim();
+                if (EQ.equalsIgnoreCase(operation) || NE.equalsIgnoreCase(operation)) {
+                    //the term of a ne expression is a negated eq, which is written back as ne
+                    String effectiveOperation = negated ? NE : EQ;
+                    if (effectiveOperation.equalsIgnoreCase(operation)) {
+                        return node;
+                    }
+                    ExpressionNode flipped = new ExpressionNode();
+                    flipped.setAttributeValue(expressionNode.getAttributeValue());
+                    flipped.setOperation(effectiveOperation);
+                    flipped.setValue(expressionNode.getValue());
+                    return flipped;
+                }
+            }
+            if (!negated) {
+                return node;
+            }
+            OperationNode not = new OperationNode(SCIMConstants.OperationalConstants.NOT);
+            not.setRightNode(node);
+            return not;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.utils.codeutils;
+
+import org.wso2.charon.core.v2.objects.AbstractSCIMObject;
+
+/**
+ * A filter compiled by FilterEvaluator, which tells whether a SCIM object matches the filter.
+ */
+public interface FilterPredicate {
+
+    /**
+     * Whether the given SCIM object matches the filter.
+     *
+     * @param scimObject - user, group or any other SCIM object of the schema the filter was compiled with
+     * @return boolean
+     */
+    public boolean test(AbstractSCIMObject scimObject);
+}
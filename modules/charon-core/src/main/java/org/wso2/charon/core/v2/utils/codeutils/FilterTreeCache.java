@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.utils.codeutils;
+
+import org.wso2.charon.core.v2.exceptions.BadRequestException;
+import org.wso2.charon.core.v2.schema.SCIMResourceTypeSchema;
+import org.wso2.charon.core.v2.utils.ResourceSchemaLRUCache;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded cache of the filter trees built by FilterTreeManager, with the attribute URIs already resolved
+ * against the resource schema.
+ *
+ * Entries are keyed by the shape of the filter, that is the filter with the values of its expressions left
+ * out, so that filters which only differ in their values (eg: userName eq "x" and userName eq "y") share a
+ * single parsed tree. The tree of a filter with other values is bound from the cached one without parsing
+ * the filter or resolving the attributes again.
+ *
+ * The returned trees are immutable and may be shared between requests, their setters throw an
+ * UnsupportedOperationException.
+ */
+public final class FilterTreeCache extends ResourceSchemaLRUCache<String, FilterTreeCache.CachedTree> {
+
+    private static final int DEFAULT_MAX_ENTRIES = 512;
+
+    private static FilterTreeCache cache = new FilterTreeCache(DEFAULT_MAX_ENTRIES);
+
+    private FilterTreeCache(int maxEntries) {
+        super(maxEntries);
+    }
+
+    public static FilterTreeCache getInstance() {
+        return cache;
+    }
+
+    /**
+     * Returns the tree of the given filter, as FilterTreeManager.buildTree would build it. The tree is
+     * immutable and must not be modified.
+     *
+     * @param filter - filter string
+     * @param schema - resource schema the attributes of the filter are resolved against
+     * @return root node of the filter tree
+     * @throws BadRequestException if the filter is not valid
+     * @throws IOException
+     */
+    public Node getFilterTree(String filter, SCIMResourceTypeSchema schema) throws BadRequestException, IOException {
+        return getFilterTree(filter, schema, false);
+    }
+
+    /**
+     * Returns the tree of the given filter rewritten by FilterOptimizer, eg: with the eq expressions of an or
+     * chain on the same attribute merged into an InExpressionNode, which user managers can look up in their
+     * indexes. The optimized tree of the values a filter shape was first cached with is cached as well. The
+     * tree is immutable and must not be modified.
+     *
+     * @param filter - filter string
+     * @param schema - resource schema the attributes of the filter are resolved against
+     * @return root node of the optimized filter tree, or null if the filter matches every resource
+     * @throws BadRequestException if the filter is not valid
+     * @throws IOException
+     */
+    public Node getOptimizedFilterTree(String filter, SCIMResourceTypeSchema schema)
+            throws BadRequestException, IOException {
+        return getFilterTree(filter, schema, true);
+    }
+
+    private Node getFilterTree(String filter, SCIMResourceTypeSchema schema, boolean optimized)
+            throws BadRequestException, IOException {
+        FilterTreeManager filterTreeManager = new FilterTreeManager(filter, schema);
+        //cached trees are checked as well, the limits may have changed since they were built
+        filterTreeManager.checkLimits();
+        List<String> values = new ArrayList<String>();
+        String filterShape = filterTreeManager.getFilterShape(values);
+        CachedTree cachedTree = get(schema, filterShape);
+        if (cachedTree != null) {
+            if (cachedTree.values.equals(values)) {
+                return optimized ? cachedTree.optimizedRoot : cachedTree.root;
+            }
+            Node root = bind(cachedTree.root, values);
+            return optimized ? optimize(root) : root;
+        }
+        Node root = filterTreeManager.buildTree();
+        makeImmutable(root);
+        Node optimizedRoot = optimize(root);
+        //trees which did not use all the tokens of the filter do not hold all of its values.
+        if (filterTreeManager.isParsedCompletely()) {
+            put(schema, filterShape, new CachedTree(root, optimizedRoot, values));
+        }
+        return optimized ? optimizedRoot : root;
+    }
+
+    private static Node optimize(Node root) throws BadRequestException {
+        Node optimizedRoot = FilterOptimizer.optimize(root);
+        makeImmutable(optimizedRoot);
+        return optimizedRoot;
+    }
+
+    /*
+     * Copies the cached tree with the given values in place of the values of its expressions. The expressions
+     * appear in the tree in the same order as in the filter.
+     */
+    private static Node bind(Node root, List<String> values) throws BadRequestException {
+        List<Node> nodes = preOrder(root);
+        Map<Node, Node> boundNodes = new IdentityHashMap<Node, Node>();
+        int valueIndex = 0;
+        for (Node node : nodes) {
+            if (node instanceof ExpressionNode) {
+                valueIndex++;
+            }
+        }
+        //parents are bound after their children, so the nodes are bound in the reverse of the pre-order
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            Node node = nodes.get(i);
+            Node boundNode;
+            if (node instanceof ExpressionNode) {
+                ExpressionNode expressionNode = (ExpressionNode) node;
+                ExpressionNode boundExpressionNode = new ExpressionNode();
+                boundExpressionNode.setAttributeValue(expressionNode.getAttributeValue());
+                boundExpressionNode.setOperation(expressionNode.getOperation());
+                String value = FilterTreeManager.decodeValue(values.get(--valueIndex));
+                if (value != null) {
+                    boundExpressionNode.setValue(value);
+                }
+                boundNode = boundExpressionNode;
+            } else if (node instanceof ValuePathNode) {
+                ValuePathNode valuePathNode = (ValuePathNode) node;
+                boundNode = new ValuePathNode(valuePathNode.getAttributeValue(),
+                        boundNodes.get(valuePathNode.getValueFilter()));
+            } else {
+                boundNode = new OperationNode(((OperationNode) node).getOperation());
+                boundNode.setLeftNode(boundNodes.get(node.getLeftNode()));
+                boundNode.setRightNode(boundNodes.get(node.getRightNode()));
+            }
+            boundNode.makeImmutable();
+            boundNodes.put(node, boundNode);
+        }
+        return root == null ? null : boundNodes.get(root);
+    }
+
+    private static void makeImmutable(Node root) {
+        for (Node node : preOrder(root)) {
+            node.makeImmutable();
+        }
+    }
+
+    /*
+     * Returns the nodes of the tree in pre-order, the left sub tree before the right one, so that the expressions
+     * are in the same order as in the filter. The tree is walked with a stack rather than recursively, as a long
+     * chain of and/or operators is as deep as it is long.
+     */
+    private static List<Node> preOrder(Node root) {
+        List<Node> nodes = new ArrayList<Node>();
+        Deque<Node> stack = new ArrayDeque<Node>();
+        if (root != null) {
+            stack.push(root);
+        }
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            nodes.add(node);
+            if (node instanceof ValuePathNode) {
+                pushIfNotNull(stack, ((ValuePathNode) node).getValueFilter());
+            } else {
+                pushIfNotNull(stack, node.getRightNode());
+                pushIfNotNull(stack, node.getLeftNode());
+            }
+        }
+        return nodes;
+    }
+
+    private static void pushIfNotNull(Deque<Node> stack, Node node) {
+        if (node != null) {
+            stack.push(node);
+        }
+    }
+
+    /*
+     * A cached tree and its optimized form, with the values it was built with.
+     */
+    static final class CachedTree {
+
+        private final Node root;
+        //null if the filter matches every resource
+        private final Node optimizedRoot;
+        private final List<String> values;
+
+        private CachedTree(Node root, Node optimizedRoot, List<String> values) {
+            this.root = root;
+            this.optimizedRoot = optimizedRoot;
+            this.values = values;
+        }
+    }
+}
@@ -17,6 +17,7 @@
  */
 package org.wso2.charon.core.v2.utils.codeutils;
 
+import org.wso2.charon.core.v2.config.CharonConfiguration;
 import org.wso2.charon.core.v2.protocol.ResponseCodeConstants;
 import org.wso2.charon.core.v2.schema.SCIMResourceTypeSchema;
 import org.wso2.charon.core.v2.utils.AttributeUtil;
@@ -24,11 +25,8 @@ import org.wso2.charon.core.v2.exceptions.BadRequestException;
 import org.wso2.charon.core.v2.schema.SCIMConstants;
 
 import java.io.IOException;
-import java.io.StreamTokenizer;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
 
 /**
  * This class is basically for creating a binary tree which preserves the precedence order with simple
@@ -38,17 +36,44 @@ import java.util.regex.Pattern;
  * All terminals are filter expressions hence denoted by ExpressionNodes and all non terminal nodes are operators hence
  * denoted by OperatorNodes.
  *
+ * The filter is tokenized in a single scan over its characters. Quoted values are kept together, so they
+ * may have spaces, brackets and operator keywords in them, and are given to the ExpressionNode without the
+ * quotes.
+ *
+ * A value path filter (eg: emails[type eq "work" and value co "@example.com"]) is built into a ValuePathNode,
+ * whose value filter is a tree of its own. The attributes in the brackets are sub attributes of the
+ * attribute before the brackets. Value paths can not be nested.
+ *
+ * All the parsing state is held by the instance, so filters can be parsed concurrently, each with its own
+ * FilterTreeManager. An instance itself is not meant to be shared between threads.
+ *
  * More details on the concept can be found here :
  * https://unnikked.ga/how-to-build-a-boolean-expression-evaluator-518e9e068a65#.8fmexpvy7
  */
 public class FilterTreeManager {
 
-    private StreamTokenizer input;
-    public static List<String> tokenList=null;
+    //filter operators in lower case, in the order they are looked for
+    private static final String[] OPERATIONS = {
+            SCIMConstants.OperationalConstants.EQ.trim(), SCIMConstants.OperationalConstants.NE.trim(),
+            SCIMConstants.OperationalConstants.CO.trim(), SCIMConstants.OperationalConstants.SW.trim(),
+            SCIMConstants.OperationalConstants.EW.trim(), SCIMConstants.OperationalConstants.PR.trim(),
+            SCIMConstants.OperationalConstants.GT.trim(), SCIMConstants.OperationalConstants.GE.trim(),
+            SCIMConstants.OperationalConstants.LT.trim(), SCIMConstants.OperationalConstants.LE.trim()};
+
+    //bounds of the filters which are parsed even if no limits are configured, the parser and the evaluation of
+    //the tree recurse into every nesting level and logical operator
+    static final int MAX_NESTING_DEPTH = 100;
+    static final int MAX_TERM_COUNT = 1000;
+
+    //tokens of this filter, and the position of the next token to be read by the parser
+    private final List<String> tokenList = new ArrayList<String>();
+    private int tokenIndex;
     private String symbol;
     private Node root;
     private String filterString;
     private SCIMResourceTypeSchema schema;
+    //URI of the attribute of the value path being parsed, null outside of the brackets
+    private String valuePathAttribute;
 
     public void setFilterString(String filterString){
         this.filterString=filterString;
@@ -57,44 +82,102 @@ public class FilterTreeManager {
     public FilterTreeManager(String filterString, SCIMResourceTypeSchema schema) throws IOException {
         this.schema = schema;
         setFilterString(filterString);
-        input = new StreamTokenizer(new StringReader(filterString));
-        //Adding other string possible values
-        //TODO:is ths all?
-        input.wordChars('@','@');
-        input.wordChars(':',':');
-        tokenList = new ArrayList<String>();
-        String concatenatedString="";
-
-        while(input.nextToken() != StreamTokenizer.TT_EOF){
-            //ttype 40 is for the '('
-            if(input.ttype == 40){
-                tokenList.add("(");
-            }
-            //ttype 40 is for the ')'
-            else if(input.ttype == 41){
-                concatenatedString=concatenatedString.trim();
-                tokenList.add(concatenatedString);
-                concatenatedString="";
-                tokenList.add(")");
-            }else if(input.ttype == StreamTokenizer.TT_WORD){
-                if(!(input.sval.equalsIgnoreCase(SCIMConstants.OperationalConstants.AND)
-                        ||input.sval.equalsIgnoreCase(SCIMConstants.OperationalConstants.OR) ||
-                        input.sval.equalsIgnoreCase(SCIMConstants.OperationalConstants.NOT)))
-                    //concatenate the string by adding spaces in between
-                    concatenatedString+=" "+input.sval;
-                else{
-                    concatenatedString=concatenatedString.trim();
-                    if(!concatenatedString.equals("")){
-                        tokenList.add(concatenatedString);
-                        concatenatedString="";
-                    }
-                    tokenList.add(input.sval);
+        //words and quoted strings in between the brackets and the logical operators make up a filter
+        //expression, they are joined with single spaces as they are scanned.
+        StringBuilder expression = new StringBuilder();
+        int length = filterString.length();
+        int index = 0;
+        while (index < length) {
+            char c = filterString.charAt(index);
+            if (c <= ' ') {
+                index++;
+            } else if (c == '(' || c == ')') {
+                addExpression(expression, tokenList);
+                tokenList.add(c == '(' ? SCIMConstants.OperationalConstants.LEFT :
+                        SCIMConstants.OperationalConstants.RIGHT);
+                index++;
+            } else if (c == '[') {
+                //the attribute before the bracket is kept with it, eg: "emails["
+                expression.append(c);
+                addExpression(expression, tokenList);
+                index++;
+            } else if (c == ']') {
+                addExpression(expression, tokenList);
+                tokenList.add(SCIMConstants.OperationalConstants.RIGHT_BRACKET);
+                index++;
+            } else if (c == '"') {
+                //a quoted string is taken as it is, it may have spaces, brackets and operator keywords in it
+                int end = endOfQuotedString(filterString, index);
+                appendToExpression(expression, filterString, index, end);
+                index = end;
+            } else {
+                int end = index + 1;
+                while (end < length && !isDelimiter(filterString.charAt(end))) {
+                    end++;
+                }
+                String keyword = getLogicalOperator(filterString, index, end);
+                if (keyword != null) {
+                    addExpression(expression, tokenList);
+                    tokenList.add(keyword);
+                } else {
+                    appendToExpression(expression, filterString, index, end);
                 }
+                index = end;
             }
         }
         //Add to the list, if the filter is a simple filter
-        if(!(concatenatedString.equals(""))){
-            tokenList.add(concatenatedString);
+        addExpression(expression, tokenList);
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c <= ' ' || c == '(' || c == ')' || c == '[' || c == ']' || c == '"';
+    }
+
+    /*
+     * Returns the index after the closing quote of the string starting at the given index, or the length of
+     * the filter if the string is not closed.
+     */
+    private static int endOfQuotedString(String filterString, int start) {
+        int index = start + 1;
+        while (index < filterString.length()) {
+            char c = filterString.charAt(index++);
+            if (c == '\\') {
+                index++;
+            } else if (c == '"') {
+                return index;
+            }
+        }
+        return filterString.length();
+    }
+
+    /*
+     * Returns the logical operator (and, or, not) in lower case if the given word is one, ignoring the case.
+     */
+    private static String getLogicalOperator(String filterString, int start, int end) {
+        int length = end - start;
+        if (length == 3 && filterString.regionMatches(true, start, SCIMConstants.OperationalConstants.AND, 0, 3)) {
+            return SCIMConstants.OperationalConstants.AND;
+        }
+        if (length == 2 && filterString.regionMatches(true, start, SCIMConstants.OperationalConstants.OR, 0, 2)) {
+            return SCIMConstants.OperationalConstants.OR;
+        }
+        if (length == 3 && filterString.regionMatches(true, start, SCIMConstants.OperationalConstants.NOT, 0, 3)) {
+            return SCIMConstants.OperationalConstants.NOT;
+        }
+        return null;
+    }
+
+    private static void appendToExpression(StringBuilder expression, String filterString, int start, int end) {
+        if (expression.length() != 0) {
+            expression.append(' ');
+        }
+        expression.append(filterString, start, end);
+    }
+
+    private static void addExpression(StringBuilder expression, List<String> tokenList) {
+        if (expression.length() != 0) {
+            tokenList.add(expression.toString());
+            expression.setLength(0);
         }
     }
 
@@ -104,10 +187,69 @@ public class FilterTreeManager {
      * @throws BadRequestException
      */
     public Node buildTree() throws BadRequestException {
+        checkLimits();
+        //the tree can be built again from the same tokens
+        tokenIndex = 0;
+        root = null;
+        valuePathAttribute = null;
         expression();
         return root;
     }
 
+    /*
+     * Checks the number of expressions and the nesting of the filter against the filter limits of the charon
+     * configuration, and the bounds of the parser, from the tokens alone, so that a filter which would be too
+     * deep for the parser is rejected before the tree is built. Brackets, parentheses and each not of a chain
+     * of nots (eg: not (not (x pr))) are nesting levels.
+     */
+    void checkLimits() throws BadRequestException {
+        CharonConfiguration configuration = CharonConfiguration.getInstance();
+        int maxTermCount = getLimit(configuration.getMaxFilterTerms(), MAX_TERM_COUNT);
+        int maxNestingDepth = getLimit(configuration.getMaxFilterDepth(), MAX_NESTING_DEPTH);
+        int termCount = 0;
+        //open brackets and parentheses, and the nots of each of them which are not yet followed by their operand
+        int level = 0;
+        int[] pendingNots = new int[maxNestingDepth + 1];
+        int depth = 0;
+        for (String token : tokenList) {
+            if (token.equals(SCIMConstants.OperationalConstants.NOT)) {
+                pendingNots[level]++;
+                depth++;
+            } else if (token.equals(SCIMConstants.OperationalConstants.LEFT) ||
+                    token.endsWith(SCIMConstants.OperationalConstants.LEFT_BRACKET)) {
+                level++;
+                depth++;
+            } else if (token.equals(SCIMConstants.OperationalConstants.RIGHT) ||
+                    token.equals(SCIMConstants.OperationalConstants.RIGHT_BRACKET)) {
+                if (level > 0) {
+                    depth -= pendingNots[level] + 1;
+                    pendingNots[level--] = 0;
+                    //the group is the operand of the nots in front of it
+                    depth -= pendingNots[level];
+                    pendingNots[level] = 0;
+                }
+            } else if (!token.equals(SCIMConstants.OperationalConstants.AND) &&
+                    !token.equals(SCIMConstants.OperationalConstants.OR)) {
+                termCount++;
+                depth -= pendingNots[level];
+                pendingNots[level] = 0;
+            }
+            //the depth is never less than the level, so the nots of every open level fit in the array
+            if (depth >= maxNestingDepth) {
+                String error = "Filter is nested deeper than the maximum of " + maxNestingDepth;
+                throw new BadRequestException(error, ResponseCodeConstants.INVALID_FILTER);
+            }
+        }
+        if (termCount > maxTermCount) {
+            String error = "Filter has more expressions than the maximum of " + maxTermCount;
+            throw new BadRequestException(error, ResponseCodeConstants.TOO_MANY);
+        }
+    }
+
+    private static int getLimit(int configuredLimit, int bound) {
+        return configuredLimit > 0 && configuredLimit < bound ? configuredLimit : bound;
+    }
+
     /**
      * We build the parser using the recursive descent parser technique.
      * @throws BadRequestException
@@ -152,6 +294,8 @@ public class FilterTreeManager {
         } else if (symbol.equals(String.valueOf(SCIMConstants.OperationalConstants.LEFT))) {
             expression();
             symbol = nextSymbol(); // we don't care about ')'
+        } else if (symbol.endsWith(SCIMConstants.OperationalConstants.LEFT_BRACKET)) {
+            valuePath();
         } else {
             if(!(symbol.equals(String.valueOf(SCIMConstants.OperationalConstants.RIGHT)))){
                 ExpressionNode expressionNode = new ExpressionNode();
@@ -165,96 +309,139 @@ public class FilterTreeManager {
         }
     }
 
+    /*
+     * Builds a ValuePathNode from the value filter in between the brackets, the current symbol being the
+     * attribute with the opening bracket.
+     */
+    private void valuePath() throws BadRequestException {
+        String attributeName = symbol.substring(0, symbol.length() - 1);
+        if (valuePathAttribute != null || attributeName.length() == 0 || attributeName.indexOf(' ') >= 0) {
+            String message = "Given value path filter is not valid.";
+            throw new BadRequestException(message, ResponseCodeConstants.INVALID_FILTER);
+        }
+        valuePathAttribute = AttributeUtil.getAttributeURI(attributeName, schema);
+        root = null;
+        expression();
+        if (root == null || !symbol.equals(SCIMConstants.OperationalConstants.RIGHT_BRACKET)) {
+            String message = "Given value path filter is not valid.";
+            throw new BadRequestException(message, ResponseCodeConstants.INVALID_FILTER);
+        }
+        root = new ValuePathNode(valuePathAttribute, root);
+        valuePathAttribute = null;
+        symbol = nextSymbol();
+    }
+
     /**
      * Validate the simple filter and build a ExpressionNode
+     * The filter is of the form "attribute operator value", or "attribute pr", with single spaces in between
+     * as the tokens are built. Operators are matched ignoring the case.
      * @param filterString
      * @param expressionNode
      * @throws BadRequestException
      */
     private void validateAndBuildFilterExpression(String filterString, ExpressionNode expressionNode)
             throws BadRequestException {
-        //verify filter string. validation should be case insensitive
-        if (!( Pattern.compile(Pattern.quote(SCIMConstants.OperationalConstants.EQ),
-                Pattern.CASE_INSENSITIVE).matcher(filterString).find() ||
-                Pattern.compile(Pattern.quote(SCIMConstants.OperationalConstants.NE),
-                        Pattern.CASE_INSENSITIVE).matcher(filterString).find()||
-                Pattern.compile(Pattern.quote(SCIMConstants.OperationalConstants.CO),
-                        Pattern.CASE_INSENSITIVE).matcher(filterString).find()||
-                Pattern.compile(Pattern.quote(SCIMConstants.OperationalConstants.SW),
-                        Pattern.CASE_INSENSITIVE).matcher(filterString).find()||
-                Pattern.compile(Pattern.quote(SCIMConstants.OperationalConstants.EW),
-                        Pattern.CASE_INSENSITIVE).matcher(filterString).find()||
-                Pattern.compile(Pattern.quote(SCIMConstants.OperationalConstants.PR),
-                        Pattern.CASE_INSENSITIVE).matcher(filterString).find()||
-                Pattern.compile(Pattern.quote(SCIMConstants.OperationalConstants.GT),
-                        Pattern.CASE_INSENSITIVE).matcher(filterString).find()||
-                Pattern.compile(Pattern.quote(SCIMConstants.OperationalConstants.GE),
-                        Pattern.CASE_INSENSITIVE).matcher(filterString).find()||
-                Pattern.compile(Pattern.quote(SCIMConstants.OperationalConstants.LT),
-                        Pattern.CASE_INSENSITIVE).matcher(filterString).find()||
-                Pattern.compile(Pattern.quote(SCIMConstants.OperationalConstants.LE),
-                        Pattern.CASE_INSENSITIVE).matcher(filterString).find())) {
+        int attributeEnd = filterString.indexOf(' ');
+        if (attributeEnd < 0) {
             String message = "Given filter operator is not supported.";
             throw new BadRequestException(message, ResponseCodeConstants.INVALID_FILTER);
         }
-
-        String trimmedFilter = filterString.trim();
-        String[] filterParts = null;
-
-        if (Pattern.compile(Pattern.quote(SCIMConstants.OperationalConstants.EQ),
-                Pattern.CASE_INSENSITIVE).matcher(filterString).find()) {
-            filterParts = trimmedFilter.split(" eq | EQ | eQ | Eq ");
-            setExpressionNodeValues(filterParts[0], SCIMConstants.OperationalConstants.EQ, filterParts[1], expressionNode);
-        }
-        else if(Pattern.compile(Pattern.quote(SCIMConstants.OperationalConstants.NE),
-                Pattern.CASE_INSENSITIVE).matcher(filterString).find()){
-            filterParts = trimmedFilter.split(" ne | NE | nE | Ne ");
-            setExpressionNodeValues(filterParts[0], SCIMConstants.OperationalConstants.NE, filterParts[1], expressionNode);
-        }
-        else if(Pattern.compile(Pattern.quote(SCIMConstants.OperationalConstants.CO),
-                Pattern.CASE_INSENSITIVE).matcher(filterString).find()){
-            filterParts = trimmedFilter.split(" co | CO | cO | Co ");
-            setExpressionNodeValues(filterParts[0], SCIMConstants.OperationalConstants.CO, filterParts[1], expressionNode);
-        }
-        else if(Pattern.compile(Pattern.quote(SCIMConstants.OperationalConstants.SW),
-                Pattern.CASE_INSENSITIVE).matcher(filterString).find()){
-            filterParts = trimmedFilter.split(" sw | SW | sW | Sw ");
-            setExpressionNodeValues(filterParts[0], SCIMConstants.OperationalConstants.SW, filterParts[1], expressionNode);
-        }
-        else if(Pattern.compile(Pattern.quote(SCIMConstants.OperationalConstants.EW),
-                Pattern.CASE_INSENSITIVE).matcher(filterString).find()){
-            filterParts = trimmedFilter.split(" ew | EW | eW | Ew ");
-            setExpressionNodeValues(filterParts[0], SCIMConstants.OperationalConstants.EW, filterParts[1], expressionNode);
+        int operatorEnd = filterString.indexOf(' ', attributeEnd + 1);
+        String operation = getOperation(filterString, attributeEnd + 1,
+                operatorEnd < 0 ? filterString.length() : operatorEnd);
+        if (operation == null ||
+                (operatorEnd < 0) != operation.equals(SCIMConstants.OperationalConstants.PR.trim())) {
+            //with filter PR, there should not be a value after.
+            String message = "Given filter operator is not supported.";
+            throw new BadRequestException(message, ResponseCodeConstants.INVALID_FILTER);
         }
-        else if(Pattern.compile(Pattern.quote(SCIMConstants.OperationalConstants.PR),
-                Pattern.CASE_INSENSITIVE).matcher(filterString).find()){
-            //with filter PR, there should not be whitespace after.
-            filterParts = trimmedFilter.split(" pr| PR| pR| Pr");
-            setExpressionNodeValues(filterParts[0], SCIMConstants.OperationalConstants.PR, null, expressionNode);
+        String value = null;
+        if (operatorEnd >= 0) {
+            value = decodeValue(filterString.substring(operatorEnd + 1));
         }
-        else if(Pattern.compile(Pattern.quote(SCIMConstants.OperationalConstants.GT),
-                Pattern.CASE_INSENSITIVE).matcher(filterString).find()){
-            filterParts = trimmedFilter.split(" gt | GT | gT | Gt ");
-            setExpressionNodeValues(filterParts[0], SCIMConstants.OperationalConstants.GT, filterParts[1], expressionNode);
+        setExpressionNodeValues(filterString.substring(0, attributeEnd), operation, value, expressionNode);
+    }
 
-        }else if(Pattern.compile(Pattern.quote(SCIMConstants.OperationalConstants.GE),
-                Pattern.CASE_INSENSITIVE).matcher(filterString).find()){
-            filterParts = trimmedFilter.split(" ge | GE | gE | Ge ");
-            setExpressionNodeValues(filterParts[0], SCIMConstants.OperationalConstants.GE, filterParts[1], expressionNode);
-        }
-        else if(Pattern.compile(Pattern.quote(SCIMConstants.OperationalConstants.LT),
-                Pattern.CASE_INSENSITIVE).matcher(filterString).find()){
-            filterParts = trimmedFilter.split(" lt | LT | lT | Lt ");
-            setExpressionNodeValues(filterParts[0], SCIMConstants.OperationalConstants.LT, filterParts[1], expressionNode);
+    /*
+     * Returns the filter operator (eq, ne, co, sw, ew, pr, gt, ge, lt, le) in lower case if the given word is
+     * one, ignoring the case.
+     */
+    private static String getOperation(String filterString, int start, int end) {
+        if (end - start == 2) {
+            for (String operation : OPERATIONS) {
+                if (filterString.regionMatches(true, start, operation, 0, 2)) {
+                    return operation;
+                }
+            }
         }
-        else if(Pattern.compile(Pattern.quote(SCIMConstants.OperationalConstants.LE),
-                Pattern.CASE_INSENSITIVE).matcher(filterString).find()){
-            filterParts = trimmedFilter.split(" le | LE | lE | Le ");
-            setExpressionNodeValues(filterParts[0], SCIMConstants.OperationalConstants.LE, filterParts[1], expressionNode);
+        return null;
+    }
+
+    /*
+     * Returns the value of a filter expression as it is given to the ExpressionNode, quoted values are unquoted
+     * and values are trimmed. Both the parser and the FilterTreeCache set the values of expressions with it.
+     */
+    static String decodeValue(String value) throws BadRequestException {
+        if (value != null && value.length() != 0 && value.charAt(0) == '"') {
+            return unquote(value).trim();
         }
-        else{
-            throw new BadRequestException(ResponseCodeConstants.INVALID_FILTER);
+        return value == null ? null : value.trim();
+    }
+
+    /*
+     * Returns the content of a quoted string value, with the escaped characters decoded as in a json string.
+     */
+    private static String unquote(String value) throws BadRequestException {
+        StringBuilder unquoted = new StringBuilder(value.length());
+        int index = 1;
+        while (index < value.length()) {
+            char c = value.charAt(index++);
+            if (c == '"') {
+                if (index == value.length()) {
+                    return unquoted.toString();
+                }
+                break;
+            }
+            if (c == '\\' && index < value.length()) {
+                c = value.charAt(index++);
+                switch (c) {
+                    case 'b':
+                        c = '\b';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'f':
+                        c = '\f';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 'u':
+                        if (index + 4 > value.length()) {
+                            throw new BadRequestException("Given filter value is not a valid string.",
+                                    ResponseCodeConstants.INVALID_FILTER);
+                        }
+                        try {
+                            c = (char) Integer.parseInt(value.substring(index, index + 4), 16);
+                        } catch (NumberFormatException e) {
+                            throw new BadRequestException("Given filter value is not a valid string.",
+                                    ResponseCodeConstants.INVALID_FILTER);
+                        }
+                        index += 4;
+                        break;
+                    default:
+                        //'"', '\\' and '/' stand for themselves
+                        break;
+                }
+            }
+            unquoted.append(c);
         }
+        throw new BadRequestException("Given filter value is not a valid string.",
+                ResponseCodeConstants.INVALID_FILTER);
     }
 
     /**
@@ -266,26 +453,65 @@ public class FilterTreeManager {
      */
     private void setExpressionNodeValues(String attributeValue, String operation,
                                          String value, ExpressionNode expressionNode) throws BadRequestException {
-        expressionNode.setAttributeValue(AttributeUtil.getAttributeURI(attributeValue.trim(),schema));
+        String attributeName = attributeValue.trim();
+        if (valuePathAttribute != null) {
+            //attributes of a value filter are sub attributes of the value path attribute
+            attributeName = valuePathAttribute + "." + attributeName;
+        }
+        expressionNode.setAttributeValue(AttributeUtil.getAttributeURI(attributeName,schema));
         expressionNode.setOperation(operation.trim());
         if(value !=null){
-            expressionNode.setValue( value.trim());
+            //already trimmed by decodeValue
+            expressionNode.setValue(value);
         }
     }
 
+    /*
+     * Returns the tokens of the filter with the values of the filter expressions left out, and adds the values
+     * (null for pr) to the given list in the order they appear. Filters with the same shape differ only in
+     * their values and build trees of the same structure.
+     */
+    String getFilterShape(List<String> values) {
+        StringBuilder shape = new StringBuilder();
+        for (String token : tokenList) {
+            if (shape.length() != 0) {
+                shape.append(' ');
+            }
+            int attributeEnd = token.indexOf(' ');
+            int operatorEnd = attributeEnd < 0 ? -1 : token.indexOf(' ', attributeEnd + 1);
+            if (operatorEnd < 0) {
+                //structural tokens, and expressions without a value
+                shape.append(token);
+                if (attributeEnd >= 0) {
+                    values.add(null);
+                }
+            } else {
+                shape.append(token, 0, operatorEnd).append(" ?");
+                values.add(token.substring(operatorEnd + 1));
+            }
+        }
+        return shape.toString();
+    }
+
+    /*
+     * Whether the last built tree was built from all the tokens of the filter. Otherwise there were tokens
+     * after the end of the filter which were not looked at.
+     */
+    boolean isParsedCompletely() {
+        return tokenIndex == tokenList.size();
+    }
+
     /**
-     * returns the first item in the list and rearrange the list
+     * returns the next token in the list and moves past it
      * @return
      */
     public String nextSymbol(){
-        if(tokenList.size()==0){
+        if(tokenIndex == tokenList.size()){
             //no tokens are present in the list anymore/at all
             return String.valueOf(-1);
         }
         else{
-            String value = tokenList.get(0);
-            tokenList.remove(0);
-            return value;
+            return tokenList.get(tokenIndex++);
         }
     }
 }
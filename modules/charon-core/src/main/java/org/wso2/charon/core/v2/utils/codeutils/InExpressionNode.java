@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.utils.codeutils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * A filter expression which matches if the attribute is equal to any of the given values. It stands for an
+ * or of eq expressions on the same attribute (eg: userName eq "a" or userName eq "b"), which FilterOptimizer
+ * rewrites into a single InExpressionNode so that it can be looked up in a set or with an SQL IN list.
+ */
+public class InExpressionNode extends Node {
+
+    private final String attributeValue;
+    private final List<String> values;
+
+    /**
+     * @param attributeValue - attribute URI, as in ExpressionNode
+     * @param values         - values to be compared with, repeated values are kept once
+     */
+    public InExpressionNode(String attributeValue, Collection<String> values) {
+        this.attributeValue = attributeValue;
+        this.values = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(values)));
+    }
+
+    public String getAttributeValue() {
+        return attributeValue;
+    }
+
+    /**
+     * Distinct values, in the order they were given.
+     *
+     * @return unmodifiable list of values
+     */
+    public List<String> getValues() {
+        return values;
+    }
+}
@@ -24,12 +24,15 @@ public abstract class Node {
 
     private Node leftNode;
     private Node rightNode;
+    //set on nodes of the trees shared through FilterTreeCache
+    private boolean immutable;
 
     public Node getRightNode() {
         return rightNode;
     }
 
     public void setRightNode(Node rightNode) {
+        checkMutable();
         this.rightNode = rightNode;
     }
 
@@ -38,6 +41,26 @@ public abstract class Node {
     }
 
     public void setLeftNode(Node leftNode) {
+        checkMutable();
         this.leftNode = leftNode;
     }
+
+    /**
+     * Whether the node is a part of a shared filter tree, which can not be modified.
+     *
+     * @return boolean
+     */
+    public boolean isImmutable() {
+        return immutable;
+    }
+
+    void makeImmutable() {
+        immutable = true;
+    }
+
+    protected void checkMutable() {
+        if (immutable) {
+            throw new UnsupportedOperationException("A shared filter tree can not be modified.");
+        }
+    }
 }
@@ -33,6 +33,7 @@ public class OperationNode extends Node {
     }
 
     public void setOperation(String operation) {
+        checkMutable();
         this.operation = operation;
     }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.utils.codeutils;
+
+import org.wso2.charon.core.v2.exceptions.BadRequestException;
+import org.wso2.charon.core.v2.protocol.ResponseCodeConstants;
+
+import java.nio.charset.Charset;
+
+/**
+ * Position in a list of resources paged with cursors instead of startIndex, so that a user manager can seek
+ * to the next page (eg: with an index on the sort attribute and id) instead of skipping over the resources
+ * of all the previous pages.
+ *
+ * A cursor holds the sortBy attribute URI and sortOrder of the list, and the sort value and id of the last
+ * resource of the page. The next page starts with the first resource ordered after it, ordering by the sort
+ * value and then by the id. Sort values are the values as written in SCIM, eg: dateTimes in
+ * yyyy-MM-dd'T'HH:mm:ss'Z'. Clients are given the cursor as an opaque string, see encode().
+ */
+public final class PageCursor {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char VERSION = '1';
+    private static final char NULL_FIELD = '~';
+    private static final char ASCENDING = 'a';
+    private static final char DESCENDING = 'd';
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final String sortBy;
+    private final boolean descending;
+    private final String sortValue;
+    private final String id;
+
+    /**
+     * @param sortBy     - URI of the sortBy attribute, null if the list is ordered by id only
+     * @param descending - whether the list is in descending order of the sort values
+     * @param sortValue  - sort value of the last resource of the page, null if it does not have one
+     * @param id         - id of the last resource of the page
+     */
+    public PageCursor(String sortBy, boolean descending, String sortValue, String id) {
+        this.sortBy = sortBy;
+        this.descending = descending;
+        this.sortValue = sortValue;
+        this.id = id;
+    }
+
+    public String getSortBy() {
+        return sortBy;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public String getSortValue() {
+        return sortValue;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Whether the cursor was made for a list with the given sortBy attribute URI and order.
+     *
+     * @param sortByURI  - URI of the sortBy attribute, or null
+     * @param descending - whether the list is in descending order
+     * @return boolean
+     */
+    public boolean matches(String sortByURI, boolean descending) {
+        return (sortBy == null ? sortByURI == null : sortBy.equals(sortByURI)) && this.descending == descending;
+    }
+
+    /**
+     * Encodes the cursor into an opaque, URL safe string.
+     *
+     * @return String
+     */
+    public String encode() {
+        StringBuilder text = new StringBuilder().append(VERSION);
+        appendField(text, sortBy);
+        text.append(descending ? DESCENDING : ASCENDING);
+        appendField(text, sortValue);
+        appendField(text, id);
+        byte[] bytes = text.toString().getBytes(UTF_8);
+        char[] encoded = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            encoded[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            encoded[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(encoded);
+    }
+
+    /**
+     * Decodes a cursor given by encode().
+     *
+     * @param cursor - encoded cursor
+     * @return PageCursor
+     * @throws BadRequestException invalidCursor if the cursor is not valid
+     */
+    public static PageCursor decode(String cursor) throws BadRequestException {
+        if (cursor == null || cursor.length() == 0 || cursor.length() % 2 != 0) {
+            throw invalidCursor();
+        }
+        byte[] bytes = new byte[cursor.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(cursor.charAt(2 * i), 16);
+            int low = Character.digit(cursor.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw invalidCursor();
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        String text = new String(bytes, UTF_8);
+        if (text.charAt(0) != VERSION) {
+            throw invalidCursor();
+        }
+        int[] position = {1};
+        String sortBy = readField(text, position);
+        if (position[0] >= text.length() ||
+                (text.charAt(position[0]) != ASCENDING && text.charAt(position[0]) != DESCENDING)) {
+            throw invalidCursor();
+        }
+        boolean descending = text.charAt(position[0]++) == DESCENDING;
+        String sortValue = readField(text, position);
+        String id = readField(text, position);
+        if (position[0] != text.length()) {
+            throw invalidCursor();
+        }
+        return new PageCursor(sortBy, descending, sortValue, id);
+    }
+
+    /*
+     * Fields are written with their length in front, as length:value, or as ~ if null.
+     */
+    private static void appendField(StringBuilder text, String value) {
+        if (value == null) {
+            text.append(NULL_FIELD);
+        } else {
+            text.append(value.length()).append(':').append(value);
+        }
+    }
+
+    private static String readField(String text, int[] position) throws BadRequestException {
+        int index = position[0];
+        if (index < text.length() && text.charAt(index) == NULL_FIELD) {
+            position[0] = index + 1;
+            return null;
+        }
+        int separator = text.indexOf(':', index);
+        if (separator <= index) {
+            throw invalidCursor();
+        }
+        int length;
+        try {
+            length = Integer.parseInt(text.substring(index, separator));
+        } catch (NumberFormatException e) {
+            throw invalidCursor();
+        }
+        //compared before adding, as separator + 1 + length overflows for lengths close to Integer.MAX_VALUE
+        if (length < 0 || length > text.length() - separator - 1) {
+            throw invalidCursor();
+        }
+        int end = separator + 1 + length;
+        position[0] = end;
+        return text.substring(separator + 1, end);
+    }
+
+    private static BadRequestException invalidCursor() {
+        String error = "Given cursor is not valid.";
+        return new BadRequestException(error, ResponseCodeConstants.INVALID_CURSOR);
+    }
+}
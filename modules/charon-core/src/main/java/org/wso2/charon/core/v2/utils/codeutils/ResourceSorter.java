@@ -0,0 +1,460 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.utils.codeutils;
+
+import org.wso2.charon.core.v2.attributes.Attribute;
+import org.wso2.charon.core.v2.attributes.ComplexAttribute;
+import org.wso2.charon.core.v2.attributes.MultiValuedAttribute;
+import org.wso2.charon.core.v2.attributes.SimpleAttribute;
+import org.wso2.charon.core.v2.exceptions.BadRequestException;
+import org.wso2.charon.core.v2.exceptions.CharonException;
+import org.wso2.charon.core.v2.objects.AbstractSCIMObject;
+import org.wso2.charon.core.v2.protocol.ResponseCodeConstants;
+import org.wso2.charon.core.v2.schema.AttributeSchema;
+import org.wso2.charon.core.v2.schema.SCIMConstants;
+import org.wso2.charon.core.v2.schema.SCIMDefinitions;
+import org.wso2.charon.core.v2.schema.SCIMResourceTypeSchema;
+import org.wso2.charon.core.v2.utils.AttributeUtil;
+import org.wso2.charon.core.v2.utils.DateTimeUtil;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts and pages resources held in memory, for user managers and caches which do not have a store to do it.
+ *
+ * The sortBy attribute is resolved once against the resource schema, and the sort key of each resource is
+ * taken once as it is read. Only the resources up to the end of the requested page are kept, in a bounded
+ * heap, so a page is picked out of n resources in O(n log(startIndex + count)) without sorting all of them.
+ *
+ * Values are compared according to the data type of the attribute, strings ignoring the case unless the
+ * attribute is caseExact. A multi valued attribute is sorted by its primary value, or its first value if none
+ * is primary, and a complex attribute by its "value" sub attribute. As in the SCIM specification, resources
+ * without a value are last in ascending order and first in descending order. Resources with equal keys keep
+ * the order they were read in, so the pages of an unchanged collection do not overlap.
+ *
+ * Pages can also be taken after a PageCursor, in which case resources with equal sort values are ordered
+ * by their ids, and the resources up to the cursor are skipped without being kept.
+ */
+public final class ResourceSorter {
+
+    //sorter which keeps the order the resources are read in
+    private static final ResourceSorter UNSORTED = new ResourceSorter(null, null, null, false, false);
+    private static final ResourceSorter UNSORTED_DESCENDING = new ResourceSorter(null, null, null, false, true);
+
+    private final String sortByURI;
+    private final String[] names;
+    private final SCIMDefinitions.DataType type;
+    private final boolean caseExact;
+    private final boolean descending;
+
+    private ResourceSorter(String sortByURI, String[] names, SCIMDefinitions.DataType type, boolean caseExact,
+                           boolean descending) {
+        this.sortByURI = sortByURI;
+        this.names = names;
+        this.type = type;
+        this.caseExact = caseExact;
+        this.descending = descending;
+    }
+
+    /**
+     * Returns a sorter for the given sortBy and sortOrder.
+     *
+     * @param sortBy    - attribute name or URI to sort by, if null the resources are not sorted
+     * @param sortOrder - ascending or descending, ascending if null
+     * @param schema    - resource schema the sortBy attribute belongs to
+     * @return ResourceSorter
+     * @throws BadRequestException if the attribute is not in the schema or the sortOrder is not valid
+     */
+    public static ResourceSorter compile(String sortBy, String sortOrder, SCIMResourceTypeSchema schema)
+            throws BadRequestException {
+        boolean descending = SCIMConstants.OperationalConstants.DESCENDING.equalsIgnoreCase(sortOrder);
+        if (sortOrder != null && !descending &&
+                !SCIMConstants.OperationalConstants.ASCENDING.equalsIgnoreCase(sortOrder)) {
+            String error = " Invalid sortOrder value is specified";
+            throw new BadRequestException(error, ResponseCodeConstants.INVALID_VALUE);
+        }
+        if (sortBy == null) {
+            return descending ? UNSORTED_DESCENDING : UNSORTED;
+        }
+        String sortByURI = AttributeUtil.getAttributeURI(sortBy, schema);
+        List<AttributeSchema> attributePath = FilterEvaluator.getAttributePath(sortByURI, schema);
+        AttributeSchema attributeSchema = attributePath.get(attributePath.size() - 1);
+        if (SCIMDefinitions.DataType.COMPLEX.equals(attributeSchema.getType())) {
+            AttributeSchema valueSchema =
+                    attributeSchema.getSubAttributeSchema(SCIMConstants.CommonSchemaConstants.VALUE);
+            if (valueSchema == null) {
+                String error = "Sorting by the complex attribute " + attributeSchema.getName() + " is not supported.";
+                throw new BadRequestException(error, ResponseCodeConstants.INVALID_VALUE);
+            }
+            attributePath.add(valueSchema);
+            attributeSchema = valueSchema;
+        }
+        String[] names = new String[attributePath.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = attributePath.get(i).getName();
+        }
+        SCIMDefinitions.DataType type = attributeSchema.getType();
+        boolean caseExact = attributeSchema.getCaseExact() || SCIMDefinitions.DataType.BINARY.equals(type);
+        return new ResourceSorter(sortByURI, names, type, caseExact, descending);
+    }
+
+    /**
+     * Whether the resources are sorted, or kept in the order they are read in.
+     *
+     * @return boolean
+     */
+    public boolean isSorted() {
+        return names != null;
+    }
+
+    /**
+     * URI of the sortBy attribute, null if the resources are not sorted.
+     *
+     * @return String
+     */
+    public String getSortByURI() {
+        return sortByURI;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * Returns a page of the sorted resources.
+     *
+     * @param resources  - resources to be sorted
+     * @param startIndex - 1-based index of the first resource of the page
+     * @param count      - maximum number of resources in the page
+     * @return resources of the page, in order
+     */
+    public <T extends AbstractSCIMObject> List<T> getPage(Iterable<T> resources, int startIndex, int count) {
+        return getPage(resources, null, startIndex, count).getResources();
+    }
+
+    /**
+     * Returns a page of the sorted resources which match the given filter, along with the number of
+     * resources which match it.
+     *
+     * @param resources  - resources to be filtered and sorted
+     * @param predicate  - compiled filter, every resource matches if null
+     * @param startIndex - 1-based index of the first resource of the page
+     * @param count      - maximum number of resources in the page
+     * @return Page
+     */
+    public <T extends AbstractSCIMObject> Page<T> getPage(Iterable<T> resources, FilterPredicate predicate,
+                                                          int startIndex, int count) {
+        int offset = Math.max(startIndex, 1) - 1;
+        //number of resources to be kept, up to the end of the page
+        int limit = count <= 0 ? 0 : (int) Math.min((long) offset + count, Integer.MAX_VALUE);
+        int totalResults = 0;
+        if (names == null) {
+            List<T> page = new ArrayList<>();
+            for (T resource : resources) {
+                if (resource != null && (predicate == null || predicate.test(resource))) {
+                    if (totalResults >= offset && totalResults < limit) {
+                        page.add(resource);
+                    }
+                    totalResults++;
+                }
+            }
+            return new Page<>(page, totalResults);
+        }
+        Comparator<SortEntry<T>> comparator = new SortEntryComparator<>(descending, false);
+        //the head of the heap is the last of the kept resources, which the next one has to be ahead of
+        PriorityQueue<SortEntry<T>> heap =
+                new PriorityQueue<>(Math.max(1, Math.min(limit, 1024)), Collections.reverseOrder(comparator));
+        for (T resource : resources) {
+            if (resource == null || (predicate != null && !predicate.test(resource))) {
+                continue;
+            }
+            int sequence = totalResults++;
+            if (limit == 0) {
+                continue;
+            }
+            SortEntry<T> entry = new SortEntry<>(getSortKey(resource), null, sequence, resource);
+            if (heap.size() < limit) {
+                heap.add(entry);
+            } else if (comparator.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+        List<SortEntry<T>> entries = new ArrayList<>(heap);
+        Collections.sort(entries, comparator);
+        List<T> page = new ArrayList<>();
+        for (int i = offset; i < entries.size(); i++) {
+            page.add(entries.get(i).resource);
+        }
+        return new Page<>(page, totalResults);
+    }
+
+    /**
+     * Returns the page of the resources which match the given filter and are ordered after the cursor, along
+     * with the number of resources which match the filter. Resources are ordered by their sort values and
+     * then by their ids, or by their ids only if the resources are not sorted.
+     *
+     * @param resources - resources to be filtered and sorted
+     * @param predicate - compiled filter, every resource matches if null
+     * @param cursor    - cursor of the previous page, null for the first page
+     * @param count     - maximum number of resources in the page
+     * @return Page
+     * @throws BadRequestException invalidCursor if the cursor was made for another sortBy or sortOrder
+     */
+    public <T extends AbstractSCIMObject> Page<T> getPageAfter(Iterable<T> resources, FilterPredicate predicate,
+                                                               PageCursor cursor, int count)
+            throws BadRequestException {
+        SortEntry<T> cursorEntry = null;
+        if (cursor != null) {
+            if (!cursor.matches(sortByURI, descending)) {
+                String error = "Given cursor does not belong to a list with the same sortBy and sortOrder.";
+                throw new BadRequestException(error, ResponseCodeConstants.INVALID_CURSOR);
+            }
+            cursorEntry = new SortEntry<>(names == null ? null : toKey(cursor.getSortValue()), cursor.getId(), 0,
+                    null);
+        }
+        Comparator<SortEntry<T>> comparator = new SortEntryComparator<>(descending, true);
+        PriorityQueue<SortEntry<T>> heap = new PriorityQueue<>(Math.max(1, Math.min(count, 1024)),
+                Collections.reverseOrder(comparator));
+        int totalResults = 0;
+        for (T resource : resources) {
+            if (resource == null || (predicate != null && !predicate.test(resource))) {
+                continue;
+            }
+            totalResults++;
+            if (count <= 0) {
+                continue;
+            }
+            SortEntry<T> entry = new SortEntry<>(names == null ? null : getSortKey(resource), getId(resource), 0,
+                    resource);
+            if (cursorEntry != null && comparator.compare(entry, cursorEntry) <= 0) {
+                continue;
+            }
+            if (heap.size() < count) {
+                heap.add(entry);
+            } else if (comparator.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+        List<SortEntry<T>> entries = new ArrayList<>(heap);
+        Collections.sort(entries, comparator);
+        List<T> page = new ArrayList<>();
+        for (SortEntry<T> entry : entries) {
+            page.add(entry.resource);
+        }
+        return new Page<>(page, totalResults);
+    }
+
+    /**
+     * Returns the cursor of the page which ends with the given resource.
+     *
+     * @param lastResource - last resource of the page
+     * @return PageCursor
+     */
+    public PageCursor getCursor(AbstractSCIMObject lastResource) {
+        String sortValue = null;
+        if (names != null) {
+            Object value = getSortAttributeValue(lastResource);
+            if (value instanceof Date) {
+                sortValue = DateTimeUtil.format((Date) value);
+            } else if (value != null) {
+                sortValue = String.valueOf(value);
+            }
+        }
+        return new PageCursor(sortByURI, descending, sortValue, getId(lastResource));
+    }
+
+    private static String getId(AbstractSCIMObject resource) {
+        try {
+            return resource.getId();
+        } catch (CharonException e) {
+            return null;
+        }
+    }
+
+    /*
+     * Returns the comparable sort key of the resource, or null if it does not have a value.
+     */
+    private Comparable<?> getSortKey(AbstractSCIMObject resource) {
+        return toKey(getSortAttributeValue(resource));
+    }
+
+    /*
+     * Returns the value of the sortBy attribute of the resource, or null if it does not have a value.
+     */
+    private Object getSortAttributeValue(AbstractSCIMObject resource) {
+        Attribute attribute = resource.getAttributeList().get(names[0]);
+        for (int depth = 1; attribute != null && depth < names.length; depth++) {
+            if (attribute instanceof MultiValuedAttribute) {
+                attribute = getPrimaryValue((MultiValuedAttribute) attribute);
+            }
+            if (!(attribute instanceof ComplexAttribute)) {
+                return null;
+            }
+            attribute = ((ComplexAttribute) attribute).getSubAttributesList().get(names[depth]);
+        }
+        if (attribute instanceof SimpleAttribute) {
+            return ((SimpleAttribute) attribute).getValue();
+        }
+        if (attribute instanceof MultiValuedAttribute) {
+            List<Object> values = ((MultiValuedAttribute) attribute).getAttributePrimitiveValues();
+            return values == null || values.isEmpty() ? null : values.get(0);
+        }
+        return null;
+    }
+
+    /*
+     * Returns the primary value of a complex multi valued attribute, or the first value if none is primary.
+     */
+    private static Attribute getPrimaryValue(MultiValuedAttribute attribute) {
+        List<Attribute> values = attribute.getAttributeValues();
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        for (Attribute value : values) {
+            if (value instanceof ComplexAttribute) {
+                Attribute primary = ((ComplexAttribute) value).getSubAttributesList().get(
+                        SCIMConstants.CommonSchemaConstants.PRIMARY);
+                if (primary instanceof SimpleAttribute &&
+                        Boolean.parseBoolean(String.valueOf(((SimpleAttribute) primary).getValue()))) {
+                    return value;
+                }
+            }
+        }
+        return values.get(0);
+    }
+
+    /*
+     * Converts the value to a key of the type of the attribute, null if it can not be converted.
+     */
+    private Comparable<?> toKey(Object value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            if (SCIMDefinitions.DataType.INTEGER.equals(type)) {
+                return value instanceof Number ? ((Number) value).longValue() :
+                        Long.parseLong(String.valueOf(value).trim());
+            }
+            if (SCIMDefinitions.DataType.DECIMAL.equals(type)) {
+                return value instanceof Number ? ((Number) value).doubleValue() :
+                        Double.parseDouble(String.valueOf(value).trim());
+            }
+            if (SCIMDefinitions.DataType.DATE_TIME.equals(type)) {
+                return value instanceof Date ? ((Date) value).getTime() :
+                        DateTimeUtil.parse(String.valueOf(value)).getTime();
+            }
+            if (SCIMDefinitions.DataType.BOOLEAN.equals(type)) {
+                return value instanceof Boolean ? (Boolean) value : Boolean.parseBoolean(String.valueOf(value));
+            }
+        } catch (NumberFormatException | ParseException e) {
+            return null;
+        }
+        String stringValue = String.valueOf(value);
+        return caseExact ? stringValue : foldCase(stringValue);
+    }
+
+    /*
+     * Maps the characters the same way String.compareToIgnoreCase compares them.
+     */
+    private static String foldCase(String value) {
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * A page of resources, and the number of resources the page is taken from.
+     */
+    public static final class Page<T> {
+
+        private final List<T> resources;
+        private final int totalResults;
+
+        private Page(List<T> resources, int totalResults) {
+            this.resources = resources;
+            this.totalResults = totalResults;
+        }
+
+        public List<T> getResources() {
+            return resources;
+        }
+
+        public int getTotalResults() {
+            return totalResults;
+        }
+    }
+
+    private static final class SortEntry<T> {
+
+        private final Comparable<?> key;
+        private final String id;
+        private final int sequence;
+        private final T resource;
+
+        private SortEntry(Comparable<?> key, String id, int sequence, T resource) {
+            this.key = key;
+            this.id = id;
+            this.sequence = sequence;
+            this.resource = resource;
+        }
+    }
+
+    private static final class SortEntryComparator<T> implements Comparator<SortEntry<T>> {
+
+        private final boolean descending;
+        //whether equal sort values are ordered by id, instead of the order they are read in
+        private final boolean byId;
+
+        private SortEntryComparator(boolean descending, boolean byId) {
+            this.descending = descending;
+            this.byId = byId;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public int compare(SortEntry<T> first, SortEntry<T> second) {
+            int comparison;
+            if (first.key == null || second.key == null) {
+                //missing values are last in ascending order, and first in descending order
+                comparison = first.key == null ? (second.key == null ? 0 : 1) : -1;
+            } else {
+                comparison = ((Comparable<Object>) first.key).compareTo(second.key);
+            }
+            if (comparison != 0) {
+                return descending ? -comparison : comparison;
+            }
+            if (byId) {
+                if (first.id == null || second.id == null) {
+                    return first.id == null ? (second.id == null ? 0 : 1) : -1;
+                }
+                return first.id.compareTo(second.id);
+            }
+            return first.sequence < second.sequence ? -1 : (first.sequence == second.sequence ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.utils.codeutils;
+
+import org.wso2.charon.core.v2.exceptions.BadRequestException;
+import org.wso2.charon.core.v2.protocol.ResponseCodeConstants;
+import org.wso2.charon.core.v2.schema.AttributeSchema;
+import org.wso2.charon.core.v2.schema.SCIMConstants;
+import org.wso2.charon.core.v2.schema.SCIMDefinitions;
+import org.wso2.charon.core.v2.schema.SCIMResourceTypeSchema;
+import org.wso2.charon.core.v2.utils.AttributeUtil;
+import org.wso2.charon.core.v2.utils.DateTimeUtil;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Translates filter trees built by FilterTreeManager into SQL WHERE clauses with bind parameters, so that
+ * user managers backed by a relational database can run the filter in the database.
+ *
+ * Attributes are mapped to columns (or any SQL expression of a single value) by their attribute URIs.
+ * Filter values are never written into the SQL, they are returned as parameters converted to the data type
+ * of the attribute: Boolean, Long, Double, java.sql.Timestamp or String. The semantics follow
+ * FilterEvaluator: ne also matches rows where the column is null, and the comparisons under a not are
+ * guarded against null columns so that not (x eq y) matches the rows x eq y does not. Strings of attributes
+ * which are not caseExact are compared in lower case, unless the columns are declared to have a case
+ * insensitive collation. An InExpressionNode becomes an IN list. The co, sw and ew operators become LIKE
+ * patterns whose wildcards are escaped with '!', which is a plain character in the string literals of all the
+ * common databases.
+ *
+ * The value filter of a value path is translated with the columns of the sub attributes. If a column is
+ * given for the multi valued attribute itself, it is taken as a query selecting the values of the current
+ * row (eg: SELECT 1 FROM EMAILS E WHERE E.USER_ID = U.ID), and the value path becomes an EXISTS over it so
+ * that all the conditions apply to the same value. Otherwise the sub attribute columns are expected to be
+ * on the same row, eg: a table with a row per value.
+ */
+public class SQLFilterTranslator {
+
+    //not a backslash, which MySQL and MariaDB treat as an escape inside string literals, making ESCAPE '\' invalid
+    private static final char LIKE_ESCAPE = '!';
+
+    private final SCIMResourceTypeSchema schema;
+    private final Map<String, String> columns;
+    private final boolean caseInsensitiveCollation;
+
+    /**
+     * @param schema  - resource schema the filter attributes belong to
+     * @param columns - column of each supported attribute, keyed by attribute URI
+     */
+    public SQLFilterTranslator(SCIMResourceTypeSchema schema, Map<String, String> columns) {
+        this(schema, columns, false);
+    }
+
+    /**
+     * @param schema                   - resource schema the filter attributes belong to
+     * @param columns                  - column of each supported attribute, keyed by attribute URI
+     * @param caseInsensitiveCollation - whether the string columns already compare ignoring the case, in which
+     *                                 case they are not wrapped in LOWER and indexes on them can be used
+     */
+    public SQLFilterTranslator(SCIMResourceTypeSchema schema, Map<String, String> columns,
+                               boolean caseInsensitiveCollation) {
+        this.schema = schema;
+        this.columns = columns;
+        this.caseInsensitiveCollation = caseInsensitiveCollation;
+    }
+
+    /**
+     * Translates the given filter tree.
+     *
+     * @param rootNode - root of the filter tree, if null the clause matches every row
+     * @return SQLFilter
+     * @throws BadRequestException if the filter is not valid or has an attribute without a column
+     */
+    public SQLFilter translate(Node rootNode) throws BadRequestException {
+        if (rootNode == null) {
+            return new SQLFilter("1=1", Collections.emptyList());
+        }
+        StringBuilder whereClause = new StringBuilder();
+        List<Object> parameters = new ArrayList<>();
+        translate(rootNode, false, whereClause, parameters);
+        return new SQLFilter(whereClause.toString(), parameters);
+    }
+
+    private void translate(Node node, boolean negated, StringBuilder sql, List<Object> parameters)
+            throws BadRequestException {
+        if (node instanceof ExpressionNode) {
+            translateExpression((ExpressionNode) node, negated, sql, parameters);
+            return;
+        }
+        if (node instanceof InExpressionNode) {
+            translateInExpression((InExpressionNode) node, negated, sql, parameters);
+            return;
+        }
+        if (node instanceof ValuePathNode) {
+            translateValuePath((ValuePathNode) node, negated, sql, parameters);
+            return;
+        }
+        if (node instanceof OperationNode) {
+            String operation = ((OperationNode) node).getOperation();
+            if (SCIMConstants.OperationalConstants.AND.equalsIgnoreCase(operation) ||
+                    SCIMConstants.OperationalConstants.OR.equalsIgnoreCase(operation)) {
+                sql.append('(');
+                translate(getOperand(node.getLeftNode()), negated, sql, parameters);
+                sql.append(SCIMConstants.OperationalConstants.AND.equalsIgnoreCase(operation) ? " AND " : " OR ");
+                translate(getOperand(node.getRightNode()), negated, sql, parameters);
+                sql.append(')');
+                return;
+            }
+            if (SCIMConstants.OperationalConstants.NOT.equalsIgnoreCase(operation)) {
+                sql.append("NOT (");
+                translate(getOperand(node.getRightNode()), !negated, sql, parameters);
+                sql.append(')');
+                return;
+            }
+        }
+        String error = "Given filter operator is not supported.";
+        throw new BadRequestException(error, ResponseCodeConstants.INVALID_FILTER);
+    }
+
+    private static Node getOperand(Node node) throws BadRequestException {
+        if (node == null) {
+            String error = "Logical operator of the filter is missing an operand.";
+            throw new BadRequestException(error, ResponseCodeConstants.INVALID_FILTER);
+        }
+        return node;
+    }
+
+    private void translateExpression(ExpressionNode expressionNode, boolean negated, StringBuilder sql,
+                                     List<Object> parameters) throws BadRequestException {
+        int operation = FilterEvaluator.getOperation(expressionNode.getOperation());
+        List<AttributeSchema> attributePath =
+                FilterEvaluator.getAttributePath(expressionNode.getAttributeValue(), schema);
+        AttributeSchema attributeSchema = attributePath.get(attributePath.size() - 1);
+        String column = getColumn(attributeSchema);
+        if (operation == FilterEvaluator.PR) {
+            sql.append(column).append(" IS NOT NULL");
+            return;
+        }
+        String value = expressionNode.getValue();
+        if (value == null) {
+            String error = "Value of the filter expression is missing.";
+            throw new BadRequestException(error, ResponseCodeConstants.INVALID_FILTER);
+        }
+        SCIMDefinitions.DataType type = attributeSchema.getType();
+        boolean string = SCIMDefinitions.DataType.STRING.equals(type) ||
+                SCIMDefinitions.DataType.REFERENCE.equals(type) || SCIMDefinitions.DataType.BINARY.equals(type);
+        boolean substring = operation == FilterEvaluator.CO || operation == FilterEvaluator.SW ||
+                operation == FilterEvaluator.EW;
+        boolean ordering = operation == FilterEvaluator.GT || operation == FilterEvaluator.GE ||
+                operation == FilterEvaluator.LT || operation == FilterEvaluator.LE;
+        if ((substring && !string) || (ordering && (SCIMDefinitions.DataType.BOOLEAN.equals(type) ||
+                SCIMDefinitions.DataType.BINARY.equals(type))) || SCIMDefinitions.DataType.COMPLEX.equals(type)) {
+            String error = "Filter operator " + FilterEvaluator.OPERATIONS[operation] + " is not supported for the " +
+                    type + " attribute " + attributeSchema.getName();
+            throw new BadRequestException(error, ResponseCodeConstants.INVALID_FILTER);
+        }
+        String operand = column;
+        Object parameter;
+        if (string) {
+            boolean ignoreCase = !attributeSchema.getCaseExact() && !caseInsensitiveCollation &&
+                    !SCIMDefinitions.DataType.BINARY.equals(type);
+            if (ignoreCase) {
+                operand = "LOWER(" + column + ")";
+                value = value.toLowerCase(Locale.ENGLISH);
+            }
+            parameter = substring ? toLikePattern(operation, value) : value;
+        } else {
+            parameter = toParameter(value, attributeSchema);
+        }
+        if (operation == FilterEvaluator.NE) {
+            //ne matches the rows without a value as well, this is true or false even under a not
+            sql.append('(').append(operand).append(" <> ? OR ").append(column).append(" IS NULL)");
+            parameters.add(parameter);
+            return;
+        }
+        if (negated) {
+            //a comparison with null is unknown, which a not would leave unknown instead of making it true
+            sql.append('(').append(column).append(" IS NOT NULL AND ");
+        }
+        sql.append(operand).append(getSQLOperator(operation)).append('?');
+        if (substring) {
+            sql.append(" ESCAPE '").append(LIKE_ESCAPE).append('\'');
+        }
+        if (negated) {
+            sql.append(')');
+        }
+        parameters.add(parameter);
+    }
+
+    private void translateInExpression(InExpressionNode inExpressionNode, boolean negated, StringBuilder sql,
+                                       List<Object> parameters) throws BadRequestException {
+        List<AttributeSchema> attributePath =
+                FilterEvaluator.getAttributePath(inExpressionNode.getAttributeValue(), schema);
+        AttributeSchema attributeSchema = attributePath.get(attributePath.size() - 1);
+        String column = getColumn(attributeSchema);
+        SCIMDefinitions.DataType type = attributeSchema.getType();
+        if (SCIMDefinitions.DataType.COMPLEX.equals(type)) {
+            String error = "Filter operator " + FilterEvaluator.OPERATIONS[FilterEvaluator.EQ] +
+                    " is not supported for the " + type + " attribute " + attributeSchema.getName();
+            throw new BadRequestException(error, ResponseCodeConstants.INVALID_FILTER);
+        }
+        boolean ignoreCase = (SCIMDefinitions.DataType.STRING.equals(type) ||
+                SCIMDefinitions.DataType.REFERENCE.equals(type)) &&
+                !attributeSchema.getCaseExact() && !caseInsensitiveCollation;
+        if (inExpressionNode.getValues().isEmpty()) {
+            sql.append("1=0");
+            return;
+        }
+        if (negated) {
+            sql.append('(').append(column).append(" IS NOT NULL AND ");
+        }
+        sql.append(ignoreCase ? "LOWER(" + column + ")" : column).append(" IN (");
+        for (int i = 0; i < inExpressionNode.getValues().size(); i++) {
+            String value = inExpressionNode.getValues().get(i);
+            sql.append(i == 0 ? "?" : ", ?");
+            parameters.add(ignoreCase ? value.toLowerCase(Locale.ENGLISH) : toParameter(value, attributeSchema));
+        }
+        sql.append(')');
+        if (negated) {
+            sql.append(')');
+        }
+    }
+
+    private void translateValuePath(ValuePathNode valuePathNode, boolean negated, StringBuilder sql,
+                                    List<Object> parameters) throws BadRequestException {
+        String valuesQuery = columns.get(AttributeUtil.getAttributeURI(valuePathNode.getAttributeValue(), schema));
+        Node valueFilter = getOperand(valuePathNode.getValueFilter());
+        if (valuesQuery == null) {
+            sql.append('(');
+            translate(valueFilter, negated, sql, parameters);
+            sql.append(')');
+            return;
+        }
+        //the value filter is not negated inside the EXISTS, a not applies to the EXISTS as a whole
+        sql.append("EXISTS (").append(valuesQuery).append(" AND ");
+        translate(valueFilter, false, sql, parameters);
+        sql.append(')');
+    }
+
+    private String getColumn(AttributeSchema attributeSchema) throws BadRequestException {
+        String column = columns.get(attributeSchema.getURI());
+        if (column == null) {
+            String error = "Filtering on the attribute " + attributeSchema.getName() + " is not supported.";
+            throw new BadRequestException(error, ResponseCodeConstants.INVALID_FILTER);
+        }
+        return column;
+    }
+
+    private static String getSQLOperator(int operation) {
+        switch (operation) {
+            case FilterEvaluator.CO:
+            case FilterEvaluator.SW:
+            case FilterEvaluator.EW:
+                return " LIKE ";
+            case FilterEvaluator.GT:
+                return " > ";
+            case FilterEvaluator.GE:
+                return " >= ";
+            case FilterEvaluator.LT:
+                return " < ";
+            case FilterEvaluator.LE:
+                return " <= ";
+            default:
+                return " = ";
+        }
+    }
+
+    private static String toLikePattern(int operation, String value) {
+        StringBuilder pattern = new StringBuilder(value.length() + 2);
+        if (operation != FilterEvaluator.SW) {
+            pattern.append('%');
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                pattern.append(LIKE_ESCAPE);
+            }
+            pattern.append(c);
+        }
+        if (operation != FilterEvaluator.EW) {
+            pattern.append('%');
+        }
+        return pattern.toString();
+    }
+
+    private static Object toParameter(String value, AttributeSchema attributeSchema) throws BadRequestException {
+        SCIMDefinitions.DataType type = attributeSchema.getType();
+        try {
+            switch (type) {
+                case BOOLEAN:
+                    if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value)) {
+                        break;
+                    }
+                    return Boolean.valueOf(value);
+                case INTEGER:
+                    return Long.valueOf(value);
+                case DECIMAL:
+                    return Double.valueOf(value);
+                case DATE_TIME:
+                    return new Timestamp(DateTimeUtil.parse(value).getTime());
+                default:
+                    return value;
+            }
+        } catch (NumberFormatException | ParseException e) {
+            //reported below
+        }
+        String error = "Filter value " + value + " is not a valid " + type + " value for the attribute " +
+                attributeSchema.getName();
+        throw new BadRequestException(error, ResponseCodeConstants.INVALID_FILTER);
+    }
+
+    /**
+     * A translated filter, the WHERE clause and the values of its bind parameters in order.
+     */
+    public static final class SQLFilter {
+
+        private final String whereClause;
+        private final List<Object> parameters;
+
+        private SQLFilter(String whereClause, List<Object> parameters) {
+            this.whereClause = whereClause;
+            this.parameters = Collections.unmodifiableList(parameters);
+        }
+
+        /**
+         * The condition of the WHERE clause, without the WHERE keyword.
+         *
+         * @return String
+         */
+        public String getWhereClause() {
+            return whereClause;
+        }
+
+        public List<Object> getParameters() {
+            return parameters;
+        }
+
+        /**
+         * Sets the parameters on the given statement, starting from the given parameter index.
+         *
+         * @param statement  - statement prepared with the WHERE clause
+         * @param firstIndex - index of the first parameter of the WHERE clause in the statement
+         * @return index of the next parameter after the WHERE clause
+         * @throws SQLException
+         */
+        public int setParameters(PreparedStatement statement, int firstIndex) throws SQLException {
+            int index = firstIndex;
+            for (Object parameter : parameters) {
+                statement.setObject(index++, parameter);
+            }
+            return index;
+        }
+    }
+}
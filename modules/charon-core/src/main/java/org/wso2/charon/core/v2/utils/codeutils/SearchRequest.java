@@ -19,6 +19,8 @@ public class SearchRequest {
     private ArrayList<String> excludedAttributes;
     private int count;
     private int startIndex;
+    //cursor of the previous page, empty for the first page of cursor pagination, null with startIndex
+    private String cursor;
     private Node filter;
     private String sortBy;
     private String sortOder;
@@ -63,6 +65,14 @@ public class SearchRequest {
         this.startIndex = startIndex;
     }
 
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
     public Node getFilter() {
         return filter;
     }
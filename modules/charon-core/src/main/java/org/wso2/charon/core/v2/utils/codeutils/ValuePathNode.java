@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.utils.codeutils;
+
+/**
+ * A value path filter (eg: emails[type eq "work" and value co "@example.com"]), which matches if a single
+ * value of the multi valued attribute matches the whole value filter. The attributes of the value filter are
+ * sub attributes of the multi valued attribute, and are given by their URIs as in any other ExpressionNode.
+ */
+public class ValuePathNode extends Node {
+
+    private final String attributeValue;
+    private final Node valueFilter;
+
+    /**
+     * @param attributeValue - URI of the multi valued attribute
+     * @param valueFilter    - root of the filter applied on each value of the attribute
+     */
+    public ValuePathNode(String attributeValue, Node valueFilter) {
+        this.attributeValue = attributeValue;
+        this.valueFilter = valueFilter;
+    }
+
+    public String getAttributeValue() {
+        return attributeValue;
+    }
+
+    public Node getValueFilter() {
+        return valueFilter;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.encoder;
+
+import org.junit.Test;
+import org.wso2.charon.core.v2.objects.User;
+import org.wso2.charon.core.v2.schema.SCIMResourceSchemaManager;
+import org.wso2.charon.core.v2.schema.SCIMResourceTypeSchema;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the StreamingJSONDecoder decodes the same resources as the JSONDecoder, including the lenient
+ * json which org.json accepts, and rejects the same payloads with the same kind of error.
+ */
+public class StreamingJSONDecoderTest {
+
+    private static final String SCHEMAS = "schemas:['urn:ietf:params:scim:schemas:core:2.0:User'],";
+
+    private static final String[] PAYLOADS = {
+            "{\"schemas\":[\"urn:ietf:params:scim:schemas:core:2.0:User\"],\"userName\":\"bjensen\"," +
+                    "\"name\":{\"givenName\":\"Barbara\",\"familyName\":\"Jensen\"}," +
+                    "\"emails\":[{\"value\":\"bjensen@example.com\",\"type\":\"work\",\"primary\":true}]}",
+            //unquoted and single quoted keys and values
+            "{" + SCHEMAS + "userName:bjensen,'nickName':'Babs',title:Tour Guide }",
+            //'=' and '=>' after keys, ';' between members, trailing commas
+            "{" + SCHEMAS + "userName=bjensen;active=>true;name:{givenName:Barbara,},}",
+            //literals ignoring the case, hexadecimal and octal numbers
+            "{" + SCHEMAS + "userName:x,active:TRUE,emails:[{value:a,primary:False}],nickName:0x1F}",
+            "{" + SCHEMAS + "userName:x,nickName:010}",
+            //text which is not a boolean is read as false
+            "{" + SCHEMAS + "userName:x,active:maybe}",
+            //missing array elements
+            "{" + SCHEMAS + "userName:x,emails:[{value:a},,{value:b}]}",
+            "{" + SCHEMAS + "userName:x,emails:[,]}",
+            "{" + SCHEMAS + "userName:x,emails:[{value:a},]}",
+            //text after the resource is ignored
+            "{" + SCHEMAS + "userName:x} trailing text",
+            //invalid payloads
+            "{" + SCHEMAS + "userName:}",
+            "{" + SCHEMAS + "userName:x,userName:y}",
+            "{" + SCHEMAS + "userName:x,emails:[a]}",
+            "{" + SCHEMAS + "userName:x,title:Null}",
+            "{" + SCHEMAS + "userName:'x}",
+            "{" + SCHEMAS + "userName:x"};
+
+    @Test
+    public void testLenientJsonIsDecodedAsByJSONDecoder() throws Exception {
+        SCIMResourceTypeSchema schema = SCIMResourceSchemaManager.getInstance().getUserResourceSchema();
+        for (String payload : PAYLOADS) {
+            assertEquals(payload, decode(new JSONDecoder(), payload, schema),
+                    decode(new StreamingJSONDecoder(), payload, schema));
+        }
+    }
+
+    /*
+     * Returns the encoded resource, or the kind of error if the payload is rejected.
+     */
+    private static String decode(JSONDecoder decoder, String payload, SCIMResourceTypeSchema schema) {
+        try {
+            return new JSONEncoder().encodeSCIMObject(decoder.decodeResource(payload, schema, new User()));
+        } catch (Exception e) {
+            return e.getClass().getName();
+        }
+    }
+}
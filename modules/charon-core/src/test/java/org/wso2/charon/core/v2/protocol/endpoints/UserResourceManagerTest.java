@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.protocol.endpoints;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wso2.charon.core.v2.extensions.InMemoryUserManager;
+import org.wso2.charon.core.v2.protocol.ResponseCodeConstants;
+import org.wso2.charon.core.v2.protocol.SCIMResponse;
+import org.wso2.charon.core.v2.schema.SCIMConstants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Checks the cursor based pagination of the user endpoint, with the InMemoryUserManager.
+ */
+public class UserResourceManagerTest {
+
+    private static final String[] FAMILY_NAMES = {"Garcia", "Brown", "Evans", "Adams", "Fischer", "Clark", "Davis"};
+
+    private Map<String, String> endpointURLMap;
+    private InMemoryUserManager userManager;
+    private UserResourceManager userResourceManager;
+
+    @Before
+    public void setUp() throws Exception {
+        endpointURLMap = AbstractResourceManager.getEndpointURLMap();
+        Map<String, String> urls = new HashMap<>();
+        urls.put(SCIMConstants.USER_ENDPOINT, "https://localhost/scim/v2/Users");
+        AbstractResourceManager.setEndpointURLMap(urls);
+
+        userManager = new InMemoryUserManager();
+        userResourceManager = new UserResourceManager();
+        for (int i = 0; i < FAMILY_NAMES.length; i++) {
+            String user = "{\"schemas\":[\"" + SCIMConstants.USER_CORE_SCHEMA_URI + "\"],\"userName\":\"user" + i +
+                    "\",\"name\":{\"familyName\":\"" + FAMILY_NAMES[i] + "\"}}";
+            SCIMResponse response = userResourceManager.create(user, userManager, null, null);
+            assertEquals(response.getResponseMessage(), ResponseCodeConstants.CODE_CREATED,
+                    response.getResponseStatus());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        AbstractResourceManager.setEndpointURLMap(endpointURLMap);
+    }
+
+    @Test
+    public void testCursorPagesWhenTheSortAttributeIsNotReturned() throws Exception {
+        List<String> userNames = new ArrayList<>();
+        int pages = 0;
+        String cursor = "";
+        while (cursor != null) {
+            SCIMResponse response = userResourceManager.listWithGET(userManager, null, cursor, 2,
+                    "name.familyName", null, "userName", null);
+            assertEquals(response.getResponseMessage(), ResponseCodeConstants.CODE_OK, response.getResponseStatus());
+            JSONObject page = new JSONObject(response.getResponseMessage());
+            JSONArray resources = page.getJSONArray(SCIMConstants.ListedResourceSchemaConstants.RESOURCES);
+            for (int i = 0; i < resources.length(); i++) {
+                //only the asked attributes are returned, the cursor has the family name all the same
+                assertFalse(resources.getJSONObject(i).has(SCIMConstants.UserSchemaConstants.NAME));
+                userNames.add(resources.getJSONObject(i).getString(SCIMConstants.UserSchemaConstants.USER_NAME));
+            }
+            cursor = page.optString(SCIMConstants.ListedResourceSchemaConstants.NEXT_CURSOR, null);
+            pages++;
+        }
+        assertEquals(4, pages);
+        //ordered by the family name
+        assertEquals(Arrays.asList("user3", "user1", "user5", "user6", "user2", "user4", "user0"), userNames);
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.utils.codeutils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.wso2.charon.core.v2.encoder.JSONDecoder;
+import org.wso2.charon.core.v2.objects.User;
+import org.wso2.charon.core.v2.schema.SCIMConstants;
+import org.wso2.charon.core.v2.schema.SCIMResourceSchemaManager;
+import org.wso2.charon.core.v2.schema.SCIMResourceTypeSchema;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that FilterOptimizer keeps the meaning of filter trees, by evaluating randomly generated filters with
+ * FilterEvaluator before and after they are optimized, on randomly generated users.
+ */
+public class FilterOptimizerTest {
+
+    private static final long SEED = 20101L;
+    private static final int FILTERS = 5000;
+    private static final int USERS = 60;
+
+    //few attributes and values, so that filters repeat expressions, negate each other and compare with eq
+    //on the same attribute
+    private static final String[] STRING_ATTRIBUTES = {"userName", "title", "name.givenName", "emails.value"};
+    private static final String[] STRING_OPERATIONS = {"eq", "eq", "eq", "ne", "co", "sw", "ew", "gt", "pr"};
+    private static final String[] VALUES = {"alice", "Bob", "carol", "al", "b", "ol"};
+
+    private SCIMResourceTypeSchema schema;
+    private List<User> users;
+
+    @Before
+    public void setUp() throws Exception {
+        schema = SCIMResourceSchemaManager.getInstance().getUserResourceSchema();
+        Random random = new Random(SEED);
+        users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(createUser(random, i));
+        }
+    }
+
+    @Test
+    public void testRandomFiltersMatchTheSameUsers() throws Exception {
+        Random random = new Random(SEED);
+        int inExpressions = 0;
+        int tautologies = 0;
+        int negatedOperations = 0;
+        for (int i = 0; i < FILTERS; i++) {
+            String filter = createFilter(random, 1 + random.nextInt(4));
+            Node rootNode = new FilterTreeManager(filter, schema).buildTree();
+            Node optimizedNode = FilterOptimizer.optimize(rootNode);
+
+            assertEquals(filter, match(rootNode), match(optimizedNode));
+            assertFalse(filter, hasNegatedOperation(optimizedNode));
+            if (hasNegatedOperation(rootNode)) {
+                negatedOperations++;
+            }
+            if (optimizedNode == null) {
+                tautologies++;
+            } else if (hasInExpression(optimizedNode)) {
+                inExpressions++;
+            }
+        }
+        //the generated filters have to exercise every rewrite
+        assertTrue("no logical operator was negated", negatedOperations > 0);
+        assertTrue("no filter was folded into a tautology", tautologies > 0);
+        assertTrue("no eq expressions were merged", inExpressions > 0);
+    }
+
+    @Test
+    public void testNotIsPushedDownWithDeMorgan() throws Exception {
+        assertOptimized("not (userName eq alice or title pr)", false, false);
+        assertOptimized("not (userName sw a and not (emails.value co ol))", false, false);
+        assertOptimized("not (not (userName ne Bob))", false, false);
+    }
+
+    @Test
+    public void testTautologiesAreFolded() throws Exception {
+        assertOptimized("title pr or not (title pr)", true, false);
+        assertOptimized("userName eq alice or userName ne alice", true, false);
+        assertOptimized("not (userName eq alice and title pr) or title pr", true, false);
+        assertOptimized("(userName eq alice or not (userName eq alice)) and title pr", false, false);
+    }
+
+    @Test
+    public void testEqExpressionsAreMerged() throws Exception {
+        assertOptimized("userName eq alice or userName eq Bob", false, true);
+        assertOptimized("userName eq alice or (title pr or userName eq carol)", false, true);
+        assertOptimized("not (emails.value ne alice and emails.value ne b)", false, true);
+        assertOptimized("userName eq alice or title eq alice", false, false);
+    }
+
+    private void assertOptimized(String filter, boolean tautology, boolean inExpression) throws Exception {
+        Node rootNode = new FilterTreeManager(filter, schema).buildTree();
+        Node optimizedNode = FilterOptimizer.optimize(rootNode);
+        assertEquals(filter, match(rootNode), match(optimizedNode));
+        assertFalse(filter, hasNegatedOperation(optimizedNode));
+        if (tautology) {
+            assertNull(filter, optimizedNode);
+        } else {
+            assertTrue(filter, optimizedNode != null);
+            assertEquals(filter, inExpression, hasInExpression(optimizedNode));
+        }
+    }
+
+    /*
+     * Returns a match flag of each user, in the order of the users.
+     */
+    private List<Boolean> match(Node rootNode) throws Exception {
+        FilterPredicate predicate = FilterEvaluator.compile(rootNode, schema);
+        List<Boolean> matches = new ArrayList<>();
+        for (User user : users) {
+            matches.add(predicate.test(user));
+        }
+        return matches;
+    }
+
+    private static String createFilter(Random random, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            if (random.nextInt(6) == 0) {
+                return "active eq " + random.nextBoolean();
+            }
+            String attribute = STRING_ATTRIBUTES[random.nextInt(STRING_ATTRIBUTES.length)];
+            String operation = STRING_OPERATIONS[random.nextInt(STRING_OPERATIONS.length)];
+            if ("pr".equals(operation)) {
+                return attribute + " pr";
+            }
+            return attribute + " " + operation + " " + VALUES[random.nextInt(VALUES.length)];
+        }
+        switch (random.nextInt(5)) {
+            case 0:
+                return "not (" + createFilter(random, depth - 1) + ")";
+            case 1:
+            case 2:
+                return "(" + createFilter(random, depth - 1) + ") and (" + createFilter(random, depth - 1) + ")";
+            default:
+                return "(" + createFilter(random, depth - 1) + ") or (" + createFilter(random, depth - 1) + ")";
+        }
+    }
+
+    private static User createUser(Random random, int index) throws Exception {
+        StringBuilder json = new StringBuilder("{\"schemas\":[\"").append(SCIMConstants.USER_CORE_SCHEMA_URI)
+                .append("\"],\"userName\":\"").append(VALUES[random.nextInt(3)]).append(index).append('"');
+        //exact values as well, so that eq and the merged in expressions match some users
+        if (random.nextBoolean()) {
+            json.append(",\"title\":\"").append(VALUES[random.nextInt(VALUES.length)]).append('"');
+        }
+        if (random.nextBoolean()) {
+            json.append(",\"name\":{\"givenName\":\"").append(VALUES[random.nextInt(VALUES.length)]).append("\"}");
+        }
+        if (random.nextBoolean()) {
+            json.append(",\"active\":").append(random.nextBoolean());
+        }
+        int emails = random.nextInt(3);
+        if (emails > 0) {
+            List<String> values = new ArrayList<>();
+            for (int i = 0; i < emails; i++) {
+                values.add("{\"value\":\"" + VALUES[random.nextInt(VALUES.length)] + "\"}");
+            }
+            json.append(",\"emails\":").append(Arrays.toString(values.toArray()));
+        }
+        json.append('}');
+        return (User) new JSONDecoder().decodeResource(json.toString(),
+                SCIMResourceSchemaManager.getInstance().getUserResourceSchema(), new User());
+    }
+
+    /*
+     * Whether a not of the tree is applied to a logical operator rather than to an expression.
+     */
+    private static boolean hasNegatedOperation(Node node) {
+        if (node == null) {
+            return false;
+        }
+        if (node instanceof OperationNode && node.getRightNode() instanceof OperationNode
+                && SCIMConstants.OperationalConstants.NOT.equalsIgnoreCase(((OperationNode) node).getOperation())) {
+            return true;
+        }
+        return hasNegatedOperation(node.getLeftNode()) || hasNegatedOperation(node.getRightNode());
+    }
+
+    private static boolean hasInExpression(Node node) {
+        if (node == null) {
+            return false;
+        }
+        if (node instanceof InExpressionNode) {
+            return true;
+        }
+        return hasInExpression(node.getLeftNode()) || hasInExpression(node.getRightNode());
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.charon.core.v2.utils.codeutils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.wso2.charon.core.v2.exceptions.BadRequestException;
+import org.wso2.charon.core.v2.schema.SCIMConstants;
+import org.wso2.charon.core.v2.schema.SCIMResourceSchemaManager;
+import org.wso2.charon.core.v2.schema.SCIMResourceTypeSchema;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the WHERE clauses and parameters SQLFilterTranslator produces, in particular the handling of rows
+ * without a value under ne and not, the escaping of LIKE patterns, IN lists and EXISTS sub queries.
+ */
+public class SQLFilterTranslatorTest {
+
+    private static final String EMAILS_QUERY = "SELECT 1 FROM EMAILS E WHERE E.USER_ID = U.ID";
+
+    private SCIMResourceTypeSchema schema;
+    private SQLFilterTranslator translator;
+
+    @Before
+    public void setUp() throws Exception {
+        schema = SCIMResourceSchemaManager.getInstance().getUserResourceSchema();
+        Map<String, String> columns = new HashMap<>();
+        columns.put(SCIMConstants.CommonSchemaConstants.ID_URI, "U.ID");
+        columns.put(SCIMConstants.CommonSchemaConstants.CREATED_URI, "U.CREATED");
+        columns.put(SCIMConstants.UserSchemaConstants.USER_NAME_URI, "U.USER_NAME");
+        columns.put(SCIMConstants.UserSchemaConstants.TITLE_URI, "U.TITLE");
+        columns.put(SCIMConstants.UserSchemaConstants.ACTIVE_URI, "U.ACTIVE");
+        columns.put(SCIMConstants.UserSchemaConstants.EMAILS_URI, EMAILS_QUERY);
+        columns.put(SCIMConstants.UserSchemaConstants.EMAILS_VALUE_URI, "E.VALUE");
+        columns.put(SCIMConstants.UserSchemaConstants.EMAILS_TYPE_URI, "E.TYPE");
+        translator = new SQLFilterTranslator(schema, columns);
+    }
+
+    @Test
+    public void testComparisons() throws Exception {
+        assertTranslated("userName eq Alice", "LOWER(U.USER_NAME) = ?", "alice");
+        assertTranslated("id eq \"A\"", "U.ID = ?", "A");
+        assertTranslated("active eq true", "U.ACTIVE = ?", Boolean.TRUE);
+        assertTranslated("meta.created gt \"2011-05-13T04:42:34Z\"", "U.CREATED > ?",
+                new Timestamp(1305261754000L));
+        assertTranslated((Node) null, "1=1");
+    }
+
+    @Test
+    public void testRowsWithoutAValue() throws Exception {
+        //ne matches the rows without a value, with or without a not above it
+        assertTranslated("title ne x", "(LOWER(U.TITLE) <> ? OR U.TITLE IS NULL)", "x");
+        assertTranslated("not (title ne x)", "NOT ((LOWER(U.TITLE) <> ? OR U.TITLE IS NULL))", "x");
+        //a comparison under a not is guarded, so that the not matches the rows without a value
+        assertTranslated("not (title eq x)", "NOT ((U.TITLE IS NOT NULL AND LOWER(U.TITLE) = ?))", "x");
+        assertTranslated("not (not (title gt x))", "NOT (NOT (LOWER(U.TITLE) > ?))", "x");
+        assertTranslated("title pr", "U.TITLE IS NOT NULL");
+        assertTranslated("not (title pr)", "NOT (U.TITLE IS NOT NULL)");
+    }
+
+    @Test
+    public void testLikePatternsAreEscaped() throws Exception {
+        assertTranslated("userName co \"50%_off!\"", "LOWER(U.USER_NAME) LIKE ? ESCAPE '!'", "%50!%!_off!!%");
+        //a backslash is not an escape character, it is matched as it is
+        assertTranslated("userName sw a\\b and title ew b",
+                "(LOWER(U.USER_NAME) LIKE ? ESCAPE '!' AND LOWER(U.TITLE) LIKE ? ESCAPE '!')", "a\\b%", "%b");
+    }
+
+    @Test
+    public void testInLists() throws Exception {
+        assertTranslated(FilterOptimizer.optimize(buildTree("userName eq A or userName eq b")),
+                "LOWER(U.USER_NAME) IN (?, ?)", "a", "b");
+        OperationNode notNode = new OperationNode(SCIMConstants.OperationalConstants.NOT);
+        notNode.setRightNode(new InExpressionNode(SCIMConstants.UserSchemaConstants.USER_NAME_URI,
+                Arrays.asList("A", "b")));
+        assertTranslated(notNode, "NOT ((U.USER_NAME IS NOT NULL AND LOWER(U.USER_NAME) IN (?, ?)))", "a", "b");
+        assertTranslated(new InExpressionNode(SCIMConstants.UserSchemaConstants.USER_NAME_URI,
+                Collections.<String>emptyList()), "1=0");
+    }
+
+    @Test
+    public void testValuePathsBecomeExists() throws Exception {
+        assertTranslated("emails[type eq work and value co x]",
+                "EXISTS (" + EMAILS_QUERY + " AND (LOWER(E.TYPE) = ? AND LOWER(E.VALUE) LIKE ? ESCAPE '!'))",
+                "work", "%x%");
+        //the not applies to the EXISTS, not to the conditions on a single value
+        assertTranslated("not (emails[type eq work])",
+                "NOT (EXISTS (" + EMAILS_QUERY + " AND LOWER(E.TYPE) = ?))", "work");
+    }
+
+    @Test
+    public void testCaseInsensitiveCollation() throws Exception {
+        Map<String, String> columns = Collections.singletonMap(SCIMConstants.UserSchemaConstants.USER_NAME_URI,
+                "U.USER_NAME");
+        SQLFilterTranslator.SQLFilter sqlFilter = new SQLFilterTranslator(schema, columns, true)
+                .translate(buildTree("userName eq Alice"));
+        assertEquals("U.USER_NAME = ?", sqlFilter.getWhereClause());
+        assertEquals(Collections.<Object>singletonList("Alice"), sqlFilter.getParameters());
+    }
+
+    @Test
+    public void testUnsupportedFiltersAreRejected() throws Exception {
+        assertRejected("nickName eq x");
+        assertRejected("active gt true");
+        assertRejected("meta.created eq yesterday");
+    }
+
+    private Node buildTree(String filter) throws Exception {
+        return new FilterTreeManager(filter, schema).buildTree();
+    }
+
+    private void assertTranslated(String filter, String whereClause, Object... parameters) throws Exception {
+        assertTranslated(buildTree(filter), whereClause, parameters);
+    }
+
+    private void assertTranslated(Node rootNode, String whereClause, Object... parameters) throws Exception {
+        SQLFilterTranslator.SQLFilter sqlFilter = translator.translate(rootNode);
+        assertEquals(whereClause, sqlFilter.getWhereClause());
+        List<Object> expectedParameters = Arrays.asList(parameters);
+        assertEquals(expectedParameters, sqlFilter.getParameters());
+    }
+
+    private void assertRejected(String filter) throws Exception {
+        try {
+            translator.translate(buildTree(filter));
+            fail(filter);
+        } catch (BadRequestException e) {
+            //expected
+        }
+    }
+}